@@ -0,0 +1,90 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.lambda.AWSLambda;
+import com.amazonaws.services.lambda.AWSLambdaClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.HeadBucketRequest;
+
+/**
+ * The AWS clients of the container, built once when the application context starts and shared
+ * by every warm invocation so that credentials, TLS sessions and pooled connections are reused.
+ * The S3 connection pool is warmed during the init phase with a request to the bucket.
+ */
+@Component
+public class AwsClients {
+	private static final Logger LOG = LoggerFactory.getLogger(AwsClients.class);
+
+	// idle pooled connections are kept this long, well past the gap between warm invocations
+	public static final int CONNECTION_MAX_IDLE_MILLIS = 5 * 60 * 1000;
+
+	protected final Properties properties;
+	protected final AmazonS3 s3;
+	protected final AWSLambda lambda;
+
+	@Autowired
+	public AwsClients(Properties properties) {
+		this(properties,
+				AmazonS3ClientBuilder.standard()
+						.withRegion(properties.getRegion())
+						.withClientConfiguration(clientConfiguration(properties))
+						.build(),
+				AWSLambdaClientBuilder.standard()
+						.withRegion(properties.getRegion())
+						.withClientConfiguration(clientConfiguration(properties))
+						.build());
+	}
+
+	/**
+	 * @param s3 the S3 client to share
+	 * @param lambda the Lambda client to share
+	 */
+	AwsClients(Properties properties, AmazonS3 s3, AWSLambda lambda) {
+		this.properties = properties;
+		this.s3 = s3;
+		this.lambda = lambda;
+	}
+
+	/**
+	 * A connection pool large enough for the parallel part uploads, with TCP keep-alive.
+	 */
+	static ClientConfiguration clientConfiguration(Properties properties) {
+		return new ClientConfiguration()
+				.withMaxConnections(Math.max(ClientConfiguration.DEFAULT_MAX_CONNECTIONS, properties.getUploadThreads() * 2))
+				.withTcpKeepAlive(true)
+				.withConnectionMaxIdleMillis(CONNECTION_MAX_IDLE_MILLIS);
+	}
+
+	/**
+	 * Resolves the credentials and opens a connection to the bucket before the first request.
+	 * A failure is left for the first request to report.
+	 */
+	@PostConstruct
+	public void warm() {
+		if (!properties.isWarmClients() || !StringUtils.hasText(properties.getBucket())) {
+			return;
+		}
+		try {
+			s3.headBucket(new HeadBucketRequest(properties.getBucket()));
+		} catch (RuntimeException e) {
+			LOG.warn("Unable to warm the S3 client for {}: {}", properties.getBucket(), e.getMessage());
+		}
+	}
+
+	public AmazonS3 getS3() {
+		return s3;
+	}
+
+	public AWSLambda getLambda() {
+		return lambda;
+	}
+}
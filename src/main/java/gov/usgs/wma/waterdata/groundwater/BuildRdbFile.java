@@ -1,16 +1,27 @@
 package gov.usgs.wma.waterdata.groundwater;
 
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import com.amazonaws.services.s3.AmazonS3;
+
 /**
  * AWS Entry point and orchestration of GW RDB file export.
  *
@@ -21,6 +32,12 @@ public class BuildRdbFile implements Function<RequestObject, ResultObject> {
 
 	private static final Logger LOG = LoggerFactory.getLogger(BuildRdbFile.class);
 
+	// the request that rolls the folder files up, and the label of the file it writes
+	public static final String NATIONAL = "NATIONAL";
+	public static final String NATIONAL_SUFFIX = "US";
+	// the request that publishes the manifest of the run
+	public static final String MANIFEST = "MANIFEST";
+
 	@Autowired
 	protected S3BucketUtil s3BucketUtil;
 
@@ -36,6 +53,9 @@ public class BuildRdbFile implements Function<RequestObject, ResultObject> {
 	@Autowired
 	protected Properties properties;
 
+	@Autowired
+	protected AwsClients awsClients;
+
 
 	public BuildRdbFile() {
 	}
@@ -54,11 +74,148 @@ public class BuildRdbFile implements Function<RequestObject, ResultObject> {
 		if ("ALL".equals(locationFolder)) {
 			return processAllRequest(locationFolderUtil.getLocationFolders());
 		}
-		return processRequest(locationFolder);
+		if (MANIFEST.equals(locationFolder)) {
+			return processManifestRequest(locationFolderUtil.getLocationFolders(), request.getRun());
+		}
+		if (NATIONAL.equals(locationFolder)) {
+			return processNationalRequest(locationFolderUtil.getLocationFolders(), request.getCodec(), request.getRun());
+		}
+		return processRequest(locationFolder, request.getCodec());
 	}
 
+	/**
+	 * Invokes the export of every location folder, returning the run timestamp for the requests that follow,
+	 * whose check for files of the run allows the folder exports to begin later than it.
+	 */
 	protected ResultObject processAllRequest(Collection<String> locationFolders) {
-		return new InvokeAll().invoke(properties, locationFolders);
+		String run = s3BucketUtil.createTimestamp();
+		ResultObject result = new InvokeAll(awsClients).invoke(properties, locationFolders);
+		result.setRun(run);
+		return result;
+	}
+
+	/**
+	 * Rolls the latest file of each location folder up into one national file, requested once an ALL run has written them.
+	 * The folder files must be written with the header member so that their data is copied without the header.
+	 * Given the run, a folder whose latest file is older than the run fails the roll up, since its export did not
+	 * finish; with UNCHANGED_UPLOADS=SKIP an older file may be the unchanged content, so those are only logged.
+	 *
+	 * @param locationFolders the AQTS location folders
+	 * @param codec output codec specification of the folder files, null for the configured codec
+	 * @param run the timestamp of the ALL run, null to roll up the latest files whatever their age
+	 * @return result number of folder files rolled up
+	 */
+	protected ResultObject processNationalRequest(Collection<String> locationFolders, String codec, String run) {
+		OutputCodec outputCodec = OutputCodecs.forName(codec == null ? properties.getCodec() : codec,
+				properties.getGzipThreads());
+		AmazonS3 s3 = awsClients.getS3();
+		List<String> sourceKeys = new ArrayList<>();
+		List<String> missing = new ArrayList<>();
+		List<String> stale = new ArrayList<>();
+		for (String locationFolder : locationFolders) {
+			String suffix = locationFolderUtil.filenameDecorator(locationFolder);
+			if (StringUtils.isEmpty(suffix)) {
+				continue;
+			}
+			String sourceKey = s3BucketUtil.findLatestFile(s3, suffix, outputCodec);
+			if (sourceKey == null) {
+				missing.add(locationFolder);
+				continue;
+			}
+			if (run != null && s3BucketUtil.fileTimestamp(sourceKey).compareTo(run) < 0) {
+				stale.add(locationFolder + " " + sourceKey);
+			}
+			if (!sourceKeys.contains(sourceKey)) {
+				sourceKeys.add(sourceKey);
+			}
+		}
+		if (run == null) {
+			LOG.warn("No run given, rolling up the latest files without checking they are of one run");
+		}
+		if (!stale.isEmpty() && S3Bucket.Unchanged.forName(properties.getUnchangedUploads()) == S3Bucket.Unchanged.SKIP) {
+			LOG.warn("Rolling up files older than the run {}, unchanged or not exported: {}", run, stale);
+			stale.clear();
+		}
+		if (!missing.isEmpty() || !stale.isEmpty()) {
+			throw new RuntimeException("No RDB file of the run " + run + " to roll up for location folders: "
+					+ missing + ", older files: " + stale);
+		}
+
+		String keyName = s3BucketUtil.createFilename(NATIONAL_SUFFIX) + outputCodec.getSuffix();
+		createNationalRollUp(s3, outputCodec).rollUp(keyName, RdbSchema.readHeader(), sourceKeys);
+
+		ResultObject result = new ResultObject();
+		result.setCount(sourceKeys.size());
+		result.setMessage("Count is folder files rolled up into file: " + keyName);
+		return result;
+	}
+
+	/**
+	 * Helper method that makes test injection easier.
+	 */
+	protected NationalRollUp createNationalRollUp(AmazonS3 s3, OutputCodec codec) {
+		return new NationalRollUp(s3, properties.getBucket(), codec, properties.getPartSize());
+	}
+
+	/**
+	 * Publishes the manifest of the run of the tier from the entries the location folder exports saved,
+	 * requested once an ALL run has written them, and points the latest manifest of the tier at it.
+	 * Given the run, the folders whose entries were queried before it are listed as missing.
+	 *
+	 * @param locationFolders the AQTS location folders
+	 * @param run the timestamp of the ALL run, which names the manifest, null to name it now and take the saved entries
+	 * @return result number of files in the manifest
+	 */
+	protected ResultObject processManifestRequest(Collection<String> locationFolders, String run) {
+		List<String> suffixes = new ArrayList<>();
+		for (String locationFolder : locationFolders) {
+			String suffix = locationFolderUtil.filenameDecorator(locationFolder);
+			if (!StringUtils.isEmpty(suffix) && !suffixes.contains(suffix.toUpperCase())) {
+				suffixes.add(suffix.toUpperCase());
+			}
+		}
+		ExportManifest manifest = createExportManifest();
+		ExportManifest.Manifest published;
+		if (run == null) {
+			run = s3BucketUtil.createTimestamp();
+			published = manifest.publish(run, suffixes);
+		} else {
+			published = manifest.publish(run, suffixes, s3BucketUtil.runStart(run));
+		}
+
+		ResultObject result = new ResultObject();
+		result.setCount(published.getFiles().size());
+		result.setMessage("Count is files in manifest: " + manifest.runKey(run));
+		return result;
+	}
+
+	/**
+	 * Saves the manifest entries of the files of a location folder export.
+	 */
+	protected void saveManifest(String suffix, List<ExportManifest.Entry> entries) {
+		createExportManifest().saveFolder(suffix.toUpperCase(), entries);
+	}
+
+	protected ExportManifest.Entry manifestEntry(String suffix, S3Bucket s3bucket, long rows, long writeMillis,
+			long uploadMillis, String watermark) {
+		ExportManifest.Entry entry = new ExportManifest.Entry();
+		entry.setFolder(suffix.toUpperCase());
+		entry.setKey(s3bucket.getUnchangedKey() != null ? s3bucket.getUnchangedKey() : s3bucket.getKeyName());
+		entry.setCompressedBytes(s3bucket.getEncodedBytes());
+		entry.setUncompressedBytes(s3bucket.getContentBytes() < 0 ? null : s3bucket.getContentBytes());
+		entry.setRows(rows);
+		entry.setSha256(s3bucket.getEncodedDigest());
+		entry.setWriteMillis(writeMillis);
+		entry.setUploadMillis(uploadMillis);
+		entry.setWatermark(watermark);
+		return entry;
+	}
+
+	/**
+	 * Helper method that makes test injection easier.
+	 */
+	protected ExportManifest createExportManifest() {
+		return new ExportManifest(awsClients.getS3(), properties.getBucket(), s3BucketUtil.tierName());
 	}
 
 	/**
@@ -71,6 +228,17 @@ public class BuildRdbFile implements Function<RequestObject, ResultObject> {
 	 * @return result number of rows written to RDB file
 	 */
 	protected ResultObject processRequest(String locationFolder) {
+		return processRequest(locationFolder, null);
+	}
+
+	/**
+	 * Orchestration of AWS lambda processing, encoding the file with the given codec.
+	 *
+	 * @param locationFolder an AQTS location folder
+	 * @param codec output codec specification, null for the configured codec
+	 * @return result number of rows written to RDB file
+	 */
+	protected ResultObject processRequest(String locationFolder, String codec) {
 		LOG.debug("the request location folder: {}", locationFolder);
 		ResultObject result = new ResultObject();
 
@@ -81,17 +249,60 @@ public class BuildRdbFile implements Function<RequestObject, ResultObject> {
 			throw new RuntimeException("Given location folder has no state entry: " + locationFolder);
 		}
 		String filename = s3BucketUtil.createFilename(suffix);
+		if (properties.isSplit()) {
+			return processSplit(states, suffix, filename, codec);
+		}
 
-		try (S3Bucket s3bucket = s3BucketUtil.openS3(filename)) {
+		try (S3Bucket s3bucket = s3BucketUtil.openS3(filename, codec)) {
 
-			Writer writer = s3bucket.getWriter();
-			RdbWriter rdbWriter = createRdbWriter(writer).writeHeader();
-			dao.sendDiscreteGroundWater(states, rdbWriter, aqDao.getParameters());
+			RdbWriter rdbWriter;
+			CompressStage compressStage = null;
+			if (properties.isSegmented()) {
+				return processSegmented(states, suffix, filename, s3bucket, result);
+			} else if (properties.isFanOutExport()) {
+				return processFanOut(states, suffix, filename, codec, s3bucket, result);
+			} else if (properties.getPipelineDepth() > 0) {
+				compressStage = new CompressStage(s3bucket.getOutputStream(),
+						properties.getPipelineDepth(), RdbByteWriter.BUFFER_SIZE);
+				rdbWriter = createRdbWriter(compressStage.start());
+			} else if (properties.isBytePassthrough() || properties.getFormatWorkers() > 1) {
+				rdbWriter = createRdbWriter(s3bucket.getOutputStream());
+			} else {
+				rdbWriter = createRdbWriter(s3bucket.getWriter());
+			}
+			String watermark = Instant.now().toString();
+			long started = System.currentTimeMillis();
+			try {
+				if (!properties.isHeaderMember()) {
+					rdbWriter.writeHeader();
+				}
+				dao.sendDiscreteGroundWater(states, rdbWriter, aqDao.getParameters());
+				rdbWriter.flush();
+			} catch (RuntimeException e) {
+				if (compressStage != null) {
+					compressStage.abort(e);
+				}
+				throw e;
+			}
+			if (compressStage != null) {
+				compressStage.finish();
+				LOG.info("Pipeline utilization compress: {}, format blocked on compress: {} ms",
+						compressStage.getUtilization(), compressStage.getBackpressureNanos() / 1_000_000);
+			}
 
-			s3bucket.sendS3();
+			long written = System.currentTimeMillis();
+			s3bucket.sendS3(rdbWriter.getDataRowCount());
+			if (properties.isManifest()) {
+				saveManifest(suffix, List.of(manifestEntry(suffix, s3bucket, rdbWriter.getDataRowCount(),
+						written - started, System.currentTimeMillis() - written, watermark)));
+			}
 
 			result.setCount( (int)rdbWriter.getDataRowCount() );
-			result.setMessage("Count is rows written to file: " + s3bucket.getKeyName());
+			if (s3bucket.getUnchangedKey() != null) {
+				result.setMessage("Count is rows of unchanged file: " + s3bucket.getUnchangedKey());
+			} else {
+				result.setMessage("Count is rows written to file: " + s3bucket.getKeyName());
+			}
 		} catch (Exception e) {
 			throw new RuntimeException("Error writing RDB file to S3, " + filename, e);
 		}
@@ -100,6 +311,212 @@ public class BuildRdbFile implements Function<RequestObject, ResultObject> {
 		return result;
 	}
 
+	/**
+	 * Writes the file as gzip members, a member per site copying the sites unchanged since the previous export,
+	 * or members beginning at site boundaries for a seekable file alone.
+	 * The member index and the site offset index are saved once the file is sent.
+	 */
+	protected ResultObject processSegmented(List<String> states, String suffix, String filename, S3Bucket s3bucket,
+			ResultObject result) {
+		String watermark = Instant.now().toString();
+		long started = System.currentTimeMillis();
+		GzipMemberOutputStream members = s3bucket.getMemberOutputStream();
+		RdbWriter rdbWriter = properties.isBytePassthrough()
+				? createRdbWriter(members)
+				: createRdbWriter(new OutputStreamWriter(members));
+		SegmentedExport export = new SegmentedExport(dao, s3bucket.buildS3(), properties.getBucket(),
+				s3BucketUtil.segmentIndexKey(filename));
+		SiteOffsetIndex sites = null;
+		if (properties.isSegmentCache()) {
+			export.write(states, aqDao.getParameters(), rdbWriter, members);
+		} else {
+			sites = export.writeSeekable(states, aqDao.getParameters(), rdbWriter, members,
+					properties.getSeekableMemberSize());
+		}
+
+		long written = System.currentTimeMillis();
+		s3bucket.sendS3(rdbWriter.getDataRowCount());
+		long uploadMillis = System.currentTimeMillis() - written;
+		if (properties.isSegmentCache()) {
+			export.saveIndex(s3bucket.getKeyName(), members.getMembers());
+		}
+		if (properties.isSeekable()) {
+			if (sites == null) {
+				sites = SiteOffsetIndex.fromMembers(members.getMembers());
+			}
+			sites.publish(s3bucket.buildS3(), properties.getBucket(), s3bucket.getKeyName());
+		}
+		if (properties.isManifest()) {
+			saveManifest(suffix, List.of(manifestEntry(suffix, s3bucket, rdbWriter.getDataRowCount(),
+					written - started, uploadMillis, watermark)));
+		}
+
+		result.setCount( (int)rdbWriter.getDataRowCount() );
+		result.setMessage("Count is rows written to file: " + s3bucket.getKeyName());
+		return result;
+	}
+
+	/**
+	 * Writes the full file and the product files of the folder from the one query,
+	 * each product file with its own encoder and upload, named for its product in place of full.
+	 * The delta product compares the rows with those of the previous full file of the folder.
+	 */
+	protected ResultObject processFanOut(List<String> states, String suffix, String filename, String codec,
+			S3Bucket s3bucket, ResultObject result) {
+		List<S3Bucket> productBuckets = new ArrayList<>();
+		DeltaRdbOutput delta = null;
+		try {
+			FanOutRdbWriter rdbWriter = createFanOutRdbWriter(s3bucket.getWriter());
+			for (String product : FanOutRdbWriter.parseProducts(properties.getFanOut())) {
+				S3Bucket productBucket = s3BucketUtil.openS3Part(s3BucketUtil.productFilename(filename, product), codec);
+				productBuckets.add(productBucket);
+				rdbWriter.addOutput(FanOutRdbWriter.createOutput(product, createRdbWriter(productBucket.getWriter())));
+			}
+			if (properties.isDelta()) {
+				S3Bucket deltaBucket = s3BucketUtil.openS3Part(
+						s3BucketUtil.productFilename(filename, DeltaRdbOutput.PRODUCT), codec);
+				productBuckets.add(deltaBucket);
+				delta = openDelta(states, suffix, codec, s3bucket.buildS3(), deltaBucket);
+				rdbWriter.addOutput(delta);
+			}
+			String watermark = Instant.now().toString();
+			long started = System.currentTimeMillis();
+			if (!properties.isHeaderMember()) {
+				rdbWriter.writeHeader();
+			}
+			dao.sendDiscreteGroundWater(states, rdbWriter, aqDao.getParameters());
+			rdbWriter.finish();
+			long written = System.currentTimeMillis();
+
+			List<ExportManifest.Entry> entries = new ArrayList<>();
+			s3bucket.sendS3(rdbWriter.getDataRowCount());
+			entries.add(manifestEntry(suffix, s3bucket, rdbWriter.getDataRowCount(), written - started,
+					System.currentTimeMillis() - written, watermark));
+			List<String> productKeys = new ArrayList<>();
+			for (int p = 0; p < productBuckets.size(); p++) {
+				S3Bucket productBucket = productBuckets.get(p);
+				RdbWriter productWriter = rdbWriter.getOutputs().get(p).getWriter();
+				long uploadStarted = System.currentTimeMillis();
+				productBucket.sendS3(productWriter.getDataRowCount());
+				entries.add(manifestEntry(suffix, productBucket, productWriter.getDataRowCount(), written - started,
+						System.currentTimeMillis() - uploadStarted, watermark));
+				productKeys.add(productBucket.getKeyName());
+			}
+			if (properties.isManifest()) {
+				saveManifest(suffix, entries);
+			}
+
+			result.setCount( (int)rdbWriter.getDataRowCount() );
+			result.setMessage("Count is rows written to file: " + s3bucket.getKeyName()
+					+ ", with products: " + String.join(", ", productKeys));
+			return result;
+		} finally {
+			if (delta != null) {
+				try {
+					delta.close();
+				} catch (Exception e) {
+					LOG.warn("Error closing the previous export of {}: {}", suffix, e.getMessage());
+				}
+			}
+			for (S3Bucket productBucket : productBuckets) {
+				try {
+					productBucket.close();
+				} catch (Exception e) {
+					LOG.warn("Error closing product file {}: {}", productBucket.getKeyName(), e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens the delta of the folder against its latest full file, every row an add if it has none.
+	 * The sites of the folder, in export order, place the sites of the previous file in the merge.
+	 */
+	protected DeltaRdbOutput openDelta(List<String> states, String suffix, String codec, AmazonS3 s3,
+			S3Bucket deltaBucket) {
+		OutputCodec outputCodec = OutputCodecs.forName(codec == null ? properties.getCodec() : codec,
+				properties.getGzipThreads());
+		String previousKey = s3BucketUtil.findLatestFile(s3, suffix, outputCodec);
+		if (properties.isHeaderMember()) {
+			deltaBucket.withHeaderMember(DeltaRdbOutput.header(previousKey).getBytes(StandardCharsets.UTF_8));
+		}
+		Map<String, Integer> siteOrder = new HashMap<>();
+		for (String site : dao.getSiteOrder(states)) {
+			siteOrder.put(site, siteOrder.size());
+		}
+		BufferedReader previous = previousKey == null ? null
+				: DeltaRdbOutput.openPrevious(s3, properties.getBucket(), previousKey);
+		LOG.info("Delta of {} against {}", suffix, previousKey);
+		return new DeltaRdbOutput(createRdbWriter(deltaBucket.getWriter()), previous, previousKey, siteOrder);
+	}
+
+	/**
+	 * Helper method that makes test injection easier.
+	 * @param destination destination writer of the full file
+	 * @return RDB wrapper writer instance that also writes the product files
+	 */
+	protected FanOutRdbWriter createFanOutRdbWriter(Writer destination) {
+		return new FanOutRdbWriter(destination);
+	}
+
+	/**
+	 * Writes the folder as several RDB files, each with the full header, split at site boundaries
+	 * by site hash partition and by the row and encoded byte limits of a part.
+	 */
+	protected ResultObject processSplit(List<String> states, String suffix, String filename, String codec) {
+		List<Parameter> parameters = aqDao.getParameters();
+		s3BucketUtil.beginInvocation();
+		String watermark = Instant.now().toString();
+		try (SplitRowHandler handler = new SplitRowHandler(
+				(partition, sequence) -> openPart(filename, codec, parameters, partition, sequence),
+				properties.getSplitRows(), properties.getSplitBytes(), properties.getSplitPartitions())) {
+			dao.sendSiteSegments(states, null, handler);
+			List<String> keys = handler.finish();
+			if (properties.isManifest()) {
+				List<ExportManifest.Entry> entries = new ArrayList<>();
+				for (SplitRowHandler.Part part : handler.getSentParts()) {
+					entries.add(manifestEntry(suffix, part.bucket, part.writer.getDataRowCount(),
+							part.writeMillis, part.uploadMillis, watermark));
+				}
+				saveManifest(suffix, entries);
+			}
+
+			ResultObject result = new ResultObject();
+			result.setCount( (int)handler.getRowCount() );
+			result.setMessage("Count is rows written to files: " + String.join(", ", keys));
+			return result;
+		} catch (Exception e) {
+			throw new RuntimeException("Error writing RDB file parts to S3, " + filename, e);
+		}
+	}
+
+	/**
+	 * Opens a part of a split folder file and writes its header.
+	 */
+	protected SplitRowHandler.Part openPart(String filename, String codec, List<Parameter> parameters,
+			int partition, int sequence) {
+		S3Bucket part = s3BucketUtil.openS3Part(s3BucketUtil.partFilename(filename, partition,
+				properties.getSplitPartitions(), sequence), codec);
+		RdbWriter rdbWriter = properties.isBytePassthrough()
+				? createRdbWriter(part.getOutputStream())
+				: createRdbWriter(part.getWriter());
+		if (!properties.isHeaderMember()) {
+			rdbWriter.writeHeader();
+		}
+		return new SplitRowHandler.Part(part, rdbWriter, createRowHandler(rdbWriter, parameters));
+	}
+
+	/**
+	 * Helper method that makes test injection easier.
+	 * @return the handler that writes the fetched rows of a site
+	 */
+	protected RowCallbackHandler createRowHandler(RdbWriter writer, List<Parameter> parameters) {
+		if (writer instanceof RdbByteWriter) {
+			return new DiscreteGroundWaterPassthroughRowHandler((RdbByteWriter) writer, parameters);
+		}
+		return new DiscreteGroundWaterRowHandler(writer, parameters);
+	}
+
 	/**
 	 * Helper method that makes test injection easier.
 	 * @param destination destination writer
@@ -108,4 +525,13 @@ public class BuildRdbFile implements Function<RequestObject, ResultObject> {
 	protected RdbWriter createRdbWriter(Writer destination) {
 		return new RdbWriter(destination);
 	}
+
+	/**
+	 * Helper method that makes test injection easier.
+	 * @param destination destination byte stream
+	 * @return RDB wrapper writer instance that copies database bytes through to the stream
+	 */
+	protected RdbWriter createRdbWriter(OutputStream destination) {
+		return new RdbByteWriter(destination);
+	}
 }
@@ -2,6 +2,16 @@ package gov.usgs.wma.waterdata.groundwater;
 
 import org.springframework.cloud.function.adapter.aws.SpringBootRequestHandler;
 
+/**
+ * The Lambda handler. The application context starts when the container constructs the handler, in the
+ * init phase, rather than lazily in the first request, so its connections and client warm-up are not
+ * billed to the first invocation.
+ */
 public class BuildRdbFileHandler extends SpringBootRequestHandler<RequestObject, ResultObject> {
 
+	public BuildRdbFileHandler() {
+		super(Application.class);
+		// starting the context does not use the Lambda context, which a request would pass
+		initialize(null);
+	}
 }
@@ -0,0 +1,85 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Producer side of a ring of byte chunks. Bytes are copied into the claimed chunk and
+ * each full chunk is published to the consuming stage. Closing publishes the partial
+ * last chunk and ends the stream.
+ */
+public class ChunkRingOutputStream extends OutputStream {
+
+	/**
+	 * A preallocated block of bytes passed between stages.
+	 */
+	public static class Chunk {
+		protected final byte[] data;
+		protected int length;
+
+		public Chunk(int size) {
+			data = new byte[size];
+		}
+	}
+
+	protected final Ring<Chunk> ring;
+	protected Chunk current;
+	protected boolean closed;
+
+	public ChunkRingOutputStream(Ring<Chunk> ring) {
+		this.ring = ring;
+	}
+
+	/**
+	 * @param chunks the number of chunks in flight between the stages
+	 * @param chunkSize the bytes per chunk
+	 * @return a ring of preallocated chunks
+	 */
+	public static Ring<Chunk> ring(int chunks, int chunkSize) {
+		List<Chunk> slots = new ArrayList<>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			slots.add(new Chunk(chunkSize));
+		}
+		return new Ring<>(slots);
+	}
+
+	@Override
+	public void write(int b) {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		while (length > 0) {
+			if (current == null) {
+				current = ring.claim();
+				current.length = 0;
+			}
+			int count = Math.min(length, current.data.length - current.length);
+			System.arraycopy(bytes, offset, current.data, current.length, count);
+			current.length += count;
+			offset += count;
+			length -= count;
+			if (current.length == current.data.length) {
+				ring.publish(current);
+				current = null;
+			}
+		}
+	}
+
+	/**
+	 * Publishes the partial chunk and ends the stream.
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			if (current != null && current.length > 0) {
+				ring.publish(current);
+			}
+			current = null;
+			ring.close();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Pipeline stage that drains byte chunks from a ring into the compressing destination on its own thread,
+ * so that gzip runs alongside the fetch and format stages.
+ * The destination is flushed but not closed; its owner closes it once finish returns.
+ */
+public class CompressStage implements Runnable {
+
+	protected final Ring<ChunkRingOutputStream.Chunk> ring;
+	protected final OutputStream destination;
+	protected final ChunkRingOutputStream input;
+	protected final Thread thread;
+	protected volatile Throwable failure;
+	protected long startNanos;
+	protected long elapsedNanos;
+
+	/**
+	 * @param destination the stream to compress into, typically the gzip stream of the S3 temp file
+	 * @param chunks the number of chunks in flight
+	 * @param chunkSize the bytes per chunk
+	 */
+	public CompressStage(OutputStream destination, int chunks, int chunkSize) {
+		this.destination = destination;
+		this.ring = ChunkRingOutputStream.ring(chunks, chunkSize);
+		this.input = new ChunkRingOutputStream(ring);
+		this.thread = new Thread(this, "rdb-compress");
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts the stage thread.
+	 * @return the stream to write the uncompressed bytes to
+	 */
+	public OutputStream start() {
+		startNanos = System.nanoTime();
+		thread.start();
+		return input;
+	}
+
+	@Override
+	public void run() {
+		try {
+			for (ChunkRingOutputStream.Chunk chunk = ring.take(); chunk != null; chunk = ring.take()) {
+				destination.write(chunk.data, 0, chunk.length);
+				ring.release(chunk);
+			}
+			destination.flush();
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+			ring.abort(e);
+		} finally {
+			elapsedNanos = System.nanoTime() - startNanos;
+		}
+	}
+
+	/**
+	 * Ends the input and waits for the stage to drain it.
+	 */
+	public void finish() {
+		input.close();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting on the compress stage.", e);
+		}
+		if (failure != null) {
+			throw new RuntimeException("Error compressing RDB file.", failure);
+		}
+	}
+
+	/**
+	 * Stops a stage whose producer failed, so its thread does not wait forever,
+	 * and waits for it so it is not writing to the destination as its owner closes it.
+	 */
+	public void abort(Throwable cause) {
+		ring.abort(cause);
+		Ring.join(List.of(thread), Ring.ABORT_JOIN_MILLIS);
+	}
+
+	/**
+	 * @return the fraction of its run the stage was not waiting for chunks
+	 */
+	public double getUtilization() {
+		return Ring.utilization(elapsedNanos, ring.getConsumerWaitNanos());
+	}
+
+	/**
+	 * @return the nanoseconds the upstream stage blocked waiting for a free chunk
+	 */
+	public long getBackpressureNanos() {
+		return ring.getProducerWaitNanos();
+	}
+}
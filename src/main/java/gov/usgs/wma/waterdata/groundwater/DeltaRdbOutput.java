@@ -0,0 +1,289 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+
+/**
+ * The delta product of a fan-out export, the rows added, changed or deleted since the previous export,
+ * keyed by site, lev_dtm and parameter_code. Each row is the full RDB row after a delta_cd column of A, C or D;
+ * a deleted row is as it was in the previous export.
+ * The rows of the previous export are read as the rows of this one are written, both in the site order of the query,
+ * so only the rows of one site from each side are held at a time.
+ * A site of the previous export not in the export site order is deleted, and without a previous export every row is added.
+ */
+public class DeltaRdbOutput extends FanOutRdbWriter.Output implements AutoCloseable {
+
+	public static final String PRODUCT = "delta";
+	public static final String ADDED = "A";
+	public static final String CHANGED = "C";
+	public static final String DELETED = "D";
+
+	private static final String DELIMITER = "\t";
+
+	/**
+	 * The rows of a site, by their lev_dtm and parameter_code.
+	 */
+	protected static class Site {
+		protected final String site;
+		protected final Map<String, List<String>> rows = new LinkedHashMap<>();
+
+		protected Site(String site) {
+			this.site = site;
+		}
+
+		protected void add(String row) {
+			rows.computeIfAbsent(key(row), k -> new ArrayList<>()).add(row);
+		}
+	}
+
+	protected static final int AGENCY = column("agency_cd");
+	protected static final int SITE_NO = column("site_no");
+	protected static final int LEV_DTM = column("lev_dtm");
+	protected static final int PARAMETER_CODE = column("parameter_code");
+
+	protected final BufferedReader previous;
+	protected final String previousKey;
+	protected final Map<String, Integer> siteOrder;
+	protected Site current;
+	protected Site pending;
+	protected String nextLine;
+	protected int previousHeaderLines;
+
+	/**
+	 * @param writer the writer of the delta file
+	 * @param previous the rows of the previous export, null if there is none
+	 * @param previousKey the key of the previous export, named in the header
+	 * @param siteOrder the position of each monitoring location in the export order
+	 */
+	public DeltaRdbOutput(RdbWriter writer, BufferedReader previous, String previousKey, Map<String, Integer> siteOrder) {
+		super(PRODUCT, writer, dgw -> true);
+		this.previous = previous;
+		this.previousKey = previousKey;
+		this.siteOrder = siteOrder;
+	}
+
+	/**
+	 * Reads the previous export, gunzipped when it begins with the gzip magic bytes.
+	 * The gzip codec leaves the Content-Encoding unset, so the content itself tells the encoding.
+	 * @return the reader of the RDB content
+	 */
+	public static BufferedReader openPrevious(AmazonS3 s3, String bucket, String key) {
+		S3Object object = s3.getObject(bucket, key);
+		try {
+			InputStream content = new BufferedInputStream(object.getObjectContent(), 64 * 1024);
+			content.mark(2);
+			boolean gzip = content.read() == 0x1f && content.read() == 0x8b;
+			content.reset();
+			if (gzip) {
+				// reads every member, so a header member or site members are read as one file
+				content = new GZIPInputStream(content, 64 * 1024);
+			} else if (!key.endsWith(".rdb")) {
+				content.close();
+				throw new RuntimeException("Unable to read the encoding of the previous export " + key
+						+ ", only gzip and uncompressed exports have a delta");
+			}
+			return new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8), 64 * 1024);
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading the previous export " + key, e);
+		}
+	}
+
+	/**
+	 * @param previousKey the key of the previous export, null if there is none
+	 * @return the delta header, the RDB header with the delta_cd column first
+	 */
+	public static String header(String previousKey) {
+		StringBuilder header = new StringBuilder();
+		int line = 0;
+		for (String text : new String(RdbSchema.readHeader(), StandardCharsets.UTF_8).lines().toArray(String[]::new)) {
+			if (text.startsWith("#")) {
+				header.append(text);
+			} else if (line++ == 0) {
+				header.append("# delta_cd is A added, C changed or D deleted since the export ")
+						.append(previousKey == null ? "(none)" : previousKey).append("\n#\n");
+				header.append("delta_cd").append(DELIMITER).append(text);
+			} else {
+				header.append("1ss").append(DELIMITER).append(text);
+			}
+			header.append("\n");
+		}
+		return header.toString();
+	}
+
+	@Override
+	protected void writeHeader() {
+		try {
+			writer.rdb.append(header(previousKey));
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing RDB header to stream.", e);
+		}
+	}
+
+	@Override
+	protected void accept(DiscreteGroundWater dgw) {
+		String site = dgw.agencyCode + "-" + dgw.siteIdentificationNumber;
+		if (current == null || !site.equals(current.site)) {
+			mergeCurrent();
+			current = new Site(site);
+		}
+		current.add(String.join(DELIMITER, writer.toColumns(dgw)));
+	}
+
+	@Override
+	protected void finish() {
+		mergeCurrent();
+		if (pending != null) {
+			writeAll(DELETED, pending);
+			pending = null;
+		}
+		for (Site site = nextPrevious(); site != null; site = nextPrevious()) {
+			writeAll(DELETED, site);
+		}
+		super.finish();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (previous != null) {
+			previous.close();
+		}
+	}
+
+	/**
+	 * Merges the current site with the previous export, deleting the sites before it that were not exported this time.
+	 */
+	protected void mergeCurrent() {
+		if (current == null) {
+			return;
+		}
+		Integer position = siteOrder.get(current.site);
+		Site before = null;
+		while (position != null && (pending != null || (pending = nextPrevious()) != null)) {
+			if (pending.site.equals(current.site)) {
+				before = pending;
+				pending = null;
+				break;
+			}
+			Integer previousPosition = siteOrder.get(pending.site);
+			if (previousPosition != null && previousPosition > position) {
+				break;
+			}
+			writeAll(DELETED, pending);
+			pending = null;
+		}
+		if (before == null) {
+			writeAll(ADDED, current);
+		} else {
+			writeChanges(before, current);
+		}
+		current = null;
+	}
+
+	/**
+	 * Writes the rows of a site that differ, pairing the rows of a key in order.
+	 */
+	protected void writeChanges(Site before, Site after) {
+		for (Map.Entry<String, List<String>> key : after.rows.entrySet()) {
+			List<String> rows = key.getValue();
+			List<String> beforeRows = before.rows.remove(key.getKey());
+			int paired = beforeRows == null ? 0 : Math.min(rows.size(), beforeRows.size());
+			for (int r = 0; r < rows.size(); r++) {
+				if (r >= paired) {
+					write(ADDED, rows.get(r));
+				} else if (!rows.get(r).equals(beforeRows.get(r))) {
+					write(CHANGED, rows.get(r));
+				}
+			}
+			for (int r = paired; beforeRows != null && r < beforeRows.size(); r++) {
+				write(DELETED, beforeRows.get(r));
+			}
+		}
+		writeAll(DELETED, before);
+	}
+
+	protected void writeAll(String code, Site site) {
+		for (List<String> rows : site.rows.values()) {
+			for (String row : rows) {
+				write(code, row);
+			}
+		}
+	}
+
+	protected void write(String code, String row) {
+		writer.writeRow(List.of(code, row));
+		writer.countRows(1);
+	}
+
+	/**
+	 * @return the next site of the previous export, null once it is read
+	 */
+	protected Site nextPrevious() {
+		if (previous == null) {
+			return null;
+		}
+		try {
+			if (nextLine == null) {
+				nextLine = readRow();
+			}
+			Site site = null;
+			while (nextLine != null) {
+				String[] columns = nextLine.split(DELIMITER, -1);
+				String rowSite = columns[AGENCY] + "-" + columns[SITE_NO];
+				if (site == null) {
+					site = new Site(rowSite);
+				} else if (!rowSite.equals(site.site)) {
+					break;
+				}
+				site.add(nextLine);
+				nextLine = readRow();
+			}
+			return site;
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading the previous export " + previousKey, e);
+		}
+	}
+
+	/**
+	 * @return the next data row of the previous export, past the comments and the column name and definition lines
+	 */
+	protected String readRow() throws IOException {
+		for (String line = previous.readLine(); line != null; line = previous.readLine()) {
+			if (line.startsWith("#") || line.isEmpty()) {
+				continue;
+			}
+			if (previousHeaderLines < 2) {
+				previousHeaderLines++;
+				continue;
+			}
+			return line;
+		}
+		return null;
+	}
+
+	protected static String key(String row) {
+		String[] columns = row.split(DELIMITER, -1);
+		return columns[LEV_DTM] + DELIMITER + columns[PARAMETER_CODE];
+	}
+
+	protected static int column(String name) {
+		List<RdbSchema.Column> columns = RdbSchema.DEFAULT.getColumns();
+		for (int c = 0; c < columns.size(); c++) {
+			if (columns.get(c).getName().equals(name)) {
+				return c;
+			}
+		}
+		throw new RuntimeException("RDB column not found: " + name);
+	}
+}
@@ -0,0 +1,72 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Dictionary encoding for a low-cardinality column.
+ * Each distinct value is assigned a small int code in order of first appearance.
+ * The dictionary survives batch clears so that codes, and any values derived from
+ * them by business rules, are only computed once per distinct value.
+ */
+public class DictionaryColumn {
+
+	protected final Map<String, Integer> codes = new HashMap<>();
+	protected final List<String> values = new ArrayList<>();
+	protected String[] derived = new String[16];
+	protected int derivedCount;
+
+	/**
+	 * Encodes the value, adding it to the dictionary if not yet present.
+	 * @param value the raw column value, null is a valid entry
+	 * @return the dictionary code for the value
+	 */
+	public int encode(String value) {
+		Integer code = codes.get(value);
+		if (code == null) {
+			code = values.size();
+			codes.put(value, code);
+			values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * @param code a dictionary code returned by encode
+	 * @return the raw value for the code
+	 */
+	public String decode(int code) {
+		return values.get(code);
+	}
+
+	/**
+	 * @param code a dictionary code returned by encode
+	 * @return the value the last derive call mapped the raw value to
+	 */
+	public String derived(int code) {
+		return derived[code];
+	}
+
+	/**
+	 * Maps each dictionary entry not yet derived through the given rule.
+	 * Entries derived by an earlier call are not evaluated again.
+	 * @param rule the business rule to apply to raw values
+	 */
+	public void derive(Function<String, String> rule) {
+		if (derived.length < values.size()) {
+			String[] grown = new String[Math.max(values.size(), derived.length * 2)];
+			System.arraycopy(derived, 0, grown, 0, derivedCount);
+			derived = grown;
+		}
+		for (; derivedCount < values.size(); derivedCount++) {
+			derived[derivedCount] = rule.apply(values.get(derivedCount));
+		}
+	}
+
+	public int size() {
+		return values.size();
+	}
+}
@@ -0,0 +1,226 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Columnar block of GW rows between the database fetch and the RDB write.
+ * Low-cardinality columns are dictionary encoded to ints so that business rules
+ * can run once per distinct value rather than once per row.
+ * Site numbers and timestamps are held as primitive longs.
+ *
+ * @see DiscreteGroundWaterRules#apply(DiscreteGroundWaterBatch)
+ * @see RdbWriter#writeBatch(DiscreteGroundWaterBatch)
+ */
+public class DiscreteGroundWaterBatch {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	// site numbers longer than this do not fit in a long and are kept as text
+	private static final int MAX_SITE_DIGITS = 18;
+
+	protected final int capacity;
+	protected int size;
+
+	protected final DictionaryColumn agencyCode           = new DictionaryColumn();
+	protected final DictionaryColumn measuringAgencyCode  = new DictionaryColumn();
+	protected final DictionaryColumn verticalDatumCode    = new DictionaryColumn();
+	protected final DictionaryColumn timezoneCode         = new DictionaryColumn();
+	protected final DictionaryColumn measurementMethodCode= new DictionaryColumn();
+	protected final DictionaryColumn levelAccuracyCode    = new DictionaryColumn();
+	protected final DictionaryColumn dateTimeAccuracyCode = new DictionaryColumn();
+	protected final DictionaryColumn approvalLevel        = new DictionaryColumn();
+	protected final DictionaryColumn readingQualifiers    = new DictionaryColumn();
+	protected final DictionaryColumn parameterCode        = new DictionaryColumn();
+
+	protected final int[] agencyCodes;
+	protected final int[] measuringAgencyCodes;
+	protected final int[] verticalDatumCodes;
+	protected final int[] timezoneCodes;
+	protected final int[] measurementMethodCodes;
+	protected final int[] levelAccuracyCodes;
+	protected final int[] dateTimeAccuracyCodes;
+	protected final int[] approvalLevels;
+	protected final int[] readingQualifierCodes;
+	protected final int[] parameterCodes;
+
+	// site numbers are digits with significant leading zeros, so the digit count is kept with the value
+	protected final long[] siteNumbers;
+	protected final byte[] siteNumberDigits;
+	protected final String[] siteNumberText;
+	protected final long[] dateMeasuredRaw;
+	protected final String[] dateMeasured;
+	protected final String[] timeMeasuredUtc;
+	protected final String[] displayResult;
+
+	// parameter traits per parameterCode dictionary entry
+	protected boolean[] aboveDatum = new boolean[16];
+	protected boolean[] belowLandSurface = new boolean[16];
+	protected int parametersApplied;
+
+	public DiscreteGroundWaterBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public DiscreteGroundWaterBatch(int capacity) {
+		this.capacity = capacity;
+		agencyCodes            = new int[capacity];
+		measuringAgencyCodes   = new int[capacity];
+		verticalDatumCodes     = new int[capacity];
+		timezoneCodes          = new int[capacity];
+		measurementMethodCodes = new int[capacity];
+		levelAccuracyCodes     = new int[capacity];
+		dateTimeAccuracyCodes  = new int[capacity];
+		approvalLevels         = new int[capacity];
+		readingQualifierCodes  = new int[capacity];
+		parameterCodes         = new int[capacity];
+		siteNumbers      = new long[capacity];
+		siteNumberDigits = new byte[capacity];
+		siteNumberText   = new String[capacity];
+		dateMeasuredRaw  = new long[capacity];
+		dateMeasured     = new String[capacity];
+		timeMeasuredUtc  = new String[capacity];
+		displayResult    = new String[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == capacity;
+	}
+
+	/**
+	 * Resets the row count for reuse. Dictionaries are retained across batches.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Appends the raw (pre-business rules) column values of a row.
+	 * @param dgw the row to append, it is not retained
+	 */
+	public void add(DiscreteGroundWater dgw) {
+		if (isFull()) {
+			throw new IllegalStateException("Batch is full at " + capacity + " rows.");
+		}
+		int row = size++;
+		agencyCodes[row]            = agencyCode.encode(dgw.agencyCode);
+		measuringAgencyCodes[row]   = measuringAgencyCode.encode(dgw.measuringAgencyCode);
+		verticalDatumCodes[row]     = verticalDatumCode.encode(dgw.verticalDatumCode);
+		timezoneCodes[row]          = timezoneCode.encode(dgw.timezoneCode);
+		measurementMethodCodes[row] = measurementMethodCode.encode(dgw.measurementMethodCode);
+		levelAccuracyCodes[row]     = levelAccuracyCode.encode(dgw.levelAccuracyCode);
+		dateTimeAccuracyCodes[row]  = dateTimeAccuracyCode.encode(dgw.dateTimeAccuracyCode);
+		approvalLevels[row]         = approvalLevel.encode(dgw.approvalLevel);
+		readingQualifierCodes[row]  = readingQualifiers.encode(dgw.readingQualifiers);
+		parameterCodes[row]         = parameterCode.encode(dgw.parameterCode);
+
+		setSiteNumber(row, dgw.siteIdentificationNumber);
+		dateMeasuredRaw[row] = dgw.dateMeasuredRaw == null ? Long.MIN_VALUE : dgw.dateMeasuredRaw.getTime();
+		dateMeasured[row]    = dgw.dateMeasured;
+		timeMeasuredUtc[row] = dgw.timeMeasuredUtc;
+		displayResult[row]   = dgw.displayResult;
+	}
+
+	protected void setSiteNumber(int row, String site) {
+		siteNumberText[row] = null;
+		siteNumberDigits[row] = 0;
+		if (site != null && !site.isEmpty() && site.length() <= MAX_SITE_DIGITS) {
+			long value = 0;
+			for (int c = 0; c < site.length(); c++) {
+				char digit = site.charAt(c);
+				if (digit < '0' || digit > '9') {
+					siteNumberText[row] = site;
+					return;
+				}
+				value = value * 10 + (digit - '0');
+			}
+			siteNumbers[row] = value;
+			siteNumberDigits[row] = (byte) site.length();
+		} else {
+			siteNumberText[row] = site;
+		}
+	}
+
+	/**
+	 * @param row the row index within this batch
+	 * @return the site number as originally fetched, including leading zeros
+	 */
+	public String getSiteNumber(int row) {
+		if (siteNumberDigits[row] == 0) {
+			return siteNumberText[row];
+		}
+		char[] digits = new char[siteNumberDigits[row]];
+		long value = siteNumbers[row];
+		for (int c = digits.length - 1; c >= 0; c--) {
+			digits[c] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return new String(digits);
+	}
+
+	/**
+	 * Resolves the above datum and below land surface traits once per distinct parameter code.
+	 * @param parameters the parameter code traits from the transform db
+	 */
+	public void applyParameters(List<Parameter> parameters) {
+		int count = parameterCode.size();
+		if (aboveDatum.length < count) {
+			int length = Math.max(count, aboveDatum.length * 2);
+			boolean[] above = new boolean[length];
+			boolean[] below = new boolean[length];
+			System.arraycopy(aboveDatum, 0, above, 0, parametersApplied);
+			System.arraycopy(belowLandSurface, 0, below, 0, parametersApplied);
+			aboveDatum = above;
+			belowLandSurface = below;
+		}
+		for (; parametersApplied < count; parametersApplied++) {
+			String code = parameterCode.decode(parametersApplied);
+			for (Parameter parameter : parameters) {
+				if (parameter.parameterCode.equals(code)) {
+					aboveDatum[parametersApplied] = parameter.aboveDatum;
+					belowLandSurface[parametersApplied] = parameter.belowLandSurface;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Populates a reusable row instance with the rule-applied values of a batch row.
+	 * Rules and parameters must have been applied to the batch first.
+	 * @param row the row index within this batch
+	 * @param dgw the instance to populate, its timestamp instance is reused if present
+	 * @return the given instance
+	 */
+	public DiscreteGroundWater copyRow(int row, DiscreteGroundWater dgw) {
+		dgw.agencyCode               = agencyCode.decode(agencyCodes[row]);
+		dgw.siteIdentificationNumber = getSiteNumber(row);
+		dgw.verticalDatumCode        = verticalDatumCode.decode(verticalDatumCodes[row]);
+		dgw.measuringAgencyCode      = measuringAgencyCode.decode(measuringAgencyCodes[row]);
+		dgw.measurementSourceCode    = measuringAgencyCode.derived(measuringAgencyCodes[row]);
+		dgw.levelAccuracyCode        = levelAccuracyCode.decode(levelAccuracyCodes[row]);
+		dgw.readingQualifiers        = readingQualifiers.derived(readingQualifierCodes[row]);
+		dgw.measurementMethodCode    = measurementMethodCode.decode(measurementMethodCodes[row]);
+		dgw.dateMeasured             = dateMeasured[row];
+		dgw.dateTimeAccuracyCode     = dateTimeAccuracyCode.decode(dateTimeAccuracyCodes[row]);
+		dgw.timezoneCode             = timezoneCode.decode(timezoneCodes[row]);
+		dgw.timeMeasuredUtc          = timeMeasuredUtc[row];
+		dgw.approvalLevel            = approvalLevel.derived(approvalLevels[row]);
+		dgw.parameterCode            = parameterCode.decode(parameterCodes[row]);
+		dgw.displayResult            = displayResult[row];
+		dgw.aboveDatum               = aboveDatum[parameterCodes[row]];
+		dgw.belowLandSurface         = belowLandSurface[parameterCodes[row]];
+
+		if (dateMeasuredRaw[row] == Long.MIN_VALUE) {
+			dgw.dateMeasuredRaw = null;
+		} else if (dgw.dateMeasuredRaw == null) {
+			dgw.dateMeasuredRaw = new Timestamp(dateMeasuredRaw[row]);
+		} else {
+			dgw.dateMeasuredRaw.setTime(dateMeasuredRaw[row]);
+		}
+		return dgw;
+	}
+}
@@ -0,0 +1,71 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Accumulates fetched rows into columnar batches and writes each batch once full.
+ * The final partial batch is written by calling finish after the query completes.
+ */
+public class DiscreteGroundWaterBatchRowHandler implements RowCallbackHandler {
+
+	protected DiscreteGroundWaterRowMapper rowMap;
+	protected DiscreteGroundWaterRules rules;
+	protected RdbWriter writer;
+	protected List<Parameter> parameters;
+	protected DiscreteGroundWaterBatch batch;
+	protected DiscreteGroundWater row;
+
+	public DiscreteGroundWaterBatchRowHandler(RdbWriter writer, List<Parameter> parameters, int batchSize) {
+		this.writer = writer;
+		this.parameters = parameters;
+		rowMap = new DiscreteGroundWaterRowMapper();
+		rules = new DiscreteGroundWaterRules();
+		batch = new DiscreteGroundWaterBatch(batchSize);
+		row = new DiscreteGroundWater();
+	}
+
+	@Override
+	public void processRow(ResultSet rs) throws SQLException {
+		batch.add(rowMap.mapColumns(rs, row));
+		if (batch.isFull()) {
+			flush();
+		}
+	}
+
+	/**
+	 * Applies the rules to and writes any rows pending in the current batch.
+	 */
+	public void flush() {
+		if (batch.size() > 0) {
+			rules.apply(batch);
+			batch.applyParameters(parameters);
+			writer.writeBatch(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Writes the final partial batch once the query completes.
+	 */
+	public void finish() {
+		flush();
+	}
+
+	/**
+	 * Stops any stages running on other threads after the query failed.
+	 * @param cause the query failure
+	 */
+	public void abort(Throwable cause) {
+	}
+
+	/**
+	 * @return the rules applied to the rows, exposing their stage statistics
+	 */
+	public DiscreteGroundWaterRules getRules() {
+		return rules;
+	}
+}
@@ -1,7 +1,8 @@
 package gov.usgs.wma.waterdata.groundwater;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -12,6 +13,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.util.FileCopyUtils;
@@ -32,6 +34,25 @@ public class DiscreteGroundWaterDao {
 	@Value("classpath:sql/selectDiscreteGroundWater.sql")
 	protected Resource selectQuery;
 
+	@Value("classpath:sql/selectDiscreteGroundWaterMapped.sql")
+	protected Resource selectMappedQuery;
+
+	@Value("classpath:sql/selectSiteFingerprints.sql")
+	protected Resource fingerprintQuery;
+
+	@Value("classpath:sql/selectDiscreteGroundWaterSites.sql")
+	protected Resource selectSitesQuery;
+
+	@Value("classpath:sql/selectSiteOrder.sql")
+	protected Resource siteOrderQuery;
+
+	// sqlRules computes lev_status_cd, lev_age_cd and lev_src_cd in the database rather than the rules,
+	// batchSize, pipelineDepth and formatWorkers choose the batch, pipeline and parallel write paths
+	@Autowired
+	protected Properties properties;
+
+	// bound as the VALUES of the mapping table in selectDiscreteGroundWaterMapped.sql
+	protected final List<Object[]> levelStatusCodes = LevelStatusCode.toSqlValues();
 
 	/**
 	 * Fetches GW data from the database and converts it to a list of the ORM instance.
@@ -40,14 +61,125 @@ public class DiscreteGroundWaterDao {
 	 * @param writer instance that will write each row to an RDB file
 	 */
 	public void sendDiscreteGroundWater(List<String> states, RdbWriter writer, List<Parameter> parameters) {
-		DiscreteGroundWaterRowHandler rowHandler = new DiscreteGroundWaterRowHandler(writer, parameters);
+		RowCallbackHandler rowHandler;
+		DiscreteGroundWaterBatchRowHandler batchHandler = null;
+		Resource query = selectQuery;
+		Map<String, Object> params = new HashMap<>();
+		params.put("states", states);
+		int batchSize = properties.getBatchSize();
+		int pipelineDepth = properties.getPipelineDepth();
+		int formatWorkers = properties.getFormatWorkers();
+		if (properties.isSqlRules()) {
+			// the batch and passthrough handlers apply the rules themselves, so the mapped rows take the row path
+			query = selectMappedQuery;
+			params.put("levelStatusCodes", levelStatusCodes);
+			rowHandler = new DiscreteGroundWaterRowHandler(writer, parameters, new DiscreteGroundWaterMappedRowMapper());
+		} else if (formatWorkers > 1 && writer instanceof RdbByteWriter) {
+			rowHandler = batchHandler = new DiscreteGroundWaterParallelRowHandler((RdbByteWriter) writer, parameters,
+					batchSize > 0 ? batchSize : DiscreteGroundWaterBatch.DEFAULT_CAPACITY,
+					formatWorkers, Math.max(pipelineDepth, 2 * formatWorkers));
+		} else if (pipelineDepth > 0) {
+			rowHandler = batchHandler = new DiscreteGroundWaterPipelineRowHandler(writer, parameters,
+					batchSize > 0 ? batchSize : DiscreteGroundWaterBatch.DEFAULT_CAPACITY, pipelineDepth);
+		} else if (batchSize > 0) {
+			rowHandler = batchHandler = new DiscreteGroundWaterBatchRowHandler(writer, parameters, batchSize);
+		} else if (writer instanceof RdbByteWriter) {
+			rowHandler = new DiscreteGroundWaterPassthroughRowHandler((RdbByteWriter) writer, parameters);
+		} else {
+			rowHandler = new DiscreteGroundWaterRowHandler(writer, parameters);
+		}
 
 		try {
-			String sql = new String(FileCopyUtils.copyToByteArray(selectQuery.getInputStream()));
+			String sql = new String(FileCopyUtils.copyToByteArray(query.getInputStream()));
 			NamedParameterJdbcTemplate namedParamJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplateObservation);
-			Map<String, List<String>> params = Collections.singletonMap("states", states);
 
 			namedParamJdbcTemplate.query(sql, params, rowHandler);
+			if (batchHandler != null) {
+				batchHandler.finish();
+			}
+			if (batchHandler instanceof DiscreteGroundWaterPipelineRowHandler) {
+				DiscreteGroundWaterPipelineRowHandler pipeline = (DiscreteGroundWaterPipelineRowHandler) batchHandler;
+				LOG.info("Pipeline utilization fetch: {}, format: {}",
+						pipeline.getFetchUtilization(), pipeline.getFormatUtilization());
+			}
+			DiscreteGroundWaterRules rules = rulesOf(rowHandler);
+			if (rules != null) {
+				rules.logStatistics();
+			}
+		} catch (RuntimeException e) {
+			if (batchHandler != null) {
+				batchHandler.abort(e);
+			}
+			throw e;
+		} catch (IOException e) {
+			if (batchHandler != null) {
+				batchHandler.abort(e);
+			}
+			LOG.error("Unable to get Discrete Ground Water SQL statement", e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Fingerprints the rows of each site from the database, so that unchanged sites need not be fetched.
+	 * @param states list of state names to fetch.
+	 * @return the fingerprint of each monitoring location, in the order the sites are exported
+	 */
+	public Map<String, String> getSiteFingerprints(List<String> states) {
+		Map<String, String> fingerprints = new LinkedHashMap<>();
+		Map<String, Object> params = new HashMap<>();
+		params.put("states", states);
+		new NamedParameterJdbcTemplate(jdbcTemplateObservation).query(readSql(fingerprintQuery), params,
+				(RowCallbackHandler) rs -> fingerprints.put(rs.getString(1), rs.getString(2)));
+		return fingerprints;
+	}
+
+	/**
+	 * Lists the sites without reading their rows, for merging an export with the previous one site by site.
+	 * @param states list of state names to fetch.
+	 * @return the monitoring locations, in the order the sites are exported
+	 */
+	public List<String> getSiteOrder(List<String> states) {
+		Map<String, Object> params = new HashMap<>();
+		params.put("states", states);
+		return new NamedParameterJdbcTemplate(jdbcTemplateObservation).queryForList(readSql(siteOrderQuery), params,
+				String.class);
+	}
+
+	/**
+	 * Fetches the GW data of the given sites to a segment handler, in the order the sites are exported.
+	 * The rows carry their monitoring location for the handler to split them into segments.
+	 * @param states list of state names to fetch.
+	 * @param sites the monitoring locations to fetch, null for all of those in the states
+	 * @param handler the segment or seekable handler, finished by the caller
+	 */
+	public void sendSiteSegments(List<String> states, List<String> sites, RowCallbackHandler handler) {
+		Map<String, Object> params = new HashMap<>();
+		params.put("states", states);
+		// a single bound list rather than a bind parameter per site
+		params.put("sites", sites == null ? null : String.join(",", sites));
+		new NamedParameterJdbcTemplate(jdbcTemplateObservation).query(readSql(selectSitesQuery), params, handler);
+	}
+
+	/**
+	 * @return the rules the handler applied, with those of its workers merged, null when the database applied them
+	 */
+	protected DiscreteGroundWaterRules rulesOf(RowCallbackHandler rowHandler) {
+		if (properties.isSqlRules()) {
+			return null;
+		} else if (rowHandler instanceof DiscreteGroundWaterBatchRowHandler) {
+			return ((DiscreteGroundWaterBatchRowHandler) rowHandler).getRules();
+		} else if (rowHandler instanceof DiscreteGroundWaterPassthroughRowHandler) {
+			return ((DiscreteGroundWaterPassthroughRowHandler) rowHandler).getRules();
+		} else if (rowHandler instanceof DiscreteGroundWaterRowHandler) {
+			return ((DiscreteGroundWaterRowHandler) rowHandler).getRules();
+		}
+		return null;
+	}
+
+	protected String readSql(Resource query) {
+		try {
+			return new String(FileCopyUtils.copyToByteArray(query.getInputStream()));
 		} catch (IOException e) {
 			LOG.error("Unable to get Discrete Ground Water SQL statement", e.getMessage());
 			throw new RuntimeException(e);
@@ -0,0 +1,25 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * RowMapper for selectDiscreteGroundWaterMapped.sql, where the database has already applied
+ * the business rules and returns lev_status_cd, lev_age_cd and lev_src_cd.
+ */
+public class DiscreteGroundWaterMappedRowMapper extends DiscreteGroundWaterRowMapper {
+
+	/**
+	 * Translates JDBC RowSet row to ORM instance, taking the rule results from the row.
+	 */
+	@Override
+	public DiscreteGroundWater mapRow(ResultSet rs, int rowNum) throws SQLException {
+		DiscreteGroundWater discreteGroundWater = mapVerbatimColumns(rs, new DiscreteGroundWater());
+
+		discreteGroundWater.readingQualifiers = rs.getString("lev_status_cd");
+		discreteGroundWater.approvalLevel = rs.getString("lev_age_cd");
+		discreteGroundWater.measurementSourceCode = rs.getString("lev_src_cd");
+
+		return discreteGroundWater;
+	}
+}
@@ -0,0 +1,216 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats fetched batches on several worker threads while keeping the rows in query order.
+ * The JDBC thread numbers each full batch and hands it through a ring to the workers, each of which
+ * applies its own rules and encodes the batch into the batch's byte buffer. A reorder thread appends
+ * the encoded blocks to the destination strictly by number, so the file follows the SQL order by.
+ * Call finish after the query completes to write the last batch and wait for the workers.
+ */
+public class DiscreteGroundWaterParallelRowHandler extends DiscreteGroundWaterBatchRowHandler {
+
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * A numbered batch and the RDB bytes encoded from it.
+	 */
+	protected static class Block {
+		protected final DiscreteGroundWaterBatch batch;
+		protected final BlockBuffer bytes = new BlockBuffer();
+		protected final RdbByteWriter writer = new RdbByteWriter(bytes);
+		protected long sequence;
+		protected long rows;
+
+		protected Block(int batchSize) {
+			batch = new DiscreteGroundWaterBatch(batchSize);
+		}
+
+		protected void encode() {
+			bytes.reset();
+			long before = writer.getDataRowCount();
+			writer.writeBatch(batch);
+			writer.flush();
+			rows = writer.getDataRowCount() - before;
+			batch.clear();
+		}
+	}
+
+	// exposes the buffer so blocks are appended without a copy
+	protected static class BlockBuffer extends ByteArrayOutputStream {
+		protected byte[] bytes() {
+			return buf;
+		}
+	}
+
+	private static final Block END = new Block(1);
+
+	protected final RdbByteWriter destination;
+	protected final Ring<Block> ring;
+	protected final ArrayBlockingQueue<Block> encoded;
+	protected final List<Thread> workers;
+	protected final List<DiscreteGroundWaterRules> workerRules = new ArrayList<>();
+	protected final Thread reorder;
+	protected final int depth;
+	protected volatile Throwable failure;
+	protected Block block;
+	protected long sequence;
+
+	/**
+	 * @param writer the RDB writer the blocks are appended to, used only from the reorder thread
+	 * @param parameters the parameter codes and their direction
+	 * @param batchSize rows per batch
+	 * @param workerCount the number of formatting threads
+	 * @param depth the number of batches in flight, at least the number of workers
+	 */
+	public DiscreteGroundWaterParallelRowHandler(RdbByteWriter writer, List<Parameter> parameters,
+			int batchSize, int workerCount, int depth) {
+		super(writer, parameters, batchSize);
+		this.destination = writer;
+		this.depth = Math.max(depth, workerCount);
+		List<Block> blocks = new ArrayList<>(this.depth);
+		for (int b = 0; b < this.depth; b++) {
+			blocks.add(new Block(batchSize));
+		}
+		ring = new Ring<>(blocks);
+		encoded = new ArrayBlockingQueue<>(this.depth + 1);
+		block = ring.claim();
+		batch = block.batch;
+
+		workers = new ArrayList<>(workerCount);
+		for (int w = 0; w < workerCount; w++) {
+			Thread worker = new Thread(this::format, "rdb-format-" + w);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+		reorder = new Thread(this::reorder, "rdb-reorder");
+		reorder.setDaemon(true);
+		reorder.start();
+	}
+
+	/**
+	 * Numbers the current batch, hands it to the workers and claims an empty one,
+	 * blocking while every batch is in flight.
+	 */
+	@Override
+	public void flush() {
+		if (batch.size() > 0) {
+			block.sequence = sequence++;
+			ring.publish(block);
+			block = ring.claim();
+			batch = block.batch;
+		}
+	}
+
+	/**
+	 * Hands over the last batch and waits for every block to be written.
+	 */
+	@Override
+	public void finish() {
+		flush();
+		ring.close();
+		try {
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			encoded.add(END);
+			reorder.join();
+			synchronized (workerRules) {
+				for (DiscreteGroundWaterRules worker : workerRules) {
+					rules.merge(worker);
+				}
+				workerRules.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting on the format workers.", e);
+		}
+		if (failure != null) {
+			throw new RuntimeException("Error formatting RDB rows.", failure);
+		}
+	}
+
+	/**
+	 * Stops the workers and the reorder stage and waits for them, so none is writing to the RDB writer
+	 * as the caller closes it.
+	 */
+	@Override
+	public void abort(Throwable cause) {
+		fail(cause);
+		List<Thread> stages = new ArrayList<>(workers);
+		stages.add(reorder);
+		Ring.join(stages, Ring.ABORT_JOIN_MILLIS);
+	}
+
+	/**
+	 * A format worker, with rules of its own since the rule stages keep counters,
+	 * merged into the rules of the handler once the workers finish.
+	 */
+	protected void format() {
+		DiscreteGroundWaterRules ownRules = new DiscreteGroundWaterRules();
+		synchronized (workerRules) {
+			workerRules.add(ownRules);
+		}
+		try {
+			for (Block pending = ring.take(); pending != null; pending = ring.take()) {
+				ownRules.apply(pending.batch);
+				pending.batch.applyParameters(parameters);
+				pending.encode();
+				encoded.add(pending);
+			}
+		} catch (RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * The reorder stage, holds blocks that finish early until the blocks before them are written.
+	 * No more than depth blocks are in flight, so the sequence modulo depth is a free slot.
+	 */
+	protected void reorder() {
+		Block[] waiting = new Block[depth];
+		long next = 0;
+		try {
+			for (Block done = poll(); done != END; done = poll()) {
+				waiting[(int) (done.sequence % depth)] = done;
+				for (Block ready = waiting[(int) (next % depth)]; ready != null; ready = waiting[(int) (next % depth)]) {
+					waiting[(int) (next % depth)] = null;
+					destination.writeEncodedRows(ready.bytes.bytes(), ready.bytes.size(), ready.rows);
+					ring.release(ready);
+					next++;
+				}
+			}
+		} catch (RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	protected void fail(Throwable cause) {
+		if (failure == null) {
+			failure = cause;
+		}
+		ring.abort(cause);
+	}
+
+	private Block poll() {
+		try {
+			Block done = encoded.poll();
+			while (done == null) {
+				if (failure != null) {
+					throw new RuntimeException("Pipeline stage failed.", failure);
+				}
+				done = encoded.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			return done;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting on the format workers.", e);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static java.util.Map.entry;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Writes each fetched row straight to an RDB byte writer.
+ * Columns that are copied verbatim into the RDB are read from the driver as raw bytes,
+ * only the timestamp and the business rule inputs are decoded.
+ * The PostgreSQL driver returns the undecoded wire bytes from getBytes for non-bytea columns.
+ * The fields are written in the column order and widths of an RdbSchema, as RdbRowEncoder does for mapped rows.
+ */
+public class DiscreteGroundWaterPassthroughRowHandler implements RowCallbackHandler {
+
+	private static final byte[] EMPTY = new byte[0];
+	private static final byte[] ENTRY_SEA = {'S'};
+	private static final byte[] ENTRY_LAND = {'L'};
+
+	/**
+	 * Writes an RDB column of the fetched row with the column width.
+	 * The handler holds the decoded values of the row, read once before its fields.
+	 */
+	@FunctionalInterface
+	protected interface Field {
+		void write(DiscreteGroundWaterPassthroughRowHandler row, ResultSet rs, int width) throws SQLException;
+	}
+
+	static final Map<String, Field> FIELDS = Map.ofEntries(
+			entry("agency_cd",      (r, rs, w) -> r.writer.writeField(w, rs.getBytes("agency_code"))),
+			entry("site_no",        (r, rs, w) -> r.writer.writeField(w, rs.getBytes("site_identification_number"))),
+			entry("lev_dt",         (r, rs, w) -> r.writer.writeField(w, r.measured.date, r.measured.dateLength)),
+			entry("lev_tm",         (r, rs, w) -> r.writer.writeField(w, r.measured.time, r.measured.time.length)),
+			entry("lev_va",         (r, rs, w) -> r.writer.writeField(w, r.aboveDatum ? EMPTY : rs.getBytes("display_result"))),
+			entry("lev_ent_cd",     (r, rs, w) -> r.writer.writeField(w, r.aboveDatum ? ENTRY_SEA : ENTRY_LAND)),
+			entry("sl_datum_cd",    (r, rs, w) -> r.writer.writeField(w, r.aboveDatum ? rs.getBytes("vertical_datum_code") : EMPTY)),
+			entry("sl_lev_va",      (r, rs, w) -> r.writer.writeField(w, r.aboveDatum ? rs.getBytes("display_result") : EMPTY)),
+			entry("lev_src_cd",     (r, rs, w) -> r.writer.writeField(w, r.sourceCode())),
+			entry("lev_agency_cd",  (r, rs, w) -> r.writer.writeField(w, r.measuringAgency)),
+			entry("lev_acy_cd",     (r, rs, w) -> r.writer.writeField(w, rs.getBytes("level_accuracy_code"))),
+			entry("lev_status_cd",  (r, rs, w) -> r.writer.writeField(w,
+					r.rules.levelStatusStage.evaluate(rs.getString("result_measure_qualifiers")))),
+			entry("lev_meth_cd",    (r, rs, w) -> r.writer.writeField(w, rs.getBytes("measurement_method_code"))),
+			entry("lev_md",         (r, rs, w) -> r.writer.writeField(w, rs.getBytes("date_measured"))),
+			entry("lev_dtm",        (r, rs, w) -> r.writer.writeField(w, r.measured.dateTime, r.measured.dateTimeLength)),
+			entry("lev_dt_acy_cd",  (r, rs, w) -> r.writer.writeField(w, rs.getBytes("date_time_accuracy_code"))),
+			entry("lev_tz_cd",      (r, rs, w) -> r.writer.writeField(w, rs.getBytes("timezone_code"))),
+			entry("lev_utc_dt",     (r, rs, w) -> r.writer.writeField(w, rs.getBytes("time_measured_utc"))),
+			entry("lev_age_cd",     (r, rs, w) -> r.writer.writeField(w, r.rules.approvalStage.evaluate(rs.getString("approval_level")))),
+			entry("parameter_code", (r, rs, w) -> r.writer.writeField(w, r.parameterCode)));
+
+	protected DiscreteGroundWaterRules rules;
+	protected RdbByteWriter writer;
+	protected List<Parameter> parameters;
+	protected final Field[] fields;
+	protected final int[] widths;
+
+	// the decoded values of the row being written
+	protected String parameterCode;
+	protected boolean aboveDatum;
+	protected byte[] measuringAgency;
+	protected TimestampEncoder measured;
+
+	public DiscreteGroundWaterPassthroughRowHandler(RdbByteWriter writer, List<Parameter> parameters) {
+		this(writer, parameters, RdbSchema.DEFAULT);
+	}
+
+	/**
+	 * @param schema the column order and widths of the rows
+	 */
+	public DiscreteGroundWaterPassthroughRowHandler(RdbByteWriter writer, List<Parameter> parameters, RdbSchema schema) {
+		this.writer = writer;
+		this.parameters = parameters;
+		rules = new DiscreteGroundWaterRules();
+		List<RdbSchema.Column> columns = schema.getColumns();
+		fields = new Field[columns.size()];
+		widths = new int[columns.size()];
+		for (int c = 0; c < fields.length; c++) {
+			fields[c] = FIELDS.get(columns.get(c).getName());
+			if (fields[c] == null) {
+				throw new RuntimeException("No passthrough field for RDB column " + columns.get(c).getName());
+			}
+			widths[c] = columns.get(c).getWidth();
+		}
+	}
+
+	@Override
+	public void processRow(ResultSet rs) throws SQLException {
+		parameterCode = rs.getString("parameter_code");
+		aboveDatum = false;
+		boolean belowLandSurface = false;
+		for (Parameter parameter: parameters) {
+			if (parameter.parameterCode.equals(parameterCode)) {
+				aboveDatum = parameter.aboveDatum;
+				belowLandSurface = parameter.belowLandSurface;
+			}
+		}
+		if (!aboveDatum && !belowLandSurface) {
+			throw new RuntimeException("invalid parameter:" + parameterCode
+					+ ", must be above datum or below land surface");
+		}
+
+		measuringAgency = rs.getBytes("measuring_agency_code");
+		Timestamp dateMeasuredRaw = rs.getTimestamp("date_measured_raw");
+		measured = writer.timestamps.encode(dateMeasuredRaw);
+
+		for (int c = 0; c < fields.length; c++) {
+			fields[c].write(this, rs, widths[c]);
+		}
+		writer.endRow();
+	}
+
+	/**
+	 * Decides the lev_src_cd on the bytes of the measuring agency, decoding it only for a multibyte character.
+	 */
+	protected String sourceCode() {
+		String code = rules.toSourceCode(measuringAgency);
+		if (code == null) {
+			return rules.sourceStage.evaluate(new String(measuringAgency, StandardCharsets.UTF_8));
+		}
+		return rules.sourceStage.evaluated(code);
+	}
+
+	/**
+	 * @return the rules applied to the rows, exposing their stage statistics
+	 */
+	public DiscreteGroundWaterRules getRules() {
+		return rules;
+	}
+}
@@ -0,0 +1,117 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the batch path into a fetch stage and a format stage.
+ * The JDBC thread only maps columns into batches; full batches pass through a ring of
+ * preallocated batches to a format thread that applies the rules and writes the RDB rows.
+ * Call finish after the query completes to write the last batch and wait for the format stage.
+ */
+public class DiscreteGroundWaterPipelineRowHandler extends DiscreteGroundWaterBatchRowHandler implements Runnable {
+
+	protected final Ring<DiscreteGroundWaterBatch> ring;
+	protected final Thread formatThread;
+	protected volatile Throwable failure;
+	protected final long startNanos;
+	protected long fetchElapsedNanos;
+	protected long formatElapsedNanos;
+
+	/**
+	 * @param writer the RDB writer, used only from the format thread
+	 * @param parameters the parameter codes and their direction
+	 * @param batchSize rows per batch
+	 * @param depth the number of batches in flight between the stages
+	 */
+	public DiscreteGroundWaterPipelineRowHandler(RdbWriter writer, List<Parameter> parameters, int batchSize, int depth) {
+		super(writer, parameters, batchSize);
+		List<DiscreteGroundWaterBatch> batches = new ArrayList<>(depth);
+		for (int b = 0; b < depth; b++) {
+			batches.add(new DiscreteGroundWaterBatch(batchSize));
+		}
+		ring = new Ring<>(batches);
+		batch = ring.claim();
+		startNanos = System.nanoTime();
+		formatThread = new Thread(this, "rdb-format");
+		formatThread.setDaemon(true);
+		formatThread.start();
+	}
+
+	/**
+	 * Hands the current batch to the format stage and claims an empty one, blocking while
+	 * every batch is in flight.
+	 */
+	@Override
+	public void flush() {
+		if (batch.size() > 0) {
+			ring.publish(batch);
+			batch = ring.claim();
+		}
+	}
+
+	/**
+	 * Hands over the last batch and waits for the format stage to write it.
+	 */
+	@Override
+	public void finish() {
+		flush();
+		ring.close();
+		fetchElapsedNanos = System.nanoTime() - startNanos;
+		try {
+			formatThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting on the format stage.", e);
+		}
+		if (failure != null) {
+			throw new RuntimeException("Error formatting RDB rows.", failure);
+		}
+	}
+
+	/**
+	 * Stops the format stage and waits for it, so it is not writing to the RDB writer as the caller closes it.
+	 */
+	@Override
+	public void abort(Throwable cause) {
+		ring.abort(cause);
+		Ring.join(List.of(formatThread), Ring.ABORT_JOIN_MILLIS);
+	}
+
+	/**
+	 * The format stage.
+	 */
+	@Override
+	public void run() {
+		long start = System.nanoTime();
+		try {
+			for (DiscreteGroundWaterBatch pending = ring.take(); pending != null; pending = ring.take()) {
+				rules.apply(pending);
+				pending.applyParameters(parameters);
+				writer.writeBatch(pending);
+				pending.clear();
+				ring.release(pending);
+			}
+		} catch (RuntimeException e) {
+			failure = e;
+			ring.abort(e);
+		} finally {
+			formatElapsedNanos = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * @return the fraction of its run the fetch stage was not blocked on a full ring
+	 */
+	public double getFetchUtilization() {
+		return Ring.utilization(fetchElapsedNanos, ring.getProducerWaitNanos());
+	}
+
+	/**
+	 * @return the fraction of its run the format stage was not waiting for batches,
+	 *         which includes any time blocked writing to the compress stage
+	 */
+	public double getFormatUtilization() {
+		return Ring.utilization(formatElapsedNanos, ring.getConsumerWaitNanos());
+	}
+}
@@ -14,9 +14,13 @@ public class DiscreteGroundWaterRowHandler implements RowCallbackHandler {
 	protected List<Parameter> parameters;
 
 	public DiscreteGroundWaterRowHandler(RdbWriter writer, List<Parameter> parameters) {
+		this(writer, parameters, new DiscreteGroundWaterRowMapper());
+	}
+
+	public DiscreteGroundWaterRowHandler(RdbWriter writer, List<Parameter> parameters, DiscreteGroundWaterRowMapper rowMap) {
 		this.writer = writer;
 		rowNum = 0;
-		rowMap = new DiscreteGroundWaterRowMapper();
+		this.rowMap = rowMap;
 		this.parameters = parameters;
 
 	}
@@ -32,4 +36,11 @@ public class DiscreteGroundWaterRowHandler implements RowCallbackHandler {
 		}
 		writer.writeRow(dgw);
 	}
+
+	/**
+	 * @return the rules applied to the rows, exposing their stage statistics
+	 */
+	public DiscreteGroundWaterRules getRules() {
+		return rowMap.rules;
+	}
 }
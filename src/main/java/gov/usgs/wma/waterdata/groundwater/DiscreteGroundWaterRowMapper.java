@@ -18,9 +18,33 @@ public class DiscreteGroundWaterRowMapper implements RowMapper<DiscreteGroundWat
 	 */
 	@Override
 	public DiscreteGroundWater mapRow(ResultSet rs, int rowNum) throws SQLException {
-		DiscreteGroundWater discreteGroundWater = new DiscreteGroundWater();
-		discreteGroundWater.agencyCode = rs.getString("agency_code");
+		DiscreteGroundWater discreteGroundWater = mapColumns(rs, new DiscreteGroundWater());
+
+		rules.apply(discreteGroundWater);
+
+		return discreteGroundWater;
+	}
+
+	/**
+	 * Translates JDBC RowSet row to the given ORM instance without applying the business rules.
+	 * @param rs the result set positioned at the row to map
+	 * @param discreteGroundWater the instance to populate, it may be reused between rows
+	 * @return the given instance
+	 */
+	public DiscreteGroundWater mapColumns(ResultSet rs, DiscreteGroundWater discreteGroundWater) throws SQLException {
 		discreteGroundWater.approvalLevel = rs.getString("approval_level");
+		discreteGroundWater.readingQualifiers = rs.getString("result_measure_qualifiers");
+		return mapVerbatimColumns(rs, discreteGroundWater);
+	}
+
+	/**
+	 * Translates the JDBC RowSet columns that are not business rule inputs to the given ORM instance.
+	 * @param rs the result set positioned at the row to map
+	 * @param discreteGroundWater the instance to populate
+	 * @return the given instance
+	 */
+	protected DiscreteGroundWater mapVerbatimColumns(ResultSet rs, DiscreteGroundWater discreteGroundWater) throws SQLException {
+		discreteGroundWater.agencyCode = rs.getString("agency_code");
 		discreteGroundWater.dateMeasured = rs.getString("date_measured");
 		discreteGroundWater.dateMeasuredRaw = rs.getTimestamp("date_measured_raw");
 		discreteGroundWater.dateTimeAccuracyCode = rs.getString("date_time_accuracy_code");
@@ -28,15 +52,11 @@ public class DiscreteGroundWaterRowMapper implements RowMapper<DiscreteGroundWat
 		discreteGroundWater.measurementMethodCode = rs.getString("measurement_method_code");
 		discreteGroundWater.measuringAgencyCode = rs.getString("measuring_agency_code");
 		discreteGroundWater.siteIdentificationNumber = rs.getString("site_identification_number");
-		discreteGroundWater.readingQualifiers = rs.getString("result_measure_qualifiers");
 		discreteGroundWater.timeMeasuredUtc = rs.getString("time_measured_utc");
 		discreteGroundWater.timezoneCode = rs.getString("timezone_code");
 		discreteGroundWater.verticalDatumCode = rs.getString("vertical_datum_code");
 		discreteGroundWater.parameterCode = rs.getString("parameter_code");
 		discreteGroundWater.displayResult = rs.getString("display_result");
-
-		rules.apply(discreteGroundWater);
-
 		return discreteGroundWater;
 	}
 }
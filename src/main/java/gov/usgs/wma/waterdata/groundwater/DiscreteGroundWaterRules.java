@@ -1,6 +1,8 @@
 package gov.usgs.wma.waterdata.groundwater;
 
 import com.fasterxml.jackson.core.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
@@ -11,111 +13,222 @@ import java.util.*;
  * It is assumed that this object can be modified.
  */
 public class DiscreteGroundWaterRules {
+	private static final Logger LOG = LoggerFactory.getLogger(DiscreteGroundWaterRules.class);
 
 	//Threadsafe factory
 	private static final JsonFactory jsonFactory = new JsonFactory();
 
+	//Precomputed results for the canonical values, anything else falls back to the trimming rule
+	private static final Map<String, String> APPROVAL_CODES = Map.of("1200", "A", "900", "P", "800", "P", "0", "P", "", "P");
+	private static final Map<String, String> SOURCE_CODES = Map.of("USGS", "S", "", "");
+	private static final byte[] USGS = {'U', 'S', 'G', 'S'};
+
+	protected final QualifierCache qualifierCache = new QualifierCache(QualifierCache.DEFAULT_SIZE, this::resolveLevelStatusCode);
+
+	//The rule stages, compiled once and applied in order
+	protected final RuleStage levelStatusStage = new RuleStage("lev_status_cd", this::toLevelStatusCode, "",
+			d -> d.readingQualifiers, (d, v) -> d.readingQualifiers = v, b -> b.readingQualifiers, b -> b.readingQualifierCodes);
+	protected final RuleStage approvalStage = new RuleStage("lev_age_cd", this::toApprovalCode, "P",
+			d -> d.approvalLevel, (d, v) -> d.approvalLevel = v, b -> b.approvalLevel, b -> b.approvalLevels);
+	protected final RuleStage sourceStage = new RuleStage("lev_src_cd", this::toSourceCode, "",
+			d -> d.measuringAgencyCode, (d, v) -> d.measurementSourceCode = v, b -> b.measuringAgencyCode, b -> b.measuringAgencyCodes);
+	protected final RuleStage[] stages = {levelStatusStage, approvalStage, sourceStage};
+
 	/**
 	 * Apply business rules to a DiscreteGroundWater, modifying it in place.
 	 * @param domObj
 	 */
 	public void apply(DiscreteGroundWater domObj) {
+		for (RuleStage stage : stages) {
+			stage.apply(domObj);
+		}
+	}
 
-		//Rule:  The AQ measurement reading qualifiers (multi-values) are mapped to a single NWISWeb lev_status_cd.
-		//If the AQ qualifier(s) are not recognized as valid AQ qualifiers, it is ignored.
-		//If the AQ qualifier(s) are empty or just not one that is mapped, it is assumed to be an unqualified measurement.
-		//Ref:  https://internal.cida.usgs.gov/jira/browse/IOW-667
-		//
-		//There is no order or preference among the multi-valued AQ qualifiers to select a single one for NWISWeb.
-		//To be repeatable, it is assumed that the qualifiers will be matched in the order of the LevelStatusCode enum,
-		//not in order of the values in the db column (order is not repeatable within a JSONB object).
-		{
-			String orgQualStr = StringUtils.trimWhitespace(domObj.readingQualifiers);
-			String newQualStr = "";   //acceptable default value if no other found
+	/**
+	 * Apply business rules to a batch of rows.
+	 * The rules are evaluated once per distinct dictionary entry rather than once per row.
+	 * The batch columns retain the raw values, the rule results are the derived dictionary values.
+	 * @param batch
+	 */
+	public void apply(DiscreteGroundWaterBatch batch) {
+		for (RuleStage stage : stages) {
+			stage.apply(batch);
+		}
+	}
 
-			if (StringUtils.hasText(orgQualStr)) {
-				try {
+	/**
+	 * @return the rule stages in the order they are applied, exposing their statistics
+	 */
+	public List<RuleStage> getStages() {
+		return Arrays.asList(stages);
+	}
 
-					List<String> aqQuals = new ArrayList<>();
+	/**
+	 * Adds the stage statistics of other rules, such as those of a format worker, once they are no longer applied.
+	 */
+	public void merge(DiscreteGroundWaterRules other) {
+		for (int s = 0; s < stages.length; s++) {
+			stages[s].merge(other.stages[s]);
+		}
+	}
 
-					JsonParser parser = jsonFactory.createParser(orgQualStr);
+	/**
+	 * Logs the statistics of each stage.
+	 */
+	public void logStatistics() {
+		for (RuleStage stage : stages) {
+			LOG.info("Rule stage {}", stage);
+		}
+	}
 
-					while (! parser.isClosed()) {
+	//Rule:  The AQ measurement reading qualifiers (multi-values) are mapped to a single NWISWeb lev_status_cd.
+	//If the AQ qualifier(s) are not recognized as valid AQ qualifiers, it is ignored.
+	//If the AQ qualifier(s) are empty or just not one that is mapped, it is assumed to be an unqualified measurement.
+	//Ref:  https://internal.cida.usgs.gov/jira/browse/IOW-667
+	//
+	//There is no order or preference among the multi-valued AQ qualifiers to select a single one for NWISWeb.
+	//To be repeatable, it is assumed that the qualifiers will be matched in the order of the LevelStatusCode enum,
+	//not in order of the values in the db column (order is not repeatable within a JSONB object).
+	protected String toLevelStatusCode(String readingQualifiers) {
+		if (readingQualifiers == null) {
+			return "";
+		}
+		return qualifierCache.get(readingQualifiers);
+	}
 
-						JsonToken token = parser.nextToken();
+	/**
+	 * Resolves a qualifier cache miss. The simple JSON string arrays AQTS produces are
+	 * matched by the allocation free scanner, anything else is parsed as general JSON.
+	 */
+	protected String resolveLevelStatusCode(String readingQualifiers) {
+		String orgQualStr = StringUtils.trimWhitespace(readingQualifiers);
+		String newQualStr = "";   //acceptable default value if no other found
+
+		if (StringUtils.hasText(orgQualStr)) {
+			LevelStatusCode lsc = QualifierScanner.scan(orgQualStr);
+			if (lsc == null) {
+				lsc = parseLevelStatusCode(orgQualStr);
+			}
+			if (lsc.isMapped()) {
+				newQualStr = lsc.getNwisCode();
+			}
+		}
 
-						if (token != null && token.isScalarValue()) {
-							String val = StringUtils.trimWhitespace(parser.getValueAsString());
+		return newQualStr;
+	}
 
-							if (StringUtils.hasText(val)) {
-								aqQuals.add(StringUtils.trimWhitespace(parser.getValueAsString()));
-							}
-						}
-					}
+	protected LevelStatusCode parseLevelStatusCode(String orgQualStr) {
+		try {
 
-					if (aqQuals.size() > 0) {
+			int aqQuals = 0;
 
-						Optional<LevelStatusCode> lsc = LevelStatusCode.stream()
-													  .filter(a -> a.isMapped())
-								                      .filter(a -> a.isPresent(aqQuals))
-								                      .findFirst();
+			JsonParser parser = jsonFactory.createParser(orgQualStr);
 
-						if (lsc.isPresent()) {
-							newQualStr = lsc.get().getNwisCode();
-						}
+			while (! parser.isClosed()) {
 
-					}
+				JsonToken token = parser.nextToken();
 
-				} catch (IOException e) {
-					throw new RuntimeException(e);
-				}
+				if (token != null && token.isScalarValue()) {
+					String val = StringUtils.trimWhitespace(parser.getValueAsString());
 
+					if (StringUtils.hasText(val)) {
+						aqQuals |= LevelStatusCode.maskOf(val);
+					}
+				}
 			}
 
-			domObj.readingQualifiers = newQualStr;
+			return LevelStatusCode.fromMask(aqQuals);
+
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
+	}
 
-		//Rule:  Only the Aquarius TS "1200" approvalLevel is considered approved.  All others values or no value is
-		// considered provisional.  "A" is the NWISWeb code for Approved, "P" for Provisional (ie not approved).
-		//If the approvalLevel is not recognized as valid, it is ignored and the value considered provisional.
-		//Ref:  https://internal.cida.usgs.gov/jira/browse/IOW-666
-		//NWISWeb Approval codes:  https://help.waterdata.usgs.gov/code/lev_age_cd?fmt=html
-		//AQTS Approval Levels:  (need to be logged into the AQTS system, but they are listed in the ticket)
-		{
-			String orgApprovalStr = StringUtils.trimWhitespace(domObj.approvalLevel);
-			String newApprovalStr = "P";   //provisional default value if no other found
-
-			if (StringUtils.hasText(orgApprovalStr)) {
-				if (orgApprovalStr.equals("1200")) {
-					newApprovalStr = "A";   //Its approved!
-				}
+	/**
+	 * @return the memo of qualifier text to lev_status_cd, exposing its hit, miss, and eviction counts
+	 */
+	public QualifierCache getQualifierCache() {
+		return qualifierCache;
+	}
+
+	//Rule:  Only the Aquarius TS "1200" approvalLevel is considered approved.  All others values or no value is
+	// considered provisional.  "A" is the NWISWeb code for Approved, "P" for Provisional (ie not approved).
+	//If the approvalLevel is not recognized as valid, it is ignored and the value considered provisional.
+	//Ref:  https://internal.cida.usgs.gov/jira/browse/IOW-666
+	//NWISWeb Approval codes:  https://help.waterdata.usgs.gov/code/lev_age_cd?fmt=html
+	//AQTS Approval Levels:  (need to be logged into the AQTS system, but they are listed in the ticket)
+	protected String toApprovalCode(String approvalLevel) {
+		String code = approvalLevel == null ? "P" : APPROVAL_CODES.get(approvalLevel);
+		return code != null ? code : resolveApprovalCode(approvalLevel);
+	}
+
+	protected String resolveApprovalCode(String approvalLevel) {
+		String orgApprovalStr = StringUtils.trimWhitespace(approvalLevel);
+		String newApprovalStr = "P";   //provisional default value if no other found
+
+		if (StringUtils.hasText(orgApprovalStr)) {
+			if (orgApprovalStr.equals("1200")) {
+				newApprovalStr = "A";   //Its approved!
 			}
+		}
+
+		return newApprovalStr;
+	}
+
+	//Rule:  measurementSourceCode (lev_src_cd in the rdb) is determined based on the collecting agency:
+	//If the measuring_agency_code is 'USGS', the lev_src_cd is 'S'
+	//If the measuring_agency_code is anything other than 'USGS', lev_src_cd is 'A'.
+	//In all other cases, lev_src_cd is left empty
+	//
+	//Ref:  https://internal.cida.usgs.gov/jira/browse/IOW-737
+	//Complete list of legacy NWISWeb lev_src_cd's (of which we are only mapping to 2 of them) :
+	//  https://help.waterdata.usgs.gov/code/water_level_src_cd_query?fmt=html
+	protected String toSourceCode(String measuringAgencyCode) {
+		String code = measuringAgencyCode == null ? "" : SOURCE_CODES.get(measuringAgencyCode);
+		return code != null ? code : resolveSourceCode(measuringAgencyCode);
+	}
 
-			domObj.approvalLevel = newApprovalStr;
+	/**
+	 * The measurementSourceCode rule on the undecoded bytes of the measuring agency, trimming ASCII whitespace.
+	 * @return the lev_src_cd, or null when a multibyte character ends the agency, which is left to the String rule
+	 */
+	protected String toSourceCode(byte[] measuringAgencyCode) {
+		if (measuringAgencyCode == null) {
+			return "";
+		}
+		int start = 0;
+		int end = measuringAgencyCode.length;
+		while (start < end && isAsciiWhitespace(measuringAgencyCode[start])) {
+			start++;
+		}
+		while (end > start && isAsciiWhitespace(measuringAgencyCode[end - 1])) {
+			end--;
+		}
+		if (start == end) {
+			return "";
 		}
+		if (measuringAgencyCode[start] < 0 || measuringAgencyCode[end - 1] < 0) {
+			return null;
+		}
+		return Arrays.equals(measuringAgencyCode, start, end, USGS, 0, USGS.length) ? "S" : "A";
+	}
 
-		//Rule:  measurementSourceCode (lev_src_cd in the rdb) is determined based on the collecting agency:
-		//If the measuring_agency_code is 'USGS', the lev_src_cd is 'S'
-		//If the measuring_agency_code is anything other than 'USGS', lev_src_cd is 'A'.
-		//In all other cases, lev_src_cd is left empty
-		//
-		//Ref:  https://internal.cida.usgs.gov/jira/browse/IOW-737
-		//Complete list of legacy NWISWeb lev_src_cd's (of which we are only mapping to 2 of them) :
-		//  https://help.waterdata.usgs.gov/code/water_level_src_cd_query?fmt=html
-		{
-			String agency = StringUtils.trimWhitespace(domObj.measuringAgencyCode);
-			String srcCode = "";    //Default for empty or null
-
-			if (StringUtils.hasText(agency)) {
-				if (agency.equals("USGS")) {
-					srcCode = "S";   //Measured by the reporting agency
-				} else {
-					srcCode = "A";  //Measured by some other agency
-				}
-			}
+	private static boolean isAsciiWhitespace(byte b) {
+		return b >= 0 && Character.isWhitespace(b);
+	}
+
+	protected String resolveSourceCode(String measuringAgencyCode) {
+		String agency = StringUtils.trimWhitespace(measuringAgencyCode);
+		String srcCode = "";    //Default for empty or null
 
-			domObj.measurementSourceCode = srcCode;
+		if (StringUtils.hasText(agency)) {
+			if (agency.equals("USGS")) {
+				srcCode = "S";   //Measured by the reporting agency
+			} else {
+				srcCode = "A";  //Measured by some other agency
+			}
 		}
 
+		return srcCode;
 	}
 }
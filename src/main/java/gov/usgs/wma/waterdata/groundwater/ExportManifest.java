@@ -0,0 +1,300 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The manifest of the exports of a tier, listing the latest files of each folder.
+ * Each folder export saves the entries of its files under the folder; the manifest request gathers them
+ * into the manifest of the run, then points latest at it with a single put, which readers see whole or not at all.
+ * Sample keys: manifests/test/folders/CA.json, manifests/test/runs/20200715_040000.json and manifests/test/latest.json
+ */
+public class ExportManifest {
+	private static final Logger LOG = LoggerFactory.getLogger(ExportManifest.class);
+
+	public static final String PREFIX = "manifests/";
+	public static final String CONTENT_TYPE = "application/json";
+
+	/**
+	 * A file of a folder export.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public static class Entry {
+		private String folder;
+		private String key;
+		private long compressedBytes;
+		private Long uncompressedBytes;
+		private long rows;
+		private String sha256;
+		private long writeMillis;
+		private long uploadMillis;
+		private String watermark;
+
+		public String getFolder() {
+			return folder;
+		}
+
+		public void setFolder(String folder) {
+			this.folder = folder;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public void setKey(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * @return the bytes of the file as stored
+		 */
+		public long getCompressedBytes() {
+			return compressedBytes;
+		}
+
+		public void setCompressedBytes(long compressedBytes) {
+			this.compressedBytes = compressedBytes;
+		}
+
+		/**
+		 * @return the bytes of the RDB content, null when the file copied encoded segments
+		 */
+		public Long getUncompressedBytes() {
+			return uncompressedBytes;
+		}
+
+		public void setUncompressedBytes(Long uncompressedBytes) {
+			this.uncompressedBytes = uncompressedBytes;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public void setRows(long rows) {
+			this.rows = rows;
+		}
+
+		/**
+		 * @return the base64 SHA-256 of the file as stored
+		 */
+		public String getSha256() {
+			return sha256;
+		}
+
+		public void setSha256(String sha256) {
+			this.sha256 = sha256;
+		}
+
+		/**
+		 * @return the time fetching and formatting the rows, which run interleaved
+		 */
+		public long getWriteMillis() {
+			return writeMillis;
+		}
+
+		public void setWriteMillis(long writeMillis) {
+			this.writeMillis = writeMillis;
+		}
+
+		public long getUploadMillis() {
+			return uploadMillis;
+		}
+
+		public void setUploadMillis(long uploadMillis) {
+			this.uploadMillis = uploadMillis;
+		}
+
+		/**
+		 * @return the UTC time the query of the rows began; changes made after it are in the next export
+		 */
+		public String getWatermark() {
+			return watermark;
+		}
+
+		public void setWatermark(String watermark) {
+			this.watermark = watermark;
+		}
+	}
+
+	/**
+	 * The manifest of a run.
+	 */
+	public static class Manifest {
+		private String tier;
+		private String run;
+		private List<Entry> files = new ArrayList<>();
+		private List<String> missing = new ArrayList<>();
+
+		public String getTier() {
+			return tier;
+		}
+
+		public void setTier(String tier) {
+			this.tier = tier;
+		}
+
+		public String getRun() {
+			return run;
+		}
+
+		public void setRun(String run) {
+			this.run = run;
+		}
+
+		public List<Entry> getFiles() {
+			return files;
+		}
+
+		public void setFiles(List<Entry> files) {
+			this.files = files;
+		}
+
+		/**
+		 * @return the folders with no export, or none of the run
+		 */
+		public List<String> getMissing() {
+			return missing;
+		}
+
+		public void setMissing(List<String> missing) {
+			this.missing = missing;
+		}
+	}
+
+	protected final ObjectMapper mapper = new ObjectMapper();
+	protected final AmazonS3 s3;
+	protected final String bucket;
+	protected final String tier;
+
+	/**
+	 * @param s3 the client
+	 * @param bucket the bucket of the exports
+	 * @param tier the tier as named in the files
+	 */
+	public ExportManifest(AmazonS3 s3, String bucket, String tier) {
+		this.s3 = s3;
+		this.bucket = bucket;
+		this.tier = tier;
+	}
+
+	public String folderKey(String folder) {
+		return PREFIX + tier + "/folders/" + folder + ".json";
+	}
+
+	public String runKey(String run) {
+		return PREFIX + tier + "/runs/" + run + ".json";
+	}
+
+	public String latestKey() {
+		return PREFIX + tier + "/latest.json";
+	}
+
+	/**
+	 * Saves the entries of the files of a folder export, replacing those of its previous export.
+	 * @param folder the file label of the folder
+	 * @param entries the files written
+	 */
+	public void saveFolder(String folder, List<Entry> entries) {
+		put(folderKey(folder), entries);
+	}
+
+	/**
+	 * Writes the manifest of a run from the saved entries of the folders, then points latest at it.
+	 * @param run the name of the run, its timestamp
+	 * @param folders the file labels of the folders
+	 * @return the manifest written
+	 */
+	public Manifest publish(String run, Collection<String> folders) {
+		return publish(run, folders, null);
+	}
+
+	/**
+	 * Writes the manifest of a run, leaving out the folders whose saved entries were queried before the run began.
+	 * Those folders did not export in the run and are listed as missing with the folders that never exported.
+	 * @param since the start of the run, null to take the saved entries whatever their watermark
+	 */
+	public Manifest publish(String run, Collection<String> folders, Instant since) {
+		Manifest manifest = new Manifest();
+		manifest.setTier(tier);
+		manifest.setRun(run);
+		List<String> stale = new ArrayList<>();
+		for (String folder : folders) {
+			Entry[] entries = readFolder(folder);
+			if (entries == null) {
+				manifest.getMissing().add(folder);
+			} else if (since != null && !ofRun(entries, since)) {
+				manifest.getMissing().add(folder);
+				stale.add(folder);
+			} else {
+				manifest.getFiles().addAll(Arrays.asList(entries));
+			}
+		}
+		put(runKey(run), manifest);
+		put(latestKey(), manifest);
+		LOG.info("Published manifest {} of {} files, {} folders missing", runKey(run), manifest.getFiles().size(),
+				manifest.getMissing().size());
+		if (!stale.isEmpty()) {
+			LOG.warn("Folders last exported before the run {}: {}", run, stale);
+		}
+		return manifest;
+	}
+
+	/**
+	 * @return true when every entry was queried at or after the start of the run
+	 */
+	protected static boolean ofRun(Entry[] entries, Instant since) {
+		for (Entry entry : entries) {
+			if (entry.getWatermark() == null || Instant.parse(entry.getWatermark()).isBefore(since)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the entries of the folder, null if it has none
+	 */
+	protected Entry[] readFolder(String folder) {
+		try (InputStream in = s3.getObject(bucket, folderKey(folder)).getObjectContent()) {
+			return mapper.readValue(in, Entry[].class);
+		} catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404) {
+				return null;
+			}
+			throw e;
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading the manifest entries of " + folder, e);
+		}
+	}
+
+	protected void put(String key, Object value) {
+		byte[] bytes;
+		try {
+			bytes = mapper.writeValueAsBytes(value);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing the manifest " + key, e);
+		}
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(bytes.length);
+		metadata.setContentType(CONTENT_TYPE);
+		s3.putObject(new PutObjectRequest(bucket, key, new ByteArrayInputStream(bytes), metadata));
+	}
+}
@@ -0,0 +1,212 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Writes the full RDB file and, from the same rows, the product files of the folder in one pass over the query.
+ * Each product has its own writer over its own encoder and file.
+ * The products are:
+ * latest, the latest measurement of each site, the rows being in site then time order;
+ * recentN, for example recent120, the measurements of the last N days;
+ * parameterCODE, for example parameter72019, the measurements of a parameter code.
+ * Call finish once the rows are written.
+ */
+public class FanOutRdbWriter extends RdbWriter {
+
+	public static final String LATEST = "latest";
+	public static final String RECENT = "recent";
+	public static final String PARAMETER = "parameter";
+
+	/**
+	 * A product file, the rows of the folder it takes and its writer.
+	 */
+	public static class Output {
+		protected final String product;
+		protected final RdbWriter writer;
+		protected final Predicate<DiscreteGroundWater> filter;
+
+		public Output(String product, RdbWriter writer, Predicate<DiscreteGroundWater> filter) {
+			this.product = product;
+			this.writer = writer;
+			this.filter = filter;
+		}
+
+		public String getProduct() {
+			return product;
+		}
+
+		public RdbWriter getWriter() {
+			return writer;
+		}
+
+		protected void writeHeader() {
+			writer.writeHeader();
+		}
+
+		protected void accept(DiscreteGroundWater dgw) {
+			if (filter.test(dgw)) {
+				writer.writeRow(dgw);
+			}
+		}
+
+		protected void finish() {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * The latest measurement of each site, held until the rows move on to the next site.
+	 */
+	public static class LatestOutput extends Output {
+		protected String site;
+		protected List<String> latest;
+
+		public LatestOutput(String product, RdbWriter writer) {
+			super(product, writer, dgw -> true);
+		}
+
+		@Override
+		protected void accept(DiscreteGroundWater dgw) {
+			String rowSite = dgw.agencyCode + "-" + dgw.siteIdentificationNumber;
+			if (!rowSite.equals(site)) {
+				writeLatest();
+				site = rowSite;
+			}
+			latest = writer.toColumns(dgw);
+		}
+
+		@Override
+		protected void finish() {
+			writeLatest();
+			super.finish();
+		}
+
+		protected void writeLatest() {
+			if (latest != null) {
+				writer.writeRow(latest);
+				writer.countRows(1);
+				latest = null;
+			}
+		}
+	}
+
+	protected final List<Output> outputs = new ArrayList<>();
+	protected final DiscreteGroundWater copy = new DiscreteGroundWater();
+
+	/**
+	 * @param destination the full RDB file
+	 */
+	public FanOutRdbWriter(Writer destination) {
+		super(destination);
+	}
+
+	public FanOutRdbWriter addOutput(Output output) {
+		outputs.add(output);
+		return this;
+	}
+
+	public List<Output> getOutputs() {
+		return outputs;
+	}
+
+	/**
+	 * Parses the product list, for example latest,recent120,parameter72019.
+	 * @param products comma separated product names, null for none
+	 * @return the product names
+	 */
+	public static List<String> parseProducts(String products) {
+		List<String> names = new ArrayList<>();
+		if (products == null) {
+			return names;
+		}
+		for (String product : products.split(",")) {
+			String name = product.trim();
+			if (!name.isEmpty()) {
+				createOutput(name, null);
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @param product the product name
+	 * @param writer the writer of the product file
+	 * @return the output of the product
+	 */
+	public static Output createOutput(String product, RdbWriter writer) {
+		if (LATEST.equals(product)) {
+			return new LatestOutput(product, writer);
+		} else if (product.startsWith(RECENT) && product.length() > RECENT.length()) {
+			int days;
+			try {
+				days = Integer.parseInt(product.substring(RECENT.length()));
+			} catch (NumberFormatException e) {
+				throw new RuntimeException("Invalid recent product, expected recent and a number of days: " + product);
+			}
+			Timestamp cutoff = new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+			return new Output(product, writer, dgw -> dgw.dateMeasuredRaw != null && !dgw.dateMeasuredRaw.before(cutoff));
+		} else if (product.startsWith(PARAMETER) && product.length() > PARAMETER.length()) {
+			String parameterCode = product.substring(PARAMETER.length());
+			return new Output(product, writer, dgw -> Objects.equals(parameterCode, dgw.parameterCode));
+		}
+		throw new RuntimeException("Unknown RDB product: " + product);
+	}
+
+	@Override
+	public RdbWriter writeHeader() {
+		super.writeHeader();
+		for (Output output : outputs) {
+			output.writeHeader();
+		}
+		return this;
+	}
+
+	@Override
+	public RdbWriter writeRow(DiscreteGroundWater dgw) {
+		super.writeRow(dgw);
+		for (Output output : outputs) {
+			output.accept(dgw);
+		}
+		return this;
+	}
+
+	@Override
+	public RdbWriter writeBatch(DiscreteGroundWaterBatch batch) {
+		super.writeBatch(batch);
+		if (!outputs.isEmpty()) {
+			for (int row = 0; row < batch.size(); row++) {
+				batch.copyRow(row, copy);
+				for (Output output : outputs) {
+					output.accept(copy);
+				}
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public RdbWriter flush() {
+		super.flush();
+		for (Output output : outputs) {
+			output.writer.flush();
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the rows the products hold back and flushes every file.
+	 */
+	public void finish() {
+		super.flush();
+		for (Output output : outputs) {
+			output.finish();
+		}
+	}
+}
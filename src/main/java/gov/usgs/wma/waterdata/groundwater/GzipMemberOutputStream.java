@@ -0,0 +1,166 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip stream written as a sequence of members, one per segment of the file, each a complete gzip of its bytes.
+ * Readers of gzip decompress the members as one file. The offset and length of each member are recorded
+ * so that a member can later be copied byte for byte into the next file without decompressing it.
+ */
+public class GzipMemberOutputStream extends OutputStream {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// gzip magic, deflate, no flags, no mtime, as GZIPOutputStream writes
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+	protected final OutputStream out;
+	protected final Deflater deflater;
+	protected final CRC32 crc = new CRC32();
+	protected final byte[] buffer = new byte[BUFFER_SIZE];
+	protected final List<SegmentIndex.Entry> members = new ArrayList<>();
+	protected long position;
+	protected long memberStart;
+	protected long memberSize;
+	protected String key;
+	protected String fingerprint;
+	protected boolean closed;
+
+	/**
+	 * @param out the destination of the members, not encoded any further
+	 * @param level the deflate level
+	 */
+	public GzipMemberOutputStream(OutputStream out, int level) {
+		this.out = out;
+		this.deflater = new Deflater(level, true);
+	}
+
+	/**
+	 * Starts the member of a segment; the bytes written until endMember are its content.
+	 * @param key the segment name, unique in the file
+	 * @param fingerprint the fingerprint of the source of the segment
+	 */
+	public void beginMember(String key, String fingerprint) throws IOException {
+		if (this.key != null) {
+			throw new IllegalStateException("Member " + this.key + " was not ended before " + key);
+		}
+		this.key = key;
+		this.fingerprint = fingerprint;
+		memberStart = position;
+		memberSize = 0;
+		crc.reset();
+		deflater.reset();
+		writeRaw(HEADER, 0, HEADER.length);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		if (length == 0) {
+			return;
+		}
+		if (key == null) {
+			throw new IllegalStateException("Bytes written outside of a member.");
+		}
+		crc.update(bytes, offset, length);
+		memberSize += length;
+		deflater.setInput(bytes, offset, length);
+		while (!deflater.needsInput()) {
+			drain();
+		}
+	}
+
+	/**
+	 * Finishes the member of the current segment.
+	 * @param rows the data rows of the segment
+	 */
+	public void endMember(long rows) throws IOException {
+		deflater.finish();
+		while (!deflater.finished()) {
+			drain();
+		}
+		writeInt(crc.getValue());
+		writeInt(memberSize);
+		members.add(new SegmentIndex.Entry(key, fingerprint, memberStart, position - memberStart, rows));
+		key = null;
+	}
+
+	/**
+	 * Copies a member of a previous file as it is.
+	 * @param previous the index entry of the member in the previous file
+	 * @param in the previous file, positioned at the start of the member
+	 */
+	public void copyMember(SegmentIndex.Entry previous, InputStream in) throws IOException {
+		if (key != null) {
+			throw new IllegalStateException("Member " + key + " was not ended before " + previous.getKey());
+		}
+		long start = position;
+		long remaining = previous.getLength();
+		while (remaining > 0) {
+			int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (count < 0) {
+				throw new IOException("Previous file ended within member " + previous.getKey());
+			}
+			writeRaw(buffer, 0, count);
+			remaining -= count;
+		}
+		members.add(new SegmentIndex.Entry(previous.getKey(), previous.getFingerprint(), start, previous.getLength(),
+				previous.getRows()));
+	}
+
+	/**
+	 * @return the uncompressed bytes written to the current member
+	 */
+	public long getMemberSize() {
+		return memberSize;
+	}
+
+	/**
+	 * @return the members written so far, in file order
+	 */
+	public List<SegmentIndex.Entry> getMembers() {
+		return members;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			out.close();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	protected void drain() throws IOException {
+		int count = deflater.deflate(buffer, 0, buffer.length);
+		writeRaw(buffer, 0, count);
+	}
+
+	protected void writeRaw(byte[] bytes, int offset, int length) throws IOException {
+		out.write(bytes, offset, length);
+		position += length;
+	}
+
+	private void writeInt(long value) throws IOException {
+		byte[] bytes = {(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)};
+		writeRaw(bytes, 0, bytes.length);
+	}
+}
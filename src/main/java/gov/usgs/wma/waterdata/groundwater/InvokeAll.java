@@ -15,6 +15,18 @@ import com.amazonaws.services.lambda.model.ServiceException;
 public class InvokeAll {
 	public static final Logger logger = LoggerFactory.getLogger(InvokeAll.class);
 
+	protected AwsClients clients;
+
+	public InvokeAll() {
+	}
+
+	/**
+	 * @param clients the container's shared clients, null to build a Lambda client per fan-out
+	 */
+	public InvokeAll(AwsClients clients) {
+		this.clients = clients;
+	}
+
 	public ResultObject invoke(Properties properties, Collection<String> folders) {
 
 		try {
@@ -67,6 +79,9 @@ public class InvokeAll {
 	 * @return AWS Lambda Context
 	 */
 	protected AWSLambda lambdaContext(String region) {
+		if (clients != null) {
+			return clients.getLambda();
+		}
 		AWSLambda awsLambda = AWSLambdaClientBuilder.standard().withRegion(region).build();
 		return awsLambda;
 	}
@@ -1,7 +1,9 @@
 package gov.usgs.wma.waterdata.groundwater;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.stream.Stream;
 
 /**
@@ -23,7 +25,108 @@ public enum LevelStatusCode {
 	CROSS_SECTION_SIMPLE(null, "CrossSectionSimpleMean", "Simple mean from horizontal cross-section measurements", true, false),
 	UNKNOWN(null, "", "", false, false);
 
+	private static final LevelStatusCode[] VALUES = values();
 
+	// Open addressing table from each AQ code and description to its bit position, the enum ordinal.
+	// Lookups hash a region of text the same way String.hashCode does so no substring is needed.
+	private static final int TABLE_SIZE = 64;
+	private static final String[] KEYS = new String[TABLE_SIZE];
+	private static final int[] BITS = new int[TABLE_SIZE];
+
+	/**
+	 * Bits of the AQ statuses that have an NWISWeb code. The lowest set bit of a
+	 * qualifier mask ANDed with this is the first mapped status in enum order.
+	 */
+	public static final int MAPPED_MASK;
+
+	static {
+		int mapped = 0;
+		for (LevelStatusCode lsc : VALUES) {
+			if (lsc.isReal()) {
+				put(lsc.getAqCode(), lsc.ordinal());
+				put(lsc.getAqDescription(), lsc.ordinal());
+			}
+			if (lsc.isMapped()) {
+				mapped |= 1 << lsc.ordinal();
+			}
+		}
+		MAPPED_MASK = mapped;
+	}
+
+	private static void put(String key, int bit) {
+		int slot = spread(key.hashCode());
+		while (KEYS[slot] != null) {
+			slot = (slot + 1) & (TABLE_SIZE - 1);
+		}
+		KEYS[slot] = key;
+		BITS[slot] = bit;
+	}
+
+	private static int spread(int hash) {
+		return (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+	}
+
+	/**
+	 * The bit position of the status with the given AQ code or description.
+	 * @param text characters containing the AQ qualifier
+	 * @param start index of the first character of the qualifier
+	 * @param end index after the last character of the qualifier
+	 * @return the bit position, or -1 if the qualifier is not a recognized AQ status
+	 */
+	public static int bitOf(CharSequence text, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		int length = end - start;
+		for (int slot = spread(hash); KEYS[slot] != null; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+			String key = KEYS[slot];
+			if (key.length() == length && regionEquals(key, text, start)) {
+				return BITS[slot];
+			}
+		}
+		return -1;
+	}
+
+	private static boolean regionEquals(String key, CharSequence text, int start) {
+		for (int i = 0; i < key.length(); i++) {
+			if (key.charAt(i) != text.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param aqQualifier an AQ code or description
+	 * @return the single bit mask for the qualifier, zero if not recognized
+	 */
+	public static int maskOf(String aqQualifier) {
+		int bit = bitOf(aqQualifier, 0, aqQualifier.length());
+		return bit < 0 ? 0 : 1 << bit;
+	}
+
+	/**
+	 * @param aqQualifiers AQ codes and/or descriptions
+	 * @return the bit mask of the recognized qualifiers
+	 */
+	public static int maskOf(Collection<String> aqQualifiers) {
+		int mask = 0;
+		for (String aqQualifier : aqQualifiers) {
+			mask |= maskOf(aqQualifier);
+		}
+		return mask;
+	}
+
+	/**
+	 * Selects the first mapped status, in enum order, present in the qualifier mask.
+	 * @param mask bit mask of qualifiers from maskOf or bitOf
+	 * @return the winning mapped status, UNKNOWN if none are present
+	 */
+	public static LevelStatusCode fromMask(int mask) {
+		int mapped = mask & MAPPED_MASK;
+		return mapped == 0 ? UNKNOWN : VALUES[Integer.numberOfTrailingZeros(mapped)];
+	}
 
 	private String aqCode;
 	private String aqDescription;
@@ -47,6 +150,21 @@ public enum LevelStatusCode {
 		return Arrays.stream(LevelStatusCode.values());
 	}
 
+	/**
+	 * The mapped statuses as rows of precedence, NWISWeb code, AQ code, and AQ description,
+	 * in enum order. Bound as a VALUES list so SQL can apply the same mapping as the rules.
+	 * @return
+	 */
+	public static List<Object[]> toSqlValues() {
+		List<Object[]> rows = new ArrayList<>();
+		for (LevelStatusCode lsc : VALUES) {
+			if (lsc.isMapped()) {
+				rows.add(new Object[] {lsc.ordinal(), lsc.getNwisCode(), lsc.getAqCode(), lsc.getAqDescription()});
+			}
+		}
+		return rows;
+	}
+
 	/**
 	 * The Aquarius code for this measurement status.
 	 * @return
@@ -0,0 +1,189 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+/**
+ * Builds one RDB file of many folders from their latest files with a multipart upload: the header once
+ * as its own member, then the data of each folder file, which follows its header member.
+ * The data is copied within S3 with upload part copy. Since only the last part may be under the S3 part
+ * minimum, the header and any data too short to be a part of its own are read and uploaded in parts
+ * joined with their neighbours, so only those few bytes pass through the function.
+ */
+public class NationalRollUp {
+	private static final Logger LOG = LoggerFactory.getLogger(NationalRollUp.class);
+
+	// the largest range S3 copies into one part
+	public static final long MAX_COPY_PART_SIZE = 5L * 1024 * 1024 * 1024;
+
+	protected final AmazonS3 s3;
+	protected final String bucket;
+	protected final OutputCodec codec;
+	protected final int partSize;
+	protected final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	protected final List<PartETag> parts = new ArrayList<>();
+	protected String keyName;
+	protected String uploadId;
+	protected long copiedBytes;
+	protected long readBytes;
+
+	/**
+	 * @param s3 the client
+	 * @param bucket the bucket of the folder files and of the rolled up file
+	 * @param codec the encoding of the folder files
+	 * @param partSize the bytes of the uploaded parts, at least the S3 part minimum
+	 */
+	public NationalRollUp(AmazonS3 s3, String bucket, OutputCodec codec, int partSize) {
+		this.s3 = s3;
+		this.bucket = bucket;
+		this.codec = codec;
+		this.partSize = Math.max(partSize, S3MultipartOutputStream.MIN_PART_SIZE);
+	}
+
+	/**
+	 * Rolls the folder files up into one file.
+	 * @param keyName the key of the rolled up file
+	 * @param header the RDB header bytes
+	 * @param sourceKeys the folder files, each written with its header as its own member
+	 * @return the completed upload
+	 */
+	public CompleteMultipartUploadResult rollUp(String keyName, byte[] header, List<String> sourceKeys) {
+		this.keyName = keyName;
+		List<long[]> ranges = new ArrayList<>();
+		List<String> withoutHeaderMember = new ArrayList<>();
+		for (String sourceKey : sourceKeys) {
+			ObjectMetadata source = s3.getObjectMetadata(bucket, sourceKey);
+			String headerLength = source.getUserMetaDataOf(S3Bucket.HEADER_LENGTH_METADATA);
+			if (headerLength == null) {
+				withoutHeaderMember.add(sourceKey);
+			} else {
+				ranges.add(new long[] {Long.parseLong(headerLength), source.getContentLength()});
+			}
+		}
+		if (!withoutHeaderMember.isEmpty()) {
+			throw new RuntimeException("Files written without a header member cannot be rolled up: " + withoutHeaderMember);
+		}
+
+		byte[] headerMember = encodeHeader(header);
+		ObjectMetadata metadata = new ObjectMetadata();
+		if (codec.getContentEncoding() != null) {
+			metadata.setContentEncoding(codec.getContentEncoding());
+		}
+		metadata.addUserMetadata(S3Bucket.HEADER_LENGTH_METADATA, Long.toString(headerMember.length));
+		uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, keyName, metadata)).getUploadId();
+		try {
+			pending.writeBytes(headerMember);
+			for (int s = 0; s < sourceKeys.size(); s++) {
+				append(sourceKeys.get(s), ranges.get(s)[0], ranges.get(s)[1]);
+			}
+			if (pending.size() > 0) {
+				uploadPending();
+			}
+			CompleteMultipartUploadResult completed = s3.completeMultipartUpload(
+					new CompleteMultipartUploadRequest(bucket, keyName, uploadId, parts));
+			LOG.info("Rolled up {} files into {}, {} bytes copied in S3 and {} read", sourceKeys.size(), keyName,
+					copiedBytes, readBytes);
+			return completed;
+		} catch (RuntimeException e) {
+			s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, keyName, uploadId));
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends the bytes from up to to of a source, copying the range in S3 when it is long enough for a part
+	 * after topping the pending bytes up to the part minimum from its start.
+	 */
+	protected void append(String sourceKey, long from, long to) {
+		long minimum = S3MultipartOutputStream.MIN_PART_SIZE;
+		long fill = pending.size() == 0 ? 0 : Math.max(0, minimum - pending.size());
+		if (to - from - fill < minimum) {
+			read(sourceKey, from, to);
+			if (pending.size() >= partSize) {
+				uploadPending();
+			}
+			return;
+		}
+		if (pending.size() > 0) {
+			read(sourceKey, from, from + fill);
+			uploadPending();
+			from += fill;
+		}
+		while (from < to) {
+			long length = Math.min(to - from, MAX_COPY_PART_SIZE);
+			if (to - from - length > 0 && to - from - length < minimum) {
+				length = to - from - minimum;
+			}
+			copyPart(sourceKey, from, from + length);
+			from += length;
+		}
+	}
+
+	protected void read(String sourceKey, long from, long to) {
+		if (from >= to) {
+			return;
+		}
+		GetObjectRequest request = new GetObjectRequest(bucket, sourceKey).withRange(from, to - 1);
+		try (InputStream in = s3.getObject(request).getObjectContent()) {
+			long count = in.transferTo(pending);
+			if (count != to - from) {
+				throw new RuntimeException("Read " + count + " bytes of " + sourceKey + " for a range of " + (to - from));
+			}
+			readBytes += count;
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading " + sourceKey + " to roll up into " + keyName, e);
+		}
+	}
+
+	protected void uploadPending() {
+		byte[] bytes = pending.toByteArray();
+		pending.reset();
+		int partNumber = parts.size() + 1;
+		PartETag etag = S3PartUploader.withRetry(() -> s3.uploadPart(new UploadPartRequest()
+				.withBucketName(bucket).withKey(keyName).withUploadId(uploadId).withPartNumber(partNumber)
+				.withInputStream(new ByteArrayInputStream(bytes)).withPartSize(bytes.length)).getPartETag(),
+				S3PartUploader.DEFAULT_ATTEMPTS, S3PartUploader.DEFAULT_BACKOFF_MILLIS, "part " + partNumber + " of " + keyName);
+		parts.add(etag);
+	}
+
+	protected void copyPart(String sourceKey, long from, long to) {
+		int partNumber = parts.size() + 1;
+		PartETag etag = S3PartUploader.withRetry(() -> s3.copyPart(new CopyPartRequest()
+				.withSourceBucketName(bucket).withSourceKey(sourceKey)
+				.withDestinationBucketName(bucket).withDestinationKey(keyName)
+				.withUploadId(uploadId).withPartNumber(partNumber)
+				.withFirstByte(from).withLastByte(to - 1)).getPartETag(),
+				S3PartUploader.DEFAULT_ATTEMPTS, S3PartUploader.DEFAULT_BACKOFF_MILLIS, "part " + partNumber + " of " + keyName);
+		parts.add(etag);
+		copiedBytes += to - from;
+	}
+
+	protected byte[] encodeHeader(byte[] header) {
+		ByteArrayOutputStream member = new ByteArrayOutputStream();
+		try (OutputStream encoded = codec.encode(member)) {
+			encoded.write(header);
+		} catch (IOException e) {
+			throw new RuntimeException("Error encoding the header of " + keyName, e);
+		}
+		return member.toByteArray();
+	}
+}
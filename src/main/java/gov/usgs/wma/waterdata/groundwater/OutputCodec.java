@@ -0,0 +1,49 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoding of the RDB file on its way to S3, which sets the key suffix and the object metadata.
+ * The gzip and uncompressed codecs are built in, others are found through a Provider
+ * registered with java.util.ServiceLoader in META-INF/services.
+ *
+ * @see OutputCodecs
+ */
+public interface OutputCodec {
+
+	/**
+	 * Makes codecs from a codec specification, name and optional level, for codecs not built in.
+	 */
+	interface Provider {
+		/**
+		 * @param name the codec name, lower case
+		 * @param level the level after the colon of the specification, or null for the codec default
+		 * @return the codec, or null if the name is not one of this provider's codecs
+		 */
+		OutputCodec create(String name, Integer level);
+	}
+
+	/**
+	 * @return the codec specification, as given to OutputCodecs.forName
+	 */
+	String getName();
+
+	/**
+	 * @return the suffix added to the S3 key, including the dot, or empty
+	 */
+	String getSuffix();
+
+	/**
+	 * @return the Content-Encoding of the S3 object, or null to leave it unset
+	 */
+	default String getContentEncoding() {
+		return null;
+	}
+
+	/**
+	 * @param destination the temp file stream
+	 * @return the stream that encodes to the destination, closing it closes the destination
+	 */
+	OutputStream encode(OutputStream destination) throws IOException;
+}
@@ -0,0 +1,124 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ServiceLoader;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The built in output codecs and lookup of a codec by its specification,
+ * a name and an optional level such as gzip, gzip:9 or none.
+ */
+public class OutputCodecs {
+
+	public static final String GZIP = "gzip";
+	public static final String NONE = "none";
+
+	private OutputCodecs() {
+	}
+
+	/**
+	 * Gzip, on a single thread or on a pool of threads.
+	 */
+	public static class Gzip implements OutputCodec {
+		protected final int level;
+		protected final int threads;
+
+		/**
+		 * @param level the deflate level, Deflater.DEFAULT_COMPRESSION for the default
+		 * @param threads deflate threads, zero for GZIPOutputStream and negative for one per available processor
+		 */
+		public Gzip(int level, int threads) {
+			this.level = level;
+			this.threads = threads < 0 ? Runtime.getRuntime().availableProcessors() : threads;
+		}
+
+		public int getLevel() {
+			return level;
+		}
+
+		@Override
+		public String getName() {
+			return level == Deflater.DEFAULT_COMPRESSION ? GZIP : GZIP + ":" + level;
+		}
+
+		/**
+		 * The object is a gzip file rather than gzip encoded text, so the Content-Encoding is left unset
+		 * and clients download the .gz as it was before codecs.
+		 */
+		@Override
+		public String getSuffix() {
+			return ".gz";
+		}
+
+		@Override
+		public OutputStream encode(OutputStream destination) throws IOException {
+			if (threads > 0) {
+				return new ParallelGzipOutputStream(destination, threads, ParallelGzipOutputStream.BLOCK_SIZE, level);
+			}
+			return new GZIPOutputStream(destination) {
+				{
+					def.setLevel(level);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Uncompressed RDB text.
+	 */
+	public static class None implements OutputCodec {
+		@Override
+		public String getName() {
+			return NONE;
+		}
+
+		@Override
+		public String getSuffix() {
+			return "";
+		}
+
+		@Override
+		public OutputStream encode(OutputStream destination) {
+			return destination;
+		}
+	}
+
+	/**
+	 * @param specification the codec name and optional level, null or empty for default gzip
+	 * @param gzipThreads deflate threads for gzip, as the Gzip codec takes them
+	 * @return the codec
+	 */
+	public static OutputCodec forName(String specification, int gzipThreads) {
+		if (specification == null || specification.isBlank()) {
+			return new Gzip(Deflater.DEFAULT_COMPRESSION, gzipThreads);
+		}
+		String[] parts = specification.trim().toLowerCase().split(":", 2);
+		String name = parts[0];
+		Integer level = null;
+		if (parts.length > 1) {
+			try {
+				level = Integer.valueOf(parts[1]);
+			} catch (NumberFormatException e) {
+				throw new RuntimeException("Invalid output codec level: " + specification, e);
+			}
+		}
+
+		if (GZIP.equals(name)) {
+			if (level != null && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+				throw new RuntimeException("Invalid gzip level: " + specification);
+			}
+			return new Gzip(level == null ? Deflater.DEFAULT_COMPRESSION : level, gzipThreads);
+		} else if (NONE.equals(name)) {
+			return new None();
+		}
+		for (OutputCodec.Provider provider : ServiceLoader.load(OutputCodec.Provider.class)) {
+			OutputCodec codec = provider.create(name, level);
+			if (codec != null) {
+				return codec;
+			}
+		}
+		throw new RuntimeException("Unknown output codec: " + specification);
+	}
+}
@@ -0,0 +1,271 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip stream that deflates fixed size blocks concurrently on a pool of threads, as pigz does.
+ * Each block is deflated with the last 32K of the block before it as its preset dictionary and ends on
+ * a sync flush, so the blocks concatenate into a single deflate stream that compresses about as well as
+ * a serial one. The block CRCs are combined into the trailer CRC, giving one standard gzip member.
+ * Flush does not end a block; only full blocks and close are compressed.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	public static final int BLOCK_SIZE = 128 * 1024;
+
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	// gzip magic, deflate, no flags, no mtime, as GZIPOutputStream writes
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+	/**
+	 * A block of input and the deflated bytes made from it.
+	 */
+	protected static class Block {
+		protected final byte[] input;
+		protected int length;
+		protected final byte[] dictionary = new byte[DICTIONARY_SIZE];
+		protected int dictionaryLength;
+		protected boolean last;
+		protected final Deflater deflater;
+		protected byte[] compressed;
+		protected int compressedLength;
+		protected long crc;
+
+		protected Block(int blockSize, int level) {
+			input = new byte[blockSize];
+			compressed = new byte[blockSize / 2 + 64];
+			deflater = new Deflater(level, true);
+		}
+
+		protected Block deflate() {
+			CRC32 check = new CRC32();
+			check.update(input, 0, length);
+			crc = check.getValue();
+
+			deflater.reset();
+			if (dictionaryLength > 0) {
+				deflater.setDictionary(dictionary, 0, dictionaryLength);
+			}
+			deflater.setInput(input, 0, length);
+			if (last) {
+				deflater.finish();
+			}
+			compressedLength = 0;
+			int space;
+			int count;
+			do {
+				if (compressedLength == compressed.length) {
+					compressed = Arrays.copyOf(compressed, compressed.length * 2);
+				}
+				space = compressed.length - compressedLength;
+				// a sync flush ends the block on a byte boundary so the next block's output can follow it
+				count = deflater.deflate(compressed, compressedLength, space, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				compressedLength += count;
+			} while (last ? !deflater.finished() : count == space);
+			return this;
+		}
+	}
+
+	protected final OutputStream out;
+	protected final ExecutorService pool;
+	protected final ArrayDeque<Block> free = new ArrayDeque<>();
+	protected final ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+	protected final Block[] blocks;
+	protected Block block;
+	protected long crc;
+	protected long size;
+	protected boolean closed;
+
+	/**
+	 * @param out the stream to write the gzip bytes to
+	 * @param threads the number of deflate threads
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads) throws IOException {
+		this(out, threads, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param out the stream to write the gzip bytes to
+	 * @param threads the number of deflate threads
+	 * @param blockSize the uncompressed bytes per block
+	 * @param level the deflate level
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level) throws IOException {
+		this.out = out;
+		AtomicInteger count = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "rdb-gzip-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// two blocks a thread keeps every thread busy while the caller fills the next
+		blocks = new Block[threads * 2 + 1];
+		for (int b = 0; b < blocks.length; b++) {
+			blocks[b] = new Block(blockSize, level);
+			free.add(blocks[b]);
+		}
+		block = free.poll();
+		out.write(HEADER);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (block.length == block.input.length) {
+			submit(false);
+		}
+		block.input[block.length++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (block.length == block.input.length) {
+				submit(false);
+			}
+			int count = Math.min(length, block.input.length - block.length);
+			System.arraycopy(bytes, offset, block.input, block.length, count);
+			block.length += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Flushes the compressed blocks written so far; the block being filled is not compressed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Compresses the last block, writes the gzip trailer and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			submit(true);
+			while (!pending.isEmpty()) {
+				writeCompressed();
+			}
+			writeInt(crc);
+			writeInt(size);
+		} finally {
+			pool.shutdownNow();
+			for (Block b : blocks) {
+				b.deflater.end();
+			}
+			out.close();
+		}
+	}
+
+	protected void submit(boolean last) throws IOException {
+		Block full = block;
+		full.last = last;
+		pending.add(pool.submit(full::deflate));
+		while (free.isEmpty()) {
+			writeCompressed();
+		}
+		if (!last) {
+			// the submitted block is not recycled until it is written, so its tail can be read here
+			block = free.poll();
+			block.dictionaryLength = Math.min(DICTIONARY_SIZE, full.length);
+			System.arraycopy(full.input, full.length - block.dictionaryLength, block.dictionary, 0, block.dictionaryLength);
+			block.length = 0;
+		}
+	}
+
+	protected void writeCompressed() throws IOException {
+		Block done;
+		try {
+			done = pending.poll().get();
+		} catch (ExecutionException e) {
+			throw new IOException("Error compressing block.", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted compressing block.", e);
+		}
+		out.write(done.compressed, 0, done.compressedLength);
+		crc = crc32Combine(crc, done.crc, done.length);
+		size += done.length;
+		free.add(done);
+	}
+
+	private void writeInt(long value) throws IOException {
+		out.write((int) value & 0xff);
+		out.write((int) (value >>> 8) & 0xff);
+		out.write((int) (value >>> 16) & 0xff);
+		out.write((int) (value >>> 24) & 0xff);
+	}
+
+	/**
+	 * The CRC32 of two byte sequences concatenated, from the CRC32 of each, as zlib crc32_combine.
+	 * @param crc1 the CRC32 of the first sequence
+	 * @param crc2 the CRC32 of the second sequence
+	 * @param length2 the length of the second sequence
+	 */
+	static long crc32Combine(long crc1, long crc2, long length2) {
+		if (length2 <= 0) {
+			return crc1;
+		}
+		long[] even = new long[32];
+		long[] odd = new long[32];
+		// the operator for one zero bit
+		odd[0] = 0xedb88320L;
+		long row = 1;
+		for (int n = 1; n < 32; n++) {
+			odd[n] = row;
+			row <<= 1;
+		}
+		// two zero bits, then four
+		gf2MatrixSquare(even, odd);
+		gf2MatrixSquare(odd, even);
+		// apply length2 zero bytes to crc1, squaring up to the next power of two each pass
+		do {
+			gf2MatrixSquare(even, odd);
+			if ((length2 & 1) != 0) {
+				crc1 = gf2MatrixTimes(even, crc1);
+			}
+			length2 >>= 1;
+			if (length2 == 0) {
+				break;
+			}
+			gf2MatrixSquare(odd, even);
+			if ((length2 & 1) != 0) {
+				crc1 = gf2MatrixTimes(odd, crc1);
+			}
+			length2 >>= 1;
+		} while (length2 != 0);
+		return crc1 ^ crc2;
+	}
+
+	private static long gf2MatrixTimes(long[] matrix, long vector) {
+		long sum = 0;
+		for (int i = 0; vector != 0; i++, vector >>>= 1) {
+			if ((vector & 1) != 0) {
+				sum ^= matrix[i];
+			}
+		}
+		return sum;
+	}
+
+	private static void gf2MatrixSquare(long[] square, long[] matrix) {
+		for (int n = 0; n < 32; n++) {
+			square[n] = gf2MatrixTimes(matrix, matrix[n]);
+		}
+	}
+}
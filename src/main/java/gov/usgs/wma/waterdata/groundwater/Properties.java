@@ -1,7 +1,13 @@
 package gov.usgs.wma.waterdata.groundwater;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
 
 @Configuration
 @ConfigurationProperties(prefix="properties")
@@ -10,6 +16,33 @@ public class Properties {
 	String bucket;
 	String region;
 	String arn;
+	int batchSize;
+	boolean bytePassthrough;
+	boolean sqlRules;
+	int pipelineDepth;
+	int formatWorkers;
+	int gzipThreads;
+	String codec;
+	boolean streamingUpload;
+	int partSize;
+	int partsInFlight;
+	int uploadThreads;
+	long uploadThreshold;
+	boolean staging;
+	long tmpBudget;
+	long stagingMemory;
+	boolean warmClients;
+	String unchangedUploads;
+	boolean segmentCache;
+	boolean seekable;
+	long seekableMemberSize;
+	boolean headerMember;
+	long splitRows;
+	long splitBytes;
+	int splitPartitions;
+	boolean manifest;
+	String fanOut;
+	boolean delta;
 
 	public String getTier() {
 		return tier;
@@ -42,4 +75,301 @@ public class Properties {
 	public void setArn(String arn) {
 		this.arn = arn;
 	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public boolean isBytePassthrough() {
+		return bytePassthrough;
+	}
+
+	public void setBytePassthrough(boolean bytePassthrough) {
+		this.bytePassthrough = bytePassthrough;
+	}
+
+	public boolean isSqlRules() {
+		return sqlRules;
+	}
+
+	public void setSqlRules(boolean sqlRules) {
+		this.sqlRules = sqlRules;
+	}
+
+	public int getPipelineDepth() {
+		return pipelineDepth;
+	}
+
+	public void setPipelineDepth(int pipelineDepth) {
+		this.pipelineDepth = pipelineDepth;
+	}
+
+	public int getFormatWorkers() {
+		return formatWorkers;
+	}
+
+	public void setFormatWorkers(int formatWorkers) {
+		this.formatWorkers = formatWorkers;
+	}
+
+	public int getGzipThreads() {
+		return gzipThreads;
+	}
+
+	public void setGzipThreads(int gzipThreads) {
+		this.gzipThreads = gzipThreads;
+	}
+
+	public String getCodec() {
+		return codec;
+	}
+
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	public boolean isStreamingUpload() {
+		return streamingUpload;
+	}
+
+	public void setStreamingUpload(boolean streamingUpload) {
+		this.streamingUpload = streamingUpload;
+	}
+
+	public int getPartSize() {
+		return partSize;
+	}
+
+	public void setPartSize(int partSize) {
+		this.partSize = partSize;
+	}
+
+	public int getPartsInFlight() {
+		return partsInFlight;
+	}
+
+	public void setPartsInFlight(int partsInFlight) {
+		this.partsInFlight = partsInFlight;
+	}
+
+	public int getUploadThreads() {
+		return uploadThreads;
+	}
+
+	public void setUploadThreads(int uploadThreads) {
+		this.uploadThreads = uploadThreads;
+	}
+
+	public long getUploadThreshold() {
+		return uploadThreshold;
+	}
+
+	public void setUploadThreshold(long uploadThreshold) {
+		this.uploadThreshold = uploadThreshold;
+	}
+
+	public boolean isStaging() {
+		return staging;
+	}
+
+	public void setStaging(boolean staging) {
+		this.staging = staging;
+	}
+
+	public long getTmpBudget() {
+		return tmpBudget;
+	}
+
+	public void setTmpBudget(long tmpBudget) {
+		this.tmpBudget = tmpBudget;
+	}
+
+	public long getStagingMemory() {
+		return stagingMemory;
+	}
+
+	public void setStagingMemory(long stagingMemory) {
+		this.stagingMemory = stagingMemory;
+	}
+
+	public boolean isWarmClients() {
+		return warmClients;
+	}
+
+	public void setWarmClients(boolean warmClients) {
+		this.warmClients = warmClients;
+	}
+
+	public String getUnchangedUploads() {
+		return unchangedUploads;
+	}
+
+	public void setUnchangedUploads(String unchangedUploads) {
+		this.unchangedUploads = unchangedUploads;
+	}
+
+	public boolean isSegmentCache() {
+		return segmentCache;
+	}
+
+	public void setSegmentCache(boolean segmentCache) {
+		this.segmentCache = segmentCache;
+	}
+
+	public boolean isSeekable() {
+		return seekable;
+	}
+
+	public void setSeekable(boolean seekable) {
+		this.seekable = seekable;
+	}
+
+	public long getSeekableMemberSize() {
+		return seekableMemberSize;
+	}
+
+	public void setSeekableMemberSize(long seekableMemberSize) {
+		this.seekableMemberSize = seekableMemberSize;
+	}
+
+	public boolean isHeaderMember() {
+		return headerMember;
+	}
+
+	public void setHeaderMember(boolean headerMember) {
+		this.headerMember = headerMember;
+	}
+
+	public long getSplitRows() {
+		return splitRows;
+	}
+
+	public void setSplitRows(long splitRows) {
+		this.splitRows = splitRows;
+	}
+
+	public long getSplitBytes() {
+		return splitBytes;
+	}
+
+	public void setSplitBytes(long splitBytes) {
+		this.splitBytes = splitBytes;
+	}
+
+	public int getSplitPartitions() {
+		return splitPartitions;
+	}
+
+	public void setSplitPartitions(int splitPartitions) {
+		this.splitPartitions = splitPartitions;
+	}
+
+	public boolean isManifest() {
+		return manifest;
+	}
+
+	public void setManifest(boolean manifest) {
+		this.manifest = manifest;
+	}
+
+	public String getFanOut() {
+		return fanOut;
+	}
+
+	public void setFanOut(String fanOut) {
+		this.fanOut = fanOut;
+	}
+
+	public boolean isDelta() {
+		return delta;
+	}
+
+	public void setDelta(boolean delta) {
+		this.delta = delta;
+	}
+
+	/**
+	 * @return whether a folder is written as several RDB parts
+	 */
+	public boolean isSplit() {
+		return splitRows > 0 || splitBytes > 0 || splitPartitions > 1;
+	}
+
+	/**
+	 * @return whether a folder is written as gzip members at site boundaries
+	 */
+	public boolean isSegmented() {
+		return segmentCache || seekable;
+	}
+
+	/**
+	 * @return whether the query writes product files beside the full file
+	 */
+	public boolean isFanOutExport() {
+		return StringUtils.hasText(fanOut) || delta;
+	}
+
+	/**
+	 * Fails the startup on settings that cannot work together, rather than letting one silently win.
+	 * Split, segmented and fan-out exports each write the folder their own way, so only one may be set.
+	 * Split and segmented exports fetch through handlers of their own, which neither batch, pipeline,
+	 * format in parallel nor read the database mapping, and fan-out writes characters to every product,
+	 * without the byte writer and compress stage. The database mapping takes the row path.
+	 */
+	@PostConstruct
+	public void validate() {
+		List<String> exports = new ArrayList<>();
+		if (isSplit()) {
+			exports.add("SPLIT_ROWS/SPLIT_BYTES/SPLIT_PARTITIONS");
+		}
+		if (isSegmented()) {
+			exports.add("SEGMENT_CACHE/SEEKABLE");
+		}
+		if (isFanOutExport()) {
+			exports.add("FAN_OUT/DELTA");
+		}
+		if (exports.size() > 1) {
+			throw new IllegalStateException("Only one of " + exports + " may be set, each writes the folder its own way.");
+		}
+		List<String> writePath = new ArrayList<>();
+		if (batchSize > 0) {
+			writePath.add("BATCH_SIZE");
+		}
+		if (pipelineDepth > 0) {
+			writePath.add("PIPELINE_DEPTH");
+		}
+		if (formatWorkers > 1) {
+			writePath.add("FORMAT_WORKERS");
+		}
+		List<String> rowIgnored = new ArrayList<>(writePath);
+		if (sqlRules) {
+			rowIgnored.add("SQL_RULES");
+		}
+		if ((isSplit() || isSegmented()) && !rowIgnored.isEmpty()) {
+			throw new IllegalStateException(exports.get(0) + " exports write rows one at a time from the Java rules,"
+					+ " which " + rowIgnored + " would not change; unset them.");
+		}
+		List<String> fanOutIgnored = new ArrayList<>(writePath);
+		fanOutIgnored.remove("BATCH_SIZE");
+		if (bytePassthrough) {
+			fanOutIgnored.add("BYTE_PASSTHROUGH");
+		}
+		if (isFanOutExport() && !fanOutIgnored.isEmpty()) {
+			throw new IllegalStateException("FAN_OUT/DELTA exports write characters to each product file,"
+					+ " which " + fanOutIgnored + " would not change; unset them.");
+		}
+		if (sqlRules && !writePath.isEmpty()) {
+			throw new IllegalStateException("SQL_RULES rows take the row path, which " + writePath
+					+ " would not change; unset them or SQL_RULES.");
+		}
+		if (streamingUpload && !staging && S3Bucket.Unchanged.forName(unchangedUploads) != S3Bucket.Unchanged.PUT) {
+			throw new IllegalStateException("UNCHANGED_UPLOADS=" + unchangedUploads + " needs the content digest"
+					+ " before the upload starts, which STREAMING_UPLOAD begins before the content is written;"
+					+ " use STAGING or leave UNCHANGED_UPLOADS unset.");
+		}
+	}
 }
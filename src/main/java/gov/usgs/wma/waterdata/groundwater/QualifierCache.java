@@ -0,0 +1,85 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU memo of raw result qualifier text to the NWISWeb lev_status_cd.
+ * The set of distinct qualifier strings is small so nearly every row is a cache hit.
+ * Not thread safe; each rules instance owns its own cache.
+ */
+public class QualifierCache {
+
+	public static final int DEFAULT_SIZE = 256;
+
+	protected final int maxSize;
+	protected final Function<String, String> resolver;
+	protected final Map<String, String> cache;
+	protected long hits;
+	protected long misses;
+	protected long evictions;
+
+	/**
+	 * @param maxSize the number of distinct qualifier strings to retain
+	 * @param resolver computes the lev_status_cd for a cache miss, it must not return null
+	 */
+	public QualifierCache(int maxSize, Function<String, String> resolver) {
+		this.maxSize = maxSize;
+		this.resolver = resolver;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				if (size() > QualifierCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param qualifiers the raw result qualifiers text
+	 * @return the lev_status_cd for the qualifiers
+	 */
+	public String get(String qualifiers) {
+		String levelStatusCode = cache.get(qualifiers);
+		if (levelStatusCode != null) {
+			hits++;
+			return levelStatusCode;
+		}
+		misses++;
+		levelStatusCode = resolver.apply(qualifiers);
+		cache.put(qualifiers, levelStatusCode);
+		return levelStatusCode;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		return "QualifierCache{" +
+				"size=" + cache.size() +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				'}';
+	}
+}
@@ -0,0 +1,88 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+/**
+ * Hand written scanner for the simple JSON string arrays AQTS produces for result qualifiers,
+ * for example ["Static","Groundwater level affected by tide"].
+ * The elements are looked up in place in the LevelStatusCode bit table without allocation.
+ * Anything other than a flat array of unescaped strings is left to a full JSON parser.
+ */
+public class QualifierScanner {
+
+	private QualifierScanner() {
+	}
+
+	/**
+	 * Finds the first mapped LevelStatusCode, in enum order, present in a JSON string array.
+	 * @param json the qualifiers text, already trimmed
+	 * @return the matched code, UNKNOWN if no element is a mapped code,
+	 *         or null if the text is not a simple JSON string array
+	 */
+	public static LevelStatusCode scan(String json) {
+		int len = json.length();
+		int i = skipWhitespace(json, 0, len);
+		if (i == len || json.charAt(i) != '[') {
+			return null;
+		}
+		int mask = 0;
+		i = skipWhitespace(json, i + 1, len);
+		if (i < len && json.charAt(i) == ']') {
+			return skipWhitespace(json, i + 1, len) == len ? LevelStatusCode.UNKNOWN : null;
+		}
+		while (i < len && json.charAt(i) == '"') {
+			int start = i + 1;
+			int end = start;
+			for (; end < len; end++) {
+				char c = json.charAt(end);
+				if (c == '"') {
+					break;
+				}
+				if (c == '\\' || c < ' ') {
+					return null;  // escapes and control chars are left to the full parser
+				}
+			}
+			if (end == len) {
+				return null;
+			}
+			mask |= match(json, start, end);
+
+			i = skipWhitespace(json, end + 1, len);
+			if (i == len) {
+				return null;
+			}
+			if (json.charAt(i) == ']') {
+				return skipWhitespace(json, i + 1, len) == len ? LevelStatusCode.fromMask(mask) : null;
+			}
+			if (json.charAt(i) != ',') {
+				return null;
+			}
+			i = skipWhitespace(json, i + 1, len);
+		}
+		return null;
+	}
+
+	/**
+	 * Looks up a trimmed region of text by AQ description or AQ code.
+	 * @return the single bit mask of the matched status, zero if not recognized
+	 */
+	protected static int match(String text, int start, int end) {
+		while (start < end && Character.isWhitespace(text.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		int bit = LevelStatusCode.bitOf(text, start, end);
+		return bit < 0 ? 0 : 1 << bit;
+	}
+
+	private static int skipWhitespace(String json, int i, int len) {
+		while (i < len) {
+			char c = json.charAt(i);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,240 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * RDB writer that encodes rows as UTF-8 bytes into a reusable buffer rather than chars to a Writer.
+ * Fields are truncated in place, tabs and newlines are written as bytes, and the buffer is handed
+ * to the output stream only when it is full or flushed. The output is byte for byte the same as
+ * an RdbWriter over a UTF-8 Writer.
+ * Column values fetched from the database as raw bytes are copied to the output
+ * without decoding them to Strings.
+ *
+ * @see DiscreteGroundWaterPassthroughRowHandler
+ */
+public class RdbByteWriter extends RdbWriter {
+	private static final Logger LOG = LoggerFactory.getLogger(RdbByteWriter.class);
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final byte TAB = '\t';
+	private static final byte NEWLINE = '\n';
+
+	protected OutputStream out;
+	protected final byte[] buffer;
+	protected int position;
+	protected boolean rowStarted;
+
+	public RdbByteWriter(OutputStream destination) {
+		this(destination, BUFFER_SIZE);
+	}
+
+	public RdbByteWriter(OutputStream destination, int bufferSize) {
+		super(null);
+		this.out = destination;
+		this.buffer = new byte[bufferSize];
+	}
+
+	@Override
+	public RdbWriter writeHeader() {
+		try {
+			InputStream header = getClass().getResourceAsStream("/rdb/rdbHeader.txt");
+			byte[] head = FileCopyUtils.copyToByteArray(header);
+			headerLineCount = new String(head, StandardCharsets.UTF_8).lines().count();
+			put(head, head.length);
+		} catch (IOException e) {
+			LOG.error("Unable to get RDB Header template", e.getMessage());
+			throw new RuntimeException(e);
+		}
+		return this;
+	}
+
+	/**
+	 * Marshals GW samples as a RDB row, encoding each field directly into the buffer
+	 * through the row encoder compiled from the RDB header.
+	 * @param dgw the sample to write.
+	 */
+	@Override
+	public RdbWriter writeRow(DiscreteGroundWater dgw) {
+		RdbRowEncoder.write(this, dgw);
+		return this;
+	}
+
+	@Override
+	protected RdbWriter writeRow(List<String> columns) {
+		for (String column : columns) {
+			writeField(Integer.MAX_VALUE, column);
+		}
+		return endRow();
+	}
+
+	@Override
+	public RdbWriter writeBatch(DiscreteGroundWaterBatch batch) {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		for (int row = 0; row < batch.size(); row++) {
+			writeRow(batch.copyRow(row, dgw));
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the next field of the current row, truncated to the column width in chars
+	 * as RdbWriter.validateValue does. ASCII is copied into the buffer a char at a time.
+	 * @param length max number of chars to write
+	 * @param value characters to write, null is written as an empty field
+	 */
+	public RdbByteWriter writeField(int length, String value) {
+		startField();
+		if (value != null) {
+			int count = Math.min(length, value.length());
+			if (count <= buffer.length) {
+				reserve(count);
+				int start = position;
+				for (int i = 0; i < count; i++) {
+					char c = value.charAt(i);
+					if (c >= 0x80) {
+						position = start;
+						break;
+					}
+					buffer[position++] = (byte) c;
+				}
+				if (position - start == count) {
+					return this;
+				}
+			}
+			byte[] bytes = value.substring(0, count).getBytes(StandardCharsets.UTF_8);
+			put(bytes, bytes.length);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the next field of the current row from raw UTF-8 bytes, truncated to the column width.
+	 * Truncation is by byte length and backs off to a character boundary so that a multi-byte
+	 * character is never split. The RDB codes are ASCII, for which bytes and chars are the same.
+	 * @param length max number of bytes to write
+	 * @param value UTF-8 bytes to write, null is written as an empty field
+	 */
+	public RdbByteWriter writeField(int length, byte[] value) {
+		return writeField(length, value, value == null ? 0 : value.length);
+	}
+
+	/**
+	 * Writes the next field of the current row from the start of a reusable UTF-8 buffer,
+	 * truncated to the column width as writeField(int, byte[]) does.
+	 * @param length max number of bytes to write
+	 * @param value buffer holding the UTF-8 bytes to write, null is written as an empty field
+	 * @param valueLength number of bytes of the buffer in use
+	 */
+	public RdbByteWriter writeField(int length, byte[] value, int valueLength) {
+		startField();
+		if (value != null) {
+			put(value, truncatedLength(length, value, valueLength));
+		}
+		return this;
+	}
+
+	/**
+	 * Terminates the current row.
+	 */
+	public RdbByteWriter endRow() {
+		reserve(1);
+		buffer[position++] = NEWLINE;
+		rowStarted = false;
+		dataLineCount++;
+		return this;
+	}
+
+	/**
+	 * Appends whole rows already encoded by another byte writer.
+	 * @param rows the encoded rows
+	 * @param length number of bytes of the rows buffer in use
+	 * @param rowCount number of rows encoded
+	 */
+	public RdbByteWriter writeEncodedRows(byte[] rows, int length, long rowCount) {
+		put(rows, length);
+		dataLineCount += rowCount;
+		return this;
+	}
+
+	/**
+	 * Hands the buffered bytes to the output stream.
+	 */
+	@Override
+	public RdbWriter flush() {
+		try {
+			drain();
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing RDB row to stream.", e);
+		}
+		return this;
+	}
+
+	protected void startField() {
+		if (rowStarted) {
+			reserve(1);
+			buffer[position++] = TAB;
+		}
+		rowStarted = true;
+	}
+
+	/**
+	 * Makes room in the buffer for the given number of bytes, which must fit in an empty buffer.
+	 */
+	protected void reserve(int count) {
+		if (buffer.length - position < count) {
+			try {
+				drain();
+			} catch (IOException e) {
+				throw new RuntimeException("Error writing RDB row to stream.", e);
+			}
+		}
+	}
+
+	protected void put(byte[] bytes, int count) {
+		if (count > buffer.length) {
+			try {
+				drain();
+				out.write(bytes, 0, count);
+			} catch (IOException e) {
+				throw new RuntimeException("Error writing RDB row to stream.", e);
+			}
+			return;
+		}
+		reserve(count);
+		System.arraycopy(bytes, 0, buffer, position, count);
+		position += count;
+	}
+
+	protected void drain() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	protected static int truncatedLength(int length, byte[] value) {
+		return truncatedLength(length, value, value.length);
+	}
+
+	protected static int truncatedLength(int length, byte[] value, int valueLength) {
+		if (valueLength <= length) {
+			return valueLength;
+		}
+		int end = length;
+		// 10xxxxxx is a UTF-8 continuation byte, back off to the lead byte of the split character
+		while (end > 0 && (value[end] & 0xC0) == 0x80) {
+			end--;
+		}
+		return end;
+	}
+}
@@ -0,0 +1,166 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static java.util.Map.entry;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+/**
+ * Maps the columns of an RdbSchema to their values in a row.
+ * For the byte writer the schema is compiled once into a single MethodHandle that writes
+ * every field in header order with its width, so the JIT sees one straight line write routine.
+ * Layout changes are header edits; a new column only needs a source here.
+ */
+public class RdbRowEncoder {
+
+	/**
+	 * The value of an RDB column for a row.
+	 * The writer's timestamp encoder holds the encoded date_measured_raw of the row.
+	 */
+	@FunctionalInterface
+	public interface Source {
+		String value(RdbWriter writer, DiscreteGroundWater dgw);
+	}
+
+	static final Map<String, Source> SOURCES = Map.ofEntries(
+			entry("agency_cd",      (w, d) -> d.agencyCode),
+			entry("site_no",        (w, d) -> d.siteIdentificationNumber),
+			entry("lev_dt",         (w, d) -> w.timestamps.getDate()),
+			entry("lev_tm",         (w, d) -> w.timestamps.getTime()),
+			entry("lev_va",         (w, d) -> d.aboveDatum ? null : d.displayResult),
+			entry("lev_ent_cd",     (w, d) -> d.aboveDatum ? "S" : "L"), // entry code for above Sea or below Land
+			entry("sl_datum_cd",    (w, d) -> d.aboveDatum ? d.verticalDatumCode : null),
+			entry("sl_lev_va",      (w, d) -> d.aboveDatum ? d.displayResult : null),
+			entry("lev_src_cd",     (w, d) -> d.measurementSourceCode),
+			entry("lev_agency_cd",  (w, d) -> d.measuringAgencyCode),
+			entry("lev_acy_cd",     (w, d) -> d.levelAccuracyCode),
+			entry("lev_status_cd",  (w, d) -> d.readingQualifiers),
+			entry("lev_meth_cd",    (w, d) -> d.measurementMethodCode),
+			entry("lev_md",         (w, d) -> d.dateMeasured),
+			entry("lev_dtm",        (w, d) -> w.timestamps.getDateTime()),
+			entry("lev_dt_acy_cd",  (w, d) -> d.dateTimeAccuracyCode),
+			entry("lev_tz_cd",      (w, d) -> d.timezoneCode),
+			entry("lev_utc_dt",     (w, d) -> d.timeMeasuredUtc),
+			entry("lev_age_cd",     (w, d) -> d.approvalLevel),
+			entry("parameter_code", (w, d) -> d.parameterCode));
+
+	// the timestamp columns are copied from the encoder buffers by the byte writer rather than made into Strings
+	static final Map<String, String> BYTE_SOURCES = Map.of(
+			"lev_dt", "writeDate",
+			"lev_tm", "writeTime",
+			"lev_dtm", "writeDateTime");
+
+	private static final MethodType ROW_TYPE = MethodType.methodType(void.class, RdbByteWriter.class, DiscreteGroundWater.class);
+	private static final MethodType BYTE_SOURCE_TYPE = MethodType.methodType(void.class, RdbByteWriter.class, int.class, DiscreteGroundWater.class);
+
+	/**
+	 * The column sources of the default schema, in header order.
+	 */
+	static final Source[] DEFAULT_SOURCES = sources(RdbSchema.DEFAULT);
+
+	// constant so the JIT can inline the whole chain
+	private static final MethodHandle DEFAULT_ROW = compile(RdbSchema.DEFAULT);
+
+	private RdbRowEncoder() {
+	}
+
+	/**
+	 * Writes a row in the default schema layout to the byte writer.
+	 */
+	public static void write(RdbByteWriter writer, DiscreteGroundWater dgw) {
+		try {
+			DEFAULT_ROW.invokeExact(writer, dgw);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException("Error writing RDB row.", e);
+		}
+	}
+
+	/**
+	 * Checks the row can be written and encodes its timestamp into the writer's encoder.
+	 * Nothing is written for an invalid row.
+	 */
+	public static void beginRow(RdbWriter writer, DiscreteGroundWater dgw) {
+		if (!dgw.aboveDatum && !dgw.belowLandSurface) {
+			throw new RuntimeException("invalid parameter:" + dgw.parameterCode
+					+ ", must be above datum or below land surface");
+		}
+		writer.timestamps.encode(dgw.dateMeasuredRaw);
+	}
+
+	/**
+	 * @return the source of each column of the schema, in order
+	 */
+	static Source[] sources(RdbSchema schema) {
+		Source[] sources = new Source[schema.getColumns().size()];
+		for (int c = 0; c < sources.length; c++) {
+			String name = schema.getColumns().get(c).getName();
+			sources[c] = SOURCES.get(name);
+			if (sources[c] == null) {
+				throw new RuntimeException("No source for RDB column " + name);
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Compiles the schema into one handle of type (RdbByteWriter, DiscreteGroundWater)void that
+	 * begins the row, writes each field with its width, and ends the row.
+	 */
+	static MethodHandle compile(RdbSchema schema) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle sourceValue = lookup.findVirtual(Source.class, "value",
+					MethodType.methodType(String.class, RdbWriter.class, DiscreteGroundWater.class));
+			MethodHandle writeField = lookup.findStatic(RdbRowEncoder.class, "writeField",
+					MethodType.methodType(void.class, String.class, RdbByteWriter.class, int.class, DiscreteGroundWater.class));
+
+			Source[] sources = sources(schema);
+			MethodHandle row = lookup.findStatic(RdbRowEncoder.class, "endRow", ROW_TYPE);
+			for (int c = sources.length - 1; c >= 0; c--) {
+				RdbSchema.Column column = schema.getColumns().get(c);
+				MethodHandle field;
+				String byteSource = BYTE_SOURCES.get(column.getName());
+				if (byteSource != null) {
+					field = MethodHandles.insertArguments(
+							lookup.findStatic(RdbRowEncoder.class, byteSource, BYTE_SOURCE_TYPE), 1, column.getWidth());
+				} else {
+					// writeField(value(w, d), w, width, d)
+					MethodHandle value = sourceValue.bindTo(sources[c])
+							.asType(MethodType.methodType(String.class, RdbByteWriter.class, DiscreteGroundWater.class));
+					field = MethodHandles.foldArguments(
+							MethodHandles.insertArguments(writeField, 2, column.getWidth()), value);
+				}
+				row = MethodHandles.foldArguments(row, field);
+			}
+			MethodHandle begin = lookup.findStatic(RdbRowEncoder.class, "beginRow",
+					MethodType.methodType(void.class, RdbWriter.class, DiscreteGroundWater.class)).asType(ROW_TYPE);
+			return MethodHandles.foldArguments(row, begin);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new RuntimeException("Unable to compile the RDB row encoder.", e);
+		}
+	}
+
+	private static void writeField(String value, RdbByteWriter writer, int width, DiscreteGroundWater dgw) {
+		writer.writeField(width, value);
+	}
+
+	private static void writeDate(RdbByteWriter writer, int width, DiscreteGroundWater dgw) {
+		writer.writeField(width, writer.timestamps.date, writer.timestamps.dateLength);
+	}
+
+	private static void writeTime(RdbByteWriter writer, int width, DiscreteGroundWater dgw) {
+		writer.writeField(width, writer.timestamps.time, writer.timestamps.time.length);
+	}
+
+	private static void writeDateTime(RdbByteWriter writer, int width, DiscreteGroundWater dgw) {
+		writer.writeField(width, writer.timestamps.dateTime, writer.timestamps.dateTimeLength);
+	}
+
+	private static void endRow(RdbByteWriter writer, DiscreteGroundWater dgw) {
+		writer.endRow();
+	}
+}
@@ -0,0 +1,132 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * The RDB column layout parsed from the column name and width lines of an RDB header,
+ * so that the header is the one place the layout is declared.
+ */
+public class RdbSchema {
+
+	public static final String HEADER_RESOURCE = "/rdb/rdbHeader.txt";
+
+	/**
+	 * The layout of rdb/rdbHeader.txt, parsed once.
+	 */
+	public static final RdbSchema DEFAULT = load(HEADER_RESOURCE);
+
+	/**
+	 * One RDB column, for example lev_dtm with the definition 25ds.
+	 */
+	public static class Column {
+		protected final String name;
+		protected final int width;
+		protected final String type;
+
+		public Column(String name, int width, String type) {
+			this.name = name;
+			this.width = width;
+			this.type = type;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the max number of chars of the column
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * @return the definition after the width, s for string and d for date
+		 */
+		public String getType() {
+			return type;
+		}
+	}
+
+	protected final List<Column> columns;
+
+	public RdbSchema(List<Column> columns) {
+		this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+	}
+
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the bytes of rdb/rdbHeader.txt, the header the writers write
+	 */
+	public static byte[] readHeader() {
+		try (InputStream header = RdbSchema.class.getResourceAsStream(HEADER_RESOURCE)) {
+			return FileCopyUtils.copyToByteArray(header);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read RDB header: " + HEADER_RESOURCE, e);
+		}
+	}
+
+	/**
+	 * Loads the schema from a header on the classpath.
+	 * @param resource the classpath location of the header
+	 * @return the parsed schema
+	 */
+	public static RdbSchema load(String resource) {
+		try (InputStream header = RdbSchema.class.getResourceAsStream(resource)) {
+			if (header == null) {
+				throw new RuntimeException("RDB header not found: " + resource);
+			}
+			return parse(new String(FileCopyUtils.copyToByteArray(header), StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read RDB header: " + resource, e);
+		}
+	}
+
+	/**
+	 * Parses the first two lines after the # comments, the tab separated column names
+	 * followed by the column definitions such as 5s or 25d.
+	 * @param header the RDB header text
+	 * @return the parsed schema
+	 */
+	public static RdbSchema parse(String header) {
+		List<String> lines = new ArrayList<>();
+		header.lines()
+				.filter(line -> !line.startsWith("#"))
+				.limit(2)
+				.forEach(lines::add);
+		if (lines.size() < 2) {
+			throw new RuntimeException("RDB header must have a column name line and a column definition line.");
+		}
+		String[] names = lines.get(0).split("\t");
+		String[] definitions = lines.get(1).split("\t");
+		if (names.length != definitions.length) {
+			throw new RuntimeException("RDB header has " + names.length + " column names but "
+					+ definitions.length + " column definitions.");
+		}
+
+		List<Column> columns = new ArrayList<>();
+		for (int c = 0; c < names.length; c++) {
+			String definition = definitions[c].trim();
+			int digits = 0;
+			while (digits < definition.length() && Character.isDigit(definition.charAt(digits))) {
+				digits++;
+			}
+			if (digits == 0) {
+				throw new RuntimeException("RDB column " + names[c] + " has no width: " + definition);
+			}
+			columns.add(new Column(names[c].trim(), Integer.parseInt(definition.substring(0, digits)),
+					definition.substring(digits)));
+		}
+		return new RdbSchema(columns);
+	}
+}
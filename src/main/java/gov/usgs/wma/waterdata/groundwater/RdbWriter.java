@@ -1,6 +1,5 @@
 package gov.usgs.wma.waterdata.groundwater;
 
-import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
@@ -24,8 +23,9 @@ public class RdbWriter {
 "62600", "62601");
 
 	protected Writer rdb;
-	private long headerLineCount;
-	private long dataLineCount;
+	protected long headerLineCount;
+	protected long dataLineCount;
+	protected final TimestampEncoder timestamps = new TimestampEncoder();
 	private final String DELIMITER="\t";
 
 	public RdbWriter(Writer destination) {
@@ -39,6 +39,12 @@ public class RdbWriter {
 	public long getDataRowCount() {
 		return dataLineCount;
 	}
+	/**
+	 * Counts data rows that reached the destination without this writer, such as copied segments.
+	 */
+	public void countRows(long rows) {
+		dataLineCount += rows;
+	}
 	protected void initRows() {
 		headerLineCount = dataLineCount = 0;
 	}
@@ -68,47 +74,67 @@ public class RdbWriter {
 	 * @param dgw the sample to write.
 	 */
 	public RdbWriter writeRow(DiscreteGroundWater dgw) {
-		List<String> columns = new ArrayList<>();
-		columns.add( validateValue(  5, dgw.agencyCode) );
-		columns.add( validateValue( 15, dgw.siteIdentificationNumber) );
-		String date = new DateTime(dgw.dateMeasuredRaw).toString(DATE_FORMAT);
-		columns.add( validateValue(  8, date) );
-		String time = new DateTime(dgw.dateMeasuredRaw).toString(TIME_FORMAT);
-		columns.add( validateValue(  4, time) );
-
-		if (dgw.aboveDatum) {
-			columns.add( validateValue(  7, "") );
-			columns.add( validateValue(  1, "S") ); // entry code for above Sea
-			columns.add( validateValue( 10, dgw.verticalDatumCode) );
-			columns.add( validateValue(  8, dgw.displayResult) );
-		} else if (dgw.belowLandSurface) {
-			columns.add( validateValue(  7, dgw.displayResult) );
-			columns.add( validateValue(  1, "L") ); // entry code for below Land
-			columns.add( validateValue( 10, "") );
-			columns.add( validateValue(  8, "") );
-		} else {
-			throw new RuntimeException("invalid parameter:" + dgw.parameterCode
-					+ ", must be above datum or below land surface");
-		}
-		columns.add( validateValue(  1, dgw.measurementSourceCode) );
-		columns.add( validateValue(  5, dgw.measuringAgencyCode) );
-		columns.add( validateValue(  1, dgw.levelAccuracyCode) );
-		columns.add( validateValue(  1, dgw.readingQualifiers) );
-		columns.add( validateValue(  1, dgw.measurementMethodCode) );
-		// omitting date created, loader no longer references either
-		columns.add( validateValue( 25, dgw.dateMeasured) );
-		String dateMeasuredRaw = new DateTime(dgw.dateMeasuredRaw).toString(DATE_TIME_FORMAT).toUpperCase();
-		columns.add( validateValue( 25, dateMeasuredRaw) );
-		columns.add( validateValue(  1, dgw.dateTimeAccuracyCode) );
-		columns.add( validateValue(  6, dgw.timezoneCode) );
-		columns.add( validateValue( 25, dgw.timeMeasuredUtc) );
-		columns.add( validateValue(  1, dgw.approvalLevel) );
-		columns.add( validateValue(  5, dgw.parameterCode) );
-		writeRow(columns);
+		writeRow(toColumns(dgw));
 		dataLineCount++;
 		return this;
 	}
 
+	/**
+	 * Marshals a batch of GW samples as RDB rows, appending them to the destination at once.
+	 * Rules and parameters must have already been applied to the batch.
+	 * @param batch the samples to write.
+	 */
+	public RdbWriter writeBatch(DiscreteGroundWaterBatch batch) {
+		StringBuilder rows = new StringBuilder(batch.size() * 160);
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		for (int row = 0; row < batch.size(); row++) {
+			List<String> columns = toColumns(batch.copyRow(row, dgw));
+			for (int c = 0; c < columns.size(); c++) {
+				if (c > 0) {
+					rows.append(DELIMITER);
+				}
+				rows.append(columns.get(c));
+			}
+			rows.append("\n");
+		}
+		try {
+			rdb.append(rows);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing RDB rows to stream.", e);
+		}
+		dataLineCount += batch.size();
+		return this;
+	}
+
+	/**
+	 * Converts a GW sample to its RDB column values, truncated to the column widths.
+	 * The columns and widths are those of the RDB header, see RdbSchema.
+	 * @param dgw the sample to convert.
+	 * @return the column values in RDB order
+	 */
+	protected List<String> toColumns(DiscreteGroundWater dgw) {
+		RdbRowEncoder.beginRow(this, dgw);
+		List<RdbSchema.Column> schema = RdbSchema.DEFAULT.getColumns();
+		List<String> columns = new ArrayList<>(schema.size());
+		for (int c = 0; c < schema.size(); c++) {
+			String value = RdbRowEncoder.DEFAULT_SOURCES[c].value(this, dgw);
+			columns.add( validateValue(schema.get(c).getWidth(), value) );
+		}
+		return columns;
+	}
+
+	/**
+	 * Hands any rows buffered by the writer to its destination, call before closing the destination.
+	 */
+	public RdbWriter flush() {
+		try {
+			rdb.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing RDB rows to stream.", e);
+		}
+		return this;
+	}
+
 	protected RdbWriter writeRow(List<String> columns) {
 		try {
 			String row = String.join(DELIMITER, columns.toArray(new String[] {}));
@@ -7,6 +7,10 @@ package gov.usgs.wma.waterdata.groundwater;
  */
 public class RequestObject {
 	String locationFolder;
+	// output codec specification for this request, null for the configured codec
+	String codec;
+	// timestamp of the ALL run a NATIONAL or MANIFEST request follows, as in the file names, null to not check
+	String run;
 
 	public String getLocationFolder() {
 		return locationFolder;
@@ -16,10 +20,28 @@ public class RequestObject {
 		this.locationFolder = locationFolder;
 	}
 
+	public String getCodec() {
+		return codec;
+	}
+
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	public String getRun() {
+		return run;
+	}
+
+	public void setRun(String run) {
+		this.run = run;
+	}
+
 	@Override
 	public String toString() {
 		return "RequestObject{" +
 				"locationFolder='" + locationFolder + '\'' +
+				", codec='" + codec + '\'' +
+				", run='" + run + '\'' +
 				'}';
 	}
 }
@@ -8,6 +8,8 @@ package gov.usgs.wma.waterdata.groundwater;
 public class ResultObject {
 	private Integer count;
 	private String message;
+	// timestamp of an ALL run, for the NATIONAL and MANIFEST requests that follow it
+	private String run;
 
 	public Integer getCount() {
 		return count;
@@ -24,4 +26,12 @@ public class ResultObject {
 	public void setMessage(String filename) {
 		this.message = filename;
 	}
+
+	public String getRun() {
+		return run;
+	}
+
+	public void setRun(String run) {
+		this.run = run;
+	}
 }
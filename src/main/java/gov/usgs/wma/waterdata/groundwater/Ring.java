@@ -0,0 +1,161 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded hand off of preallocated slots between two pipeline stages, one producer thread and one or more consumer threads.
+ * The producer claims a free slot, fills it and publishes it; the consumer takes it, drains it and releases it
+ * back to the free list. When every slot is in flight the producer blocks, which is the backpressure on the
+ * faster stage. The time each side spends blocked is recorded so the stage utilizations can be reported.
+ *
+ * @param <T> the slot type, reused for the life of the ring
+ */
+public class Ring<T> {
+	private static final Logger LOG = LoggerFactory.getLogger(Ring.class);
+
+	// a stage sees an aborted ring within a poll, the rest is time to finish the slot in hand
+	public static final long ABORT_JOIN_MILLIS = 5000;
+
+	private static final Object END = new Object();
+	private static final long POLL_MILLIS = 100;
+
+	protected final ArrayBlockingQueue<T> free;
+	protected final ArrayBlockingQueue<Object> full;
+	protected volatile Throwable failure;
+	protected volatile long producerWaitNanos;
+	protected final LongAdder consumerWaitNanos = new LongAdder();
+
+	/**
+	 * @param slots the preallocated slots, all initially free
+	 */
+	public Ring(List<T> slots) {
+		free = new ArrayBlockingQueue<>(slots.size(), false, slots);
+		full = new ArrayBlockingQueue<>(slots.size() + 1);
+	}
+
+	/**
+	 * Producer side, blocks until a slot is free.
+	 * @return a free slot to fill
+	 */
+	public T claim() {
+		long start = System.nanoTime();
+		try {
+			return poll(free);
+		} finally {
+			producerWaitNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Producer side, hands a filled slot to the consumer.
+	 */
+	public void publish(T slot) {
+		full.add(slot);
+	}
+
+	/**
+	 * Producer side, marks the end of the stream once the last slot is published.
+	 */
+	public void close() {
+		full.add(END);
+	}
+
+	/**
+	 * Consumer side, blocks until a slot is published.
+	 * The end marker is put back once taken so that every consumer sees it.
+	 * @return the next filled slot, or null at the end of the stream
+	 */
+	@SuppressWarnings("unchecked")
+	public T take() {
+		long start = System.nanoTime();
+		try {
+			Object slot = poll(full);
+			if (slot == END) {
+				full.add(END);
+				return null;
+			}
+			return (T) slot;
+		} finally {
+			consumerWaitNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Consumer side, returns a drained slot to the producer.
+	 */
+	public void release(T slot) {
+		free.add(slot);
+	}
+
+	/**
+	 * Fails the ring so that a stage blocked on the other side stops rather than waiting forever.
+	 * @param cause the error of the failed stage
+	 */
+	public void abort(Throwable cause) {
+		failure = cause;
+	}
+
+	public long getProducerWaitNanos() {
+		return producerWaitNanos;
+	}
+
+	/**
+	 * @return the time blocked summed over all consumers
+	 */
+	public long getConsumerWaitNanos() {
+		return consumerWaitNanos.sum();
+	}
+
+	/**
+	 * @param elapsedNanos how long the stage ran
+	 * @param waitNanos how long the stage was blocked on its rings
+	 * @return the fraction of the run the stage was working, zero if it did not run
+	 */
+	public static double utilization(long elapsedNanos, long waitNanos) {
+		return elapsedNanos <= 0 ? 0 : Math.max(0, elapsedNanos - waitNanos) / (double) elapsedNanos;
+	}
+
+	/**
+	 * Waits for the threads of an aborted pipeline to stop, so none is still writing once the caller moves on.
+	 * A thread blocked outside the rings past the wait is logged and left, it is a daemon.
+	 * @param millis the wait for all the threads together
+	 */
+	public static void join(List<Thread> threads, long millis) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		try {
+			for (Thread thread : threads) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining > 0) {
+					thread.join(remaining);
+				}
+				if (thread.isAlive()) {
+					LOG.warn("Pipeline stage {} did not stop within {} ms of the abort", thread.getName(), millis);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private <E> E poll(ArrayBlockingQueue<E> queue) {
+		try {
+			E slot = queue.poll();
+			while (slot == null) {
+				if (failure != null) {
+					throw new RuntimeException("Pipeline stage failed.", failure);
+				}
+				slot = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			return slot;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting on the pipeline.", e);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * One business rule of the DiscreteGroundWaterRules pipeline, bound once to the field it reads,
+ * the field it writes, and the batch dictionary column it derives.
+ * Counts the rows the rule covers, the rows it maps to a value other than its unmapped value, and
+ * the invocations of the rule, which are fewer on the batch path where a rule runs once per
+ * dictionary entry, and keeps a log2 histogram of the nanosecond cost of
+ * a sample of invocations so timing does not cost every row a pair of clock reads.
+ * Not thread safe; each rules instance owns its own stages, whose statistics merge once their threads finish.
+ */
+public class RuleStage {
+
+	// one in every SAMPLE_INTERVAL invocations is timed, a power of two
+	public static final int SAMPLE_INTERVAL = 64;
+
+	protected final String name;
+	protected final Function<String, String> rule;
+	protected final String unmapped;
+	protected final Function<DiscreteGroundWater, String> input;
+	protected final BiConsumer<DiscreteGroundWater, String> output;
+	protected final Function<DiscreteGroundWaterBatch, DictionaryColumn> column;
+	protected final Function<DiscreteGroundWaterBatch, int[]> codes;
+	protected final Function<String, String> evaluator = this::invoke;
+
+	protected long rows;
+	protected long changes;
+	protected long invocations;
+	protected long sampledNanos;
+	// bucket n counts sampled invocations costing from 2^(n-1) up to 2^n nanoseconds
+	protected final long[] costHistogram = new long[Long.SIZE + 1];
+
+	/**
+	 * @param name the RDB column the rule produces, used to report the statistics
+	 * @param rule maps the raw value to the RDB value
+	 * @param unmapped the RDB value of a raw value the rule does not recognize, rows mapped to any other value count as changes
+	 * @param input reads the raw value from a row
+	 * @param output writes the RDB value to a row
+	 * @param column the batch column holding the raw values
+	 * @param codes the dictionary code of each row of the batch column
+	 */
+	public RuleStage(String name, Function<String, String> rule, String unmapped,
+			Function<DiscreteGroundWater, String> input, BiConsumer<DiscreteGroundWater, String> output,
+			Function<DiscreteGroundWaterBatch, DictionaryColumn> column, Function<DiscreteGroundWaterBatch, int[]> codes) {
+		this.name = name;
+		this.rule = rule;
+		this.unmapped = unmapped;
+		this.input = input;
+		this.output = output;
+		this.column = column;
+		this.codes = codes;
+	}
+
+	/**
+	 * Maps the raw value of a row through the rule, recording the statistics.
+	 * @param value the raw value
+	 * @return the RDB value
+	 */
+	public String evaluate(String value) {
+		rows++;
+		String result = invoke(value);
+		if (!unmapped.equals(result)) {
+			changes++;
+		}
+		return result;
+	}
+
+	/**
+	 * Records the statistics of a row whose RDB value was decided without the String rule,
+	 * such as from the undecoded bytes of the raw value.
+	 * @param result the RDB value
+	 * @return the RDB value
+	 */
+	public String evaluated(String result) {
+		rows++;
+		invocations++;
+		if (!unmapped.equals(result)) {
+			changes++;
+		}
+		return result;
+	}
+
+	protected String invoke(String value) {
+		String result;
+		if ((invocations++ & (SAMPLE_INTERVAL - 1)) == 0) {
+			long start = System.nanoTime();
+			result = rule.apply(value);
+			long nanos = System.nanoTime() - start;
+			sampledNanos += nanos;
+			costHistogram[Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0))]++;
+		} else {
+			result = rule.apply(value);
+		}
+		return result;
+	}
+
+	/**
+	 * Applies the rule to a row in place.
+	 */
+	public void apply(DiscreteGroundWater domObj) {
+		output.accept(domObj, evaluate(input.apply(domObj)));
+	}
+
+	/**
+	 * Applies the rule once per new dictionary entry of the batch column.
+	 */
+	public void apply(DiscreteGroundWaterBatch batch) {
+		rows += batch.size();
+		DictionaryColumn dictionary = column.apply(batch);
+		dictionary.derive(evaluator);
+		int[] rowCodes = codes.apply(batch);
+		for (int row = 0; row < batch.size(); row++) {
+			if (!unmapped.equals(dictionary.derived(rowCodes[row]))) {
+				changes++;
+			}
+		}
+	}
+
+	/**
+	 * Adds the statistics of the same stage of other rules, such as those of a format worker.
+	 */
+	public void merge(RuleStage other) {
+		rows += other.rows;
+		changes += other.changes;
+		invocations += other.invocations;
+		sampledNanos += other.sampledNanos;
+		for (int b = 0; b < costHistogram.length; b++) {
+			costHistogram[b] += other.costHistogram[b];
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the rows the rule covered
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the rows the rule mapped to a value other than its unmapped value
+	 */
+	public long getChanges() {
+		return changes;
+	}
+
+	/**
+	 * @return the evaluations of the rule, one per row or one per new dictionary entry of a batch
+	 */
+	public long getInvocations() {
+		return invocations;
+	}
+
+	public long getSampledNanos() {
+		return sampledNanos;
+	}
+
+	/**
+	 * @return a copy of the sampled cost histogram, index n counts costs below 2^n nanoseconds
+	 */
+	public long[] getCostHistogram() {
+		return Arrays.copyOf(costHistogram, costHistogram.length);
+	}
+
+	@Override
+	public String toString() {
+		long samples = Arrays.stream(costHistogram).sum();
+		return "RuleStage{" +
+				"name=" + name +
+				", rows=" + rows +
+				", changes=" + changes +
+				", invocations=" + invocations +
+				", sampled=" + samples +
+				", meanSampledNanos=" + (samples == 0 ? 0 : sampledNanos / samples) +
+				'}';
+	}
+}
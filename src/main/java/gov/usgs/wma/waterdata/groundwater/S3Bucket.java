@@ -1,75 +1,608 @@
 package gov.usgs.wma.waterdata.groundwater;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.util.zip.GZIPOutputStream;
 import java.lang.RuntimeException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 /**
  * Manager class for S3 Bucket actions.
  * @author duselman
  */
 public class S3Bucket implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(S3Bucket.class);
+
+	public static final String DIGEST_METADATA = "content-sha256";
+	public static final String ROW_COUNT_METADATA = "row-count";
+	public static final String HEADER_LENGTH_METADATA = "header-length";
+
+	/**
+	 * What to do with an export whose content matches the latest export of its folder.
+	 * PUT uploads it regardless, SKIP leaves the latest as the current file,
+	 * and COPY publishes it under its own name with a server side copy of the latest.
+	 */
+	public enum Unchanged {
+		PUT, SKIP, COPY;
+
+		public static Unchanged forName(String name) {
+			return name == null || name.isBlank() ? PUT : valueOf(name.trim().toUpperCase());
+		}
+	}
 
 	protected String region;
 	protected String bucket;
 	protected String keyName;
 	protected File file;
 	protected Writer writer;
+	protected OutputStream stream;
+	protected OutputCodec codec;
+	protected int partSize;
+	protected int partsInFlight;
+	protected int uploadThreads;
+	protected long uploadThreshold;
+	protected S3MultipartOutputStream upload;
+	protected TempStorage tempStorage;
+	protected boolean staged;
+	protected StagingOutputStream staging;
+	protected AwsClients clients;
+	protected Unchanged unchanged = Unchanged.PUT;
+	protected String previousPrefix;
+	protected String previousTail;
+	protected MessageDigest digest;
+	protected String contentDigest;
+	protected long rowCount = -1;
+	protected String unchangedKey;
+	protected byte[] header;
+	protected long headerLength = -1;
+	protected CountingOutputStream encodedCount;
+	protected CountingOutputStream contentCount;
+	protected boolean digestEncoded;
+	protected String encodedDigest;
 
 	S3Bucket(String region, String bucket, String keyName, File file) {
+		this(region, bucket, keyName, file, OutputCodecs.forName(OutputCodecs.GZIP, 0));
+	}
+
+	/**
+	 * @param codec the encoding of the temp file, whose suffix the key name already carries
+	 */
+	S3Bucket(String region, String bucket, String keyName, File file, OutputCodec codec) {
 		this.region = region;
 		this.bucket = bucket;
 		this.keyName = keyName;
 		this.file = file;
+		this.codec = codec;
+	}
+
+	/**
+	 * Streams the encoded file to S3 with a multipart upload instead of a temp file.
+	 * @param codec the encoding of the file, whose suffix the key name already carries
+	 * @param partSize the bytes per upload part
+	 * @param partsInFlight the number of part buffers
+	 */
+	S3Bucket(String region, String bucket, String keyName, OutputCodec codec, int partSize, int partsInFlight) {
+		this(region, bucket, keyName, null, codec);
+		this.partSize = partSize;
+		this.partsInFlight = partsInFlight;
+	}
+
+	/**
+	 * Uploads parts in parallel, the parts of a streaming upload or of a staged file over the threshold.
+	 * @param threads the parts uploaded at once, zero for a single put of a staged file
+	 * @param threshold the staged file size from which it is uploaded in parts
+	 * @param partSize the bytes per part
+	 * @return this bucket
+	 */
+	S3Bucket withParallelUpload(int threads, long threshold, int partSize) {
+		this.uploadThreads = threads;
+		this.uploadThreshold = threshold;
+		this.partSize = partSize;
+		return this;
+	}
+
+	/**
+	 * Records the /tmp usage of the temp file with the storage that created it,
+	 * or draws the part buffers of a streaming upload from its pool.
+	 * @return this bucket
+	 */
+	S3Bucket withTempStorage(TempStorage tempStorage) {
+		this.tempStorage = tempStorage;
+		return this;
+	}
+
+	/**
+	 * Stages the encoded file through the storage, in memory, in /tmp or streaming, instead of a temp file.
+	 * Used with the constructor without a file, whose part settings serve the streaming fallback.
+	 * @return this bucket
+	 */
+	S3Bucket withStaging(TempStorage tempStorage) {
+		this.tempStorage = tempStorage;
+		this.staged = true;
+		return this;
+	}
+
+	/**
+	 * Uses the container's shared S3 client rather than building one for this file.
+	 * @param clients the client registry, null to build a client
+	 * @return this bucket
+	 */
+	S3Bucket withClients(AwsClients clients) {
+		this.clients = clients;
+		return this;
+	}
+
+	/**
+	 * Digests the uncompressed content as it is written and compares it with the latest export of the folder,
+	 * the objects named previousPrefix, a timestamp, then previousTail.
+	 * @param unchanged what to do when the content matches, PUT to only record the digest
+	 * @param previousPrefix the key name up to its timestamp
+	 * @param previousTail the key name after its timestamp
+	 * @return this bucket
+	 */
+	S3Bucket withUnchangedCheck(Unchanged unchanged, String previousPrefix, String previousTail) {
+		this.unchanged = unchanged;
+		this.previousPrefix = previousPrefix;
+		this.previousTail = previousTail;
+		return this;
+	}
+
+	/**
+	 * Writes the header as its own encoded member ahead of the data, which then leaves the header out,
+	 * recording the member length in the object metadata so the data can be copied without the header.
+	 * Applies to getWriter and getOutputStream, not to the member stream.
+	 * @param header the RDB header bytes
+	 * @return this bucket
+	 */
+	S3Bucket withHeaderMember(byte[] header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Digests the encoded file as it is written, for the manifest of the export.
+	 * @return this bucket
+	 */
+	S3Bucket withEncodedDigest() {
+		this.digestEncoded = true;
+		return this;
 	}
 
 	public String getKeyName() {
 		return keyName;
 	}
 
+	/**
+	 * @return the existing key the export matched when its upload was skipped, otherwise null
+	 */
+	public String getUnchangedKey() {
+		return unchangedKey;
+	}
+
+	/**
+	 * @return the base64 SHA-256 of the uncompressed content once sent, null when not digested
+	 */
+	public String getContentDigest() {
+		return contentDigest;
+	}
+
+	/**
+	 * @return the encoded bytes that reached the destination so far, behind what was written by the encoder's buffer
+	 */
+	public long getEncodedBytes() {
+		return encodedCount == null ? 0 : encodedCount.count;
+	}
+
+	/**
+	 * @return the bytes written before encoding, negative for the member stream, which copies encoded members
+	 */
+	public long getContentBytes() {
+		if (contentCount == null) {
+			return -1;
+		}
+		return contentCount.count + (header == null ? 0 : header.length);
+	}
+
+	/**
+	 * @return the base64 SHA-256 of the encoded file once sent when digested, as stored unless the upload was skipped
+	 */
+	public String getEncodedDigest() {
+		return encodedDigest;
+	}
+
+	/**
+	 * Closes the file, or aborts a streaming upload that was not sent so no partial file is published.
+	 * The encoder of an aborted upload is still closed to release its threads and deflaters,
+	 * the stream dropping what it flushes.
+	 */
 	@Override
 	public void close() throws Exception {
 		try {
-			if (writer != null) {
+			if (upload != null && !upload.isCompleted()) {
+				upload.abort();
+				try {
+					if (writer != null) {
+						writer.close();
+					} else if (stream != null) {
+						stream.close();
+					}
+				} catch (IOException | RuntimeException e) {
+					LOG.debug("Error closing the encoder of the aborted upload of {}", keyName, e);
+				}
+			} else if (writer != null) {
 				writer.close();
+			} else if (stream != null) {
+				stream.close();
 			}
 		} finally {
+			if (staging != null) {
+				staging.discard();
+			}
 			if (file != null) {
 				file.delete();
 			}
+			if (tempStorage != null) {
+				LOG.info("Peak /tmp staging of {} bytes of the {} budget", tempStorage.getPeak(), tempStorage.getBudget());
+			}
 		}
 	}
 
 	protected AmazonS3 buildS3() {
+		if (clients != null) {
+			return clients.getS3();
+		}
 		return AmazonS3ClientBuilder.standard().withRegion(region).build();
 	}
 
 	public PutObjectResult sendS3() {
+		return sendS3(-1);
+	}
+
+	/**
+	 * Closes the file and sends it to S3, unless its content matches the latest export of the folder.
+	 * @param rowCount the data rows of the file, recorded with its digest, negative if unknown
+	 * @return the result of the put, or of the matched object when skipped
+	 */
+	public PutObjectResult sendS3(long rowCount) {
 		try {
-			writer.close();
+			if (writer != null) {
+				writer.close();
+			} else {
+				stream.close();
+			}
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to close the temp file before sending to s3.");
 		}
-		AmazonS3 s3 = buildS3();
-		return s3.putObject(bucket, keyName, file);
+		this.rowCount = rowCount;
+		if (encodedCount != null && encodedCount.digest != null) {
+			encodedDigest = Base64.getEncoder().encodeToString(encodedCount.digest.digest());
+		}
+		AmazonS3 s3 = null;
+		if (digest != null) {
+			contentDigest = Base64.getEncoder().encodeToString(digest.digest());
+			s3 = buildS3();
+			PutObjectResult matched = sendUnchanged(s3);
+			if (matched != null) {
+				if (upload != null) {
+					upload.abort();
+				}
+				return matched;
+			}
+		}
+		if (upload != null) {
+			PutObjectResult result = toPutObjectResult(upload.complete());
+			if (contentDigest != null) {
+				// the upload began before the digest was known, copying the object onto itself to add it
+				// would re-copy every byte, so the next export of the folder is uploaded rather than matched
+				LOG.warn("Content digest of {} not recorded, it outgrew the staging and streamed", keyName);
+			}
+			return result;
+		}
+		if (s3 == null) {
+			s3 = buildS3();
+		}
+		File stagedFile = file;
+		if (staging != null) {
+			stagedFile = staging.getFile();
+			if (stagedFile == null) {
+				return putStagedMemory(s3);
+			}
+		} else if (tempStorage != null) {
+			tempStorage.record(file.length());
+		}
+		if (uploadThreads > 0 && stagedFile.length() > uploadThreshold) {
+			CompleteMultipartUploadResult completed = new S3PartUploader(s3, uploadThreads, partSize,
+					S3PartUploader.DEFAULT_ATTEMPTS, S3PartUploader.DEFAULT_BACKOFF_MILLIS)
+					.upload(bucket, keyName, stagedFile, buildMetadata());
+			return toPutObjectResult(completed);
+		}
+		return s3.putObject(new PutObjectRequest(bucket, keyName, stagedFile).withMetadata(buildMetadata()));
+	}
+
+	/**
+	 * Compares the digest with that of the latest export of the folder.
+	 * @return the result standing in for the put when the content matched and was not put, otherwise null
+	 */
+	protected PutObjectResult sendUnchanged(AmazonS3 s3) {
+		if (unchanged == Unchanged.PUT) {
+			return null;
+		}
+		String latest = findLatestKey(s3);
+		if (latest == null) {
+			return null;
+		}
+		ObjectMetadata previous = s3.getObjectMetadata(bucket, latest);
+		if (!contentDigest.equals(previous.getUserMetaDataOf(DIGEST_METADATA))) {
+			return null;
+		}
+		PutObjectResult result = new PutObjectResult();
+		if (unchanged == Unchanged.COPY) {
+			CopyObjectResult copied = s3.copyObject(new CopyObjectRequest(bucket, latest, bucket, keyName));
+			LOG.info("Content of {} unchanged from {}, copied", keyName, latest);
+			result.setETag(copied.getETag());
+			result.setVersionId(copied.getVersionId());
+		} else {
+			LOG.info("Content of {} unchanged from {}, not uploaded", keyName, latest);
+			unchangedKey = latest;
+			result.setETag(previous.getETag());
+			result.setVersionId(previous.getVersionId());
+		}
+		return result;
+	}
+
+	/**
+	 * The timestamps in the names sort in time order, so the latest export is the greatest key.
+	 * @return the latest key of the folder other than this one, null if none
+	 */
+	protected String findLatestKey(AmazonS3 s3) {
+		if (previousPrefix == null) {
+			return null;
+		}
+		return findLatestKey(s3, bucket, previousPrefix, previousTail, keyName.length(), keyName);
+	}
+
+	/**
+	 * Finds the latest export of a folder, the greatest key with the prefix and tail and the length of the name.
+	 * @param s3 the client
+	 * @param bucket the bucket of the exports
+	 * @param prefix the key name up to its timestamp
+	 * @param tail the key name after its timestamp
+	 * @param length the length of the key names of the folder
+	 * @param excluded a key left out of the search, null for none
+	 * @return the latest key, null if none
+	 */
+	public static String findLatestKey(AmazonS3 s3, String bucket, String prefix, String tail, int length,
+			String excluded) {
+		String latest = null;
+		ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucket).withPrefix(prefix);
+		ListObjectsV2Result listing;
+		do {
+			listing = s3.listObjectsV2(request);
+			for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+				String key = summary.getKey();
+				if (!key.equals(excluded) && key.endsWith(tail)
+						&& key.length() == length && (latest == null || key.compareTo(latest) > 0)) {
+					latest = key;
+				}
+			}
+			request.setContinuationToken(listing.getNextContinuationToken());
+		} while (listing.isTruncated());
+		return latest;
+	}
+
+	protected PutObjectResult putStagedMemory(AmazonS3 s3) {
+		ObjectMetadata metadata = buildMetadata();
+		metadata.setContentLength(staging.length());
+		try {
+			return s3.putObject(new PutObjectRequest(bucket, keyName, staging.openInputStream(), metadata));
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to read the staged file of " + keyName, e);
+		}
+	}
+
+	protected PutObjectResult toPutObjectResult(CompleteMultipartUploadResult completed) {
+		PutObjectResult result = new PutObjectResult();
+		result.setETag(completed.getETag());
+		result.setVersionId(completed.getVersionId());
+		return result;
+	}
+
+	protected ObjectMetadata buildMetadata() {
+		ObjectMetadata metadata = new ObjectMetadata();
+		if (codec.getContentEncoding() != null) {
+			metadata.setContentEncoding(codec.getContentEncoding());
+		}
+		if (contentDigest != null) {
+			metadata.addUserMetadata(DIGEST_METADATA, contentDigest);
+			if (rowCount >= 0) {
+				metadata.addUserMetadata(ROW_COUNT_METADATA, Long.toString(rowCount));
+			}
+		}
+		if (headerLength >= 0) {
+			metadata.addUserMetadata(HEADER_LENGTH_METADATA, Long.toString(headerLength));
+		}
+		return metadata;
 	}
 
 	public Writer getWriter() {
 		try {
-			FileOutputStream fos = new FileOutputStream(file);
-			GZIPOutputStream gzo = new GZIPOutputStream(fos);
-			writer = new OutputStreamWriter(gzo);
+			writer = new OutputStreamWriter(openEncoded());
 			return writer;
 		} catch (IOException ioe) {
 			throw new RuntimeException("Cannot open temp file from the current runtime env.");
 		}
 	}
+
+	/**
+	 * The byte oriented alternative to getWriter for encoders that write bytes directly.
+	 * Only one of getWriter or getOutputStream should be used for a given file.
+	 * @return buffered stream to the encoded temp file
+	 */
+	public OutputStream getOutputStream() {
+		try {
+			stream = new BufferedOutputStream(openEncoded(), 64 * 1024);
+			return stream;
+		} catch (IOException ioe) {
+			throw new RuntimeException("Cannot open temp file from the current runtime env.");
+		}
+	}
+
+	/**
+	 * The alternative to getOutputStream that writes the gzip file as a member per segment.
+	 * The content of the members is not digested for the unchanged check.
+	 * A first member of the header is recorded as the header member, as withHeaderMember does.
+	 * @return the member stream to the temp file
+	 */
+	public GzipMemberOutputStream getMemberOutputStream() {
+		if (!(codec instanceof OutputCodecs.Gzip)) {
+			throw new RuntimeException("Segmented files are gzip, not " + codec.getName());
+		}
+		try {
+			GzipMemberOutputStream members = new GzipMemberOutputStream(
+					new BufferedOutputStream(openCounted(), 64 * 1024), ((OutputCodecs.Gzip) codec).getLevel()) {
+				@Override
+				public void endMember(long rows) throws IOException {
+					super.endMember(rows);
+					if (members.size() == 1 && SegmentedExport.HEADER_KEY.equals(members.get(0).getKey())) {
+						recordHeaderLength(members.get(0).getLength());
+					}
+				}
+			};
+			stream = members;
+			return members;
+		} catch (IOException ioe) {
+			throw new RuntimeException("Cannot open temp file from the current runtime env.");
+		}
+	}
+
+	/**
+	 * Records the length of the header member in the object metadata, which a streaming upload
+	 * sends when its first part is full, after the header member.
+	 */
+	protected void recordHeaderLength(long length) {
+		headerLength = length;
+		if (upload != null) {
+			if (upload.uploadId != null) {
+				LOG.warn("Header member of {} ended after its upload began, its length is not recorded", keyName);
+			}
+			upload.metadata.addUserMetadata(HEADER_LENGTH_METADATA, Long.toString(length));
+		}
+	}
+
+	/**
+	 * Opens the encoded destination, digesting the content written to it when checking for unchanged exports.
+	 * The header member is encoded before the destination opens so that its length is in the upload metadata.
+	 */
+	protected OutputStream openEncoded() throws IOException {
+		byte[] headerMember = null;
+		if (header != null) {
+			ByteArrayOutputStream member = new ByteArrayOutputStream();
+			try (OutputStream encodedHeader = codec.encode(member)) {
+				encodedHeader.write(header);
+			}
+			headerMember = member.toByteArray();
+			headerLength = headerMember.length;
+		}
+		OutputStream destination = openCounted();
+		if (headerMember != null) {
+			destination.write(headerMember);
+		}
+		OutputStream encoded = new CountingOutputStream(codec.encode(destination), null);
+		contentCount = (CountingOutputStream) encoded;
+		if (previousPrefix == null) {
+			return encoded;
+		}
+		digest = sha256();
+		return new DigestOutputStream(encoded, digest);
+	}
+
+	/**
+	 * Opens the destination, counting the encoded bytes that reach it and digesting them when asked to.
+	 */
+	protected OutputStream openCounted() throws IOException {
+		encodedCount = new CountingOutputStream(openDestination(), digestEncoded ? sha256() : null);
+		return encodedCount;
+	}
+
+	protected static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("No SHA-256 digest in this runtime.", e);
+		}
+	}
+
+	/**
+	 * Counts the bytes written through it, digesting them when given a digest.
+	 */
+	protected static class CountingOutputStream extends FilterOutputStream {
+		protected final MessageDigest digest;
+		protected long count;
+
+		public CountingOutputStream(OutputStream out, MessageDigest digest) {
+			super(out);
+			this.digest = digest;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			if (digest != null) {
+				digest.update((byte) b);
+			}
+			count++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			out.write(bytes, offset, length);
+			if (digest != null) {
+				digest.update(bytes, offset, length);
+			}
+			count += length;
+		}
+	}
+
+	/**
+	 * Opens the destination of the encoded file, in staging, a streaming upload or the temp file.
+	 */
+	protected OutputStream openDestination() throws IOException {
+		if (staged) {
+			staging = tempStorage.open(keyName, () -> {
+				upload = new S3MultipartOutputStream(buildS3(), bucket, keyName, buildMetadata(), partSize, partsInFlight,
+						uploadThreads, tempStorage);
+				return upload;
+			});
+			return staging;
+		} else if (file == null) {
+			upload = new S3MultipartOutputStream(buildS3(), bucket, keyName, buildMetadata(), partSize, partsInFlight,
+					uploadThreads, tempStorage);
+			return upload;
+		}
+		return new FileOutputStream(file);
+	}
 }
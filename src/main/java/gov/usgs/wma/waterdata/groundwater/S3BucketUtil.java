@@ -2,6 +2,12 @@ package gov.usgs.wma.waterdata.groundwater;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
@@ -9,6 +15,8 @@ import org.joda.time.format.DateTimeFormat;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.amazonaws.services.s3.AmazonS3;
+
 /**
  * Manager class for S3 Bucket actions.
  * @author duselman
@@ -16,11 +24,30 @@ import org.springframework.stereotype.Component;
 @Component
 public class S3BucketUtil {
 
+	// the timestamp createFilename puts in the name
+	private static final Pattern TIMESTAMP = Pattern.compile("\\d{8}_\\d{6}");
+	private static final DateTimeFormatter RUN_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
 	@Autowired
 	private Properties properties;
 
+	// shared clients, absent outside the application context
+	@Autowired(required = false)
+	private AwsClients awsClients;
+
+	private final TempStorage tempStorage;
+
 	S3BucketUtil(Properties properties) {
 		this.properties = properties;
+		this.tempStorage = new TempStorage(properties);
+	}
+
+	/**
+	 * @param awsClients the clients the files are sent with
+	 */
+	S3BucketUtil(Properties properties, AwsClients awsClients) {
+		this(properties);
+		this.awsClients = awsClients;
 	}
 
 	/**
@@ -31,17 +58,31 @@ public class S3BucketUtil {
 	 * @return a file name for an RDB file.
 	 */
 	public String createFilename(String suffix) {
+		String metadata = createTimestamp();
+
+		// the codec suffix, .gz by default, added in temp file create
+		// ts is not joined with a dot while all the others are joined by a dot
+		return "ts" + String.join(".", tierName(), suffix.toUpperCase(), "gw_lev_01.06", metadata, "full.rdb");
+	}
+
+	/**
+	 * @return the tier as named in the files, test, qa or pr
+	 */
+	public String tierName() {
 		String tier = "test";
 		if ("QA".equals(properties.getTier())) {
 			tier = "qa";
 		} else if (properties.getTier().toLowerCase().startsWith("prod")) {
 			tier = "pr";
 		}
-		String metadata = DateTime.now().toString(DateTimeFormat.forPattern("YYYYMMdd_HHmmss"));
+		return tier;
+	}
 
-		// .gz added in temp file create
-		// ts is not joined with a dot while all the others are joined by a dot
-		return "ts" + String.join(".", tier, suffix.toUpperCase(), "gw_lev_01.06", metadata, "full.rdb");
+	/**
+	 * @return the current time as named in the files, for example 20200715_030500
+	 */
+	public String createTimestamp() {
+		return DateTime.now().toString(DateTimeFormat.forPattern("YYYYMMdd_HHmmss"));
 	}
 
 	/**
@@ -50,11 +91,148 @@ public class S3BucketUtil {
 	 * @return writer instance
 	 */
 	public S3Bucket openS3(String filename) {
-		try {
-			File tempFile = File.createTempFile(filename, ".gz");
-			return new S3Bucket(properties.getRegion(), properties.getBucket(), filename+".gz", tempFile);
-		} catch (IOException e) {
-			throw new RuntimeException("Cannot open temp file from the current runtime env.");
+		return openS3(filename, null);
+	}
+
+	/**
+	 * Constructs a file writer to an S3 Bucket, encoding the file with the given codec.
+	 * Each invocation opens one file, so opening one begins the staging of a new invocation.
+	 * @param filename unique name for the RDB file, the codec suffix is added to it
+	 * @param codec the codec specification, null for the configured codec
+	 * @return writer instance
+	 */
+	public S3Bucket openS3(String filename, String codec) {
+		beginInvocation();
+		return openS3Part(filename, codec);
+	}
+
+	/**
+	 * Begins the staging of a new invocation, deleting any file left by an earlier one.
+	 */
+	public void beginInvocation() {
+		tempStorage.beginInvocation();
+	}
+
+	/**
+	 * Constructs a file writer to an S3 Bucket for another file of the current invocation,
+	 * such as the parts of a split folder, which are open at once.
+	 * @param filename unique name for the RDB file, the codec suffix is added to it
+	 * @param codec the codec specification, null for the configured codec
+	 * @return writer instance
+	 */
+	public S3Bucket openS3Part(String filename, String codec) {
+		OutputCodec outputCodec = OutputCodecs.forName(codec == null ? properties.getCodec() : codec,
+				properties.getGzipThreads());
+		int partSize = Math.max(properties.getPartSize(), S3MultipartOutputStream.MIN_PART_SIZE);
+		S3Bucket s3Bucket;
+		if (properties.isStaging()) {
+			s3Bucket = new S3Bucket(properties.getRegion(), properties.getBucket(), filename + outputCodec.getSuffix(), outputCodec,
+					partSize, properties.getPartsInFlight())
+					.withStaging(tempStorage);
+		} else if (properties.isStreamingUpload()) {
+			s3Bucket = new S3Bucket(properties.getRegion(), properties.getBucket(), filename + outputCodec.getSuffix(), outputCodec,
+					partSize, properties.getPartsInFlight())
+					.withTempStorage(tempStorage);
+		} else {
+			try {
+				File tempFile = tempStorage.createTempFile(filename, outputCodec.getSuffix().isEmpty() ? null : outputCodec.getSuffix());
+				s3Bucket = new S3Bucket(properties.getRegion(), properties.getBucket(), filename + outputCodec.getSuffix(), tempFile,
+						outputCodec)
+						.withTempStorage(tempStorage);
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot open temp file from the current runtime env.");
+			}
+		}
+		s3Bucket.withParallelUpload(properties.getUploadThreads(), properties.getUploadThreshold(), partSize)
+				.withClients(awsClients);
+		if (properties.isManifest()) {
+			s3Bucket.withEncodedDigest();
+		}
+		if (properties.isHeaderMember()) {
+			s3Bucket.withHeaderMember(RdbSchema.readHeader());
+		}
+		S3Bucket.Unchanged unchanged = S3Bucket.Unchanged.forName(properties.getUnchangedUploads());
+		Matcher timestamp = TIMESTAMP.matcher(filename);
+		if (unchanged != S3Bucket.Unchanged.PUT && timestamp.find()) {
+			s3Bucket.withUnchangedCheck(unchanged, filename.substring(0, timestamp.start()),
+					filename.substring(timestamp.end()) + outputCodec.getSuffix());
+		}
+		return s3Bucket;
+	}
+
+	/**
+	 * The name of a part of a split folder file, numbered from 1 within its site hash partition.
+	 * Sample file names: tstest.CA.gw_lev_01.06.20200715_030500.full.part001.rdb
+	 * and, with 4 partitions, tstest.CA.gw_lev_01.06.20200715_030500.full.hash2of4.part001.rdb
+	 * @param filename the RDB file name of the folder
+	 * @param partition the site hash partition, from 0
+	 * @param partitions the number of partitions, 1 or less for none
+	 * @param sequence the number of the part within its partition
+	 * @return the name of the part
+	 */
+	public String partFilename(String filename, int partition, int partitions, int sequence) {
+		String base = filename.substring(0, filename.length() - ".rdb".length());
+		String hash = partitions > 1 ? String.format(".hash%dof%d", partition, partitions) : "";
+		return base + hash + String.format(".part%03d", sequence) + ".rdb";
+	}
+
+	/**
+	 * The name of a product file of a folder, its product in place of full.
+	 * Sample file name: tstest.CA.gw_lev_01.06.20200715_030500.recent120.rdb
+	 * @param filename the RDB file name of the folder
+	 * @param product the product name
+	 * @return the name of the product file
+	 */
+	public String productFilename(String filename, String product) {
+		String base = filename.substring(0, filename.length() - "full.rdb".length());
+		return base + product + ".rdb";
+	}
+
+	/**
+	 * The key of the segment index of a folder, its file name up to the timestamp then segments.
+	 * Sample key: tstest.CA.gw_lev_01.06.segments
+	 * @param filename an RDB file name of the folder
+	 * @return the key of the index kept beside the files of the folder
+	 */
+	public String segmentIndexKey(String filename) {
+		return filename.substring(0, timestamp(filename).start()) + "segments";
+	}
+
+	/**
+	 * Finds the latest RDB file of a folder, as named by createFilename with the codec suffix.
+	 * @param s3 the client
+	 * @param suffix the label of the folder files
+	 * @param codec the encoding of the files
+	 * @return the key of the latest file, null if the folder has none
+	 */
+	public String findLatestFile(AmazonS3 s3, String suffix, OutputCodec codec) {
+		String filename = createFilename(suffix);
+		Matcher timestamp = timestamp(filename);
+		return S3Bucket.findLatestKey(s3, properties.getBucket(), filename.substring(0, timestamp.start()),
+				filename.substring(timestamp.end()) + codec.getSuffix(), filename.length() + codec.getSuffix().length(), null);
+	}
+
+	/**
+	 * @param filename a file name or key as named by createFilename
+	 * @return the timestamp in the name, which sorts in time order
+	 */
+	public String fileTimestamp(String filename) {
+		return timestamp(filename).group();
+	}
+
+	/**
+	 * @param run a timestamp as createTimestamp makes, in the zone of the runtime
+	 * @return the instant of the timestamp
+	 */
+	public Instant runStart(String run) {
+		return LocalDateTime.parse(run, RUN_FORMAT).atZone(ZoneId.systemDefault()).toInstant();
+	}
+
+	private Matcher timestamp(String filename) {
+		Matcher timestamp = TIMESTAMP.matcher(filename);
+		if (!timestamp.find()) {
+			throw new RuntimeException("No timestamp in the RDB file name " + filename);
 		}
+		return timestamp;
 	}
 }
@@ -0,0 +1,328 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+/**
+ * Streams bytes to an S3 object with a multipart upload rather than through a temp file.
+ * Bytes fill off-heap part buffers and each full part is uploaded on a background thread,
+ * retried with backoff if it fails, while the next fills, so the upload overlaps the export and memory is capped at
+ * parts in flight times the part size. Writes block while every buffer is in flight.
+ * Buffers are taken as the parts need them, from the pool of the TempStorage when given one,
+ * and go back to it once the parts are uploaded, so a small file holds a single buffer.
+ * Close uploads the last part and waits for the parts; the object only appears once complete
+ * is called, and abort discards the parts of a failed export.
+ * Once aborted, writes are dropped and close returns, so the encoder over the stream can still be closed.
+ */
+public class S3MultipartOutputStream extends OutputStream {
+	private static final Logger LOG = LoggerFactory.getLogger(S3MultipartOutputStream.class);
+
+	// S3 rejects smaller parts other than the last
+	public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+	private static final long POLL_MILLIS = 100;
+
+	protected final AmazonS3 s3;
+	protected final String bucket;
+	protected final String keyName;
+	protected final ObjectMetadata metadata;
+	protected final ArrayBlockingQueue<ByteBuffer> free;
+	protected final TempStorage storage;
+	protected final int partSize;
+	protected final int buffers;
+	protected int allocated;
+	protected final ExecutorService uploader;
+	protected final List<Future<PartETag>> parts = new ArrayList<>();
+	protected ByteBuffer part;
+	protected String uploadId;
+	protected List<PartETag> partETags;
+	protected boolean closed;
+	protected boolean completed;
+	protected boolean aborted;
+
+	/**
+	 * @param s3 the S3 client
+	 * @param bucket the destination bucket
+	 * @param keyName the destination key
+	 * @param metadata the object metadata given when the upload starts
+	 * @param partSize the bytes per part, at least MIN_PART_SIZE for S3 itself
+	 * @param partsInFlight the number of part buffers, one filling and the rest uploading
+	 */
+	public S3MultipartOutputStream(AmazonS3 s3, String bucket, String keyName, ObjectMetadata metadata,
+			int partSize, int partsInFlight) {
+		this(s3, bucket, keyName, metadata, partSize, partsInFlight, 1);
+	}
+
+	/**
+	 * @param threads the parts uploaded at once, no more than the part buffers less the one filling
+	 */
+	public S3MultipartOutputStream(AmazonS3 s3, String bucket, String keyName, ObjectMetadata metadata,
+			int partSize, int partsInFlight, int threads) {
+		this(s3, bucket, keyName, metadata, partSize, partsInFlight, threads, null);
+	}
+
+	/**
+	 * @param storage the pool of part buffers, null to allocate them for this stream
+	 */
+	public S3MultipartOutputStream(AmazonS3 s3, String bucket, String keyName, ObjectMetadata metadata,
+			int partSize, int partsInFlight, int threads, TempStorage storage) {
+		this.s3 = s3;
+		this.bucket = bucket;
+		this.keyName = keyName;
+		this.metadata = metadata;
+		this.storage = storage;
+		this.partSize = partSize;
+		this.buffers = Math.max(2, partsInFlight);
+		this.free = new ArrayBlockingQueue<>(buffers);
+		AtomicInteger count = new AtomicInteger();
+		this.uploader = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+			Thread thread = new Thread(r, "s3-upload-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		part = allocate();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (aborted) {
+			return;
+		}
+		if (!part.hasRemaining()) {
+			uploadPart();
+		}
+		part.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0 && !aborted) {
+			if (!part.hasRemaining()) {
+				uploadPart();
+			}
+			int count = Math.min(length, part.remaining());
+			part.put(bytes, offset, count);
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Uploads the last part and waits for every part to upload.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (aborted) {
+			return;
+		}
+		if (part.position() > 0 || parts.isEmpty()) {
+			uploadPart();
+		}
+		partETags = new ArrayList<>(parts.size());
+		for (Future<PartETag> uploaded : parts) {
+			partETags.add(await(uploaded));
+		}
+		uploader.shutdown();
+		recycle();
+	}
+
+	/**
+	 * Makes the object visible in the bucket once the stream is closed.
+	 * @return the result of the completed upload
+	 */
+	public CompleteMultipartUploadResult complete() {
+		if (!closed || aborted) {
+			throw new IllegalStateException("The upload of " + keyName + " is not closed.");
+		}
+		CompleteMultipartUploadResult result = s3.completeMultipartUpload(
+				new CompleteMultipartUploadRequest(bucket, keyName, uploadId, partETags));
+		completed = true;
+		return result;
+	}
+
+	/**
+	 * Discards the parts uploaded so far, leaving nothing in the bucket.
+	 */
+	public void abort() {
+		if (completed || aborted) {
+			return;
+		}
+		aborted = true;
+		uploader.shutdownNow();
+		// the buffers of parts still uploading are left to the collector
+		recycle();
+		if (uploadId != null) {
+			try {
+				s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, keyName, uploadId));
+			} catch (RuntimeException e) {
+				LOG.error("Unable to abort the upload of {}, the bucket lifecycle rule must remove its parts", keyName, e);
+			}
+		}
+	}
+
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	protected void uploadPart() throws IOException {
+		if (aborted) {
+			throw new IOException("The upload of " + keyName + " was aborted.");
+		}
+		if (uploadId == null) {
+			uploadId = s3.initiateMultipartUpload(
+					new InitiateMultipartUploadRequest(bucket, keyName, metadata)).getUploadId();
+		}
+		ByteBuffer full = part;
+		full.flip();
+		int partNumber = parts.size() + 1;
+		parts.add(uploader.submit(() -> upload(partNumber, full)));
+		if (!closed) {
+			part = claim();
+		}
+	}
+
+	protected PartETag upload(int partNumber, ByteBuffer bytes) {
+		try {
+			return S3PartUploader.withRetry(() -> s3.uploadPart(new UploadPartRequest()
+					.withBucketName(bucket)
+					.withKey(keyName)
+					.withUploadId(uploadId)
+					.withPartNumber(partNumber)
+					.withPartSize(bytes.remaining())
+					.withInputStream(new ByteBufferInputStream(bytes))).getPartETag(),
+					S3PartUploader.DEFAULT_ATTEMPTS, S3PartUploader.DEFAULT_BACKOFF_MILLIS, "part " + partNumber + " of " + keyName);
+		} finally {
+			bytes.clear();
+			free.add(bytes);
+		}
+	}
+
+	/**
+	 * Waits for a free part buffer, taking another while fewer than the part buffers are in use,
+	 * failing if an upload failed meanwhile.
+	 */
+	protected ByteBuffer claim() throws IOException {
+		try {
+			ByteBuffer buffer = free.poll();
+			if (buffer == null && allocated < buffers) {
+				return allocate();
+			}
+			while (buffer == null) {
+				for (Future<PartETag> uploaded : parts) {
+					if (uploaded.isDone()) {
+						await(uploaded);
+					}
+				}
+				buffer = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			return buffer;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting on the upload of " + keyName, e);
+		}
+	}
+
+	protected ByteBuffer allocate() {
+		allocated++;
+		return storage == null ? ByteBuffer.allocateDirect(partSize) : storage.allocatePart(partSize);
+	}
+
+	/**
+	 * Returns the free part buffers to the pool.
+	 */
+	protected void recycle() {
+		if (storage == null) {
+			free.clear();
+			return;
+		}
+		for (ByteBuffer buffer = free.poll(); buffer != null; buffer = free.poll()) {
+			storage.recyclePart(buffer);
+		}
+	}
+
+	protected PartETag await(Future<PartETag> uploaded) throws IOException {
+		try {
+			return uploaded.get();
+		} catch (ExecutionException e) {
+			abort();
+			throw new IOException("Error uploading part of " + keyName, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting on the upload of " + keyName, e);
+		}
+	}
+
+	/**
+	 * Reads a part buffer without copying it to the heap first.
+	 * Mark and reset let the client retry a part from the buffer.
+	 */
+	protected static class ByteBufferInputStream extends InputStream {
+		protected final ByteBuffer bytes;
+
+		protected ByteBufferInputStream(ByteBuffer bytes) {
+			this.bytes = bytes.duplicate();
+		}
+
+		@Override
+		public int read() {
+			return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			if (!bytes.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, bytes.remaining());
+			bytes.get(buffer, offset, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return bytes.remaining();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readLimit) {
+			bytes.mark();
+		}
+
+		@Override
+		public synchronized void reset() {
+			bytes.reset();
+		}
+	}
+}
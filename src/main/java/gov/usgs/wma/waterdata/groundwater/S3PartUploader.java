@@ -0,0 +1,155 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+/**
+ * Uploads a staged file as a multipart upload whose parts go up in parallel, each part read
+ * from its offset in the file, so a large file is not limited to one TCP stream.
+ * A failed part is retried on its own with exponential backoff; the upload is aborted once
+ * a part runs out of attempts.
+ */
+public class S3PartUploader {
+	private static final Logger LOG = LoggerFactory.getLogger(S3PartUploader.class);
+
+	public static final int DEFAULT_ATTEMPTS = 3;
+	public static final long DEFAULT_BACKOFF_MILLIS = 200;
+
+	protected final AmazonS3 s3;
+	protected final int threads;
+	protected final long partSize;
+	protected final int attempts;
+	protected final long backoffMillis;
+	protected double throughput;
+
+	/**
+	 * @param s3 the S3 client
+	 * @param threads the parts uploaded at once
+	 * @param partSize the bytes per part, at least S3MultipartOutputStream.MIN_PART_SIZE for S3 itself
+	 * @param attempts the tries per part
+	 * @param backoffMillis the wait before the first retry, doubled for each retry after
+	 */
+	public S3PartUploader(AmazonS3 s3, int threads, long partSize, int attempts, long backoffMillis) {
+		this.s3 = s3;
+		this.threads = threads;
+		this.partSize = partSize;
+		this.attempts = attempts;
+		this.backoffMillis = backoffMillis;
+	}
+
+	/**
+	 * @param bucket the destination bucket
+	 * @param keyName the destination key
+	 * @param file the staged file
+	 * @param metadata the object metadata
+	 * @return the result of the completed upload
+	 */
+	public CompleteMultipartUploadResult upload(String bucket, String keyName, File file, ObjectMetadata metadata) {
+		long start = System.nanoTime();
+		long length = file.length();
+		String uploadId = s3.initiateMultipartUpload(
+				new InitiateMultipartUploadRequest(bucket, keyName, metadata)).getUploadId();
+		AtomicInteger count = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "s3-upload-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<PartETag>> parts = new ArrayList<>();
+			int partNumber = 1;
+			for (long offset = 0; offset < length || partNumber == 1; offset += partSize, partNumber++) {
+				UploadPartRequest request = new UploadPartRequest()
+						.withBucketName(bucket)
+						.withKey(keyName)
+						.withUploadId(uploadId)
+						.withPartNumber(partNumber)
+						.withFile(file)
+						.withFileOffset(offset)
+						.withPartSize(Math.min(partSize, length - offset));
+				parts.add(pool.submit(() -> withRetry(() -> s3.uploadPart(request).getPartETag(),
+						attempts, backoffMillis, "part " + request.getPartNumber() + " of " + keyName)));
+			}
+			List<PartETag> partETags = new ArrayList<>(parts.size());
+			for (Future<PartETag> part : parts) {
+				partETags.add(part.get());
+			}
+			CompleteMultipartUploadResult result = s3.completeMultipartUpload(
+					new CompleteMultipartUploadRequest(bucket, keyName, uploadId, partETags));
+			throughput = length / ((System.nanoTime() - start) / 1e9) / (1 << 20);
+			LOG.info("Uploaded {} bytes of {} in {} parts on {} threads at {} MB/s",
+					length, keyName, partETags.size(), threads, String.format("%.1f", throughput));
+			return result;
+		} catch (ExecutionException | RuntimeException e) {
+			abort(bucket, keyName, uploadId);
+			throw new RuntimeException("Error uploading " + keyName, e instanceof ExecutionException ? e.getCause() : e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort(bucket, keyName, uploadId);
+			throw new RuntimeException("Interrupted uploading " + keyName, e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	protected void abort(String bucket, String keyName, String uploadId) {
+		try {
+			s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, keyName, uploadId));
+		} catch (RuntimeException e) {
+			LOG.error("Unable to abort the upload of {}, the bucket lifecycle rule must remove its parts", keyName, e);
+		}
+	}
+
+	/**
+	 * @return the MB/s of the last completed upload
+	 */
+	public double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * Calls S3, retrying client and service errors with exponential backoff.
+	 * @param call the request to make
+	 * @param attempts the tries before giving up
+	 * @param backoffMillis the wait before the first retry, doubled for each retry after
+	 * @param description what is being sent, for the log
+	 */
+	public static <T> T withRetry(Supplier<T> call, int attempts, long backoffMillis, String description) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return call.get();
+			} catch (AmazonClientException e) {
+				if (attempt >= attempts) {
+					throw e;
+				}
+				LOG.warn("Retrying {} after attempt {} failed: {}", description, attempt, e.getMessage());
+				try {
+					Thread.sleep(backoffMillis << (attempt - 1));
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+}
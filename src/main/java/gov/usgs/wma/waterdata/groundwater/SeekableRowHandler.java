@@ -0,0 +1,104 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Writes the fetched rows as gzip members that begin at site boundaries, recording the member of each site.
+ * A member holds consecutive sites until its uncompressed size reaches the member size, then ends with
+ * the site being written; a member size of zero gives each site its own member.
+ * Call finish after the query completes.
+ */
+public class SeekableRowHandler implements RowCallbackHandler {
+
+	protected final RowCallbackHandler rows;
+	protected final RdbWriter writer;
+	protected final GzipMemberOutputStream out;
+	protected final long memberSize;
+	protected final List<SiteOffsetIndex.Entry> sites = new ArrayList<>();
+	protected final List<SiteOffsetIndex.Entry> memberSites = new ArrayList<>();
+	protected String site;
+	protected long siteStartRows;
+	protected boolean inMember;
+
+	/**
+	 * @param rows the handler that writes the RDB rows of a site to the writer
+	 * @param writer the RDB writer, writing to the member stream
+	 * @param out the member stream of the file
+	 * @param memberSize the uncompressed bytes after which a member ends at the next site
+	 */
+	public SeekableRowHandler(RowCallbackHandler rows, RdbWriter writer, GzipMemberOutputStream out, long memberSize) {
+		this.rows = rows;
+		this.writer = writer;
+		this.out = out;
+		this.memberSize = memberSize;
+	}
+
+	@Override
+	public void processRow(ResultSet rs) throws SQLException {
+		String rowSite = rs.getString(SegmentRowHandler.SITE_COLUMN);
+		if (!rowSite.equals(site)) {
+			try {
+				endSite();
+				if (!inMember) {
+					out.beginMember(rowSite, "");
+					inMember = true;
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Error writing the member of site " + rowSite, e);
+			}
+			site = rowSite;
+			siteStartRows = writer.getDataRowCount();
+		}
+		rows.processRow(rs);
+	}
+
+	/**
+	 * Ends the last member.
+	 * @return the member of each site, in file order
+	 */
+	public SiteOffsetIndex finish() {
+		try {
+			endSite();
+			if (inMember) {
+				endMember();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing the members of the RDB file.", e);
+		}
+		return new SiteOffsetIndex(sites);
+	}
+
+	protected void endSite() throws IOException {
+		if (site == null) {
+			return;
+		}
+		writer.flush();
+		memberSites.add(SiteOffsetIndex.Entry.forLocation(site, writer.getDataRowCount() - siteStartRows));
+		site = null;
+		if (out.getMemberSize() >= memberSize) {
+			endMember();
+		}
+	}
+
+	protected void endMember() throws IOException {
+		long rowCount = 0;
+		for (SiteOffsetIndex.Entry entry : memberSites) {
+			rowCount += entry.rows;
+		}
+		out.endMember(rowCount);
+		SegmentIndex.Entry member = out.getMembers().get(out.getMembers().size() - 1);
+		for (SiteOffsetIndex.Entry entry : memberSites) {
+			entry.offset = member.getOffset();
+			entry.length = member.getLength();
+		}
+		sites.addAll(memberSites);
+		memberSites.clear();
+		inMember = false;
+	}
+}
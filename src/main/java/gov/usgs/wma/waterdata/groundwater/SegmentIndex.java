@@ -0,0 +1,150 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The index of the gzip members of an RDB file, kept beside it so the next export of the folder can reuse them.
+ * Stored as tab separated text: a line with the file key and the generation, then a line per member of
+ * its key, fingerprint, offset, length and data rows, in file order.
+ * Members are only reusable by an export of the same generation, which covers the header and formatting.
+ */
+public class SegmentIndex {
+
+	/**
+	 * A gzip member of the file.
+	 */
+	public static class Entry {
+		protected final String key;
+		protected final String fingerprint;
+		protected final long offset;
+		protected final long length;
+		protected final long rows;
+
+		public Entry(String key, String fingerprint, long offset, long length, long rows) {
+			this.key = key;
+			this.fingerprint = fingerprint;
+			this.offset = offset;
+			this.length = length;
+			this.rows = rows;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+	}
+
+	private static final String DELIMITER = "\t";
+
+	protected final String fileKey;
+	protected final String generation;
+	protected final List<Entry> entries;
+	protected final Map<String, Entry> byKey = new HashMap<>();
+
+	/**
+	 * @param fileKey the S3 key of the file the members are in
+	 * @param generation the fingerprint of everything besides the rows that shapes the members
+	 * @param entries the members, in file order
+	 */
+	public SegmentIndex(String fileKey, String generation, List<Entry> entries) {
+		this.fileKey = fileKey;
+		this.generation = generation;
+		this.entries = entries;
+		for (Entry entry : entries) {
+			byKey.put(entry.key, entry);
+		}
+	}
+
+	public String getFileKey() {
+		return fileKey;
+	}
+
+	public String getGeneration() {
+		return generation;
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the member of the given segment, null if the file has none
+	 */
+	public Entry get(String key) {
+		return byKey.get(key);
+	}
+
+	/**
+	 * @return the data rows of all the members
+	 */
+	public long getRows() {
+		return entries.stream().mapToLong(Entry::getRows).sum();
+	}
+
+	public void write(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		writer.write(String.join(DELIMITER, fileKey, generation));
+		writer.write('\n');
+		for (Entry entry : entries) {
+			writer.write(String.join(DELIMITER, entry.key, entry.fingerprint, Long.toString(entry.offset),
+					Long.toString(entry.length), Long.toString(entry.rows)));
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	public static SegmentIndex read(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String line = reader.readLine();
+		if (line == null) {
+			throw new IOException("Empty segment index.");
+		}
+		String[] head = line.split(DELIMITER, -1);
+		if (head.length != 2) {
+			throw new IOException("Invalid segment index header: " + line);
+		}
+		List<Entry> entries = new ArrayList<>();
+		long end = 0;
+		while ((line = reader.readLine()) != null) {
+			String[] fields = line.split(DELIMITER, -1);
+			if (fields.length != 5) {
+				throw new IOException("Invalid segment index entry: " + line);
+			}
+			Entry entry = new Entry(fields[0], fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+					Long.parseLong(fields[4]));
+			// the members are copied in one pass over the file, so they must follow one another
+			if (entry.offset < end) {
+				throw new IOException("Segment index entries out of file order at " + entry.key);
+			}
+			end = entry.offset + entry.length;
+			entries.add(entry);
+		}
+		return new SegmentIndex(head[0], head[1], entries);
+	}
+}
@@ -0,0 +1,171 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Writes each site as its own gzip member, merging the rows fetched for the changed sites with the
+ * members of the unchanged sites copied from the previous file.
+ * The sites are taken in export order from their fingerprints; the fetched rows and the previous file
+ * are both in that order, so the merge is a single pass over each. Call finish after the query completes.
+ */
+public class SegmentRowHandler implements RowCallbackHandler {
+	private static final Logger LOG = LoggerFactory.getLogger(SegmentRowHandler.class);
+
+	public static final String SITE_COLUMN = "monitoring_location_identifier";
+
+	protected final RowCallbackHandler rows;
+	protected final RdbWriter writer;
+	protected final GzipMemberOutputStream out;
+	protected final Map<String, String> fingerprints;
+	protected final Iterator<Map.Entry<String, String>> sites;
+	protected final SegmentIndex previous;
+	protected final InputStream previousFile;
+	protected final Set<String> reusable = new HashSet<>();
+	protected long previousPosition;
+	protected String site;
+	protected long siteStartRows;
+	protected long copiedRows;
+	protected int copied;
+	protected int written;
+
+	/**
+	 * @param rows the handler that writes the RDB rows of a fetched site to the writer
+	 * @param writer the RDB writer, writing to the member stream
+	 * @param out the member stream of the file
+	 * @param fingerprints the fingerprint of each site, in export order
+	 * @param previous the index of the previous file, null when there is none
+	 * @param previousFile the previous file from its start, null when there is none
+	 */
+	public SegmentRowHandler(RowCallbackHandler rows, RdbWriter writer, GzipMemberOutputStream out,
+			Map<String, String> fingerprints, SegmentIndex previous, InputStream previousFile) {
+		this.rows = rows;
+		this.writer = writer;
+		this.out = out;
+		this.fingerprints = fingerprints;
+		this.sites = fingerprints.entrySet().iterator();
+		this.previous = previousFile == null ? null : previous;
+		this.previousFile = previousFile;
+		if (this.previous != null) {
+			// a member is reused only if it follows the last one reused, so the previous file is read in one pass
+			long end = 0;
+			for (Map.Entry<String, String> fingerprint : fingerprints.entrySet()) {
+				SegmentIndex.Entry member = this.previous.get(fingerprint.getKey());
+				if (member != null && member.getFingerprint().equals(fingerprint.getValue()) && member.getOffset() >= end) {
+					reusable.add(member.getKey());
+					end = member.getOffset() + member.getLength();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the sites to fetch, those the previous file has no reusable member of the same fingerprint for
+	 */
+	public List<String> getChangedSites() {
+		List<String> changed = new ArrayList<>();
+		for (String key : fingerprints.keySet()) {
+			if (!reusable.contains(key)) {
+				changed.add(key);
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public void processRow(ResultSet rs) throws SQLException {
+		String rowSite = rs.getString(SITE_COLUMN);
+		if (!rowSite.equals(site)) {
+			try {
+				endSite();
+				advanceTo(rowSite);
+			} catch (IOException e) {
+				throw new RuntimeException("Error writing the segment of site " + rowSite, e);
+			}
+		}
+		rows.processRow(rs);
+	}
+
+	/**
+	 * Ends the last fetched site and copies the unchanged sites after it.
+	 */
+	public void finish() {
+		try {
+			endSite();
+			advanceTo(null);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing the segments of the RDB file.", e);
+		}
+		writer.countRows(copiedRows);
+		LOG.info("Site segments written: {}, copied: {} with {} rows", written, copied, copiedRows);
+	}
+
+	protected void endSite() throws IOException {
+		if (site != null) {
+			writer.flush();
+			out.endMember(writer.getDataRowCount() - siteStartRows);
+			written++;
+			site = null;
+		}
+	}
+
+	/**
+	 * Copies the unchanged sites before the given one and begins its member.
+	 * @param next the site of the next fetched row, null to copy the remaining sites
+	 */
+	protected void advanceTo(String next) throws IOException {
+		while (sites.hasNext()) {
+			Map.Entry<String, String> fingerprint = sites.next();
+			if (fingerprint.getKey().equals(next)) {
+				out.beginMember(next, fingerprint.getValue());
+				site = next;
+				siteStartRows = writer.getDataRowCount();
+				return;
+			}
+			SegmentIndex.Entry member = reusable(fingerprint.getKey());
+			if (member != null) {
+				copy(member);
+			} else {
+				// fingerprinted but no longer there when fetched, it is picked up by the next export
+				LOG.debug("No rows fetched for changed site {}", fingerprint.getKey());
+			}
+		}
+		if (next != null) {
+			throw new RuntimeException("Fetched site " + next + " is not in the fingerprinted order.");
+		}
+	}
+
+	protected SegmentIndex.Entry reusable(String key) {
+		return reusable.contains(key) ? previous.get(key) : null;
+	}
+
+	protected void copy(SegmentIndex.Entry member) throws IOException {
+		long gap = member.getOffset() - previousPosition;
+		while (gap > 0) {
+			long skipped = previousFile.skip(gap);
+			if (skipped <= 0) {
+				if (previousFile.read() < 0) {
+					throw new IOException("Previous file ended before member " + member.getKey());
+				}
+				skipped = 1;
+			}
+			gap -= skipped;
+		}
+		out.copyMember(member, previousFile);
+		previousPosition = member.getOffset() + member.getLength();
+		copiedRows += member.getRows();
+		copied++;
+	}
+}
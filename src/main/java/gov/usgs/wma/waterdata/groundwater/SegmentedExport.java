@@ -0,0 +1,208 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.util.FileCopyUtils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * Exports a folder as a gzip member per site, reusing the members of the sites unchanged since the previous export,
+ * or, for a seekable file alone, as members beginning at site boundaries.
+ * The site fingerprints are computed by the database; only the sites whose fingerprint changed are fetched
+ * and formatted, and the others are copied from the previous file as compressed bytes.
+ * The member index of the file is saved beside it once it is sent, for the next export of the folder.
+ */
+public class SegmentedExport {
+	private static final Logger LOG = LoggerFactory.getLogger(SegmentedExport.class);
+
+	public static final String HEADER_KEY = "#header";
+
+	protected final DiscreteGroundWaterDao dao;
+	protected final AmazonS3 s3;
+	protected final String bucket;
+	protected final String indexKey;
+	protected String generation;
+
+	/**
+	 * @param dao the GW data access
+	 * @param s3 the client of the bucket
+	 * @param bucket the bucket of the files and their index
+	 * @param indexKey the key of the member index of the folder
+	 */
+	public SegmentedExport(DiscreteGroundWaterDao dao, AmazonS3 s3, String bucket, String indexKey) {
+		this.dao = dao;
+		this.s3 = s3;
+		this.bucket = bucket;
+		this.indexKey = indexKey;
+	}
+
+	/**
+	 * Writes the header and the sites of the states as members, then flushes the writer.
+	 * @param writer the RDB writer, writing to the member stream
+	 * @param out the member stream of the file
+	 */
+	public void write(List<String> states, List<Parameter> parameters, RdbWriter writer, GzipMemberOutputStream out) {
+		generation = generation(parameters);
+		Map<String, String> fingerprints = dao.getSiteFingerprints(states);
+		SegmentIndex previous = loadIndex();
+		InputStream previousFile = previous == null ? null : openFile(previous.getFileKey());
+		try {
+			writeHeader(writer, out);
+			SegmentRowHandler handler = new SegmentRowHandler(createRowHandler(writer, parameters), writer, out, fingerprints, previous, previousFile);
+			List<String> changed = handler.getChangedSites();
+			LOG.info("Sites changed since the previous export: {} of {}", changed.size(), fingerprints.size());
+			if (!changed.isEmpty()) {
+				dao.sendSiteSegments(states, changed.size() == fingerprints.size() ? null : changed, handler);
+			}
+			handler.finish();
+			writer.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing the RDB header segment.", e);
+		} finally {
+			closeFile(previousFile);
+		}
+	}
+
+	/**
+	 * Writes the header and every site of the states as members beginning at site boundaries,
+	 * without reusing a previous file, then flushes the writer.
+	 * @param memberSize the uncompressed bytes after which a member ends at the next site, zero for a member per site
+	 * @return the member of each site
+	 */
+	public SiteOffsetIndex writeSeekable(List<String> states, List<Parameter> parameters, RdbWriter writer,
+			GzipMemberOutputStream out, long memberSize) {
+		generation = generation(parameters);
+		try {
+			writeHeader(writer, out);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing the RDB header segment.", e);
+		}
+		SeekableRowHandler handler = new SeekableRowHandler(createRowHandler(writer, parameters), writer, out, memberSize);
+		dao.sendSiteSegments(states, null, handler);
+		SiteOffsetIndex sites = handler.finish();
+		writer.flush();
+		return sites;
+	}
+
+	protected void writeHeader(RdbWriter writer, GzipMemberOutputStream out) throws IOException {
+		out.beginMember(HEADER_KEY, generation);
+		writer.writeHeader();
+		writer.flush();
+		out.endMember(0);
+	}
+
+	/**
+	 * Helper method that makes test injection easier.
+	 * @return the handler that writes the fetched rows of a site
+	 */
+	protected RowCallbackHandler createRowHandler(RdbWriter writer, List<Parameter> parameters) {
+		if (writer instanceof RdbByteWriter) {
+			return new DiscreteGroundWaterPassthroughRowHandler((RdbByteWriter) writer, parameters);
+		}
+		return new DiscreteGroundWaterRowHandler(writer, parameters);
+	}
+
+	/**
+	 * Saves the member index of the file once it is sent.
+	 * @param fileKey the key the file was sent to
+	 * @param members the members of the file
+	 */
+	public void saveIndex(String fileKey, List<SegmentIndex.Entry> members) {
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		try {
+			new SegmentIndex(fileKey, generation, members).write(index);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing the segment index of " + fileKey, e);
+		}
+		byte[] bytes = index.toByteArray();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(bytes.length);
+		metadata.setContentType("text/tab-separated-values");
+		s3.putObject(new PutObjectRequest(bucket, indexKey, new ByteArrayInputStream(bytes), metadata));
+	}
+
+	/**
+	 * @return the index of the previous export of this generation, null if there is none
+	 */
+	protected SegmentIndex loadIndex() {
+		try (S3Object object = s3.getObject(bucket, indexKey)) {
+			SegmentIndex index = SegmentIndex.read(object.getObjectContent());
+			if (!generation.equals(index.getGeneration())) {
+				LOG.info("Segment index of {} is from another generation, exporting all sites", index.getFileKey());
+				return null;
+			}
+			return index;
+		} catch (AmazonS3Exception e) {
+			if (e.getStatusCode() != 404) {
+				throw e;
+			}
+			return null;
+		} catch (IOException e) {
+			LOG.warn("Unreadable segment index {}, exporting all sites: {}", indexKey, e.getMessage());
+			return null;
+		}
+	}
+
+	protected InputStream openFile(String fileKey) {
+		try {
+			return s3.getObject(bucket, fileKey).getObjectContent();
+		} catch (AmazonS3Exception e) {
+			if (e.getStatusCode() != 404) {
+				throw e;
+			}
+			LOG.info("Previous file {} is gone, exporting all sites", fileKey);
+			return null;
+		}
+	}
+
+	protected void closeFile(InputStream file) {
+		if (file instanceof S3ObjectInputStream) {
+			// the rest of the previous file is not needed, so the connection is dropped rather than drained
+			((S3ObjectInputStream) file).abort();
+		} else if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				LOG.warn("Error closing the previous file: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * The fingerprint of what besides the rows shapes the members: the header, the parameters and the build.
+	 * Members of another generation are not reused.
+	 */
+	protected String generation(List<Parameter> parameters) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(FileCopyUtils.copyToByteArray(getClass().getResourceAsStream("/rdb/rdbHeader.txt")));
+			for (Parameter parameter : parameters) {
+				digest.update((parameter.getParameterCode() + "\t" + parameter.isAboveDatum() + "\t"
+						+ parameter.isBelowLandSurface() + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+			String version = getClass().getPackage().getImplementationVersion();
+			digest.update(String.valueOf(version).getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(digest.digest());
+		} catch (NoSuchAlgorithmException | IOException e) {
+			throw new RuntimeException("Unable to fingerprint the RDB generation.", e);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+
+/**
+ * The sidecar of a seekable RDB file, published beside it, giving the gzip member that holds each site.
+ * A range GET of a site's offset and length is a complete gzip of its rows, possibly with the rows of the
+ * sites that share its member, so one well's history is read without the rest of the file.
+ * The RDB header is the member before the first site, from offset zero.
+ * Tab separated with a column header line: agency_cd, site_no, offset, length and rows.
+ */
+public class SiteOffsetIndex {
+
+	public static final String SUFFIX = ".idx";
+
+	private static final String DELIMITER = "\t";
+	private static final String COLUMNS = String.join(DELIMITER, "agency_cd", "site_no", "offset", "length", "rows");
+
+	/**
+	 * The member of a site.
+	 */
+	public static class Entry {
+		protected final String agencyCode;
+		protected final String siteNumber;
+		protected long offset;
+		protected long length;
+		protected long rows;
+
+		public Entry(String agencyCode, String siteNumber, long offset, long length, long rows) {
+			this.agencyCode = agencyCode;
+			this.siteNumber = siteNumber;
+			this.offset = offset;
+			this.length = length;
+			this.rows = rows;
+		}
+
+		/**
+		 * @param monitoringLocation the monitoring location identifier, agency code and site number joined by a dash
+		 */
+		public static Entry forLocation(String monitoringLocation, long rows) {
+			int dash = monitoringLocation.indexOf('-');
+			return dash < 0
+					? new Entry("", monitoringLocation, 0, 0, rows)
+					: new Entry(monitoringLocation.substring(0, dash), monitoringLocation.substring(dash + 1), 0, 0, rows);
+		}
+
+		public String getAgencyCode() {
+			return agencyCode;
+		}
+
+		public String getSiteNumber() {
+			return siteNumber;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+	}
+
+	protected final List<Entry> entries;
+
+	public SiteOffsetIndex(List<Entry> entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * The index of a file written a member per site, as the segment cache writes it.
+	 * @param members the members of the file, keyed by monitoring location
+	 */
+	public static SiteOffsetIndex fromMembers(List<SegmentIndex.Entry> members) {
+		List<Entry> entries = new ArrayList<>();
+		for (SegmentIndex.Entry member : members) {
+			if (!SegmentedExport.HEADER_KEY.equals(member.getKey())) {
+				Entry entry = Entry.forLocation(member.getKey(), member.getRows());
+				entry.offset = member.getOffset();
+				entry.length = member.getLength();
+				entries.add(entry);
+			}
+		}
+		return new SiteOffsetIndex(entries);
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the member of the site, null if the file has no rows of it
+	 */
+	public Entry get(String agencyCode, String siteNumber) {
+		for (Entry entry : entries) {
+			if (entry.siteNumber.equals(siteNumber) && entry.agencyCode.equals(agencyCode)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	public void write(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		writer.write(COLUMNS);
+		writer.write('\n');
+		for (Entry entry : entries) {
+			writer.write(String.join(DELIMITER, entry.agencyCode, entry.siteNumber, Long.toString(entry.offset),
+					Long.toString(entry.length), Long.toString(entry.rows)));
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	public static SiteOffsetIndex read(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String line = reader.readLine();
+		if (!COLUMNS.equals(line)) {
+			throw new IOException("Invalid site offset index header: " + line);
+		}
+		List<Entry> entries = new ArrayList<>();
+		while ((line = reader.readLine()) != null) {
+			String[] fields = line.split(DELIMITER, -1);
+			if (fields.length != 5) {
+				throw new IOException("Invalid site offset index entry: " + line);
+			}
+			entries.add(new Entry(fields[0], fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+					Long.parseLong(fields[4])));
+		}
+		return new SiteOffsetIndex(entries);
+	}
+
+	/**
+	 * Publishes the index beside its file.
+	 * @param fileKey the key of the RDB file, to which the suffix is added
+	 */
+	public void publish(AmazonS3 s3, String bucket, String fileKey) {
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		try {
+			write(index);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing the site offset index of " + fileKey, e);
+		}
+		byte[] bytes = index.toByteArray();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(bytes.length);
+		metadata.setContentType("text/tab-separated-values");
+		s3.putObject(new PutObjectRequest(bucket, fileKey + SUFFIX, new ByteArrayInputStream(bytes), metadata));
+	}
+}
@@ -0,0 +1,175 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Writes the fetched rows of a folder to several RDB files, each with the full header.
+ * Sites are spread over partitions by the hash of their monitoring location, and a partition rolls over
+ * to its next part at a site boundary once the part reaches the row or encoded byte limit.
+ * Call finish after the query completes, and close to discard the parts not sent on failure.
+ */
+public class SplitRowHandler implements RowCallbackHandler, AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(SplitRowHandler.class);
+
+	/**
+	 * Opens a part, its header written.
+	 */
+	public interface PartOpener {
+		/**
+		 * @param partition the site hash partition, from 0
+		 * @param sequence the number of the part within its partition, from 1
+		 */
+		Part open(int partition, int sequence);
+	}
+
+	/**
+	 * An open part, its file and the writer and row handler writing to it.
+	 */
+	public static class Part {
+		protected final S3Bucket bucket;
+		protected final RdbWriter writer;
+		protected final RowCallbackHandler rows;
+		protected final long opened = System.currentTimeMillis();
+		protected long writeMillis;
+		protected long uploadMillis;
+
+		public Part(S3Bucket bucket, RdbWriter writer, RowCallbackHandler rows) {
+			this.bucket = bucket;
+			this.writer = writer;
+			this.rows = rows;
+		}
+	}
+
+	protected final PartOpener opener;
+	protected final long maxRows;
+	protected final long maxBytes;
+	protected final int partitions;
+	protected final Part[] parts;
+	protected final int[] sequences;
+	protected final List<String> sentKeys = new ArrayList<>();
+	protected final List<Part> sentParts = new ArrayList<>();
+	protected long rowCount;
+	protected String site;
+	protected Part current;
+
+	/**
+	 * @param opener opens the parts as they are needed
+	 * @param maxRows the data rows after which a part ends at the next site, zero for no limit
+	 * @param maxBytes the encoded bytes after which a part ends at the next site, zero for no limit
+	 * @param partitions the number of site hash partitions, 1 or less for none
+	 */
+	public SplitRowHandler(PartOpener opener, long maxRows, long maxBytes, int partitions) {
+		this.opener = opener;
+		this.maxRows = maxRows;
+		this.maxBytes = maxBytes;
+		this.partitions = Math.max(partitions, 1);
+		this.parts = new Part[this.partitions];
+		this.sequences = new int[this.partitions];
+	}
+
+	@Override
+	public void processRow(ResultSet rs) throws SQLException {
+		String rowSite = rs.getString(SegmentRowHandler.SITE_COLUMN);
+		if (!rowSite.equals(site)) {
+			site = rowSite;
+			current = partFor(rowSite);
+		}
+		current.rows.processRow(rs);
+	}
+
+	/**
+	 * Sends the open parts.
+	 * @return the keys of the parts, in the order they were sent
+	 */
+	public List<String> finish() {
+		for (int partition = 0; partition < partitions; partition++) {
+			if (parts[partition] != null) {
+				send(partition);
+			}
+		}
+		return sentKeys;
+	}
+
+	/**
+	 * @return the parts sent, closed, in the order they were sent
+	 */
+	public List<Part> getSentParts() {
+		return sentParts;
+	}
+
+	/**
+	 * @return the data rows of the parts sent
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	protected Part partFor(String site) {
+		int partition = Math.floorMod(site.hashCode(), partitions);
+		Part part = parts[partition];
+		if (part != null && isFull(part)) {
+			send(partition);
+			part = null;
+		}
+		if (part == null) {
+			part = opener.open(partition, ++sequences[partition]);
+			parts[partition] = part;
+		}
+		return part;
+	}
+
+	protected boolean isFull(Part part) {
+		if (maxRows > 0 && part.writer.getDataRowCount() >= maxRows) {
+			return true;
+		}
+		if (maxBytes > 0) {
+			part.writer.flush();
+			return part.bucket.getEncodedBytes() >= maxBytes;
+		}
+		return false;
+	}
+
+	protected void send(int partition) {
+		Part part = parts[partition];
+		part.writer.flush();
+		long written = System.currentTimeMillis();
+		part.writeMillis = written - part.opened;
+		part.bucket.sendS3(part.writer.getDataRowCount());
+		part.uploadMillis = System.currentTimeMillis() - written;
+		String key = part.bucket.getUnchangedKey() != null ? part.bucket.getUnchangedKey() : part.bucket.getKeyName();
+		LOG.info("Sent part {} with {} rows", key, part.writer.getDataRowCount());
+		sentKeys.add(key);
+		sentParts.add(part);
+		rowCount += part.writer.getDataRowCount();
+		closePart(part);
+		parts[partition] = null;
+	}
+
+	/**
+	 * Closes the parts, aborting or deleting those not sent.
+	 */
+	@Override
+	public void close() {
+		for (int partition = 0; partition < partitions; partition++) {
+			if (parts[partition] != null) {
+				closePart(parts[partition]);
+				parts[partition] = null;
+			}
+		}
+	}
+
+	protected void closePart(Part part) {
+		try {
+			part.bucket.close();
+		} catch (Exception e) {
+			LOG.warn("Error closing part {}: {}", part.bucket.getKeyName(), e.getMessage());
+		}
+	}
+}
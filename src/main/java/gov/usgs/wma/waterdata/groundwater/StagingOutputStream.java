@@ -0,0 +1,315 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stages a file locally in the cheapest place it fits. It starts in pooled off-heap chunks;
+ * past the memory limit it moves to a memory-mapped /tmp file preallocated in FILE_GROWTH steps
+ * reserved from the budget; and when the budget would be exceeded it replays what it has
+ * staged into the fallback stream, normally a streaming multipart upload, and continues there.
+ * Discard releases the memory, the file and its reservation.
+ */
+public class StagingOutputStream extends OutputStream {
+
+	/**
+	 * Opens the stream a staged file continues to once /tmp is full.
+	 */
+	@FunctionalInterface
+	public interface Fallback {
+		OutputStream open() throws IOException;
+	}
+
+	protected final TempStorage storage;
+	protected final String name;
+	protected final Fallback fallback;
+	// the memory chunks, or the mapped regions once staged to a file
+	protected final List<ByteBuffer> buffers = new ArrayList<>();
+	protected ByteBuffer current;
+	protected long length;
+	protected File file;
+	protected FileChannel channel;
+	protected long mapped;
+	protected long reserved;
+	protected OutputStream streaming;
+	protected boolean closed;
+
+	protected StagingOutputStream(TempStorage storage, String name, Fallback fallback) {
+		this.storage = storage;
+		this.name = name;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (streaming == null && (current == null || !current.hasRemaining())) {
+			next();
+		}
+		if (streaming != null) {
+			streaming.write(b);
+		} else {
+			current.put((byte) b);
+			length++;
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int count) throws IOException {
+		while (count > 0) {
+			if (streaming == null && (current == null || !current.hasRemaining())) {
+				next();
+			}
+			if (streaming != null) {
+				streaming.write(bytes, offset, count);
+				return;
+			}
+			int put = Math.min(count, current.remaining());
+			current.put(bytes, offset, put);
+			length += put;
+			offset += put;
+			count -= put;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (streaming != null) {
+			streaming.flush();
+		}
+	}
+
+	/**
+	 * Ends the staged file, trimming a /tmp file to its length.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (streaming != null) {
+			streaming.close();
+		} else if (channel != null) {
+			buffers.clear();
+			channel.truncate(length);
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return true once the file has moved on to the fallback stream
+	 */
+	public boolean isStreaming() {
+		return streaming != null;
+	}
+
+	/**
+	 * @return the /tmp file of a file staged to /tmp, otherwise null
+	 */
+	public File getFile() {
+		return streaming == null ? file : null;
+	}
+
+	/**
+	 * @return the bytes staged
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @return the staged bytes of a closed stream that was not streamed
+	 */
+	public InputStream openInputStream() throws IOException {
+		if (file != null) {
+			return new FileInputStream(file);
+		}
+		return new ChunkInputStream(buffers);
+	}
+
+	/**
+	 * Releases the memory, /tmp file and /tmp reservation of the staged file.
+	 * The mapped regions of a /tmp file hold its blocks until they are collected, even once it is deleted,
+	 * so the file is truncated first to free them before the reservation is released.
+	 * The regions are dropped before that, as touching a region past the end of its file crashes the runtime.
+	 */
+	public void discard() {
+		if (file == null) {
+			for (ByteBuffer chunk : buffers) {
+				storage.recycle(chunk);
+			}
+		}
+		buffers.clear();
+		current = null;
+		if (file != null) {
+			try {
+				if (channel != null && channel.isOpen()) {
+					channel.truncate(0);
+					channel.close();
+				} else {
+					try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+						truncate.truncate(0);
+					}
+				}
+			} catch (IOException e) {
+				// the file is deleted regardless
+			}
+			file.delete();
+		}
+		storage.release(reserved);
+		reserved = 0;
+	}
+
+	protected void next() throws IOException {
+		if (file == null && (buffers.size() + 1L) * TempStorage.CHUNK_SIZE <= storage.getMemoryLimit()) {
+			current = storage.allocate();
+			buffers.add(current);
+		} else if (file == null) {
+			spill();
+		} else {
+			grow();
+		}
+	}
+
+	/**
+	 * Moves the memory chunks to a mapped /tmp file, reserving all the space they need up front.
+	 */
+	protected void spill() throws IOException {
+		long needed = (length / TempStorage.FILE_GROWTH + 1) * TempStorage.FILE_GROWTH;
+		if (!storage.reserve(needed)) {
+			fallBack();
+			return;
+		}
+		reserved = needed;
+		List<ByteBuffer> chunks = new ArrayList<>(buffers);
+		buffers.clear();
+		file = storage.createTempFile(name, ".staging");
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		length = 0;
+		current = null;
+		for (ByteBuffer chunk : chunks) {
+			ByteBuffer bytes = chunk.duplicate().flip();
+			while (bytes.hasRemaining()) {
+				if (current == null || !current.hasRemaining()) {
+					grow();
+				}
+				ByteBuffer part = bytes.duplicate();
+				part.limit(part.position() + Math.min(part.remaining(), current.remaining()));
+				length += part.remaining();
+				bytes.position(part.limit());
+				current.put(part);
+			}
+			storage.recycle(chunk);
+		}
+	}
+
+	/**
+	 * Maps the next region of the /tmp file, reserving it first unless the spill already did.
+	 */
+	protected void grow() throws IOException {
+		if (mapped + TempStorage.FILE_GROWTH > reserved) {
+			if (!storage.reserve(TempStorage.FILE_GROWTH)) {
+				fallBack();
+				return;
+			}
+			reserved += TempStorage.FILE_GROWTH;
+		}
+		current = channel.map(FileChannel.MapMode.READ_WRITE, mapped, TempStorage.FILE_GROWTH);
+		buffers.add(current);
+		mapped += TempStorage.FILE_GROWTH;
+	}
+
+	/**
+	 * Replays the staged bytes into the fallback stream and releases the local staging,
+	 * after which the mapped regions are not touched.
+	 */
+	protected void fallBack() throws IOException {
+		OutputStream out = fallback.open();
+		byte[] copy = new byte[64 * 1024];
+		long remaining = length;
+		for (ByteBuffer buffer : buffers) {
+			ByteBuffer bytes = buffer.duplicate().flip();
+			while (bytes.hasRemaining() && remaining > 0) {
+				int count = (int) Math.min(Math.min(copy.length, bytes.remaining()), remaining);
+				bytes.get(copy, 0, count);
+				out.write(copy, 0, count);
+				remaining -= count;
+			}
+		}
+		discard();
+		file = null;
+		channel = null;
+		streaming = out;
+	}
+
+	/**
+	 * Reads the memory chunks in order, with mark and reset so the client can retry the put.
+	 */
+	protected static class ChunkInputStream extends InputStream {
+		protected final List<ByteBuffer> chunks;
+		protected int chunk;
+		protected int markChunk;
+		protected int markPosition;
+
+		protected ChunkInputStream(List<ByteBuffer> chunks) {
+			this.chunks = new ArrayList<>(chunks.size());
+			for (ByteBuffer staged : chunks) {
+				this.chunks.add(staged.duplicate().flip());
+			}
+		}
+
+		@Override
+		public int read() {
+			ByteBuffer bytes = remaining();
+			return bytes == null ? -1 : bytes.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			ByteBuffer bytes = remaining();
+			if (bytes == null) {
+				return -1;
+			}
+			int count = Math.min(length, bytes.remaining());
+			bytes.get(buffer, offset, count);
+			return count;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readLimit) {
+			markChunk = chunk;
+			markPosition = chunk < chunks.size() ? chunks.get(chunk).position() : 0;
+		}
+
+		@Override
+		public synchronized void reset() {
+			for (int c = markChunk; c < chunks.size(); c++) {
+				chunks.get(c).position(c == markChunk ? markPosition : 0);
+			}
+			chunk = markChunk;
+		}
+
+		private ByteBuffer remaining() {
+			while (chunk < chunks.size() && !chunks.get(chunk).hasRemaining()) {
+				chunk++;
+			}
+			return chunk < chunks.size() ? chunks.get(chunk) : null;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages the local staging of RDB files within the Lambda's ephemeral storage budget.
+ * Files are staged in a directory of their own under java.io.tmpdir, so that files orphaned by an
+ * export that died before S3Bucket.close ran are deleted when the warm container takes its next invocation.
+ * Staging streams hold small files in pooled off-heap chunks and reserve /tmp space for large ones,
+ * and the peak /tmp usage of each invocation is recorded. The part buffers of streaming uploads are
+ * pooled too, so the invocations of a warm container reuse them.
+ *
+ * @see StagingOutputStream
+ */
+public class TempStorage {
+	private static final Logger LOG = LoggerFactory.getLogger(TempStorage.class);
+
+	public static final String DIRECTORY = "rdb-staging";
+	public static final int CHUNK_SIZE = 1024 * 1024;
+	public static final long FILE_GROWTH = 8L * 1024 * 1024;
+
+	protected final File directory;
+	protected final long budget;
+	protected final long memoryLimit;
+	protected final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+	protected final ConcurrentLinkedQueue<ByteBuffer> parts = new ConcurrentLinkedQueue<>();
+	protected final int partsRetained;
+	protected final AtomicLong used = new AtomicLong();
+	protected final AtomicLong peak = new AtomicLong();
+
+	public TempStorage(Properties properties) {
+		this(new File(System.getProperty("java.io.tmpdir"), DIRECTORY), properties.getTmpBudget(), properties.getStagingMemory(),
+				Math.max(2, properties.getPartsInFlight()));
+	}
+
+	/**
+	 * @param directory the staging directory, every file in it belongs to this storage
+	 * @param budget the bytes of /tmp staging may use
+	 * @param memoryLimit the bytes of off-heap memory a staged file may use before it moves to /tmp
+	 */
+	public TempStorage(File directory, long budget, long memoryLimit) {
+		this(directory, budget, memoryLimit, 2);
+	}
+
+	/**
+	 * @param partsRetained the part buffers kept in the pool for the next upload
+	 */
+	public TempStorage(File directory, long budget, long memoryLimit, int partsRetained) {
+		this.directory = directory;
+		this.budget = budget;
+		this.memoryLimit = memoryLimit;
+		this.partsRetained = partsRetained;
+		directory.mkdirs();
+		deleteOrphans();
+	}
+
+	/**
+	 * Starts the staging of an invocation. Invocations of a container do not overlap, so any file
+	 * left in the directory is an orphan of an earlier one.
+	 */
+	public void beginInvocation() {
+		deleteOrphans();
+		used.set(0);
+		peak.set(0);
+	}
+
+	/**
+	 * @return the number of orphaned files deleted
+	 */
+	public int deleteOrphans() {
+		int deleted = 0;
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File orphan : files) {
+				if (orphan.delete()) {
+					deleted++;
+				}
+			}
+		}
+		if (deleted > 0) {
+			LOG.warn("Deleted {} orphaned staging files from {}", deleted, directory);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Creates a file in the staging directory.
+	 */
+	public File createTempFile(String prefix, String suffix) throws IOException {
+		return File.createTempFile(prefix, suffix, directory);
+	}
+
+	/**
+	 * @param name the name the staged file is known by, used as the prefix of its /tmp file
+	 * @param fallback opens the stream the staged file continues to once /tmp is full
+	 * @return a stream staging the file in memory, then in /tmp, then streaming
+	 */
+	public StagingOutputStream open(String name, StagingOutputStream.Fallback fallback) {
+		return new StagingOutputStream(this, name, fallback);
+	}
+
+	/**
+	 * Reserves /tmp space before it is written.
+	 * @return false if the reservation would exceed the budget
+	 */
+	public boolean reserve(long bytes) {
+		long current;
+		do {
+			current = used.get();
+			if (current + bytes > budget) {
+				return false;
+			}
+		} while (!used.compareAndSet(current, current + bytes));
+		peak.accumulateAndGet(current + bytes, Math::max);
+		return true;
+	}
+
+	public void release(long bytes) {
+		used.addAndGet(-bytes);
+	}
+
+	/**
+	 * Records the size of a file staged without a reservation.
+	 */
+	public void record(long bytes) {
+		peak.accumulateAndGet(used.get() + bytes, Math::max);
+	}
+
+	protected ByteBuffer allocate() {
+		ByteBuffer chunk = pool.poll();
+		return chunk != null ? chunk : ByteBuffer.allocateDirect(CHUNK_SIZE);
+	}
+
+	/**
+	 * Returns a chunk to the pool, which keeps no more than the memory limit for the next invocation.
+	 */
+	protected void recycle(ByteBuffer chunk) {
+		chunk.clear();
+		if ((pool.size() + 1L) * CHUNK_SIZE <= memoryLimit) {
+			pool.add(chunk);
+		}
+	}
+
+	/**
+	 * Takes a part buffer of a streaming upload from the pool, allocating one if none is the size.
+	 */
+	protected ByteBuffer allocatePart(int partSize) {
+		for (ByteBuffer part = parts.poll(); part != null; part = parts.poll()) {
+			if (part.capacity() == partSize) {
+				return part;
+			}
+		}
+		return ByteBuffer.allocateDirect(partSize);
+	}
+
+	/**
+	 * Returns a part buffer to the pool, which keeps no more than partsRetained for the next upload.
+	 */
+	protected void recyclePart(ByteBuffer part) {
+		part.clear();
+		if (parts.size() < partsRetained) {
+			parts.add(part);
+		}
+	}
+
+	public long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public long getUsed() {
+		return used.get();
+	}
+
+	/**
+	 * @return the most /tmp used at once since the invocation began
+	 */
+	public long getPeak() {
+		return peak.get();
+	}
+}
@@ -0,0 +1,194 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * Encodes date_measured_raw as the RDB lev_dt, lev_tm and lev_dtm columns, producing the same
+ * text as the RdbWriter Joda formatters without creating and formatting a DateTime per row.
+ * The digits are written into reusable byte buffers; the date part is only recomputed when the
+ * local day changes and the month names come from a precomputed upper case table.
+ * Not thread safe; each writer owns its own encoder.
+ */
+public class TimestampEncoder {
+
+	private static final long MILLIS_PER_DAY = 86_400_000L;
+	private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormat.forPattern("MMM");
+
+	// upper case short month names as RdbWriter.DATE_TIME_FORMAT writes them in the default locale
+	static final byte[][] MONTHS = new byte[12][];
+	static {
+		for (int month = 1; month <= 12; month++) {
+			// mid month so that no zone offset moves the instant into another month
+			long millis = daysFromCivil(2000, month, 15) * MILLIS_PER_DAY;
+			MONTHS[month - 1] = new DateTime(millis).toString(MONTH_FORMAT).toUpperCase()
+					.getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	protected final DateTimeZone zone;
+
+	// lev_dt YYYYMMdd
+	protected final byte[] date = new byte[16];
+	protected int dateLength;
+	// lev_tm HHmm
+	protected final byte[] time = new byte[4];
+	// lev_dtm DD-MON-YYYY HH:mm:ss, the day part is kept between rows on the same day
+	protected final byte[] dateTime = new byte[64];
+	protected int dateTimeLength;
+	protected int dayPartLength;
+	protected long cachedDay = Long.MIN_VALUE;
+
+	public TimestampEncoder() {
+		this(DateTimeZone.getDefault());
+	}
+
+	/**
+	 * @param zone the zone the local date and time are written in, Joda uses the default zone
+	 */
+	public TimestampEncoder(DateTimeZone zone) {
+		this.zone = zone;
+	}
+
+	/**
+	 * Encodes the timestamp into the buffers.
+	 * @param timestamp the date measured, null is encoded as the current time as new DateTime(null) does
+	 * @return this encoder, for reading the buffers
+	 */
+	public TimestampEncoder encode(Date timestamp) {
+		return encode(timestamp == null ? System.currentTimeMillis() : timestamp.getTime());
+	}
+
+	/**
+	 * Encodes the epoch milliseconds into the buffers.
+	 * @param millis milliseconds since the epoch
+	 * @return this encoder, for reading the buffers
+	 */
+	public TimestampEncoder encode(long millis) {
+		long local = millis + zone.getOffset(millis);
+		long day = Math.floorDiv(local, MILLIS_PER_DAY);
+		int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+
+		if (day != cachedDay && !encodeDay(day)) {
+			encodeWithJoda(millis);
+			return this;
+		}
+		int hour = millisOfDay / 3_600_000;
+		int minute = millisOfDay / 60_000 % 60;
+		int second = millisOfDay / 1_000 % 60;
+
+		putTwoDigits(time, 0, hour);
+		putTwoDigits(time, 2, minute);
+
+		int i = dayPartLength;
+		dateTime[i++] = ' ';
+		putTwoDigits(dateTime, i, hour);
+		dateTime[i + 2] = ':';
+		putTwoDigits(dateTime, i + 3, minute);
+		dateTime[i + 5] = ':';
+		putTwoDigits(dateTime, i + 6, second);
+		dateTimeLength = i + 8;
+		return this;
+	}
+
+	/**
+	 * Fills the date parts for the local epoch day, only four digit years are encoded directly.
+	 * @return false if the year must be formatted by Joda
+	 */
+	protected boolean encodeDay(long day) {
+		long z = day + 719_468;
+		long era = Math.floorDiv(z, 146_097);
+		long dayOfEra = z - era * 146_097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		int dayOfMonth = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		if (year < 1 || year > 9999) {
+			return false;
+		}
+
+		putFourDigits(date, 0, (int) year);
+		putTwoDigits(date, 4, month);
+		putTwoDigits(date, 6, dayOfMonth);
+		dateLength = 8;
+
+		putTwoDigits(dateTime, 0, dayOfMonth);
+		dateTime[2] = '-';
+		byte[] monthName = MONTHS[month - 1];
+		System.arraycopy(monthName, 0, dateTime, 3, monthName.length);
+		int i = 3 + monthName.length;
+		dateTime[i] = '-';
+		putFourDigits(dateTime, i + 1, (int) year);
+		dayPartLength = i + 5;
+		cachedDay = day;
+		return true;
+	}
+
+	/**
+	 * Formats years the digit encoder does not handle exactly as RdbWriter always has.
+	 */
+	protected void encodeWithJoda(long millis) {
+		DateTime measured = new DateTime(millis, zone);
+		dateLength = copy(measured.toString(RdbWriter.DATE_FORMAT), date);
+		copy(measured.toString(RdbWriter.TIME_FORMAT), time);
+		dateTimeLength = copy(measured.toString(RdbWriter.DATE_TIME_FORMAT).toUpperCase(), dateTime);
+		cachedDay = Long.MIN_VALUE;
+	}
+
+	private static int copy(String value, byte[] buffer) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(bytes.length, buffer.length);
+		System.arraycopy(bytes, 0, buffer, 0, length);
+		return length;
+	}
+
+	private static void putTwoDigits(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) ('0' + value / 10);
+		buffer[offset + 1] = (byte) ('0' + value % 10);
+	}
+
+	private static void putFourDigits(byte[] buffer, int offset, int value) {
+		putTwoDigits(buffer, offset, value / 100);
+		putTwoDigits(buffer, offset + 2, value % 100);
+	}
+
+	/**
+	 * Days since 1970-01-01 of a proleptic Gregorian date.
+	 */
+	static long daysFromCivil(long year, int month, int dayOfMonth) {
+		year -= month <= 2 ? 1 : 0;
+		long era = Math.floorDiv(year, 400);
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + dayOfMonth - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146_097 + dayOfEra - 719_468;
+	}
+
+	/**
+	 * @return lev_dt of the last encoded timestamp
+	 */
+	public String getDate() {
+		return new String(date, 0, dateLength, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return lev_tm of the last encoded timestamp
+	 */
+	public String getTime() {
+		return new String(time, 0, time.length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return lev_dtm of the last encoded timestamp
+	 */
+	public String getDateTime() {
+		return new String(dateTime, 0, dateTimeLength, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,35 @@
+with level_status_code (precedence, nwis_code, aq_code, aq_description) as (
+  values :levelStatusCodes
+)
+select
+    d.site_identification_number,
+    d.agency_code,
+    d.vertical_datum_code,
+    d.measuring_agency_code,
+    d.level_accuracy_code,
+    coalesce((select m.nwis_code
+                from level_status_code m
+               where exists (select 1
+                               from jsonb_array_elements_text(d.result_measure_qualifiers) q
+                              where btrim(q, E' \t\r\n\f\x0B') in (m.aq_description, m.aq_code))
+               order by m.precedence
+               limit 1), '') lev_status_cd,
+    d.measurement_method_code,
+    d.date_measured,
+    d.date_measured_raw,
+    d.date_time_accuracy_code,
+    d.timezone_code,
+    d.time_measured_utc,
+    case when btrim(d.approval_level, E' \t\r\n\f\x0B') = '1200' then 'A' else 'P' end lev_age_cd,
+    case when coalesce(btrim(d.measuring_agency_code, E' \t\r\n\f\x0B'), '') = '' then ''
+         when btrim(d.measuring_agency_code, E' \t\r\n\f\x0B') = 'USGS' then 'S'
+         else 'A' end lev_src_cd,
+    d.parameter_code,
+    d.display_result
+  from nwis.discrete_ground_water_aqts d
+  join nwis.nwis_district_cds_by_host h
+    on d.district_cd = h.district_cd
+ where h.host_name not like 'nwisd%'
+   and h.state_name in (:states)
+   and d.parameter_code not in ('61055')
+ order by h.state_name, d.monitoring_location_identifier, d.date_measured_raw
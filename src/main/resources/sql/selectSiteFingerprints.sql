@@ -0,0 +1,28 @@
+select monitoring_location_identifier,
+       md5(string_agg(row_text, chr(10) order by date_measured_raw, row_text)) fingerprint
+  from (select h.state_name,
+               d.monitoring_location_identifier,
+               d.date_measured_raw,
+               row(d.site_identification_number,
+                   d.agency_code,
+                   d.vertical_datum_code,
+                   d.measuring_agency_code,
+                   d.level_accuracy_code,
+                   d.result_measure_qualifiers::varchar,
+                   d.measurement_method_code,
+                   d.date_measured,
+                   d.date_measured_raw,
+                   d.date_time_accuracy_code,
+                   d.timezone_code,
+                   d.time_measured_utc,
+                   d.approval_level,
+                   d.parameter_code,
+                   d.display_result)::text row_text
+          from nwis.discrete_ground_water_aqts d
+          join nwis.nwis_district_cds_by_host h
+            on d.district_cd = h.district_cd
+         where h.host_name not like 'nwisd%'
+           and h.state_name in (:states)
+           and d.parameter_code not in ('61055')) r
+ group by state_name, monitoring_location_identifier
+ order by state_name, monitoring_location_identifier
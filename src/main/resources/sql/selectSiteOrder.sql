@@ -0,0 +1,9 @@
+select d.monitoring_location_identifier
+  from nwis.discrete_ground_water_aqts d
+  join nwis.nwis_district_cds_by_host h
+    on d.district_cd = h.district_cd
+ where h.host_name not like 'nwisd%'
+   and h.state_name in (:states)
+   and d.parameter_code not in ('61055')
+ group by h.state_name, d.monitoring_location_identifier
+ order by h.state_name, d.monitoring_location_identifier
@@ -0,0 +1,52 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.ClientConfiguration;
+
+class AwsClientsTest {
+
+	Properties properties;
+
+	@BeforeEach
+	public void setup() {
+		properties = new Properties();
+		properties.setRegion("us-west-2");
+		properties.setBucket("JUNIT-S3");
+	}
+
+	@Test
+	void testClientConfiguration() {
+		// SETUP
+		properties.setUploadThreads(40);
+
+		// ACTION UNDER TEST
+		ClientConfiguration configuration = AwsClients.clientConfiguration(properties);
+
+		// ASSERTIONS
+		assertEquals(80, configuration.getMaxConnections());
+		assertTrue(configuration.useTcpKeepAlive());
+		assertEquals(AwsClients.CONNECTION_MAX_IDLE_MILLIS, configuration.getConnectionMaxIdleMillis());
+		assertEquals(ClientConfiguration.DEFAULT_MAX_CONNECTIONS,
+				AwsClients.clientConfiguration(new Properties()).getMaxConnections());
+	}
+
+	@Test
+	void testClientsAreShared() throws Exception {
+		// SETUP
+		AwsClients clients = new AwsClients(properties);
+		clients.warm(); // disabled, no request is made
+
+		// ACTION UNDER TEST
+		S3Bucket first = new S3Bucket("us-west-2", "JUNIT-S3", "first.gz", null).withClients(clients);
+		S3Bucket second = new S3Bucket("us-west-2", "JUNIT-S3", "second.gz", null).withClients(clients);
+
+		// ASSERTIONS
+		assertSame(clients.getS3(), first.buildS3());
+		assertSame(clients.getS3(), second.buildS3());
+		assertSame(clients.getLambda(), new InvokeAll(clients).lambdaContext("us-west-2"));
+	}
+}
@@ -2,18 +2,32 @@ package gov.usgs.wma.waterdata.groundwater;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
 
 class BuildRdbFileTest {
 
@@ -30,8 +44,15 @@ class BuildRdbFileTest {
 	boolean outStreamClosed;
 	boolean dstWriterClosed;
 
+	// the rows of each site of each state of the local database, in the order the sites are exported
+	Map<String, Map<String, List<DiscreteGroundWater>>> database;
+	// the sites of each segment fetch, null for every site
+	List<List<String>> fetched;
+
 	@BeforeEach
 	public void beforeEach() {
+		database = new LinkedHashMap<>();
+		fetched = new ArrayList<>();
 		req = new RequestObject();
 		req.locationFolder = STATE;
 		stateAsList = List.of(STATE);
@@ -78,7 +99,7 @@ class BuildRdbFileTest {
 
 		S3BucketUtil mockS3u = Mockito.mock(S3BucketUtil.class);
 		Mockito.when(mockS3u.createFilename(POSTCD)).thenReturn(FILENM);
-		Mockito.when(mockS3u.openS3(FILENM)).thenReturn(mockS3b);
+		Mockito.when(mockS3u.openS3(FILENM, null)).thenReturn(mockS3b);
 
 		DiscreteGroundWaterDao mockDao = Mockito.mock(DiscreteGroundWaterDao.class);
 
@@ -101,6 +122,7 @@ class BuildRdbFileTest {
 		builder.aqDao = mockAqDao;
 		builder.s3BucketUtil = mockS3u;
 		builder.locationFolderUtil = mockLoc;
+		builder.properties = new Properties();
 
 		// ACTION UNDER TEST
 		ResultObject res = builder.apply(req);
@@ -114,7 +136,7 @@ class BuildRdbFileTest {
 		Mockito.verify(mockS3b, Mockito.atMostOnce()).getWriter();
 		Mockito.verify(mockS3b, Mockito.atLeastOnce()).close();
 		Mockito.verify(mockS3u, Mockito.atLeastOnce()).createFilename(POSTCD);
-		Mockito.verify(mockS3u, Mockito.atLeastOnce()).openS3(FILENM);
+		Mockito.verify(mockS3u, Mockito.atLeastOnce()).openS3(FILENM, null);
 		Mockito.verify(mockLoc, Mockito.atLeastOnce()).toStates(STATE);
 		Mockito.verify(mockLoc, Mockito.atLeastOnce()).filenameDecorator(STATE);
 		assertTrue(dstWriterClosed);
@@ -130,7 +152,7 @@ class BuildRdbFileTest {
 
 		S3BucketUtil mockS3u = Mockito.mock(S3BucketUtil.class);
 		Mockito.when(mockS3u.createFilename(POSTCD)).thenReturn(FILENM);
-		Mockito.when(mockS3u.openS3(FILENM)).thenReturn(mockS3b);
+		Mockito.when(mockS3u.openS3(FILENM, null)).thenReturn(mockS3b);
 
 		DiscreteGroundWaterDao mockDao = Mockito.mock(DiscreteGroundWaterDao.class);
 
@@ -160,7 +182,7 @@ class BuildRdbFileTest {
 		Mockito.verify(mockS3b, Mockito.never()).getWriter();
 		Mockito.verify(mockS3b, Mockito.never()).close();
 		Mockito.verify(mockS3u, Mockito.never()).createFilename(POSTCD);
-		Mockito.verify(mockS3u, Mockito.never()).openS3(FILENM);
+		Mockito.verify(mockS3u, Mockito.never()).openS3(FILENM, null);
 		Mockito.verify(mockLoc, Mockito.atLeastOnce()).toStates(STATE);
 		Mockito.verify(mockLoc, Mockito.atLeastOnce()).filenameDecorator(STATE);
 		assertFalse(outStreamClosed);
@@ -178,7 +200,7 @@ class BuildRdbFileTest {
 
 		S3BucketUtil mockS3u = Mockito.mock(S3BucketUtil.class);
 		Mockito.when(mockS3u.createFilename(POSTCD)).thenReturn(FILENM);
-		Mockito.when(mockS3u.openS3(FILENM)).thenReturn(mockS3b);
+		Mockito.when(mockS3u.openS3(FILENM, null)).thenReturn(mockS3b);
 
 		DiscreteGroundWaterDao mockDao = Mockito.mock(DiscreteGroundWaterDao.class);
 
@@ -197,6 +219,7 @@ class BuildRdbFileTest {
 		builder.dao = mockDao;
 		builder.s3BucketUtil = mockS3u;
 		builder.locationFolderUtil = mockLoc;
+		builder.properties = new Properties();
 
 		// ACTION UNDER TEST
 		assertThrows(RuntimeException.class, ()->builder.apply(req), "IOE converted to Runtime");
@@ -209,7 +232,7 @@ class BuildRdbFileTest {
 		Mockito.verify(mockS3b, Mockito.atMostOnce()).getWriter();
 		Mockito.verify(mockS3b, Mockito.atLeastOnce()).close();
 		Mockito.verify(mockS3u, Mockito.atLeastOnce()).createFilename(POSTCD);
-		Mockito.verify(mockS3u, Mockito.atLeastOnce()).openS3(FILENM);
+		Mockito.verify(mockS3u, Mockito.atLeastOnce()).openS3(FILENM, null);
 		Mockito.verify(mockDao, Mockito.never()).sendDiscreteGroundWater(stateAsList, writer, getParameterList());
 		assertTrue(outStreamClosed);
 		assertTrue(dstWriterClosed);
@@ -249,12 +272,406 @@ class BuildRdbFileTest {
 		Mockito.verify(mockLoc, Mockito.never()).toStates(STATE);
 		Mockito.verify(mockLoc, Mockito.never()).filenameDecorator(STATE);
 		Mockito.verify(mockS3u, Mockito.never()).createFilename(POSTCD);
-		Mockito.verify(mockS3u, Mockito.never()).openS3(FILENM);
+		Mockito.verify(mockS3u, Mockito.never()).openS3(FILENM, null);
 		Mockito.verify(mockDao, Mockito.never()).sendDiscreteGroundWater(stateAsList, writer, getParameterList());
 		assertFalse(outStreamClosed);
 		assertFalse(dstWriterClosed);
 	}
 
+	@Test
+	void testNationalRollsUpTheFilesOfTheRun() {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		BuildRdbFile builder = localBuilder(s3);
+		folderFile(s3, "CA", "20200715_031000");
+		folderFile(s3, "WI", "20200715_030500");
+
+		// ACTION UNDER TEST
+		ResultObject result = builder.processNationalRequest(List.of("CA", "WI"), "gzip", "20200715_030000");
+
+		// ASSERTIONS
+		assertEquals(2, result.getCount());
+		assertTrue(s3.objects.keySet().stream().anyMatch(key -> key.startsWith("bucket/tstest.US.")));
+	}
+
+	@Test
+	void testNationalFailsOnFilesOlderThanTheRun() {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		BuildRdbFile builder = localBuilder(s3);
+		folderFile(s3, "CA", "20200715_031000");
+		folderFile(s3, "WI", "20200714_030500");
+
+		// ACTION UNDER TEST
+		RuntimeException e = assertThrows(RuntimeException.class,
+				() -> builder.processNationalRequest(List.of("CA", "WI", "NY"), "gzip", "20200715_030000"));
+
+		// ASSERTIONS
+		assertTrue(e.getMessage().contains("[NY]"), e.getMessage());
+		assertTrue(e.getMessage().contains("WI tstest.WI.gw_lev_01.06.20200714_030500.full.rdb.gz"), e.getMessage());
+		assertFalse(e.getMessage().contains("CA"), e.getMessage());
+		assertFalse(s3.objects.keySet().stream().anyMatch(key -> key.startsWith("bucket/tstest.US.")));
+	}
+
+	@Test
+	void testNationalSkippedUploadsMayBeOlderThanTheRun() {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		BuildRdbFile builder = localBuilder(s3);
+		builder.properties.setUnchangedUploads("skip");
+		folderFile(s3, "CA", "20200715_031000");
+		folderFile(s3, "WI", "20200714_030500");
+
+		// ACTION UNDER TEST
+		ResultObject result = builder.processNationalRequest(List.of("CA", "WI"), "gzip", "20200715_030000");
+
+		// ASSERTIONS
+		assertEquals(2, result.getCount());
+	}
+
+	@Test
+	void testManifestOfTheRun() {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		BuildRdbFile builder = localBuilder(s3);
+		String run = "20200715_030000";
+		ExportManifest.Entry entry = new ExportManifest.Entry();
+		entry.setFolder("CA");
+		entry.setKey("tstest.CA.gw_lev_01.06.20200715_031000.full.rdb.gz");
+		entry.setWatermark(builder.s3BucketUtil.runStart(run).plusSeconds(600).toString());
+		builder.saveManifest("CA", List.of(entry));
+		ExportManifest.Entry old = new ExportManifest.Entry();
+		old.setFolder("WI");
+		old.setKey("tstest.WI.gw_lev_01.06.20200714_030500.full.rdb.gz");
+		old.setWatermark(builder.s3BucketUtil.runStart(run).minusSeconds(86400).toString());
+		builder.saveManifest("WI", List.of(old));
+
+		// ACTION UNDER TEST
+		ResultObject result = builder.processManifestRequest(List.of("CA", "WI"), run);
+
+		// ASSERTIONS
+		assertEquals(1, result.getCount());
+		assertTrue(result.getMessage().endsWith("manifests/test/runs/" + run + ".json"));
+		assertTrue(new String(s3.objects.get("bucket/manifests/test/latest.json")).contains("\"missing\":[\"WI\"]"));
+	}
+
+	@Test
+	void testSplitWritesPartsOfTheFolder() throws Exception {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		BuildRdbFile builder = localBuilder(s3);
+		builder.properties.setSplitRows(2);
+		site("CA", "01", "1.1", "1.2");
+		site("CA", "02", "2.1");
+		site("CA", "03", "3.1");
+
+		// ACTION UNDER TEST
+		ResultObject result = builder.apply(request("CA", null));
+
+		// ASSERTIONS the first part ends at the site boundary past two rows
+		assertEquals(4, result.getCount());
+		assertEquals(1, fetched.size());
+		assertNull(fetched.get(0));
+		assertEquals(List.of("1.1", "1.2"), results(s3, key(s3, "CA", ".full.part001.")));
+		assertEquals(List.of("2.1", "3.1"), results(s3, key(s3, "CA", ".full.part002.")));
+		assertNull(key(s3, "CA", ".full.rdb"));
+	}
+
+	@Test
+	void testFanOutWritesProductsAndDelta() throws Exception {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		BuildRdbFile builder = localBuilder(s3);
+		builder.properties.setFanOut("latest");
+		builder.properties.setDelta(true);
+		site("CA", "01", "1.1", "1.2");
+		site("CA", "02", "2.1");
+
+		// ACTION UNDER TEST
+		ResultObject result = builder.apply(request("CA", null));
+
+		// ASSERTIONS without a previous export every row is added
+		assertEquals(3, result.getCount());
+		assertEquals(List.of("1.1", "1.2", "2.1"), results(s3, key(s3, "CA", ".full.")));
+		assertEquals(List.of("1.2", "2.1"), results(s3, key(s3, "CA", ".latest.")));
+		assertEquals(List.of("A", "A", "A"), codes(s3, key(s3, "CA", ".delta.")));
+	}
+
+	@Test
+	void testSegmentedFetchesTheChangedSites() throws Exception {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		BuildRdbFile builder = localBuilder(s3);
+		builder.properties.setSegmentCache(true);
+		site("CA", "01", "1.1", "1.2");
+		site("CA", "02", "2.1");
+		builder.apply(request("CA", null));
+		fetched.clear();
+		site("CA", "02", "2.2");
+
+		// ACTION UNDER TEST
+		ResultObject result = builder.apply(request("CA", null));
+
+		// ASSERTIONS the unchanged site is copied from the previous file
+		assertEquals(3, result.getCount());
+		assertEquals(List.of(List.of("USGS-02")), fetched);
+		assertEquals(List.of("1.1", "1.2", "2.2"), results(s3, key(s3, "CA", ".full.")));
+		assertNotNull(s3.objects.get("bucket/tstest.CA.gw_lev_01.06.segments"));
+	}
+
+	@Test
+	void testFolderNationalAndManifestThroughLocalS3() throws Exception {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		BuildRdbFile builder = localBuilder(s3);
+		builder.properties.setHeaderMember(true);
+		builder.properties.setManifest(true);
+		site("CA", "01", "1.1", "1.2");
+		site("WI", "02", "2.1");
+		String run = builder.s3BucketUtil.createTimestamp();
+
+		// ACTION UNDER TEST
+		ResultObject ca = builder.apply(request("CA", run));
+		ResultObject wi = builder.apply(request("WI", run));
+		ResultObject national = builder.apply(request(BuildRdbFile.NATIONAL, run));
+		ResultObject manifest = builder.apply(request(BuildRdbFile.MANIFEST, run));
+
+		// ASSERTIONS the national file is the folder rows behind the one header
+		assertEquals(2, ca.getCount());
+		assertEquals(1, wi.getCount());
+		assertEquals(2, national.getCount());
+		String rdb = gunzip(s3, key(s3, BuildRdbFile.NATIONAL_SUFFIX, ".full."));
+		assertEquals(1, rdb.lines().filter(line -> line.startsWith("agency_cd")).count());
+		assertEquals(List.of("1.1", "1.2", "2.1"), results(s3, key(s3, BuildRdbFile.NATIONAL_SUFFIX, ".full.")));
+		assertEquals(2, manifest.getCount());
+		String latest = new String(s3.objects.get("bucket/manifests/test/latest.json"), StandardCharsets.UTF_8);
+		assertTrue(latest.contains("\"missing\":[]"), latest);
+	}
+
+	@Test
+	void testIncompatibleSettingsRefusedAtStartup() {
+		// ACTION UNDER TEST
+		// ASSERTIONS only one way of writing the folder
+		assertRefused(p -> { p.setSplitRows(10); p.setFanOut("latest"); });
+		assertRefused(p -> { p.setSplitPartitions(2); p.setDelta(true); });
+		assertRefused(p -> { p.setSplitBytes(10); p.setSegmentCache(true); });
+		assertRefused(p -> { p.setSeekable(true); p.setFanOut("latest"); });
+		// the split and segmented handlers fetch and write rows themselves
+		assertRefused(p -> { p.setSplitRows(10); p.setPipelineDepth(2); });
+		assertRefused(p -> { p.setSegmentCache(true); p.setSqlRules(true); });
+		assertRefused(p -> { p.setSeekable(true); p.setBatchSize(100); });
+		// fan-out writes characters to each product
+		assertRefused(p -> { p.setFanOut("latest"); p.setBytePassthrough(true); });
+		assertRefused(p -> { p.setDelta(true); p.setFormatWorkers(2); });
+		assertRefused(p -> { p.setFanOut("latest"); p.setPipelineDepth(2); });
+		// the database mapping takes the row path
+		assertRefused(p -> { p.setSqlRules(true); p.setBatchSize(100); });
+		assertRefused(p -> { p.setSqlRules(true); p.setFormatWorkers(2); });
+
+		assertAccepted(p -> { p.setFanOut("latest"); p.setBatchSize(100); p.setSqlRules(false); });
+		assertAccepted(p -> { p.setSegmentCache(true); p.setSeekable(true); p.setBytePassthrough(true); });
+		assertAccepted(p -> { p.setSplitRows(10); p.setBytePassthrough(true); p.setHeaderMember(true); });
+		assertAccepted(p -> { p.setPipelineDepth(2); p.setFormatWorkers(2); p.setBytePassthrough(true); });
+		assertAccepted(p -> { p.setSqlRules(true); p.setFanOut("latest"); });
+	}
+
+	void assertRefused(Consumer<Properties> settings) {
+		Properties properties = new Properties();
+		settings.accept(properties);
+		assertThrows(IllegalStateException.class, ()->properties.validate());
+	}
+
+	void assertAccepted(Consumer<Properties> settings) {
+		Properties properties = new Properties();
+		settings.accept(properties);
+		properties.validate();
+	}
+
+	RequestObject request(String locationFolder, String run) {
+		RequestObject request = new RequestObject();
+		request.setLocationFolder(locationFolder);
+		request.setRun(run);
+		return request;
+	}
+
+	/**
+	 * Adds a site of the state to the local database, or replaces its rows, a row a day for each result.
+	 */
+	void site(String state, String siteNumber, String... results) {
+		List<DiscreteGroundWater> rows = new ArrayList<>();
+		for (int r = 0; r < results.length; r++) {
+			DiscreteGroundWater dgw = new DiscreteGroundWater();
+			dgw.agencyCode = "USGS";
+			dgw.siteIdentificationNumber = siteNumber;
+			dgw.displayResult = results[r];
+			dgw.verticalDatumCode = "NGVD29";
+			dgw.measuringAgencyCode = "USGS";
+			dgw.levelAccuracyCode = "2";
+			dgw.readingQualifiers = "[]";
+			dgw.measurementMethodCode = "S";
+			dgw.dateMeasured = String.format("%02d-MAY-2007 18:30:47", r + 1);
+			dgw.dateMeasuredRaw = Timestamp.valueOf(LocalDateTime.of(2007, 5, r + 1, 18, 30, 47));
+			dgw.dateTimeAccuracyCode = "S";
+			dgw.timezoneCode = "UTC";
+			dgw.timeMeasuredUtc = dgw.dateMeasured;
+			dgw.approvalLevel = "1200";
+			dgw.parameterCode = "30210";
+			rows.add(dgw);
+		}
+		database.computeIfAbsent(state, k -> new LinkedHashMap<>()).put("USGS-" + siteNumber, rows);
+	}
+
+	Map<String, List<DiscreteGroundWater>> sites(List<String> states) {
+		Map<String, List<DiscreteGroundWater>> sites = new LinkedHashMap<>();
+		for (String state : states) {
+			sites.putAll(database.getOrDefault(state, Map.of()));
+		}
+		return sites;
+	}
+
+	/**
+	 * The rows of the local database as the query returns them.
+	 */
+	void fetch(List<String> states, List<String> sites, RowCallbackHandler handler) {
+		try {
+			for (Map.Entry<String, List<DiscreteGroundWater>> site : sites(states).entrySet()) {
+				if (sites == null || sites.contains(site.getKey())) {
+					for (DiscreteGroundWater dgw : site.getValue()) {
+						handler.processRow(resultSet(site.getKey(), dgw));
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	ResultSet resultSet(String site, DiscreteGroundWater dgw) throws SQLException {
+		ResultSet mockRs = Mockito.mock(ResultSet.class);
+		Mockito.when(mockRs.getString(SegmentRowHandler.SITE_COLUMN)).thenReturn(site);
+		Mockito.when(mockRs.getString("agency_code")).thenReturn(dgw.agencyCode);
+		Mockito.when(mockRs.getString("approval_level")).thenReturn(dgw.approvalLevel);
+		Mockito.when(mockRs.getString("date_measured")).thenReturn(dgw.dateMeasured);
+		Mockito.when(mockRs.getTimestamp("date_measured_raw")).thenReturn(dgw.dateMeasuredRaw);
+		Mockito.when(mockRs.getString("date_time_accuracy_code")).thenReturn(dgw.dateTimeAccuracyCode);
+		Mockito.when(mockRs.getString("level_accuracy_code")).thenReturn(dgw.levelAccuracyCode);
+		Mockito.when(mockRs.getString("measurement_method_code")).thenReturn(dgw.measurementMethodCode);
+		Mockito.when(mockRs.getString("measuring_agency_code")).thenReturn(dgw.measuringAgencyCode);
+		Mockito.when(mockRs.getString("site_identification_number")).thenReturn(dgw.siteIdentificationNumber);
+		Mockito.when(mockRs.getString("result_measure_qualifiers")).thenReturn(dgw.readingQualifiers);
+		Mockito.when(mockRs.getString("time_measured_utc")).thenReturn(dgw.timeMeasuredUtc);
+		Mockito.when(mockRs.getString("timezone_code")).thenReturn(dgw.timezoneCode);
+		Mockito.when(mockRs.getString("vertical_datum_code")).thenReturn(dgw.verticalDatumCode);
+		Mockito.when(mockRs.getString("parameter_code")).thenReturn(dgw.parameterCode);
+		Mockito.when(mockRs.getString("display_result")).thenReturn(dgw.displayResult);
+		return mockRs;
+	}
+
+	/**
+	 * @return the key of the folder file with the infix, without the bucket, null if there is none
+	 */
+	String key(LocalS3 s3, String suffix, String infix) {
+		return s3.objects.keySet().stream()
+				.filter(key -> key.startsWith("bucket/tstest." + suffix + ".") && key.contains(infix))
+				.map(key -> key.substring("bucket/".length()))
+				.findFirst().orElse(null);
+	}
+
+	String gunzip(LocalS3 s3, String key) throws IOException {
+		return new String(new GZIPInputStream(new ByteArrayInputStream(s3.objects.get("bucket/" + key))).readAllBytes(),
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the lev_va of each data row of the file
+	 */
+	List<String> results(LocalS3 s3, String key) throws IOException {
+		int result = DeltaRdbOutput.column("lev_va");
+		return gunzip(s3, key).lines()
+				.filter(line -> line.startsWith("USGS\t"))
+				.map(line -> line.split("\t", -1)[result])
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the delta_cd of each row of the delta file
+	 */
+	List<String> codes(LocalS3 s3, String key) throws IOException {
+		return gunzip(s3, key).lines()
+				.filter(line -> line.matches("^[ACD]\tUSGS\t.*"))
+				.map(line -> line.substring(0, 1))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * A builder of the test tier over the local S3 and database, whose location folders are their own labels.
+	 */
+	BuildRdbFile localBuilder(LocalS3 s3) {
+		Properties properties = new Properties();
+		properties.setRegion("region");
+		properties.setBucket("bucket");
+		properties.setTier("TEST");
+		properties.setCodec(OutputCodecs.GZIP);
+		BuildRdbFile builder = new BuildRdbFile();
+		builder.properties = properties;
+		builder.dao = new DiscreteGroundWaterDao() {
+			@Override
+			public void sendDiscreteGroundWater(List<String> states, RdbWriter writer, List<Parameter> parameters) {
+				fetch(states, null, new DiscreteGroundWaterRowHandler(writer, parameters));
+			}
+
+			@Override
+			public List<String> getSiteOrder(List<String> states) {
+				return new ArrayList<>(sites(states).keySet());
+			}
+
+			@Override
+			public Map<String, String> getSiteFingerprints(List<String> states) {
+				Map<String, String> fingerprints = new LinkedHashMap<>();
+				sites(states).forEach((site, rows) -> fingerprints.put(site,
+						rows.stream().map(dgw -> dgw.displayResult).collect(Collectors.joining(","))));
+				return fingerprints;
+			}
+
+			@Override
+			public void sendSiteSegments(List<String> states, List<String> sites, RowCallbackHandler handler) {
+				fetched.add(sites);
+				fetch(states, sites, handler);
+			}
+		};
+		builder.aqDao = new AqToNwisParmDao() {
+			@Override
+			public List<Parameter> getParameters() {
+				return getParameterList();
+			}
+		};
+		builder.awsClients = s3.asClients(properties);
+		builder.s3BucketUtil = new S3BucketUtil(properties, builder.awsClients);
+		builder.locationFolderUtil = new LocationFolder(null) {
+			@Override
+			public String filenameDecorator(String locationFolder) {
+				return locationFolder;
+			}
+
+			@Override
+			public List<String> getLocationFolders() {
+				return new ArrayList<>(database.keySet());
+			}
+		};
+		return builder;
+	}
+
+	/**
+	 * Puts a folder file written with a header member.
+	 */
+	void folderFile(LocalS3 s3, String suffix, String timestamp) {
+		String key = "bucket/tstest." + suffix + ".gw_lev_01.06." + timestamp + ".full.rdb.gz";
+		s3.objects.put(key, new byte[] {1, 2, 3, 4, 5, 6});
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.addUserMetadata(S3Bucket.HEADER_LENGTH_METADATA, "2");
+		s3.metadata.put(key, metadata);
+	}
+
 	private List<Parameter> getParameterList() {
 		List<Parameter> parameters = new ArrayList<>();
 		Parameter p1 = new Parameter();
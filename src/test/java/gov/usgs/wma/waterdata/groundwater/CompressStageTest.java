@@ -0,0 +1,77 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class CompressStageTest {
+
+	@Test
+	void testChunksAreCompressedInOrder() throws Exception {
+		// SETUP
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(file);
+		CompressStage stage = new CompressStage(gzip, 2, 7);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			expected.append("row ").append(i).append('\n');
+		}
+
+		// ACTION UNDER TEST
+		OutputStream input = stage.start();
+		byte[] bytes = expected.toString().getBytes();
+		for (int offset = 0; offset < bytes.length; offset += 5) {
+			input.write(bytes, offset, Math.min(5, bytes.length - offset));
+		}
+		stage.finish();
+		gzip.close();
+
+		// ASSERTIONS
+		byte[] actual = new GZIPInputStream(new ByteArrayInputStream(file.toByteArray())).readAllBytes();
+		assertEquals(expected.toString(), new String(actual));
+		assertTrue(stage.getUtilization() >= 0 && stage.getUtilization() <= 1);
+	}
+
+	@Test
+	void testDestinationFailure() {
+		// SETUP
+		CompressStage stage = new CompressStage(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		}, 1, 4);
+
+		// ACTION UNDER TEST
+		OutputStream input = stage.start();
+
+		// ASSERTIONS the producer is released rather than blocked forever
+		assertThrows(RuntimeException.class, ()->{
+			for (int i = 0; i < 100; i++) {
+				input.write(new byte[] {1, 2, 3, 4}, 0, 4);
+			}
+		});
+		assertThrows(RuntimeException.class, ()->stage.finish());
+	}
+
+	@Test
+	void testAbortWaitsForTheStage() throws Exception {
+		// SETUP
+		CompressStage stage = new CompressStage(new ByteArrayOutputStream(), 2, 4);
+		OutputStream input = stage.start();
+		input.write(new byte[] {1, 2, 3, 4, 5}, 0, 5);
+
+		// ACTION UNDER TEST
+		stage.abort(new IllegalStateException("format failed"));
+
+		// ASSERTIONS
+		assertFalse(stage.thread.isAlive());
+	}
+}
@@ -0,0 +1,192 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DeltaRdbOutputTest {
+
+	Map<String, Integer> siteOrder;
+	StringWriter delta;
+
+	@BeforeEach
+	public void setup() {
+		siteOrder = new HashMap<>();
+		delta = new StringWriter();
+	}
+
+	@Test
+	void testAddsChangesAndDeletes() throws Exception {
+		// SETUP
+		order("USGS-01", "USGS-03", "USGS-04");
+		String previous = rdb(
+				row("01", "72019", 1000, "1.1"),
+				row("01", "72019", 2000, "1.2"),
+				row("02", "72019", 1000, "2.1"),
+				row("03", "72019", 1000, "3.1"),
+				row("03", "62610", 1000, "3.2"),
+				row("05", "72019", 1000, "5.1"));
+
+		// ACTION UNDER TEST
+		List<String> rows = writeDelta(previous,
+				row("01", "72019", 1000, "1.1"),
+				row("01", "72019", 2000, "1.3"),
+				row("01", "72019", 3000, "1.4"),
+				row("03", "72019", 1000, "3.1"),
+				row("04", "72019", 1000, "4.1"));
+
+		// ASSERTIONS
+		assertEquals(List.of("C 01 1.3", "A 01 1.4", "D 02 2.1", "D 03 3.2", "D 05 5.1", "A 04 4.1"), rows);
+		assertTrue(delta.toString().contains("delta_cd\tagency_cd\tsite_no"));
+		assertTrue(delta.toString().contains("1ss\t5ss\t15ss"));
+		assertTrue(delta.toString().contains("since the export previous.rdb"));
+	}
+
+	@Test
+	void testNoPreviousExport() {
+		// SETUP
+		order("USGS-01");
+
+		// ACTION UNDER TEST
+		List<String> rows = writeDelta(null, row("01", "72019", 1000, "1.1"), row("01", "72019", 2000, "1.2"));
+
+		// ASSERTIONS
+		assertEquals(List.of("A 01 1.1", "A 01 1.2"), rows);
+	}
+
+	@Test
+	void testUnchanged() throws Exception {
+		// SETUP
+		order("USGS-01", "USGS-02");
+		DiscreteGroundWater[] current = {row("01", "72019", 1000, "1.1"), row("02", "72019", 1000, "2.1")};
+
+		// ACTION UNDER TEST
+		List<String> rows = writeDelta(rdb(current), current);
+
+		// ASSERTIONS
+		assertEquals(List.of(), rows);
+	}
+
+	@Test
+	void testOpenPreviousGzip() throws Exception {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		String key = sendPrevious(s3, "gzip", row("01", "72019", 1000, "1.1"));
+		order("USGS-01");
+
+		// ACTION UNDER TEST
+		RdbWriter writer = new RdbWriter(delta);
+		try (DeltaRdbOutput output = new DeltaRdbOutput(writer,
+				DeltaRdbOutput.openPrevious(s3, "bucket", key), key, siteOrder)) {
+			output.finish();
+		}
+
+		// ASSERTIONS
+		assertTrue(key.endsWith(".full.rdb.gz"));
+		assertNull(s3.metadata.get("bucket/" + key).getContentEncoding());
+		assertEquals(List.of("D 01 1.1"), rows());
+		assertEquals(1, writer.getDataRowCount());
+	}
+
+	@Test
+	void testOpenPreviousUncompressed() throws Exception {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		String key = sendPrevious(s3, OutputCodecs.NONE, row("01", "72019", 1000, "1.1"));
+		order("USGS-01");
+
+		// ACTION UNDER TEST
+		try (DeltaRdbOutput output = new DeltaRdbOutput(new RdbWriter(delta),
+				DeltaRdbOutput.openPrevious(s3, "bucket", key), key, siteOrder)) {
+			output.finish();
+		}
+
+		// ASSERTIONS
+		assertTrue(key.endsWith(".full.rdb"));
+		assertEquals(List.of("D 01 1.1"), rows());
+	}
+
+	/**
+	 * Sends the rows as an export of the folder the way the exporter does.
+	 * @return the key of the export
+	 */
+	String sendPrevious(LocalS3 s3, String codec, DiscreteGroundWater... rows) throws Exception {
+		Properties properties = new Properties();
+		properties.setRegion("region");
+		properties.setBucket("bucket");
+		properties.setTier("TEST");
+		properties.setCodec(OutputCodecs.GZIP);
+		S3BucketUtil s3util = new S3BucketUtil(properties, s3.asClients(properties));
+		try (S3Bucket bucket = s3util.openS3Part(s3util.createFilename("CA"), codec)) {
+			bucket.getWriter().append(rdb(rows));
+			bucket.sendS3(rows.length);
+			return bucket.getKeyName();
+		}
+	}
+
+	List<String> writeDelta(String previous, DiscreteGroundWater... current) {
+		FanOutRdbWriter writer = new FanOutRdbWriter(new StringWriter());
+		BufferedReader reader = previous == null ? null : new BufferedReader(new StringReader(previous));
+		writer.addOutput(new DeltaRdbOutput(new RdbWriter(delta), reader, "previous.rdb", siteOrder));
+		writer.writeHeader();
+		for (DiscreteGroundWater dgw : current) {
+			writer.writeRow(dgw);
+		}
+		writer.finish();
+		return rows();
+	}
+
+	void order(String... sites) {
+		for (String site : sites) {
+			siteOrder.put(site, siteOrder.size());
+		}
+	}
+
+	String rdb(DiscreteGroundWater... rows) {
+		StringWriter rdb = new StringWriter();
+		RdbWriter writer = new RdbWriter(rdb);
+		writer.writeHeader();
+		for (DiscreteGroundWater dgw : rows) {
+			writer.writeRow(dgw);
+		}
+		writer.flush();
+		return rdb.toString();
+	}
+
+	DiscreteGroundWater row(String site, String parameterCode, long measured, String result) {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "USGS";
+		dgw.siteIdentificationNumber = site;
+		dgw.parameterCode = parameterCode;
+		dgw.belowLandSurface = true;
+		dgw.dateMeasuredRaw = new Timestamp(measured);
+		dgw.dateMeasured = "07-MAY-2007 18:30:" + (measured / 1000 + 10);
+		dgw.dateTimeAccuracyCode = "S";
+		dgw.timezoneCode = "UTC";
+		dgw.displayResult = result;
+		return dgw;
+	}
+
+	/**
+	 * @return the delta code, site number and result of each delta row
+	 */
+	List<String> rows() {
+		int result = DeltaRdbOutput.column("lev_va") + 1;
+		int site = DeltaRdbOutput.SITE_NO + 1;
+		return delta.toString().lines()
+				.filter(line -> !line.startsWith("#") && line.matches("^[ACD]\tUSGS\t.*"))
+				.map(line -> line.split("\t", -1))
+				.map(columns -> columns[0] + " " + columns[site] + " " + columns[result])
+				.collect(Collectors.toList());
+	}
+}
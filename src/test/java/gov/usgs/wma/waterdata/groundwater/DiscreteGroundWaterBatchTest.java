@@ -0,0 +1,187 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DiscreteGroundWaterBatchTest {
+
+	DiscreteGroundWaterBatch batch;
+	DiscreteGroundWaterRules rules;
+	List<Parameter> parameters;
+
+	@BeforeEach
+	public void setup() {
+		batch = new DiscreteGroundWaterBatch(4);
+		rules = new DiscreteGroundWaterRules();
+		parameters = new ArrayList<>();
+		Parameter p1 = new Parameter();
+		p1.setParameterCode("30210");
+		p1.setBelowLandSurface(true);
+		parameters.add(p1);
+		Parameter p2 = new Parameter();
+		p2.setParameterCode("72150");
+		p2.setAboveDatum(true);
+		parameters.add(p2);
+	}
+
+	DiscreteGroundWater makeDgw(String site, String approval, String qualifiers, String parameterCode) {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "USGS";
+		dgw.siteIdentificationNumber = site;
+		dgw.displayResult = "23.06";
+		dgw.verticalDatumCode = "NGVD29";
+		dgw.measuringAgencyCode = "USGS";
+		dgw.levelAccuracyCode = "2";
+		dgw.readingQualifiers = qualifiers;
+		dgw.measurementMethodCode = "S";
+		dgw.dateMeasured = "07-MAY-2007 18:30:47";
+		dgw.dateMeasuredRaw = Timestamp.valueOf(LocalDateTime.of(2007, Month.MAY, 01, 12, 0));
+		dgw.dateTimeAccuracyCode = "D";
+		dgw.timezoneCode = "UTC";
+		dgw.timeMeasuredUtc = "01-MAY-2007 12:00:00";
+		dgw.approvalLevel = approval;
+		dgw.parameterCode = parameterCode;
+		return dgw;
+	}
+
+	@Test
+	void testDictionaryEncoding() {
+		// ACTION UNDER TEST
+		batch.add(makeDgw("01646500", "1200", "[]", "30210"));
+		batch.add(makeDgw("01646501", "900", "[]", "30210"));
+		batch.add(makeDgw("01646502", "1200", "[]", "72150"));
+
+		// ASSERTIONS
+		assertEquals(3, batch.size());
+		assertEquals(1, batch.agencyCode.size());
+		assertEquals(2, batch.approvalLevel.size());
+		assertEquals(2, batch.parameterCode.size());
+		assertEquals(batch.approvalLevels[0], batch.approvalLevels[2]);
+		assertNotEquals(batch.approvalLevels[0], batch.approvalLevels[1]);
+	}
+
+	@Test
+	void testSiteNumberLeadingZerosRetained() {
+		// ACTION UNDER TEST
+		batch.add(makeDgw("01646500", "1200", "[]", "30210"));
+		batch.add(makeDgw("335504116544201", "1200", "[]", "30210"));
+		batch.add(makeDgw("AB-123", "1200", "[]", "30210"));
+		batch.add(makeDgw(null, "1200", "[]", "30210"));
+
+		// ASSERTIONS
+		assertEquals(1646500L, batch.siteNumbers[0]);
+		assertEquals("01646500", batch.getSiteNumber(0));
+		assertEquals("335504116544201", batch.getSiteNumber(1));
+		assertEquals("AB-123", batch.getSiteNumber(2));
+		assertNull(batch.getSiteNumber(3));
+	}
+
+	@Test
+	void testFullAndClear() {
+		for (int i = 0; i < 4; i++) {
+			batch.add(makeDgw("0164650" + i, "1200", "[]", "30210"));
+		}
+		assertTrue(batch.isFull());
+		assertThrows(IllegalStateException.class, ()->batch.add(makeDgw("1", "1200", "[]", "30210")));
+
+		// ACTION UNDER TEST
+		batch.clear();
+
+		// ASSERTIONS
+		assertEquals(0, batch.size());
+		assertFalse(batch.isFull());
+		assertEquals(1, batch.approvalLevel.size(), "Dictionaries are retained between batches");
+	}
+
+	@Test
+	void testRulesAppliedPerDictionaryEntry() {
+		// SETUP
+		String above = "[\"" + LevelStatusCode.ABOVE.getAqDescription() + "\"]";
+		int[] calls = new int[1];
+		DiscreteGroundWaterRules countingRules = new DiscreteGroundWaterRules() {
+			@Override
+			protected String toApprovalCode(String approvalLevel) {
+				calls[0]++;
+				return super.toApprovalCode(approvalLevel);
+			}
+		};
+		batch.add(makeDgw("01646500", "1200", above, "30210"));
+		batch.add(makeDgw("01646500", "1200", above, "30210"));
+		batch.add(makeDgw("01646500", "900", "", "72150"));
+
+		// ACTION UNDER TEST
+		countingRules.apply(batch);
+		batch.applyParameters(parameters);
+
+		// ASSERTIONS
+		assertEquals(2, calls[0]);
+		DiscreteGroundWater dgw = batch.copyRow(0, new DiscreteGroundWater());
+		assertEquals("A", dgw.approvalLevel);
+		assertEquals(LevelStatusCode.ABOVE.getNwisCode(), dgw.readingQualifiers);
+		assertEquals("S", dgw.measurementSourceCode);
+		assertTrue(dgw.belowLandSurface);
+		assertFalse(dgw.aboveDatum);
+		dgw = batch.copyRow(2, dgw);
+		assertEquals("P", dgw.approvalLevel);
+		assertEquals("", dgw.readingQualifiers);
+		assertTrue(dgw.aboveDatum);
+
+		// a second batch only evaluates the new entries
+		batch.clear();
+		batch.add(makeDgw("01646500", "900", "", "72150"));
+		countingRules.apply(batch);
+		assertEquals(2, calls[0]);
+	}
+
+	@Test
+	void testWriteBatchMatchesWriteRow() throws Exception {
+		// SETUP
+		List<DiscreteGroundWater> rows = List.of(
+				makeDgw("01646500", "1200", "[\"Static\"]", "30210"),
+				makeDgw("01646500", "900", "", "72150"),
+				makeDgw("335504116544201", "1200", "[\"Below\",\"Saline\"]", "72150"));
+		for (DiscreteGroundWater dgw : rows) {
+			batch.add(dgw);
+		}
+
+		ByteArrayOutputStream rowOut = new ByteArrayOutputStream();
+		Writer rowDestination = new OutputStreamWriter(rowOut);
+		RdbWriter rowWriter = new RdbWriter(rowDestination);
+		for (DiscreteGroundWater dgw : rows) {
+			rules.apply(dgw);
+			for (Parameter parameter : parameters) {
+				if (parameter.parameterCode.equals(dgw.parameterCode)) {
+					dgw.aboveDatum = parameter.aboveDatum;
+					dgw.belowLandSurface = parameter.belowLandSurface;
+				}
+			}
+			rowWriter.writeRow(dgw);
+		}
+		rowDestination.close();
+
+		ByteArrayOutputStream batchOut = new ByteArrayOutputStream();
+		Writer batchDestination = new OutputStreamWriter(batchOut);
+		RdbWriter batchWriter = new RdbWriter(batchDestination);
+
+		// ACTION UNDER TEST
+		rules.apply(batch);
+		batch.applyParameters(parameters);
+		batchWriter.writeBatch(batch);
+		batchDestination.close();
+
+		// ASSERTIONS
+		assertEquals(3, batchWriter.getDataRowCount());
+		assertEquals(rowOut.toString(), batchOut.toString());
+	}
+}
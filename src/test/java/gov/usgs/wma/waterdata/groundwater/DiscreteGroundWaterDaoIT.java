@@ -9,11 +9,13 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -50,7 +52,8 @@ import com.github.springtestdbunit.annotation.DbUnitConfiguration;
 classes={
 		DBTestConfig.class,
 		AqToNwisParmDao.class,
-		DiscreteGroundWaterDao.class})
+		DiscreteGroundWaterDao.class,
+		Properties.class})
 @ActiveProfiles("it")
 public class DiscreteGroundWaterDaoIT {
 
@@ -268,6 +271,138 @@ public class DiscreteGroundWaterDaoIT {
 		assertTrue( Pattern.compile("^.+\t246.0\tL\t\t\t.+$").matcher(lineC).matches() );
 	}
 
+	@DatabaseSetup(connection="observation",
+			value="classpath:/testData/")
+	@Test
+	public void testSendDiscreteGroundWater_sqlRulesMatchJavaRules() throws Exception {
+		// SETUP
+		states = List.of("California", "Texas");
+
+		// ACTION UNDER TEST
+		// ASSERT identical RDB rows from both paths
+		String javaRules = assertSqlRulesMatchJavaRules(13);
+		assertTrue(javaRules.contains("\t" + LevelStatusCode.TIDE_AFFECTED.getNwisCode() + "\t"));
+	}
+
+	@DatabaseSetup(connection="observation",
+			value={"classpath:/testData/", "classpath:/testDataWhitespace/discrete_ground_water_aqts.xml"})
+	@Test
+	public void testSendDiscreteGroundWater_sqlRulesTrimWhitespace() throws Exception {
+		// SETUP approval levels, agencies and qualifiers padded with tabs, carriage returns and newlines
+		states = List.of("Texas");
+
+		// ACTION UNDER TEST
+		// ASSERT identical RDB rows from both paths
+		String javaRules = assertSqlRulesMatchJavaRules(4);
+		List<String> columns = RdbSchema.DEFAULT.getColumns().stream().map(RdbSchema.Column::getName).collect(toList());
+		int approval = columns.indexOf("lev_age_cd");
+		int source = columns.indexOf("lev_src_cd");
+		int status = columns.indexOf("lev_status_cd");
+		List<String> codes = javaRules.lines()
+				.filter(line -> line.startsWith("USGS\t"))
+				.map(line -> line.split("\t", -1))
+				.map(fields -> fields[approval] + " " + fields[source] + " " + fields[status])
+				.collect(toList());
+		assertEquals(List.of("A S 1", "A S 4", "A  7", "P A "), codes);
+	}
+
+	/**
+	 * Sends the states through the Java rules and then the SQL rules.
+	 * @return the RDB of the Java rules, asserted equal to that of the SQL rules
+	 */
+	protected String assertSqlRulesMatchJavaRules(int rowCount) throws Exception {
+		dao.sendDiscreteGroundWater(states, writer, parameters);
+		destination.close();
+		String javaRules = out.toString();
+
+		ByteArrayOutputStream sqlOut = new ByteArrayOutputStream();
+		Writer sqlDestination = new OutputStreamWriter(sqlOut);
+		RdbWriter sqlWriter = new RdbWriter(sqlDestination);
+		dao.properties.setSqlRules(true);
+		try {
+			dao.sendDiscreteGroundWater(states, sqlWriter, parameters);
+		} finally {
+			dao.properties.setSqlRules(false);
+		}
+		sqlDestination.close();
+
+		assertEquals(rowCount, sqlWriter.getDataRowCount());
+		assertEquals(javaRules, sqlOut.toString());
+		return javaRules;
+	}
+
+	@DatabaseSetup(connection="observation",
+			value="classpath:/testData/")
+	@Test
+	public void testGetSiteFingerprints() throws Exception {
+		// ACTION UNDER TEST
+		Map<String, String> fingerprints = dao.getSiteFingerprints(states);
+
+		// ASSERT the sites in export order with fingerprints that are repeatable
+		assertEquals(List.of("USGS-335504116541501", "USGS-335504116544201", "USGS-341155116212701", "USGS-342518116363601"),
+				new ArrayList<>(fingerprints.keySet()));
+		assertEquals(4, fingerprints.values().stream().distinct().count());
+		assertEquals(fingerprints, dao.getSiteFingerprints(states));
+	}
+
+	@DatabaseSetup(connection="observation",
+			value="classpath:/testData/")
+	@Test
+	public void testGetSiteOrder() throws Exception {
+		// SETUP
+		states = List.of("California", "Texas");
+
+		// ACTION UNDER TEST
+		List<String> sites = dao.getSiteOrder(states);
+
+		// ASSERT the sites in the order of the export and of the fingerprints
+		assertEquals(new ArrayList<>(dao.getSiteFingerprints(states).keySet()), sites);
+		assertEquals(sites.size(), sites.stream().distinct().count());
+	}
+
+	@DatabaseSetup(connection="observation",
+			value="classpath:/testData/")
+	@Test
+	public void testSendSiteSegments() throws Exception {
+		// SETUP
+		Map<String, String> fingerprints = dao.getSiteFingerprints(states);
+		GzipMemberOutputStream members = new GzipMemberOutputStream(out, Deflater.BEST_SPEED);
+		destination = new OutputStreamWriter(members);
+		writer = new RdbWriter(destination);
+		SegmentRowHandler handler = new SegmentRowHandler(new DiscreteGroundWaterRowHandler(writer, parameters), writer,
+				members, fingerprints, null, null);
+
+		// ACTION UNDER TEST
+		dao.sendSiteSegments(states, List.of("USGS-335504116544201"), handler);
+		handler.finish();
+
+		// ASSERT only the rows of the site, as one member
+		assertEquals(6, writer.getDataRowCount());
+		assertEquals(1, members.getMembers().size());
+		assertEquals("USGS-335504116544201", members.getMembers().get(0).getKey());
+	}
+
+	@DatabaseSetup(connection="observation",
+			value="classpath:/testData/")
+	@Test
+	public void testSendSiteSegments_allSites() throws Exception {
+		// SETUP
+		Map<String, String> fingerprints = dao.getSiteFingerprints(states);
+		GzipMemberOutputStream members = new GzipMemberOutputStream(out, Deflater.BEST_SPEED);
+		destination = new OutputStreamWriter(members);
+		writer = new RdbWriter(destination);
+		SegmentRowHandler handler = new SegmentRowHandler(new DiscreteGroundWaterRowHandler(writer, parameters), writer,
+				members, fingerprints, null, null);
+
+		// ACTION UNDER TEST
+		dao.sendSiteSegments(states, null, handler);
+		handler.finish();
+
+		// ASSERT a member per site
+		assertEquals(11, writer.getDataRowCount());
+		assertEquals(4, members.getMembers().size());
+	}
+
 	@Test
 	public void testSendDiscreteGroundWater_handleIOE() throws Exception {
 		// SETUP
@@ -0,0 +1,148 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DiscreteGroundWaterParallelRowHandlerTest {
+
+	List<Parameter> parameters;
+
+	@BeforeEach
+	public void setup() {
+		parameters = new ArrayList<>();
+		Parameter p1 = new Parameter();
+		p1.setParameterCode("30210");
+		p1.setBelowLandSurface(true);
+		parameters.add(p1);
+		Parameter p2 = new Parameter();
+		p2.setParameterCode("72150");
+		p2.setAboveDatum(true);
+		parameters.add(p2);
+	}
+
+	DiscreteGroundWater makeDgw(int row) {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "USGS";
+		dgw.siteIdentificationNumber = String.format("%015d", row);
+		dgw.displayResult = String.valueOf(row / 100.0);
+		dgw.verticalDatumCode = "NGVD29";
+		dgw.measuringAgencyCode = "USGS";
+		dgw.levelAccuracyCode = "2";
+		dgw.readingQualifiers = row % 3 == 0 ? "[\"Dry\"]" : "[]";
+		dgw.measurementMethodCode = "S";
+		dgw.dateMeasured = "07-MAY-2007 18:30:47";
+		dgw.dateMeasuredRaw = Timestamp.valueOf(LocalDateTime.of(2007, 5, 1, 12, 0).plusHours(row));
+		dgw.dateTimeAccuracyCode = "D";
+		dgw.timezoneCode = "UTC";
+		dgw.timeMeasuredUtc = "01-MAY-2007 12:00:00";
+		dgw.approvalLevel = row % 2 == 0 ? "1200" : "900";
+		dgw.parameterCode = row % 5 == 0 ? "72150" : "30210";
+		return dgw;
+	}
+
+	// as processRow does for a mapped row
+	void process(DiscreteGroundWaterBatchRowHandler handler, DiscreteGroundWater dgw) {
+		handler.batch.add(dgw);
+		if (handler.batch.isFull()) {
+			handler.flush();
+		}
+	}
+
+	@Test
+	void testRowsKeepQueryOrder() {
+		// SETUP
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		RdbByteWriter serialWriter = new RdbByteWriter(expected);
+		DiscreteGroundWaterBatchRowHandler serial = new DiscreteGroundWaterBatchRowHandler(serialWriter, parameters, 7);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		RdbByteWriter parallelWriter = new RdbByteWriter(actual);
+		DiscreteGroundWaterParallelRowHandler parallel =
+				new DiscreteGroundWaterParallelRowHandler(parallelWriter, parameters, 7, 4, 3);
+
+		// ACTION UNDER TEST
+		for (int row = 0; row < 1000; row++) {
+			process(serial, makeDgw(row));
+			process(parallel, makeDgw(row));
+		}
+		serial.finish();
+		serialWriter.flush();
+		parallel.finish();
+		parallelWriter.flush();
+
+		// ASSERTIONS
+		assertEquals(4, parallel.depth);
+		assertEquals(1000, parallelWriter.getDataRowCount());
+		assertEquals(expected.toString(), actual.toString());
+		for (RuleStage stage : parallel.getRules().getStages()) {
+			assertEquals(1000, stage.getRows(), stage.getName());
+		}
+	}
+
+	@Test
+	void testInvalidParameterFailsFinish() {
+		// SETUP
+		RdbByteWriter writer = new RdbByteWriter(new ByteArrayOutputStream());
+		DiscreteGroundWaterParallelRowHandler parallel =
+				new DiscreteGroundWaterParallelRowHandler(writer, parameters, 4, 2, 4);
+		DiscreteGroundWater dgw = makeDgw(1);
+		dgw.parameterCode = "00000";
+
+		// ACTION UNDER TEST
+		process(parallel, dgw);
+
+		// ASSERTIONS
+		assertThrows(RuntimeException.class, ()->parallel.finish());
+	}
+
+	@Test
+	void testDestinationFailureReleasesTheFetchThread() {
+		// SETUP
+		RdbByteWriter writer = new RdbByteWriter(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		}, 16);
+		DiscreteGroundWaterParallelRowHandler parallel =
+				new DiscreteGroundWaterParallelRowHandler(writer, parameters, 2, 2, 2);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS fetch fails once the workers stop rather than blocking on a full ring
+		assertThrows(RuntimeException.class, ()->{
+			for (int row = 0; row < 1000; row++) {
+				process(parallel, makeDgw(row));
+			}
+			parallel.finish();
+		});
+	}
+
+	@Test
+	void testAbortWaitsForTheStages() {
+		// SETUP
+		RdbByteWriter writer = new RdbByteWriter(new ByteArrayOutputStream());
+		DiscreteGroundWaterParallelRowHandler parallel =
+				new DiscreteGroundWaterParallelRowHandler(writer, parameters, 2, 2, 2);
+		for (int row = 0; row < 3; row++) {
+			process(parallel, makeDgw(row));
+		}
+
+		// ACTION UNDER TEST
+		parallel.abort(new IllegalStateException("query failed"));
+
+		// ASSERTIONS
+		for (Thread worker : parallel.workers) {
+			assertFalse(worker.isAlive(), worker.getName());
+		}
+		assertFalse(parallel.reorder.isAlive());
+	}
+}
@@ -0,0 +1,193 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class DiscreteGroundWaterPassthroughRowHandlerTest {
+
+	ResultSet mockRs;
+	DiscreteGroundWater dgw;
+	List<Parameter> parameters;
+
+	@BeforeEach
+	public void setup() {
+		parameters = new ArrayList<>();
+		Parameter p1 = new Parameter();
+		p1.setParameterCode("30210");
+		p1.setAboveDatum(false);
+		p1.setBelowLandSurface(true);
+		parameters.add(p1);
+
+		mockRs = Mockito.mock(ResultSet.class);
+		dgw = makeDgw();
+		try {
+			Mockito.when(mockRs.getString("agency_code")).thenReturn(dgw.agencyCode);
+			Mockito.when(mockRs.getString("approval_level")).thenReturn(dgw.approvalLevel);
+			Mockito.when(mockRs.getString("date_measured")).thenReturn(dgw.dateMeasured);
+			Mockito.when(mockRs.getTimestamp("date_measured_raw")).thenReturn(dgw.dateMeasuredRaw);
+			Mockito.when(mockRs.getString("date_time_accuracy_code")).thenReturn(dgw.dateTimeAccuracyCode);
+			Mockito.when(mockRs.getString("level_accuracy_code")).thenReturn(dgw.levelAccuracyCode);
+			Mockito.when(mockRs.getString("measurement_method_code")).thenReturn(dgw.measurementMethodCode);
+			Mockito.when(mockRs.getString("measuring_agency_code")).thenReturn(dgw.measuringAgencyCode);
+			Mockito.when(mockRs.getString("site_identification_number")).thenReturn(dgw.siteIdentificationNumber);
+			Mockito.when(mockRs.getString("result_measure_qualifiers")).thenReturn(dgw.readingQualifiers);
+			Mockito.when(mockRs.getString("time_measured_utc")).thenReturn(dgw.timeMeasuredUtc);
+			Mockito.when(mockRs.getString("timezone_code")).thenReturn(dgw.timezoneCode);
+			Mockito.when(mockRs.getString("vertical_datum_code")).thenReturn(dgw.verticalDatumCode);
+			Mockito.when(mockRs.getString("parameter_code")).thenReturn(dgw.parameterCode);
+			Mockito.when(mockRs.getString("display_result")).thenReturn(dgw.displayResult);
+
+			Mockito.when(mockRs.getBytes("agency_code")).thenReturn(bytes(dgw.agencyCode));
+			Mockito.when(mockRs.getBytes("date_measured")).thenReturn(bytes(dgw.dateMeasured));
+			Mockito.when(mockRs.getBytes("date_time_accuracy_code")).thenReturn(bytes(dgw.dateTimeAccuracyCode));
+			Mockito.when(mockRs.getBytes("level_accuracy_code")).thenReturn(bytes(dgw.levelAccuracyCode));
+			Mockito.when(mockRs.getBytes("measurement_method_code")).thenReturn(bytes(dgw.measurementMethodCode));
+			Mockito.when(mockRs.getBytes("measuring_agency_code")).thenReturn(bytes(dgw.measuringAgencyCode));
+			Mockito.when(mockRs.getBytes("site_identification_number")).thenReturn(bytes(dgw.siteIdentificationNumber));
+			Mockito.when(mockRs.getBytes("time_measured_utc")).thenReturn(bytes(dgw.timeMeasuredUtc));
+			Mockito.when(mockRs.getBytes("timezone_code")).thenReturn(bytes(dgw.timezoneCode));
+			Mockito.when(mockRs.getBytes("vertical_datum_code")).thenReturn(bytes(dgw.verticalDatumCode));
+			Mockito.when(mockRs.getBytes("display_result")).thenReturn(bytes(dgw.displayResult));
+		} catch (SQLException e) {
+			throw new RuntimeException("Error mocking resultset", e);
+		}
+	}
+
+	byte[] bytes(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	DiscreteGroundWater makeDgw() {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "USGS";
+		dgw.siteIdentificationNumber = "4042342342";
+		dgw.displayResult = "23.06";
+		dgw.verticalDatumCode = "";
+		dgw.measuringAgencyCode = "USGS";
+		dgw.levelAccuracyCode = "2";
+		dgw.readingQualifiers = "[\"" + LevelStatusCode.BELOW.getAqDescription() + "\"]";
+		dgw.measurementMethodCode = "S";
+		dgw.dateMeasured = "07-MAY-2007 18:30:47";
+		LocalDateTime dateTime = LocalDateTime.of(2007, Month.MAY, 01, 12, 0);
+		dgw.dateMeasuredRaw = Timestamp.valueOf(dateTime);
+		dgw.dateTimeAccuracyCode = "D";
+		dgw.timezoneCode = "UTC";
+		dgw.timeMeasuredUtc = "01-MAY-2007 12:00:00";
+		dgw.approvalLevel = "1200";
+		dgw.parameterCode = "30210";
+		return dgw;
+	}
+
+	@Test
+	void testPassthroughMatchesRowHandler() throws Exception {
+		// SETUP
+		ByteArrayOutputStream charOut = new ByteArrayOutputStream();
+		Writer destination = new OutputStreamWriter(charOut);
+		RdbWriter charWriter = new RdbWriter(destination);
+		new DiscreteGroundWaterRowHandler(charWriter, parameters).processRow(mockRs);
+		destination.close();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdbByteWriter byteWriter = new RdbByteWriter(out);
+		DiscreteGroundWaterPassthroughRowHandler rowHandler = new DiscreteGroundWaterPassthroughRowHandler(byteWriter, parameters);
+
+		// ACTION UNDER TEST
+		rowHandler.processRow(mockRs);
+		byteWriter.flush();
+
+		// ASSERTIONS
+		assertEquals(charOut.toString(), out.toString());
+		assertTrue(out.toString().contains("\t" + LevelStatusCode.BELOW.getNwisCode() + "\t"));
+		assertEquals(1, byteWriter.getDataRowCount());
+		Mockito.verify(mockRs, Mockito.never()).getString("site_identification_number");
+	}
+
+	@Test
+	void testSourceCodeDecidedOnTheBytes() throws Exception {
+		// SETUP padded, blank and other agencies, and multibyte ends decided by the String rule
+		String[] agencies = {" USGS\t", "\u000B\f", "NPS", "USGSX", null, "\u00c9USGS", "USGS\u3000"};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdbByteWriter byteWriter = new RdbByteWriter(out);
+		DiscreteGroundWaterPassthroughRowHandler rowHandler = new DiscreteGroundWaterPassthroughRowHandler(byteWriter, parameters);
+
+		// ACTION UNDER TEST
+		for (String agency : agencies) {
+			Mockito.when(mockRs.getBytes("measuring_agency_code")).thenReturn(bytes(agency));
+			rowHandler.processRow(mockRs);
+		}
+		byteWriter.flush();
+
+		// ASSERTIONS
+		int source = 0;
+		while (!RdbSchema.DEFAULT.getColumns().get(source).getName().equals("lev_src_cd")) {
+			source++;
+		}
+		List<String> codes = new ArrayList<>();
+		for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+			codes.add(line.split("\t", -1)[source]);
+		}
+		assertEquals(List.of("S", "", "A", "A", "", "A", "S"), codes);
+		RuleStage stage = rowHandler.getRules().sourceStage;
+		assertEquals(agencies.length, stage.getRows());
+		assertEquals(5, stage.getChanges());
+	}
+
+	@Test
+	void testSchemaOrdersAndTruncatesTheFields() throws Exception {
+		// SETUP
+		RdbSchema schema = RdbSchema.parse("#\nparameter_code\tsite_no\tlev_status_cd\tlev_va\n5s\t4s\t1s\t7s\n");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdbByteWriter byteWriter = new RdbByteWriter(out);
+		DiscreteGroundWaterPassthroughRowHandler rowHandler =
+				new DiscreteGroundWaterPassthroughRowHandler(byteWriter, parameters, schema);
+
+		// ACTION UNDER TEST
+		rowHandler.processRow(mockRs);
+		byteWriter.flush();
+
+		// ASSERTIONS
+		assertEquals("30210\t4042\t" + LevelStatusCode.BELOW.getNwisCode() + "\t23.06\n", out.toString());
+	}
+
+	@Test
+	void testSchemaColumnWithoutField() {
+		// SETUP
+		RdbSchema schema = RdbSchema.parse("#\nagency_cd\tlev_unknown\n5s\t1s\n");
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(RuntimeException.class, ()->new DiscreteGroundWaterPassthroughRowHandler(
+				new RdbByteWriter(new ByteArrayOutputStream()), parameters, schema));
+	}
+
+	@Test
+	void testInvalidParameter() throws Exception {
+		// SETUP
+		Mockito.when(mockRs.getString("parameter_code")).thenReturn("99999");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdbByteWriter byteWriter = new RdbByteWriter(out);
+		DiscreteGroundWaterPassthroughRowHandler rowHandler = new DiscreteGroundWaterPassthroughRowHandler(
+				byteWriter, parameters);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(RuntimeException.class, ()->rowHandler.processRow(mockRs));
+		byteWriter.flush();
+		assertEquals(0, out.size());
+	}
+}
@@ -0,0 +1,204 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DiscreteGroundWaterPipelineRowHandlerTest {
+
+	List<Parameter> parameters;
+
+	@BeforeEach
+	public void setup() {
+		parameters = new ArrayList<>();
+		Parameter p1 = new Parameter();
+		p1.setParameterCode("30210");
+		p1.setBelowLandSurface(true);
+		parameters.add(p1);
+		Parameter p2 = new Parameter();
+		p2.setParameterCode("72150");
+		p2.setAboveDatum(true);
+		parameters.add(p2);
+	}
+
+	DiscreteGroundWater makeDgw(int row) {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "USGS";
+		dgw.siteIdentificationNumber = String.format("%015d", row);
+		dgw.displayResult = String.valueOf(row / 100.0);
+		dgw.verticalDatumCode = "NGVD29";
+		dgw.measuringAgencyCode = "USGS";
+		dgw.levelAccuracyCode = "2";
+		dgw.readingQualifiers = row % 3 == 0 ? "[\"Dry\"]" : "[]";
+		dgw.measurementMethodCode = "S";
+		dgw.dateMeasured = "07-MAY-2007 18:30:47";
+		dgw.dateMeasuredRaw = Timestamp.valueOf(LocalDateTime.of(2007, 5, 1, 12, 0).plusHours(row));
+		dgw.dateTimeAccuracyCode = "D";
+		dgw.timezoneCode = "UTC";
+		dgw.timeMeasuredUtc = "01-MAY-2007 12:00:00";
+		dgw.approvalLevel = row % 2 == 0 ? "1200" : "900";
+		dgw.parameterCode = row % 5 == 0 ? "72150" : "30210";
+		return dgw;
+	}
+
+	// as processRow does for a mapped row
+	void process(DiscreteGroundWaterBatchRowHandler handler, DiscreteGroundWater dgw) {
+		handler.batch.add(dgw);
+		if (handler.batch.isFull()) {
+			handler.flush();
+		}
+	}
+
+	@Test
+	void testRowsKeepQueryOrder() {
+		// SETUP
+		StringWriter expected = new StringWriter();
+		DiscreteGroundWaterBatchRowHandler serial = new DiscreteGroundWaterBatchRowHandler(new RdbWriter(expected), parameters, 7);
+		StringWriter actual = new StringWriter();
+		RdbWriter pipelineWriter = new RdbWriter(actual);
+		DiscreteGroundWaterPipelineRowHandler pipeline = new DiscreteGroundWaterPipelineRowHandler(pipelineWriter, parameters, 7, 3);
+
+		// ACTION UNDER TEST
+		for (int row = 0; row < 1000; row++) {
+			process(serial, makeDgw(row));
+			process(pipeline, makeDgw(row));
+		}
+		serial.finish();
+		pipeline.finish();
+
+		// ASSERTIONS
+		assertEquals(1000, pipelineWriter.getDataRowCount());
+		assertEquals(expected.toString(), actual.toString());
+		assertFalse(pipeline.formatThread.isAlive());
+		for (RuleStage stage : pipeline.getRules().getStages()) {
+			assertEquals(1000, stage.getRows(), stage.getName());
+		}
+		assertTrue(pipeline.getFetchUtilization() >= 0 && pipeline.getFetchUtilization() <= 1);
+		assertTrue(pipeline.getFormatUtilization() >= 0 && pipeline.getFormatUtilization() <= 1);
+	}
+
+	@Test
+	void testBackpressureBlocksTheFetchStage() throws Exception {
+		// SETUP the format stage blocks writing until released
+		CountDownLatch release = new CountDownLatch(1);
+		StringWriter rows = new StringWriter();
+		Writer slow = new Writer() {
+			@Override
+			public void write(char[] chars, int offset, int length) throws IOException {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				rows.write(chars, offset, length);
+			}
+			@Override
+			public void flush() {
+			}
+			@Override
+			public void close() {
+			}
+		};
+		RdbWriter writer = new RdbWriter(slow);
+		DiscreteGroundWaterPipelineRowHandler pipeline = new DiscreteGroundWaterPipelineRowHandler(writer, parameters, 2, 2);
+		AtomicInteger fetched = new AtomicInteger();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread fetch = new Thread(() -> {
+			try {
+				for (int row = 0; row < 100; row++) {
+					process(pipeline, makeDgw(row));
+					fetched.incrementAndGet();
+				}
+				pipeline.finish();
+			} catch (RuntimeException e) {
+				failure.set(e);
+			}
+		});
+
+		// ACTION UNDER TEST
+		fetch.start();
+		Thread.sleep(300);
+		int blockedAt = fetched.get();
+		release.countDown();
+		fetch.join();
+
+		// ASSERTIONS one batch is formatting and one is waiting when the fetch stage blocks
+		assertTrue(blockedAt < 10, "fetched " + blockedAt + " rows past a full ring");
+		assertNull(failure.get());
+		assertEquals(100, writer.getDataRowCount());
+		assertEquals(100, rows.toString().lines().count());
+		assertTrue(pipeline.ring.getProducerWaitNanos() > 0);
+		assertTrue(pipeline.getFetchUtilization() < 1);
+	}
+
+	@Test
+	void testInvalidParameterFailsFinish() {
+		// SETUP
+		DiscreteGroundWaterPipelineRowHandler pipeline =
+				new DiscreteGroundWaterPipelineRowHandler(new RdbWriter(new StringWriter()), parameters, 4, 2);
+		DiscreteGroundWater dgw = makeDgw(1);
+		dgw.parameterCode = "00000";
+
+		// ACTION UNDER TEST
+		process(pipeline, dgw);
+
+		// ASSERTIONS
+		assertThrows(RuntimeException.class, ()->pipeline.finish());
+	}
+
+	@Test
+	void testDestinationFailureReleasesTheFetchThread() {
+		// SETUP
+		Writer failing = new Writer() {
+			@Override
+			public void write(char[] chars, int offset, int length) throws IOException {
+				throw new IOException("disk full");
+			}
+			@Override
+			public void flush() {
+			}
+			@Override
+			public void close() {
+			}
+		};
+		DiscreteGroundWaterPipelineRowHandler pipeline =
+				new DiscreteGroundWaterPipelineRowHandler(new RdbWriter(failing), parameters, 2, 2);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS fetch fails once the format stage stops rather than blocking on a full ring
+		assertThrows(RuntimeException.class, ()->{
+			for (int row = 0; row < 1000; row++) {
+				process(pipeline, makeDgw(row));
+			}
+			pipeline.finish();
+		});
+	}
+
+	@Test
+	void testAbortWaitsForTheFormatStage() {
+		// SETUP
+		DiscreteGroundWaterPipelineRowHandler pipeline =
+				new DiscreteGroundWaterPipelineRowHandler(new RdbWriter(new StringWriter()), parameters, 2, 2);
+		for (int row = 0; row < 3; row++) {
+			process(pipeline, makeDgw(row));
+		}
+
+		// ACTION UNDER TEST
+		pipeline.abort(new IllegalStateException("query failed"));
+
+		// ASSERTIONS
+		assertFalse(pipeline.formatThread.isAlive());
+	}
+}
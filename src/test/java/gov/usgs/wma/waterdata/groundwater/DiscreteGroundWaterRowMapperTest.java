@@ -107,4 +107,28 @@ class DiscreteGroundWaterRowMapperTest {
 		assertEquals(dgw.displayResult, actual.displayResult);
 		
 	}
+
+	@Test
+	void testMappedResultSetMapping() throws SQLException {
+		// SETUP
+		Mockito.when(mockRs.getString("lev_status_cd")).thenReturn(LevelStatusCode.BELOW.getNwisCode());
+		Mockito.when(mockRs.getString("lev_age_cd")).thenReturn("P");
+		Mockito.when(mockRs.getString("lev_src_cd")).thenReturn("S");
+		DiscreteGroundWaterRowMapper rowMapper = new DiscreteGroundWaterMappedRowMapper();
+
+		// ACTION UNDER TEST
+		DiscreteGroundWater actual = rowMapper.mapRow(mockRs, 0);
+
+		// ASSERTIONS the rule results are taken from the row, the rule inputs are not read
+		DiscreteGroundWater expected = new DiscreteGroundWaterRowMapper().mapRow(mockRs, 0);
+		assertEquals(expected.readingQualifiers, actual.readingQualifiers);
+		assertEquals(expected.approvalLevel, actual.approvalLevel);
+		assertEquals(expected.measurementSourceCode, actual.measurementSourceCode);
+		assertEquals(expected.agencyCode, actual.agencyCode);
+		assertEquals(expected.siteIdentificationNumber, actual.siteIdentificationNumber);
+		assertEquals(expected.dateMeasuredRaw, actual.dateMeasuredRaw);
+		assertEquals(expected.displayResult, actual.displayResult);
+		Mockito.verify(mockRs, Mockito.times(1)).getString("result_measure_qualifiers");
+		Mockito.verify(mockRs, Mockito.times(1)).getString("approval_level");
+	}
 }
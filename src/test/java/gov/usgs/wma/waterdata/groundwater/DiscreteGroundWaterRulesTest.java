@@ -1,6 +1,9 @@
 package gov.usgs.wma.waterdata.groundwater;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -208,4 +211,69 @@ class DiscreteGroundWaterRulesTest {
 		assertEquals("", dgw.measurementSourceCode);
 	}
 
+	@Test
+	void paddedApprovalAndAgencyFallBackToTheTrimmingRules() {
+		dgw.approvalLevel = " 1200\t";
+		dgw.measuringAgencyCode = " USGS ";
+		rules.apply(dgw);
+		assertEquals("A", dgw.approvalLevel);
+		assertEquals("S", dgw.measurementSourceCode);
+	}
+
+	@Test
+	void sourceCodeOfTheBytesMatchesTheStringRule() {
+		for (String agency : new String[] {null, "", " \t\r\n", "USGS", " USGS\t", "\u001FUSGS\n", "USGSX", "NPS", "US GS", "N\u00c9S"}) {
+			byte[] bytes = agency == null ? null : agency.getBytes(StandardCharsets.UTF_8);
+			assertEquals(rules.toSourceCode(agency), rules.toSourceCode(bytes), String.valueOf(agency));
+		}
+	}
+
+	@Test
+	void sourceCodeOfTheBytesLeavesMultibyteEndsToTheStringRule() {
+		for (String agency : new String[] {"USGS\u3000", "\u00a0USGS", "\u00c9"}) {
+			assertNull(rules.toSourceCode(agency.getBytes(StandardCharsets.UTF_8)), agency);
+		}
+	}
+
+	@Test
+	void stagesCountEachRule() {
+		rules.apply(dgw);
+		rules.apply(dgw);
+
+		assertEquals(3, rules.getStages().size());
+		for (RuleStage stage : rules.getStages()) {
+			assertEquals(2, stage.getRows(), stage.getName());
+			assertEquals(2, stage.getInvocations(), stage.getName());
+		}
+	}
+
+	@Test
+	void stagesCountTheRowsMappedFromTheUnmappedValue() {
+		DiscreteGroundWater unmapped = new DiscreteGroundWater();
+		unmapped.readingQualifiers = "[\"" + LevelStatusCode.REVISED.getAqDescription() + "\"]";
+		unmapped.approvalLevel = "900";
+		unmapped.measuringAgencyCode = " ";
+		rules.apply(dgw);
+		rules.apply(unmapped);
+
+		for (RuleStage stage : rules.getStages()) {
+			assertEquals(2, stage.getRows(), stage.getName());
+			assertEquals(1, stage.getChanges(), stage.getName());
+		}
+	}
+
+	@Test
+	void mergeAddsTheStagesOfOtherRules() {
+		DiscreteGroundWaterRules worker = new DiscreteGroundWaterRules();
+		rules.apply(dgw);
+		worker.apply(dgw);
+		worker.apply(dgw);
+
+		rules.merge(worker);
+
+		for (RuleStage stage : rules.getStages()) {
+			assertEquals(3, stage.getRows(), stage.getName());
+		}
+	}
+
 }
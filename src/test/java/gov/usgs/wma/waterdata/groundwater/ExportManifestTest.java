@@ -0,0 +1,98 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ExportManifestTest {
+
+	LocalS3 s3;
+	ExportManifest manifest;
+
+	@BeforeEach
+	public void setup() {
+		s3 = new LocalS3();
+		manifest = new ExportManifest(s3, "bucket", "test");
+	}
+
+	@Test
+	void testPublish() throws Exception {
+		// SETUP
+		manifest.saveFolder("CA", List.of(entry("CA", "tstest.CA.gw_lev_01.06.20200715_030500.full.rdb.gz", 11)));
+		manifest.saveFolder("NY", List.of(entry("NY", "tstest.NY.gw_lev_01.06.20200715_030500.full.part001.rdb.gz", 2),
+				entry("NY", "tstest.NY.gw_lev_01.06.20200715_030500.full.part002.rdb.gz", 3)));
+
+		// ACTION UNDER TEST
+		ExportManifest.Manifest published = manifest.publish("20200715_040000", List.of("CA", "NY", "WI"));
+
+		// ASSERTIONS
+		assertEquals(3, published.getFiles().size());
+		assertEquals(List.of("WI"), published.getMissing());
+		byte[] run = s3.objects.get("bucket/manifests/test/runs/20200715_040000.json");
+		assertArrayEquals(run, s3.objects.get("bucket/manifests/test/latest.json"));
+		assertEquals(ExportManifest.CONTENT_TYPE, s3.metadata.get("bucket/manifests/test/latest.json").getContentType());
+		ExportManifest.Manifest read = new ObjectMapper().readValue(run, ExportManifest.Manifest.class);
+		assertEquals("test", read.getTier());
+		assertEquals("20200715_040000", read.getRun());
+		ExportManifest.Entry ca = read.getFiles().get(0);
+		assertEquals("tstest.CA.gw_lev_01.06.20200715_030500.full.rdb.gz", ca.getKey());
+		assertEquals(11, ca.getRows());
+		assertEquals(100, ca.getCompressedBytes());
+		assertNull(ca.getUncompressedBytes());
+		assertEquals("2020-07-15T03:05:00Z", ca.getWatermark());
+	}
+
+	@Test
+	void testNextExportReplacesFolderEntries() throws Exception {
+		// SETUP
+		manifest.saveFolder("CA", List.of(entry("CA", "tstest.CA.gw_lev_01.06.20200715_030500.full.rdb.gz", 11)));
+
+		// ACTION UNDER TEST
+		manifest.saveFolder("CA", List.of(entry("CA", "tstest.CA.gw_lev_01.06.20200716_030500.full.rdb.gz", 12)));
+
+		// ASSERTIONS
+		ExportManifest.Manifest published = manifest.publish("20200716_040000", List.of("CA"));
+		assertEquals(1, published.getFiles().size());
+		assertEquals(12, published.getFiles().get(0).getRows());
+	}
+
+	@Test
+	void testFoldersBeforeTheRunMissing() throws Exception {
+		// SETUP
+		manifest.saveFolder("CA", List.of(entry("CA", "tstest.CA.gw_lev_01.06.20200715_030500.full.rdb.gz", 11)));
+		ExportManifest.Entry old = entry("NY", "tstest.NY.gw_lev_01.06.20200714_030500.full.rdb.gz", 2);
+		old.setWatermark("2020-07-14T03:05:00Z");
+		manifest.saveFolder("NY", List.of(old));
+		ExportManifest.Entry unwatermarked = entry("WI", "tstest.WI.gw_lev_01.06.20200715_030500.full.rdb.gz", 3);
+		unwatermarked.setWatermark(null);
+		manifest.saveFolder("WI", List.of(unwatermarked));
+
+		// ACTION UNDER TEST
+		ExportManifest.Manifest published = manifest.publish("20200715_030000", List.of("CA", "NY", "WI", "TX"),
+				Instant.parse("2020-07-15T03:00:00Z"));
+
+		// ASSERTIONS
+		assertEquals(1, published.getFiles().size());
+		assertEquals("CA", published.getFiles().get(0).getFolder());
+		assertEquals(List.of("NY", "WI", "TX"), published.getMissing());
+	}
+
+	ExportManifest.Entry entry(String folder, String key, long rows) {
+		ExportManifest.Entry entry = new ExportManifest.Entry();
+		entry.setFolder(folder);
+		entry.setKey(key);
+		entry.setRows(rows);
+		entry.setCompressedBytes(100);
+		entry.setSha256("digest");
+		entry.setWriteMillis(20);
+		entry.setUploadMillis(5);
+		entry.setWatermark("2020-07-15T03:05:00Z");
+		return entry;
+	}
+}
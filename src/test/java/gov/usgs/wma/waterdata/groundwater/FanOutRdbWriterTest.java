@@ -0,0 +1,134 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FanOutRdbWriterTest {
+
+	static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	StringWriter full;
+	StringWriter latest;
+	StringWriter recent;
+	StringWriter parameter;
+	FanOutRdbWriter writer;
+	long now;
+
+	@BeforeEach
+	public void setup() {
+		full = new StringWriter();
+		latest = new StringWriter();
+		recent = new StringWriter();
+		parameter = new StringWriter();
+		writer = new FanOutRdbWriter(full);
+		writer.addOutput(FanOutRdbWriter.createOutput("latest", new RdbWriter(latest)))
+				.addOutput(FanOutRdbWriter.createOutput("recent30", new RdbWriter(recent)))
+				.addOutput(FanOutRdbWriter.createOutput("parameter72019", new RdbWriter(parameter)));
+		now = System.currentTimeMillis();
+	}
+
+	@Test
+	void testProductsFromOnePass() {
+		// SETUP
+		List<DiscreteGroundWater> rows = List.of(
+				row("01", "72019", now - 400 * DAY, "1.1"),
+				row("01", "72019", now - 10 * DAY, "1.2"),
+				row("02", "62610", now - 200 * DAY, "2.1"),
+				row("02", "72019", now - 100 * DAY, "2.2"),
+				row("02", "62610", now - DAY, "2.3"));
+
+		// ACTION UNDER TEST
+		writer.writeHeader();
+		for (DiscreteGroundWater dgw : rows) {
+			writer.writeRow(dgw);
+		}
+		writer.finish();
+
+		// ASSERTIONS
+		assertEquals(5, writer.getDataRowCount());
+		assertEquals(2, writer.getOutputs().get(0).getWriter().getDataRowCount());
+		assertEquals(2, writer.getOutputs().get(1).getWriter().getDataRowCount());
+		assertEquals(3, writer.getOutputs().get(2).getWriter().getDataRowCount());
+		assertEquals(List.of("1.2", "2.3"), results(latest));
+		assertEquals(List.of("1.2", "2.3"), results(recent));
+		assertEquals(List.of("1.1", "1.2", "2.2"), results(parameter));
+		assertTrue(latest.toString().startsWith(full.toString().substring(0, 100)));
+	}
+
+	@Test
+	void testProductsFromBatches() {
+		// SETUP
+		DiscreteGroundWaterBatch batch = new DiscreteGroundWaterBatch();
+		batch.add(row("01", "72019", now - 400 * DAY, "1.1"));
+		batch.add(row("01", "72019", now - 10 * DAY, "1.2"));
+		batch.add(row("02", "62610", now - DAY, "2.1"));
+		batch.applyParameters(List.of(parameter("72019"), parameter("62610")));
+
+		// ACTION UNDER TEST
+		writer.writeBatch(batch);
+		writer.finish();
+
+		// ASSERTIONS
+		assertEquals(3, writer.getDataRowCount());
+		assertEquals(2, writer.getOutputs().get(0).getWriter().getDataRowCount());
+		assertEquals(2, writer.getOutputs().get(1).getWriter().getDataRowCount());
+		assertEquals(2, writer.getOutputs().get(2).getWriter().getDataRowCount());
+	}
+
+	@Test
+	void testParseProducts() {
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertEquals(List.of("latest", "recent120", "parameter72019"),
+				FanOutRdbWriter.parseProducts("latest, recent120,,parameter72019"));
+		assertThrows(RuntimeException.class, () -> FanOutRdbWriter.parseProducts("latest,oldest"));
+		assertThrows(RuntimeException.class, () -> FanOutRdbWriter.parseProducts("recentdays"));
+	}
+
+	DiscreteGroundWater row(String site, String parameterCode, long measured, String result) {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "USGS";
+		dgw.siteIdentificationNumber = site;
+		dgw.parameterCode = parameterCode;
+		dgw.belowLandSurface = true;
+		dgw.dateMeasuredRaw = new Timestamp(measured);
+		dgw.dateMeasured = "07-MAY-2007 18:30:47";
+		dgw.dateTimeAccuracyCode = "D";
+		dgw.timezoneCode = "UTC";
+		dgw.displayResult = result;
+		return dgw;
+	}
+
+	Parameter parameter(String code) {
+		Parameter parameter = new Parameter();
+		parameter.setParameterCode(code);
+		parameter.setBelowLandSurface(true);
+		return parameter;
+	}
+
+	/**
+	 * @return the result column of the data rows
+	 */
+	List<String> results(StringWriter rdb) {
+		int column = 0;
+		List<RdbSchema.Column> columns = RdbSchema.DEFAULT.getColumns();
+		for (int c = 0; c < columns.size(); c++) {
+			if (columns.get(c).getName().equals("lev_va")) {
+				column = c;
+			}
+		}
+		int resultColumn = column;
+		return rdb.toString().lines()
+				.filter(line -> line.startsWith("USGS\t"))
+				.map(line -> line.split("\t", -1)[resultColumn])
+				.collect(Collectors.toList());
+	}
+}
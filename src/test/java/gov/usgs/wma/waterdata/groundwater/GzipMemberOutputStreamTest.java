@@ -0,0 +1,99 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+class GzipMemberOutputStreamTest {
+
+	@Test
+	void testMembersReadAsOneFile() throws Exception {
+		// SETUP
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		String site = "USGS\t01646500\t20070501\n".repeat(5000);
+
+		// ACTION UNDER TEST
+		try (GzipMemberOutputStream out = new GzipMemberOutputStream(file, Deflater.DEFAULT_COMPRESSION)) {
+			write(out, "header", "# header\n", 0);
+			write(out, "A", site, 5000);
+			write(out, "B", "", 0);
+
+			// ASSERTIONS
+			List<SegmentIndex.Entry> members = out.getMembers();
+			assertEquals(3, members.size());
+			assertEquals(0, members.get(0).getOffset());
+			assertEquals(members.get(0).getLength(), members.get(1).getOffset());
+			assertEquals(file.size(), members.get(2).getOffset() + members.get(2).getLength());
+			assertEquals(5000, members.get(1).getRows());
+			assertEquals("A", members.get(1).getKey());
+			assertEquals("A-print", members.get(1).getFingerprint());
+			assertEquals(site, gunzip(member(file.toByteArray(), members.get(1))));
+		}
+		assertEquals("# header\n" + site, gunzip(file.toByteArray()));
+	}
+
+	@Test
+	void testCopiedMemberIsByteForByte() throws Exception {
+		// SETUP
+		ByteArrayOutputStream previous = new ByteArrayOutputStream();
+		GzipMemberOutputStream first = new GzipMemberOutputStream(previous, Deflater.BEST_SPEED);
+		write(first, "A", "a rows\n", 1);
+		write(first, "B", "b rows\n", 1);
+		first.close();
+		SegmentIndex.Entry b = first.getMembers().get(1);
+
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		GzipMemberOutputStream second = new GzipMemberOutputStream(file, Deflater.BEST_SPEED);
+		ByteArrayInputStream in = new ByteArrayInputStream(previous.toByteArray());
+		in.skip(b.getOffset());
+
+		// ACTION UNDER TEST
+		write(second, "A", "new a rows\n", 1);
+		second.copyMember(b, in);
+		second.close();
+
+		// ASSERTIONS
+		SegmentIndex.Entry copied = second.getMembers().get(1);
+		assertArrayEquals(member(previous.toByteArray(), b), member(file.toByteArray(), copied));
+		assertEquals("B", copied.getKey());
+		assertEquals(b.getFingerprint(), copied.getFingerprint());
+		assertEquals(1, copied.getRows());
+		assertEquals("new a rows\nb rows\n", gunzip(file.toByteArray()));
+	}
+
+	@Test
+	void testBytesOutsideMember() throws Exception {
+		// SETUP
+		GzipMemberOutputStream out = new GzipMemberOutputStream(new ByteArrayOutputStream(), Deflater.BEST_SPEED);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(IllegalStateException.class, () -> out.write(1));
+		out.beginMember("A", "A-print");
+		assertThrows(IllegalStateException.class, () -> out.beginMember("B", "B-print"));
+		out.close();
+	}
+
+	void write(GzipMemberOutputStream out, String key, String content, long rows) throws IOException {
+		out.beginMember(key, key + "-print");
+		out.write(content.getBytes(StandardCharsets.UTF_8));
+		out.endMember(rows);
+	}
+
+	byte[] member(byte[] file, SegmentIndex.Entry entry) {
+		return Arrays.copyOfRange(file, (int) entry.getOffset(), (int) (entry.getOffset() + entry.getLength()));
+	}
+
+	String gunzip(byte[] gzip) throws IOException {
+		return new String(new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes(), StandardCharsets.UTF_8);
+	}
+}
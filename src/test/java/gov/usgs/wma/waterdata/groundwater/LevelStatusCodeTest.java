@@ -0,0 +1,91 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LevelStatusCodeTest {
+
+	@Test
+	void testEveryCodeAndDescriptionHasItsBit() {
+		for (LevelStatusCode lsc : LevelStatusCode.values()) {
+			if (lsc.isReal()) {
+				assertEquals(1 << lsc.ordinal(), LevelStatusCode.maskOf(lsc.getAqCode()));
+				assertEquals(1 << lsc.ordinal(), LevelStatusCode.maskOf(lsc.getAqDescription()));
+			}
+		}
+		assertEquals(0, LevelStatusCode.maskOf(""));
+		assertEquals(0, LevelStatusCode.maskOf("static"));
+		assertEquals(0, LevelStatusCode.maskOf("Static "));
+	}
+
+	@Test
+	void testBitOfRegion() {
+		String text = "[\"Other\",\"GWTideAffected\"]";
+		int start = text.indexOf("GW");
+
+		assertEquals(LevelStatusCode.TIDE_AFFECTED.ordinal(),
+				LevelStatusCode.bitOf(text, start, start + "GWTideAffected".length()));
+		assertEquals(-1, LevelStatusCode.bitOf(text, start, start + 2));
+		assertEquals(-1, LevelStatusCode.bitOf(text, 2, 7));
+	}
+
+	@Test
+	void testFromMaskPrecedence() {
+		assertEquals(LevelStatusCode.UNKNOWN, LevelStatusCode.fromMask(0));
+		assertEquals(LevelStatusCode.UNKNOWN, LevelStatusCode.fromMask(
+				LevelStatusCode.maskOf("Revised") | LevelStatusCode.maskOf("CrossSectionSimpleMean")));
+		assertEquals(LevelStatusCode.BELOW, LevelStatusCode.fromMask(
+				LevelStatusCode.maskOf("Revised") | LevelStatusCode.maskOf("Saline") | LevelStatusCode.maskOf("Below")));
+	}
+
+	@Test
+	void testMaskMatchesIsPresent() {
+		// every subset of the mapped codes, alternating between code and description
+		List<LevelStatusCode> mapped = new ArrayList<>();
+		for (LevelStatusCode lsc : LevelStatusCode.values()) {
+			if (lsc.isMapped()) {
+				mapped.add(lsc);
+			}
+		}
+		for (int subset = 0; subset < 1 << mapped.size(); subset++) {
+			List<String> aqQuals = new ArrayList<>();
+			aqQuals.add(LevelStatusCode.REVISED.getAqCode());
+			for (int i = 0; i < mapped.size(); i++) {
+				if ((subset & 1 << i) != 0) {
+					LevelStatusCode lsc = mapped.get(i);
+					aqQuals.add(subset % 2 == 0 ? lsc.getAqCode() : lsc.getAqDescription());
+				}
+			}
+			Collections.reverse(aqQuals);
+
+			LevelStatusCode expected = LevelStatusCode.stream()
+					.filter(a -> a.isMapped())
+					.filter(a -> a.isPresent(aqQuals))
+					.findFirst()
+					.orElse(LevelStatusCode.UNKNOWN);
+
+			assertEquals(expected, LevelStatusCode.fromMask(LevelStatusCode.maskOf(aqQuals)), aqQuals.toString());
+		}
+	}
+
+	@Test
+	void testToSqlValuesInPrecedenceOrder() {
+		List<Object[]> rows = LevelStatusCode.toSqlValues();
+
+		assertEquals(8, rows.size());
+		assertArrayEquals(new Object[] {LevelStatusCode.STATIC.ordinal(), "1", "Static", "Static"}, rows.get(0));
+		int last = -1;
+		for (Object[] row : rows) {
+			LevelStatusCode lsc = LevelStatusCode.values()[(Integer) row[0]];
+			assertTrue(lsc.isMapped());
+			assertTrue(lsc.ordinal() > last);
+			assertEquals(lsc.getNwisCode(), row[1]);
+			last = lsc.ordinal();
+		}
+	}
+}
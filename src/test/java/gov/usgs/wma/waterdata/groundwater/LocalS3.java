@@ -0,0 +1,256 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * In memory stand-in for the S3 calls the exporter makes, keyed by bucket/key.
+ * Set failPart to fail the upload of that part number, failPartAttempts times.
+ * Listings are a single page in key order. Part copies count in partCopies.
+ */
+public class LocalS3 extends AbstractAmazonS3 {
+
+	public final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+	public final Map<String, ObjectMetadata> metadata = new ConcurrentHashMap<>();
+	public final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+	public final AtomicInteger aborted = new AtomicInteger();
+	public volatile int failPart;
+	public final AtomicInteger failPartAttempts = new AtomicInteger(Integer.MAX_VALUE);
+	public final AtomicInteger partRequests = new AtomicInteger();
+	public final AtomicInteger partCopies = new AtomicInteger();
+	private final AtomicInteger uploadIds = new AtomicInteger();
+
+	@Override
+	public PutObjectResult putObject(PutObjectRequest request) {
+		try {
+			byte[] object;
+			if (request.getFile() != null) {
+				object = Files.readAllBytes(request.getFile().toPath());
+			} else {
+				try (InputStream in = request.getInputStream()) {
+					object = in.readAllBytes();
+				}
+				if (object.length != request.getMetadata().getContentLength()) {
+					throw new AmazonS3Exception("content length " + request.getMetadata().getContentLength() + " but read " + object.length);
+				}
+			}
+			objects.put(request.getBucketName() + "/" + request.getKey(), object);
+			metadata.put(request.getBucketName() + "/" + request.getKey(), request.getMetadata());
+		} catch (IOException e) {
+			throw new AmazonS3Exception(e.getMessage());
+		}
+		PutObjectResult result = new PutObjectResult();
+		result.setETag("put");
+		return result;
+	}
+
+	@Override
+	public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+		String uploadId = request.getBucketName() + "/" + request.getKey() + "#" + uploadIds.incrementAndGet();
+		uploads.put(uploadId, new TreeMap<>());
+		if (request.getObjectMetadata() != null) {
+			metadata.put(request.getBucketName() + "/" + request.getKey(), request.getObjectMetadata());
+		}
+		InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+		result.setUploadId(uploadId);
+		return result;
+	}
+
+	@Override
+	public UploadPartResult uploadPart(UploadPartRequest request) {
+		partRequests.incrementAndGet();
+		if (request.getPartNumber() == failPart && failPartAttempts.getAndDecrement() > 0) {
+			throw new AmazonS3Exception("part " + failPart + " failed");
+		}
+		Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+		try (InputStream in = request.getFile() == null ? request.getInputStream() : new FileInputStream(request.getFile())) {
+			in.skip(request.getFileOffset());
+			byte[] part = in.readNBytes((int) request.getPartSize());
+			if (part.length != request.getPartSize()) {
+				throw new AmazonS3Exception("part size " + request.getPartSize() + " but read " + part.length);
+			}
+			synchronized (parts) {
+				parts.put(request.getPartNumber(), part);
+			}
+		} catch (IOException e) {
+			throw new AmazonS3Exception(e.getMessage());
+		}
+		UploadPartResult result = new UploadPartResult();
+		result.setPartNumber(request.getPartNumber());
+		result.setETag("etag-" + request.getPartNumber());
+		return result;
+	}
+
+	@Override
+	public CopyPartResult copyPart(CopyPartRequest request) {
+		partCopies.incrementAndGet();
+		byte[] object = objects.get(request.getSourceBucketName() + "/" + request.getSourceKey());
+		if (object == null) {
+			throw new AmazonS3Exception("no object " + request.getSourceBucketName() + "/" + request.getSourceKey());
+		}
+		Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+		synchronized (parts) {
+			parts.put(request.getPartNumber(), Arrays.copyOfRange(object, request.getFirstByte().intValue(),
+					request.getLastByte().intValue() + 1));
+		}
+		CopyPartResult result = new CopyPartResult();
+		result.setPartNumber(request.getPartNumber());
+		result.setETag("copy-" + request.getPartNumber());
+		return result;
+	}
+
+	@Override
+	public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+		Map<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+		ByteArrayOutputStream object = new ByteArrayOutputStream();
+		synchronized (parts) {
+			int expected = 1;
+			for (PartETag part : request.getPartETags()) {
+				if (part.getPartNumber() != expected++ || !parts.containsKey(part.getPartNumber())) {
+					throw new AmazonS3Exception("invalid part " + part.getPartNumber());
+				}
+				object.writeBytes(parts.get(part.getPartNumber()));
+			}
+		}
+		objects.put(request.getBucketName() + "/" + request.getKey(), object.toByteArray());
+		CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+		result.setETag("multipart-" + request.getPartETags().size());
+		return result;
+	}
+
+	@Override
+	public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+		uploads.remove(request.getUploadId());
+		aborted.incrementAndGet();
+	}
+
+	@Override
+	public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+		String bucketPrefix = request.getBucketName() + "/";
+		List<String> keys = new ArrayList<>();
+		for (String object : objects.keySet()) {
+			if (object.startsWith(bucketPrefix + (request.getPrefix() == null ? "" : request.getPrefix()))) {
+				keys.add(object.substring(bucketPrefix.length()));
+			}
+		}
+		keys.sort(null);
+		ListObjectsV2Result result = new ListObjectsV2Result();
+		result.setBucketName(request.getBucketName());
+		for (String key : keys) {
+			S3ObjectSummary summary = new S3ObjectSummary();
+			summary.setBucketName(request.getBucketName());
+			summary.setKey(key);
+			summary.setSize(objects.get(bucketPrefix + key).length);
+			result.getObjectSummaries().add(summary);
+		}
+		result.setKeyCount(keys.size());
+		return result;
+	}
+
+	@Override
+	public S3Object getObject(String bucketName, String key) {
+		byte[] object = objects.get(bucketName + "/" + key);
+		if (object == null) {
+			AmazonS3Exception missing = new AmazonS3Exception("no object " + bucketName + "/" + key);
+			missing.setStatusCode(404);
+			throw missing;
+		}
+		S3Object found = new S3Object();
+		found.setBucketName(bucketName);
+		found.setKey(key);
+		found.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(object), null));
+		if (metadata.containsKey(bucketName + "/" + key)) {
+			found.setObjectMetadata(getObjectMetadata(bucketName, key));
+		}
+		return found;
+	}
+
+	@Override
+	public S3Object getObject(GetObjectRequest request) {
+		S3Object found = getObject(request.getBucketName(), request.getKey());
+		long[] range = request.getRange();
+		if (range != null) {
+			byte[] object = objects.get(request.getBucketName() + "/" + request.getKey());
+			found.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(
+					Arrays.copyOfRange(object, (int) range[0], (int) Math.min(range[1] + 1, object.length))), null));
+		}
+		return found;
+	}
+
+	@Override
+	public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+		ObjectMetadata found = metadata.get(bucketName + "/" + key);
+		if (found == null) {
+			throw new AmazonS3Exception("no object " + bucketName + "/" + key);
+		}
+		byte[] object = objects.get(bucketName + "/" + key);
+		if (object == null) {
+			return found;
+		}
+		ObjectMetadata sized = new ObjectMetadata();
+		sized.setUserMetadata(found.getUserMetadata());
+		sized.setContentEncoding(found.getContentEncoding());
+		sized.setContentLength(object.length);
+		return sized;
+	}
+
+	@Override
+	public CopyObjectResult copyObject(CopyObjectRequest request) {
+		String source = request.getSourceBucketName() + "/" + request.getSourceKey();
+		String destination = request.getDestinationBucketName() + "/" + request.getDestinationKey();
+		byte[] object = objects.get(source);
+		if (object == null) {
+			throw new AmazonS3Exception("no object " + source);
+		}
+		ObjectMetadata copied = request.getNewObjectMetadata() != null ? request.getNewObjectMetadata() : metadata.get(source);
+		objects.put(destination, object);
+		if (copied != null) {
+			metadata.put(destination, copied);
+		}
+		CopyObjectResult result = new CopyObjectResult();
+		result.setETag("copy");
+		return result;
+	}
+
+	/**
+	 * @return clients whose S3 client is this one, for the code that sends files through the shared clients
+	 */
+	public AwsClients asClients(Properties properties) {
+		return new AwsClients(properties, this, null);
+	}
+}
@@ -0,0 +1,113 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+
+class NationalRollUpTest {
+
+	static final byte[] HEADER = "# header\n".getBytes();
+	static final String NATIONAL = "ts.US.20200715_040000.full.rdb.gz";
+
+	LocalS3 s3;
+	OutputCodec codec;
+
+	@BeforeEach
+	public void setup() {
+		s3 = new LocalS3();
+		codec = OutputCodecs.forName("gzip", 0);
+	}
+
+	@Test
+	void testSmallFilesJoinedInOnePart() throws Exception {
+		// SETUP
+		folderFile("ts.CA.20200715_030500.full.rdb.gz", "ca1\nca2\n".getBytes());
+		folderFile("ts.NY.20200715_030500.full.rdb.gz", "ny1\n".getBytes());
+		int folderParts = s3.partRequests.get();
+
+		// ACTION UNDER TEST
+		new NationalRollUp(s3, "bucket", codec, S3MultipartOutputStream.MIN_PART_SIZE).rollUp(NATIONAL, HEADER,
+				List.of("ts.CA.20200715_030500.full.rdb.gz", "ts.NY.20200715_030500.full.rdb.gz"));
+
+		// ASSERTIONS
+		assertEquals("# header\nca1\nca2\nny1\n", new String(gunzip(s3.objects.get("bucket/" + NATIONAL))));
+		assertEquals(0, s3.partCopies.get());
+		assertEquals(1, s3.partRequests.get() - folderParts);
+		assertNotNull(s3.metadata.get("bucket/" + NATIONAL).getUserMetaDataOf(S3Bucket.HEADER_LENGTH_METADATA));
+	}
+
+	@Test
+	void testLargeFileCopied() throws Exception {
+		// SETUP random rows do not compress, so the file is larger than a part
+		byte[] large = new byte[12 * 1024 * 1024];
+		new Random(7).nextBytes(large);
+		folderFile("ts.CA.20200715_030500.full.rdb.gz", "ca1\n".getBytes());
+		folderFile("ts.TX.20200715_030500.full.rdb.gz", large);
+		folderFile("ts.NY.20200715_030500.full.rdb.gz", "ny1\n".getBytes());
+		int folderParts = s3.partRequests.get();
+
+		// ACTION UNDER TEST
+		new NationalRollUp(s3, "bucket", codec, S3MultipartOutputStream.MIN_PART_SIZE).rollUp(NATIONAL, HEADER,
+				List.of("ts.CA.20200715_030500.full.rdb.gz", "ts.TX.20200715_030500.full.rdb.gz",
+						"ts.NY.20200715_030500.full.rdb.gz"));
+
+		// ASSERTIONS
+		assertEquals(1, s3.partCopies.get());
+		assertEquals(2, s3.partRequests.get() - folderParts);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.writeBytes(HEADER);
+		expected.writeBytes("ca1\n".getBytes());
+		expected.writeBytes(large);
+		expected.writeBytes("ny1\n".getBytes());
+		assertArrayEquals(expected.toByteArray(), gunzip(s3.objects.get("bucket/" + NATIONAL)));
+	}
+
+	@Test
+	void testFileWithoutHeaderMemberRejected() throws Exception {
+		// SETUP
+		folderFile("ts.CA.20200715_030500.full.rdb.gz", "ca1\n".getBytes());
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(4);
+		s3.putObject(new PutObjectRequest("bucket", "ts.NY.20200715_030500.full.rdb.gz",
+				new ByteArrayInputStream("ny1\n".getBytes()), metadata));
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		RuntimeException e = assertThrows(RuntimeException.class, () -> new NationalRollUp(s3, "bucket", codec,
+				S3MultipartOutputStream.MIN_PART_SIZE).rollUp(NATIONAL, HEADER,
+						List.of("ts.CA.20200715_030500.full.rdb.gz", "ts.NY.20200715_030500.full.rdb.gz")));
+		assertTrue(e.getMessage().contains("ts.NY.20200715_030500.full.rdb.gz"));
+		assertNull(s3.objects.get("bucket/" + NATIONAL));
+		assertTrue(s3.uploads.isEmpty());
+	}
+
+	void folderFile(String keyName, byte[] rows) throws Exception {
+		S3Bucket bucket = new S3Bucket("region", "bucket", keyName, codec, S3MultipartOutputStream.MIN_PART_SIZE, 2) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return s3;
+			}
+		}.withHeaderMember(HEADER);
+		try (bucket) {
+			OutputStream out = bucket.getOutputStream();
+			out.write(rows);
+			bucket.sendS3(1);
+		}
+	}
+
+	byte[] gunzip(byte[] gzip) throws Exception {
+		return new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes();
+	}
+}
@@ -0,0 +1,103 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+/**
+ * Reports the compression ratio and throughput of output codecs on an RDB sample.
+ * Not a unit test; run it with the test classpath, for example
+ * java -cp target/classes:target/test-classes:... gov.usgs.wma.waterdata.groundwater.OutputCodecBenchmark
+ *
+ * Arguments: a comma separated list of codec specifications, then either the path of an
+ * uncompressed RDB file or a row count for a generated sample. Codecs such as zstd are
+ * measured when their provider is on the classpath.
+ */
+public class OutputCodecBenchmark {
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws IOException {
+		String[] codecs = (args.length > 0 ? args[0] : "none,gzip:1,gzip,gzip:9").split(",");
+		String sample = args.length > 1 ? args[1] : "1000000";
+		byte[] rdb = sample.matches("\\d+") ? generate(Integer.parseInt(sample)) : Files.readAllBytes(Paths.get(sample));
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		System.out.printf("%d MB sample, %d processors%n", rdb.length >> 20, threads);
+		System.out.printf("%-12s %8s %10s%n", "codec", "ratio", "MB/s");
+		for (String name : codecs) {
+			report(OutputCodecs.forName(name, 0), rdb);
+			if (name.startsWith(OutputCodecs.GZIP)) {
+				report(OutputCodecs.forName(name, threads), rdb, " x" + threads);
+			}
+		}
+	}
+
+	static void report(OutputCodec codec, byte[] rdb) throws IOException {
+		report(codec, rdb, "");
+	}
+
+	static void report(OutputCodec codec, byte[] rdb, String label) throws IOException {
+		long size = 0;
+		long best = Long.MAX_VALUE;
+		// the first run warms up
+		for (int run = 0; run <= RUNS; run++) {
+			ByteArrayOutputStream file = new ByteArrayOutputStream(rdb.length / 4);
+			long start = System.nanoTime();
+			try (OutputStream out = codec.encode(file)) {
+				for (int offset = 0; offset < rdb.length; offset += RdbByteWriter.BUFFER_SIZE) {
+					out.write(rdb, offset, Math.min(RdbByteWriter.BUFFER_SIZE, rdb.length - offset));
+				}
+			}
+			if (run > 0) {
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			size = file.size();
+		}
+		System.out.printf("%-12s %8.2f %10.1f%n", codec.getName() + label,
+				rdb.length / (double) size, rdb.length / (best / 1e9) / (1 << 20));
+	}
+
+	/**
+	 * RDB rows written as the byte writer writes them, sites in order with many readings each
+	 * as a location folder query returns them.
+	 */
+	static byte[] generate(int rows) {
+		Random random = new Random(42);
+		ByteArrayOutputStream rdb = new ByteArrayOutputStream(rows * 160);
+		RdbByteWriter writer = new RdbByteWriter(rdb);
+		writer.writeHeader();
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		LocalDateTime time = LocalDateTime.of(1950, 1, 1, 0, 0);
+		for (int row = 0; row < rows; row++) {
+			if (row % 200 == 0) {
+				dgw.siteIdentificationNumber = String.format("%015d", 330000000000000L + random.nextInt(100000000));
+				time = LocalDateTime.of(1950, 1, 1, 0, 0);
+			}
+			time = time.plusDays(1 + random.nextInt(60)).plusMinutes(random.nextInt(1440));
+			dgw.agencyCode = "USGS";
+			dgw.dateMeasuredRaw = Timestamp.valueOf(time);
+			dgw.displayResult = String.valueOf(random.nextInt(30000) / 100.0);
+			dgw.belowLandSurface = true;
+			dgw.parameterCode = "72019";
+			dgw.measurementSourceCode = "S";
+			dgw.measuringAgencyCode = "USGS";
+			dgw.levelAccuracyCode = "2";
+			dgw.readingQualifiers = random.nextInt(20) == 0 ? "D" : "";
+			dgw.measurementMethodCode = "S";
+			dgw.dateMeasured = time.toString();
+			dgw.dateTimeAccuracyCode = "m";
+			dgw.timezoneCode = "UTC";
+			dgw.timeMeasuredUtc = time.toString();
+			dgw.approvalLevel = random.nextInt(10) == 0 ? "P" : "A";
+			writer.writeRow(dgw);
+		}
+		writer.flush();
+		return rdb.toByteArray();
+	}
+}
@@ -0,0 +1,69 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+class OutputCodecsTest {
+
+	byte[] encode(OutputCodec codec, byte[] bytes) throws Exception {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		try (OutputStream out = codec.encode(file)) {
+			out.write(bytes);
+		}
+		return file.toByteArray();
+	}
+
+	@Test
+	void testDefaultIsGzip() {
+		// ACTION UNDER TEST
+		OutputCodec codec = OutputCodecs.forName(null, 0);
+
+		// ASSERTIONS
+		assertEquals("gzip", codec.getName());
+		assertEquals(".gz", codec.getSuffix());
+		assertNull(codec.getContentEncoding());
+		assertEquals("gzip", OutputCodecs.forName(" ", 0).getName());
+	}
+
+	@Test
+	void testGzipLevels() throws Exception {
+		// SETUP
+		byte[] rows = "USGS\t01646500\t20070501\t1200\t23.06\tL\n".repeat(2000).getBytes();
+
+		// ACTION UNDER TEST
+		OutputCodec fast = OutputCodecs.forName("gzip:1", 0);
+		OutputCodec best = OutputCodecs.forName("GZIP:9", 2);
+
+		// ASSERTIONS
+		assertEquals("gzip:1", fast.getName());
+		assertEquals("gzip:9", best.getName());
+		assertArrayEquals(rows, new GZIPInputStream(new ByteArrayInputStream(encode(fast, rows))).readAllBytes());
+		assertArrayEquals(rows, new GZIPInputStream(new ByteArrayInputStream(encode(best, rows))).readAllBytes());
+	}
+
+	@Test
+	void testNone() throws Exception {
+		// SETUP
+		byte[] rows = "USGS\t01646500\n".getBytes();
+
+		// ACTION UNDER TEST
+		OutputCodec codec = OutputCodecs.forName("none", 0);
+
+		// ASSERTIONS
+		assertEquals("", codec.getSuffix());
+		assertArrayEquals(rows, encode(codec, rows));
+	}
+
+	@Test
+	void testInvalidSpecifications() {
+		assertThrows(RuntimeException.class, ()->OutputCodecs.forName("gzip:10", 0));
+		assertThrows(RuntimeException.class, ()->OutputCodecs.forName("gzip:fast", 0));
+		assertThrows(RuntimeException.class, ()->OutputCodecs.forName("brotli", 0));
+	}
+}
@@ -0,0 +1,118 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelGzipOutputStreamTest {
+
+	// RDB like text, repetitive enough that the preset dictionaries matter
+	byte[] rows(int count) {
+		Random random = new Random(42);
+		StringBuilder rows = new StringBuilder();
+		for (int row = 0; row < count; row++) {
+			rows.append("USGS\t").append(String.format("%015d", random.nextInt(5000)))
+				.append("\t20070501\t1200\t").append(random.nextInt(10000) / 100.0)
+				.append("\tL\t\t\tS\tUSGS\t2\t\tS\t\t01-MAY-2007 12:00:00\tD\tUTC\t\tA\t72019\n");
+		}
+		return rows.toString().getBytes();
+	}
+
+	byte[] gzip(byte[] bytes, int threads, int blockSize, int chunk) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(file, threads, blockSize, Deflater.DEFAULT_COMPRESSION)) {
+			for (int offset = 0; offset < bytes.length; offset += chunk) {
+				gzip.write(bytes, offset, Math.min(chunk, bytes.length - offset));
+			}
+		}
+		return file.toByteArray();
+	}
+
+	byte[] gunzip(byte[] gzip) throws IOException {
+		return new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes();
+	}
+
+	@Test
+	void testRoundTrip() throws Exception {
+		// SETUP
+		byte[] expected = rows(20000);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS block sizes below, at and above the dictionary size, writes straddling blocks
+		assertArrayEquals(expected, gunzip(gzip(expected, 4, 1000, 777)));
+		assertArrayEquals(expected, gunzip(gzip(expected, 3, 32 * 1024, 4096)));
+		assertArrayEquals(expected, gunzip(gzip(expected, 2, ParallelGzipOutputStream.BLOCK_SIZE, 65536)));
+		assertArrayEquals(expected, gunzip(gzip(expected, 1, 100000, expected.length)));
+	}
+
+	@Test
+	void testSingleByteWrites() throws Exception {
+		// SETUP
+		byte[] expected = rows(100);
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+
+		// ACTION UNDER TEST
+		try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(file, 2, 512, Deflater.DEFAULT_COMPRESSION)) {
+			for (byte b : expected) {
+				gzip.write(b);
+			}
+		}
+
+		// ASSERTIONS
+		assertArrayEquals(expected, gunzip(file.toByteArray()));
+	}
+
+	@Test
+	void testEmpty() throws Exception {
+		// ACTION UNDER TEST
+		byte[] gzip = gzip(new byte[0], 2, 1024, 1);
+
+		// ASSERTIONS
+		assertEquals(0, gunzip(gzip).length);
+	}
+
+	@Test
+	void testCompressesAboutAsWellAsSerialGzip() throws Exception {
+		// SETUP
+		byte[] rows = rows(50000);
+		ByteArrayOutputStream serial = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(serial)) {
+			gzip.write(rows);
+		}
+
+		// ACTION UNDER TEST
+		byte[] parallel = gzip(rows, 4, ParallelGzipOutputStream.BLOCK_SIZE, 8192);
+
+		// ASSERTIONS the dictionaries keep the block boundaries cheap
+		assertTrue(parallel.length < serial.size() * 1.02, parallel.length + " vs " + serial.size());
+	}
+
+	@Test
+	void testCrc32Combine() {
+		// SETUP
+		byte[] rows = rows(1000);
+		int split = 12345;
+		CRC32 whole = new CRC32();
+		whole.update(rows);
+		CRC32 first = new CRC32();
+		first.update(rows, 0, split);
+		CRC32 second = new CRC32();
+		second.update(rows, split, rows.length - split);
+
+		// ACTION UNDER TEST
+		long combined = ParallelGzipOutputStream.crc32Combine(first.getValue(), second.getValue(), rows.length - split);
+
+		// ASSERTIONS
+		assertEquals(whole.getValue(), combined);
+		assertEquals(first.getValue(), ParallelGzipOutputStream.crc32Combine(first.getValue(), 0, 0));
+	}
+}
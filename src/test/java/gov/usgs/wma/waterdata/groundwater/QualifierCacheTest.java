@@ -0,0 +1,70 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class QualifierCacheTest {
+
+	int resolved;
+	QualifierCache cache;
+
+	@BeforeEach
+	public void setup() {
+		resolved = 0;
+		cache = new QualifierCache(2, qualifiers -> {
+			resolved++;
+			return qualifiers.toUpperCase();
+		});
+	}
+
+	@Test
+	void testHitsAndMisses() {
+		// ACTION UNDER TEST
+		assertEquals("A", cache.get("a"));
+		assertEquals("A", cache.get("a"));
+		assertEquals("B", cache.get("b"));
+		assertEquals("A", cache.get("a"));
+
+		// ASSERTIONS
+		assertEquals(2, resolved);
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@Test
+	void testLeastRecentlyUsedEvicted() {
+		cache.get("a");
+		cache.get("b");
+		cache.get("a"); // b is now the least recently used
+
+		// ACTION UNDER TEST
+		cache.get("c");
+
+		// ASSERTIONS
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2, cache.size());
+		cache.get("a");
+		assertEquals(3, resolved, "a should have been retained");
+		cache.get("b");
+		assertEquals(4, resolved, "b should have been evicted");
+	}
+
+	@Test
+	void testRulesUseCache() {
+		// SETUP
+		DiscreteGroundWaterRules rules = new DiscreteGroundWaterRules();
+		String qualifiers = "[\"" + LevelStatusCode.SALINE.getAqDescription() + "\"]";
+
+		// ACTION UNDER TEST
+		for (int i = 0; i < 10; i++) {
+			assertEquals(LevelStatusCode.SALINE.getNwisCode(), rules.toLevelStatusCode(qualifiers));
+		}
+
+		// ASSERTIONS
+		assertEquals(1, rules.getQualifierCache().getMisses());
+		assertEquals(9, rules.getQualifierCache().getHits());
+	}
+}
@@ -0,0 +1,62 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class QualifierScannerTest {
+
+	DiscreteGroundWaterRules rules = new DiscreteGroundWaterRules();
+
+	@Test
+	void testSimpleArrays() {
+		assertEquals(LevelStatusCode.UNKNOWN, QualifierScanner.scan("[]"));
+		assertEquals(LevelStatusCode.UNKNOWN, QualifierScanner.scan(" [ ] "));
+		assertEquals(LevelStatusCode.STATIC, QualifierScanner.scan("[\"Static\"]"));
+		assertEquals(LevelStatusCode.TIDE_AFFECTED, QualifierScanner.scan("[\"Groundwater level affected by tide\"]"));
+		assertEquals(LevelStatusCode.UNKNOWN, QualifierScanner.scan("[\"Revised\"]"), "Revised is real but not mapped");
+		assertEquals(LevelStatusCode.UNKNOWN, QualifierScanner.scan("[\"JUNK\", \"\"]"));
+	}
+
+	@Test
+	void testEnumOrderWins() {
+		assertEquals(LevelStatusCode.ABOVE,
+				QualifierScanner.scan("[\"Saline\", \"ForeignSubstance\",\"Above\" , \"GWTideAffected\"]"));
+	}
+
+	@Test
+	void testElementsAreTrimmed() {
+		assertEquals(LevelStatusCode.BELOW, QualifierScanner.scan("[\" Below \"]"));
+	}
+
+	@Test
+	void testUnsupportedLeftToParser() {
+		assertNull(QualifierScanner.scan("{}"));
+		assertNull(QualifierScanner.scan("\"Static\""));
+		assertNull(QualifierScanner.scan("[\"Sta\\u0074ic\"]"));
+		assertNull(QualifierScanner.scan("[\"Static\""));
+		assertNull(QualifierScanner.scan("[\"Static\",]"));
+		assertNull(QualifierScanner.scan("[\"Static\"] junk"));
+		assertNull(QualifierScanner.scan("[1, \"Static\"]"));
+		assertNull(QualifierScanner.scan("[[\"Static\"]]"));
+	}
+
+	@Test
+	void testScannerMatchesParser() {
+		List<String> samples = List.of(
+				"[]",
+				"[\"Static\"]",
+				"[\"Groundwater level affected by brackish or saline water\",\"Below\"]",
+				"[\"JUNK junk ;lkj;lkjakhsd\",\"ForeignSubstance\",\"Above\"]",
+				"[\"Revised\",\"CrossSectionSimpleMean\"]",
+				"[\"  NoMeasurement \"]",
+				"[ \"GWSWAffected\" , \"Static\" ]");
+		for (String sample : samples) {
+			LevelStatusCode scanned = QualifierScanner.scan(sample);
+			assertNotNull(scanned, sample);
+			assertEquals(rules.parseLevelStatusCode(sample), scanned, sample);
+		}
+	}
+}
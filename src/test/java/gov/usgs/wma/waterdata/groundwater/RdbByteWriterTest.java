@@ -0,0 +1,132 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.Month;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RdbByteWriterTest {
+
+	ByteArrayOutputStream out;
+	RdbByteWriter rdbWriter;
+
+	@BeforeEach
+	public void setup() {
+		out = new ByteArrayOutputStream();
+		rdbWriter = new RdbByteWriter(out);
+	}
+
+	DiscreteGroundWater makeDgw() {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "USGS";
+		dgw.siteIdentificationNumber = "4042342342";
+		dgw.displayResult = "23.06";
+		dgw.belowLandSurface = true;
+		dgw.verticalDatumCode = "";
+		dgw.measurementSourceCode = "S";
+		dgw.measuringAgencyCode = "USGS";
+		dgw.levelAccuracyCode = "2";
+		dgw.readingQualifiers = "5";
+		dgw.measurementMethodCode = "S";
+		dgw.dateMeasured = "07-MAY-2007 18:30:47";
+		LocalDateTime dateTime = LocalDateTime.of(2007, Month.MAY, 01, 12, 0);
+		dgw.dateMeasuredRaw = Timestamp.valueOf(dateTime);
+		dgw.dateTimeAccuracyCode = "D";
+		dgw.timezoneCode = "UTC";
+		dgw.timeMeasuredUtc = "01-MAY-2007 12:00:00";
+		dgw.approvalLevel = "P";
+		dgw.parameterCode = "30210";
+		return dgw;
+	}
+
+	@Test
+	void testOutputMatchesRdbWriter() throws Exception {
+		// SETUP
+		ByteArrayOutputStream charOut = new ByteArrayOutputStream();
+		Writer destination = new OutputStreamWriter(charOut);
+		RdbWriter charWriter = new RdbWriter(destination);
+		charWriter.writeHeader().writeRow(makeDgw());
+		destination.close();
+
+		// ACTION UNDER TEST
+		rdbWriter.writeHeader().writeRow(makeDgw()).flush();
+
+		// ASSERTIONS
+		assertEquals(charOut.toString(), out.toString());
+		assertEquals(charWriter.getHeaderRowCount(), rdbWriter.getHeaderRowCount());
+		assertEquals(1, rdbWriter.getDataRowCount());
+	}
+
+	@Test
+	void testFieldsTruncatedAndDelimited() {
+		// ACTION UNDER TEST
+		rdbWriter.writeField(5, "valuePlusMore".getBytes(StandardCharsets.UTF_8))
+			.writeField(5, (byte[]) null)
+			.writeField(15, "value")
+			.endRow()
+			.flush();
+
+		// ASSERTIONS
+		assertEquals("value\t\tvalue\n", out.toString());
+		assertEquals(1, rdbWriter.getDataRowCount());
+	}
+
+	@Test
+	void testTruncationDoesNotSplitCharacters() {
+		// SETUP e-acute is two bytes in UTF-8
+		byte[] value = "caf\u00e9s".getBytes(StandardCharsets.UTF_8);
+
+		// ACTION UNDER TEST
+		rdbWriter.writeField(4, value).endRow().flush();
+
+		// ASSERTIONS
+		assertEquals("caf\n", out.toString(StandardCharsets.UTF_8));
+		assertEquals(5, RdbByteWriter.truncatedLength(5, value));
+	}
+
+	@Test
+	void testSmallBufferMatchesRdbWriter() throws Exception {
+		// SETUP non-ASCII fields are truncated by chars as RdbWriter does
+		DiscreteGroundWater dgw = makeDgw();
+		dgw.dateMeasured = "07-MAY-2007 \u00e9t\u00e9 18:30:47 and more than twenty five chars";
+		dgw.timezoneCode = "\u00c9\u00c9\u00c9\u00c9\u00c9\u00c9\u00c9";
+		ByteArrayOutputStream charOut = new ByteArrayOutputStream();
+		Writer destination = new OutputStreamWriter(charOut, StandardCharsets.UTF_8);
+		RdbWriter charWriter = new RdbWriter(destination);
+		charWriter.writeHeader().writeRow(dgw).writeRow(makeDgw());
+		destination.close();
+		rdbWriter = new RdbByteWriter(out, 16);
+
+		// ACTION UNDER TEST
+		rdbWriter.writeHeader().writeRow(dgw).writeRow(makeDgw());
+		int beforeFlush = out.size();
+		rdbWriter.flush();
+
+		// ASSERTIONS
+		assertArrayEquals(charOut.toByteArray(), out.toByteArray());
+		assertTrue(beforeFlush > 0, "full buffers are handed downstream before the flush");
+		assertEquals(2, rdbWriter.getDataRowCount());
+	}
+
+	@Test
+	void testInvalidParameterWritesNothing() {
+		// SETUP
+		DiscreteGroundWater dgw = makeDgw();
+		dgw.belowLandSurface = false;
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(RuntimeException.class, ()->rdbWriter.writeRow(dgw));
+		rdbWriter.flush();
+		assertEquals(0, out.size());
+		assertEquals(0, rdbWriter.getDataRowCount());
+	}
+}
@@ -0,0 +1,76 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.Month;
+
+import org.junit.jupiter.api.Test;
+
+class RdbRowEncoderTest {
+
+	DiscreteGroundWater makeDgw() {
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "USGS";
+		dgw.siteIdentificationNumber = "4042342342";
+		dgw.displayResult = "23.06";
+		dgw.aboveDatum = true;
+		dgw.verticalDatumCode = "NGVD29";
+		dgw.measurementSourceCode = "S";
+		dgw.measuringAgencyCode = "USGS";
+		dgw.levelAccuracyCode = "2";
+		dgw.readingQualifiers = "5";
+		dgw.measurementMethodCode = "S";
+		dgw.dateMeasured = "07-MAY-2007 18:30:47";
+		dgw.dateMeasuredRaw = Timestamp.valueOf(LocalDateTime.of(2007, Month.MAY, 1, 12, 0));
+		dgw.dateTimeAccuracyCode = "D";
+		dgw.timezoneCode = "UTC";
+		dgw.timeMeasuredUtc = "01-MAY-2007 12:00:00";
+		dgw.approvalLevel = "A";
+		dgw.parameterCode = "72150";
+		return dgw;
+	}
+
+	@Test
+	void testCompiledLayoutFollowsTheHeader() throws Throwable {
+		// SETUP a header edit that reorders, narrows, and drops columns
+		RdbSchema schema = RdbSchema.parse("site_no\tagency_cd\tlev_dtm\tsl_lev_va\tlev_ent_cd\n4s\t5s\t11d\t8s\t1s\n");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdbByteWriter writer = new RdbByteWriter(out);
+
+		// ACTION UNDER TEST
+		MethodHandle row = RdbRowEncoder.compile(schema);
+		row.invokeExact(writer, makeDgw());
+		writer.flush();
+
+		// ASSERTIONS
+		writer.timestamps.encode(makeDgw().dateMeasuredRaw);
+		assertEquals("4042\tUSGS\t" + writer.timestamps.getDateTime().substring(0, 11) + "\t23.06\tS\n", out.toString());
+		assertEquals(1, writer.getDataRowCount());
+	}
+
+	@Test
+	void testUnknownColumn() {
+		RdbSchema schema = RdbSchema.parse("agency_cd\tnot_a_column\n5s\t1s\n");
+
+		assertThrows(RuntimeException.class, ()->RdbRowEncoder.compile(schema));
+	}
+
+	@Test
+	void testInvalidParameterWritesNothing() {
+		// SETUP
+		DiscreteGroundWater dgw = makeDgw();
+		dgw.aboveDatum = false;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdbByteWriter writer = new RdbByteWriter(out);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(RuntimeException.class, ()->RdbRowEncoder.write(writer, dgw));
+		writer.flush();
+		assertEquals(0, out.size());
+	}
+}
@@ -0,0 +1,43 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class RdbSchemaTest {
+
+	@Test
+	void testDefaultHeader() {
+		// ACTION UNDER TEST
+		RdbSchema schema = RdbSchema.DEFAULT;
+
+		// ASSERTIONS
+		assertEquals(20, schema.getColumns().size());
+		assertEquals("agency_cd", schema.getColumns().get(0).getName());
+		assertEquals(5, schema.getColumns().get(0).getWidth());
+		assertEquals("lev_dtm", schema.getColumns().get(14).getName());
+		assertEquals(25, schema.getColumns().get(14).getWidth());
+		assertEquals("ds", schema.getColumns().get(14).getType());
+		assertEquals("parameter_code", schema.getColumns().get(19).getName());
+	}
+
+	@Test
+	void testParseSkipsComments() {
+		// ACTION UNDER TEST
+		RdbSchema schema = RdbSchema.parse("# comment\n#\nagency_cd\tsite_no\n5s\t15s\n");
+
+		// ASSERTIONS
+		assertEquals(2, schema.getColumns().size());
+		assertEquals("site_no", schema.getColumns().get(1).getName());
+		assertEquals(15, schema.getColumns().get(1).getWidth());
+		assertEquals("s", schema.getColumns().get(1).getType());
+	}
+
+	@Test
+	void testMismatchedHeader() {
+		assertThrows(RuntimeException.class, ()->RdbSchema.parse("agency_cd\tsite_no\n5s\n"));
+		assertThrows(RuntimeException.class, ()->RdbSchema.parse("agency_cd\nXs\n"));
+		assertThrows(RuntimeException.class, ()->RdbSchema.parse("# only comments\n"));
+		assertThrows(RuntimeException.class, ()->RdbSchema.load("/rdb/missing.txt"));
+	}
+}
@@ -299,13 +299,6 @@ class RdbWriterTest {
 			super(destination);
 		}
 
-		private void flush() {
-			try {
-				rdb.flush();
-			} catch (IOException e) {
-				e.printStackTrace(); //ignore
-			}
-		}
 		@Override
 		public RdbWriter writeHeader() {
 			super.writeHeader();
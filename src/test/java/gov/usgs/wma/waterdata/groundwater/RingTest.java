@@ -0,0 +1,82 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RingTest {
+
+	@Test
+	void testSlotsAreRecycledInOrder() {
+		// SETUP
+		Ring<StringBuilder> ring = new Ring<>(List.of(new StringBuilder(), new StringBuilder()));
+
+		// ACTION UNDER TEST
+		StringBuilder first = ring.claim().append("a");
+		ring.publish(first);
+		StringBuilder second = ring.claim().append("b");
+		ring.publish(second);
+		ring.close();
+
+		// ASSERTIONS
+		assertSame(first, ring.take());
+		ring.release(first);
+		assertSame(second, ring.take());
+		assertNull(ring.take());
+		assertSame(first, ring.claim());
+	}
+
+	@Test
+	void testBackpressureBlocksTheProducer() throws Exception {
+		// SETUP one slot, the consumer drains it after a delay
+		Ring<int[]> ring = new Ring<>(List.of(new int[1]));
+		List<Integer> consumed = new ArrayList<>();
+		Thread consumer = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				return;
+			}
+			for (int[] slot = ring.take(); slot != null; slot = ring.take()) {
+				consumed.add(slot[0]);
+				ring.release(slot);
+			}
+		});
+		consumer.start();
+
+		// ACTION UNDER TEST
+		for (int i = 0; i < 3; i++) {
+			int[] slot = ring.claim();
+			slot[0] = i;
+			ring.publish(slot);
+		}
+		ring.close();
+		consumer.join();
+
+		// ASSERTIONS
+		assertEquals(List.of(0, 1, 2), consumed);
+		assertTrue(ring.getProducerWaitNanos() > 0);
+	}
+
+	@Test
+	void testAbortReleasesABlockedStage() {
+		// SETUP
+		Ring<int[]> ring = new Ring<>(List.of(new int[1]));
+		ring.abort(new IllegalStateException("format failed"));
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		RuntimeException e = assertThrows(RuntimeException.class, ()->ring.take());
+		assertTrue(e.getCause() instanceof IllegalStateException);
+	}
+
+	@Test
+	void testUtilization() {
+		assertEquals(0.75, Ring.utilization(400, 100));
+		assertEquals(0.0, Ring.utilization(0, 0));
+		assertEquals(0.0, Ring.utilization(100, 200));
+	}
+}
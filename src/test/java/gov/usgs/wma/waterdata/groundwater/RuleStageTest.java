@@ -0,0 +1,91 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RuleStageTest {
+
+	RuleStage stage;
+
+	@BeforeEach
+	public void setup() {
+		stage = new RuleStage("upper", value -> value == null ? "" : value.toUpperCase(), "USGS",
+				d -> d.agencyCode, (d, v) -> d.agencyCode = v, b -> b.agencyCode, b -> b.agencyCodes);
+	}
+
+	@Test
+	void testApplyToRow() {
+		// SETUP
+		DiscreteGroundWater dgw = new DiscreteGroundWater();
+		dgw.agencyCode = "usgs";
+
+		// ACTION UNDER TEST
+		stage.apply(dgw);
+
+		// ASSERTIONS
+		assertEquals("USGS", dgw.agencyCode);
+		assertEquals(1, stage.getRows());
+		assertEquals(0, stage.getChanges());
+		assertEquals(1, stage.getInvocations());
+	}
+
+	@Test
+	void testCountsAndSampledHistogram() {
+		// ACTION UNDER TEST
+		for (int i = 0; i < RuleStage.SAMPLE_INTERVAL * 2; i++) {
+			stage.evaluate(i % 2 == 0 ? "USGS" : "usgs");
+		}
+
+		// ASSERTIONS
+		assertEquals(RuleStage.SAMPLE_INTERVAL * 2, stage.getRows());
+		assertEquals(0, stage.getChanges());
+		assertEquals(RuleStage.SAMPLE_INTERVAL * 2, stage.getInvocations());
+		assertEquals(2, Arrays.stream(stage.getCostHistogram()).sum());
+		assertTrue(stage.toString().contains("name=upper"));
+		assertTrue(stage.toString().contains("changes=0"));
+	}
+
+	@Test
+	void testApplyToBatchOncePerEntry() {
+		// SETUP
+		DiscreteGroundWaterBatch batch = new DiscreteGroundWaterBatch(4);
+		for (String agency : new String[] {"usgs", "usgs", "nps", "usgs"}) {
+			DiscreteGroundWater dgw = new DiscreteGroundWater();
+			dgw.agencyCode = agency;
+			dgw.siteIdentificationNumber = "01646500";
+			batch.add(dgw);
+		}
+
+		// ACTION UNDER TEST
+		stage.apply(batch);
+
+		// ASSERTIONS
+		assertEquals(4, stage.getRows());
+		assertEquals(1, stage.getChanges());
+		assertEquals(2, stage.getInvocations());
+		assertEquals("NPS", batch.agencyCode.derived(batch.agencyCode.encode("nps")));
+	}
+
+	@Test
+	void testMerge() {
+		// SETUP
+		RuleStage worker = new RuleStage("upper", value -> value == null ? "" : value.toUpperCase(), "USGS",
+				d -> d.agencyCode, (d, v) -> d.agencyCode = v, b -> b.agencyCode, b -> b.agencyCodes);
+		stage.evaluate("usgs");
+		worker.evaluate("nps");
+		worker.evaluate("usgs");
+
+		// ACTION UNDER TEST
+		stage.merge(worker);
+
+		// ASSERTIONS
+		assertEquals(3, stage.getRows());
+		assertEquals(1, stage.getChanges());
+		assertEquals(3, stage.getInvocations());
+		assertEquals(2, Arrays.stream(stage.getCostHistogram()).sum());
+	}
+}
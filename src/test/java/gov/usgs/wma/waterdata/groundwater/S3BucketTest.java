@@ -4,11 +4,16 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Base64;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
@@ -19,6 +24,8 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectResult;
 
 class S3BucketTest {
@@ -92,6 +99,50 @@ class S3BucketTest {
 		}
 	}
 
+	@Test
+	void testAccessingParallelGzipWriter() throws Exception {
+		// SETUP
+		properties.setGzipThreads(2);
+		deleteFile(s3.file);
+		s3 = s3util.openS3(filename);
+		String writeThis = "write something";
+
+		// ACTION UNDER TEST
+		Writer writer = s3.getWriter();
+		writer.write(writeThis);
+		writer.close();
+
+		try (InputStream is = new FileInputStream(s3.file)) {
+			List<String> lines = new BufferedReader(
+					new InputStreamReader( new GZIPInputStream( is ) ) )
+					.lines()
+					.collect(Collectors.toList());
+
+			// ASSERTIONS
+			try (OutputStream encoder = s3.codec.encode(OutputStream.nullOutputStream())) {
+				assertTrue(encoder instanceof ParallelGzipOutputStream);
+			}
+			assertTrue(lines.contains(writeThis));
+		}
+	}
+
+	@Test
+	void testUncompressedCodec() throws Exception {
+		// SETUP
+		deleteFile(s3.file);
+		s3 = s3util.openS3(filename, "none");
+		String writeThis = "write something";
+
+		// ACTION UNDER TEST
+		Writer writer = s3.getWriter();
+		writer.write(writeThis);
+		writer.close();
+
+		// ASSERTIONS
+		assertEquals(filename, s3.keyName);
+		assertEquals(List.of(writeThis), Files.readAllLines(s3.file.toPath()));
+	}
+
 	// this test does not throw an IOE on *nix, only Windows.
 	void testAccessingWriterThrows() {
 		// SETUP
@@ -118,7 +169,8 @@ class S3BucketTest {
 			protected AmazonS3 buildS3() {
 				AmazonS3 mocks3 = Mockito.mock(AmazonS3.class);
 				mockResult.setETag("MOCK-RAN");
-				when(mocks3.putObject(bucket, keyName, file)).thenReturn(mockResult);
+				when(mocks3.putObject(argThat((PutObjectRequest request) -> bucket.equals(request.getBucketName())
+						&& keyName.equals(request.getKey()) && file.equals(request.getFile())))).thenReturn(mockResult);
 				return mocks3;
 			}
 		};
@@ -128,7 +180,7 @@ class S3BucketTest {
 			Writer writer = mockS3bucket.getWriter();
 			String writeThis = "write something";
 			writer.write(writeThis);
-			mockS3bucket.sendS3();
+			assertSame(mockResult, mockS3bucket.sendS3());
 			mockS3bucket.close();
 
 			// ASSERTIONS
@@ -139,4 +191,209 @@ class S3BucketTest {
 
 		assertFalse(mockS3bucket.file.exists());
 	}
+
+	@Test
+	void testUnchangedExportSkipped() throws Exception {
+		// SETUP
+		LocalS3 local = new LocalS3();
+		export(local, "20200715_030500", S3Bucket.Unchanged.SKIP, "rows", 1);
+
+		// ACTION UNDER TEST
+		S3Bucket second = export(local, "20200716_030500", S3Bucket.Unchanged.SKIP, "rows", 1);
+
+		// ASSERTIONS
+		assertEquals("ts.CA.20200715_030500.full.rdb.gz", second.getUnchangedKey());
+		assertEquals(1, local.objects.size());
+		ObjectMetadata recorded = local.metadata.get("bucket/ts.CA.20200715_030500.full.rdb.gz");
+		assertEquals(second.getContentDigest(), recorded.getUserMetaDataOf(S3Bucket.DIGEST_METADATA));
+		assertEquals("1", recorded.getUserMetaDataOf(S3Bucket.ROW_COUNT_METADATA));
+	}
+
+	@Test
+	void testUnchangedExportCopied() throws Exception {
+		// SETUP
+		LocalS3 local = new LocalS3();
+		export(local, "20200715_030500", S3Bucket.Unchanged.COPY, "rows", 1);
+
+		// ACTION UNDER TEST
+		S3Bucket second = export(local, "20200716_030500", S3Bucket.Unchanged.COPY, "rows", 1);
+
+		// ASSERTIONS
+		assertNull(second.getUnchangedKey());
+		assertArrayEquals(local.objects.get("bucket/ts.CA.20200715_030500.full.rdb.gz"),
+				local.objects.get("bucket/ts.CA.20200716_030500.full.rdb.gz"));
+		assertEquals(second.getContentDigest(), local.metadata.get("bucket/ts.CA.20200716_030500.full.rdb.gz")
+				.getUserMetaDataOf(S3Bucket.DIGEST_METADATA));
+	}
+
+	@Test
+	void testChangedExportPut() throws Exception {
+		// SETUP other folders and codecs are not compared
+		LocalS3 local = new LocalS3();
+		export(local, "20200715_030500", S3Bucket.Unchanged.SKIP, "rows", 1);
+		local.objects.put("bucket/ts.CA.20200716_000000.full.rdb", new byte[0]);
+
+		// ACTION UNDER TEST
+		S3Bucket second = export(local, "20200716_030500", S3Bucket.Unchanged.SKIP, "more rows", 2);
+
+		// ASSERTIONS
+		assertNull(second.getUnchangedKey());
+		assertEquals("more rows", new String(new GZIPInputStream(new ByteArrayInputStream(
+				local.objects.get("bucket/ts.CA.20200716_030500.full.rdb.gz"))).readAllBytes()));
+		assertEquals("2", local.metadata.get("bucket/ts.CA.20200716_030500.full.rdb.gz")
+				.getUserMetaDataOf(S3Bucket.ROW_COUNT_METADATA));
+	}
+
+	@Test
+	void testUnchangedStreamingExportAborted() throws Exception {
+		// SETUP
+		LocalS3 local = new LocalS3();
+		S3Bucket first = export(local, "20200715_030500", S3Bucket.Unchanged.SKIP, "rows", 1);
+		assertEquals(first.getContentDigest(), local.metadata.get("bucket/ts.CA.20200715_030500.full.rdb.gz")
+				.getUserMetaDataOf(S3Bucket.DIGEST_METADATA));
+
+		// ACTION UNDER TEST
+		S3Bucket second = streamingExport(local, "20200716_030500");
+
+		// ASSERTIONS
+		assertEquals("ts.CA.20200715_030500.full.rdb.gz", second.getUnchangedKey());
+		assertEquals(1, local.objects.size());
+		assertEquals(1, local.aborted.get());
+	}
+
+	@Test
+	void testStreamingExportNotCopiedOntoItself() throws Exception {
+		// SETUP
+		LocalS3 local = new LocalS3();
+		local.objects.put("bucket/ts.CA.20200714_030500.full.rdb.gz", new byte[0]);
+		local.metadata.put("bucket/ts.CA.20200714_030500.full.rdb.gz", new ObjectMetadata());
+
+		// ACTION UNDER TEST
+		S3Bucket bucket = streamingExport(local, "20200715_030500");
+
+		// ASSERTIONS the digest is known but the upload began without it
+		assertNotNull(bucket.getContentDigest());
+		assertNull(bucket.getUnchangedKey());
+		assertNull(local.metadata.get("bucket/ts.CA.20200715_030500.full.rdb.gz")
+				.getUserMetaDataOf(S3Bucket.DIGEST_METADATA));
+		assertEquals(0, local.aborted.get());
+	}
+
+	@Test
+	void testHeaderMember() throws Exception {
+		// SETUP
+		LocalS3 local = new LocalS3();
+		S3Bucket bucket = new S3Bucket("region", "bucket", "ts.CA.20200715_030500.full.rdb.gz",
+				OutputCodecs.forName("gzip", 0), S3MultipartOutputStream.MIN_PART_SIZE, 2) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return local;
+			}
+		}.withHeaderMember("# header\n".getBytes());
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			OutputStream out = bucket.getOutputStream();
+			out.write("rows".getBytes());
+			bucket.sendS3(1);
+		}
+
+		// ASSERTIONS
+		byte[] object = local.objects.get("bucket/ts.CA.20200715_030500.full.rdb.gz");
+		int headerLength = Integer.parseInt(local.metadata.get("bucket/ts.CA.20200715_030500.full.rdb.gz")
+				.getUserMetaDataOf(S3Bucket.HEADER_LENGTH_METADATA));
+		assertEquals("# header\nrows", new String(new GZIPInputStream(new ByteArrayInputStream(object)).readAllBytes()));
+		assertEquals("rows", new String(new GZIPInputStream(new ByteArrayInputStream(object, headerLength,
+				object.length - headerLength)).readAllBytes()));
+	}
+
+	@Test
+	void testSegmentedHeaderMemberLength() throws Exception {
+		// SETUP
+		LocalS3 local = new LocalS3();
+		S3Bucket bucket = new S3Bucket("region", "bucket", "ts.CA.20200715_030500.full.rdb.gz",
+				OutputCodecs.forName("gzip", 0), S3MultipartOutputStream.MIN_PART_SIZE, 2) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return local;
+			}
+		};
+
+		// ACTION UNDER TEST
+		GzipMemberOutputStream members;
+		try (bucket) {
+			members = bucket.getMemberOutputStream();
+			members.beginMember(SegmentedExport.HEADER_KEY, "generation");
+			members.write("# header\n".getBytes());
+			members.endMember(0);
+			members.beginMember("USGS-01", "fingerprint");
+			members.write("USGS\t01\n".getBytes());
+			members.endMember(1);
+			bucket.sendS3(1);
+		}
+
+		// ASSERTIONS
+		assertEquals(Long.toString(members.getMembers().get(0).getLength()),
+				local.metadata.get("bucket/ts.CA.20200715_030500.full.rdb.gz")
+				.getUserMetaDataOf(S3Bucket.HEADER_LENGTH_METADATA));
+	}
+
+	@Test
+	void testEncodedCountAndDigest() throws Exception {
+		// SETUP
+		LocalS3 local = new LocalS3();
+		S3Bucket bucket = new S3Bucket("region", "bucket", "ts.CA.20200715_030500.full.rdb.gz",
+				OutputCodecs.forName("gzip", 0), S3MultipartOutputStream.MIN_PART_SIZE, 2) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return local;
+			}
+		}.withEncodedDigest();
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			OutputStream out = bucket.getOutputStream();
+			out.write("rows".getBytes());
+			bucket.sendS3(1);
+		}
+
+		// ASSERTIONS
+		byte[] object = local.objects.get("bucket/ts.CA.20200715_030500.full.rdb.gz");
+		assertEquals(object.length, bucket.getEncodedBytes());
+		assertEquals(4, bucket.getContentBytes());
+		assertEquals(Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(object)),
+				bucket.getEncodedDigest());
+	}
+
+	S3Bucket export(LocalS3 local, String timestamp, S3Bucket.Unchanged unchanged, String rows, long rowCount) throws Exception {
+		S3Bucket bucket = new S3Bucket("region", "bucket", "ts.CA." + timestamp + ".full.rdb.gz",
+				File.createTempFile(filename, "rdb"), OutputCodecs.forName("gzip", 0)) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return local;
+			}
+		}.withUnchangedCheck(unchanged, "ts.CA.", ".full.rdb.gz");
+		try (bucket) {
+			Writer writer = bucket.getWriter();
+			writer.write(rows);
+			bucket.sendS3(rowCount);
+		}
+		return bucket;
+	}
+
+	S3Bucket streamingExport(LocalS3 local, String timestamp) throws Exception {
+		S3Bucket bucket = new S3Bucket("region", "bucket", "ts.CA." + timestamp + ".full.rdb.gz",
+				OutputCodecs.forName("gzip", 0), S3MultipartOutputStream.MIN_PART_SIZE, 2) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return local;
+			}
+		}.withUnchangedCheck(S3Bucket.Unchanged.SKIP, "ts.CA.", ".full.rdb.gz");
+		try (bucket) {
+			OutputStream out = bucket.getOutputStream();
+			out.write("rows".getBytes());
+			bucket.sendS3(1);
+		}
+		return bucket;
+	}
 }
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Date;
 import java.util.regex.Pattern;
 
@@ -110,6 +111,67 @@ class S3BucketUtilTest {
 		assertThrows(RuntimeException.class, ()->s3util.openS3(filename));
 	}
 
+	@Test
+	void testPartFilename() {
+		// SETUP
+		String filename = "tstest.WI.gw_lev_01.06.20200715_030500.full.rdb";
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertEquals("tstest.WI.gw_lev_01.06.20200715_030500.full.part001.rdb", s3util.partFilename(filename, 0, 0, 1));
+		assertEquals("tstest.WI.gw_lev_01.06.20200715_030500.full.hash2of4.part012.rdb",
+				s3util.partFilename(filename, 2, 4, 12));
+	}
+
+	@Test
+	void testProductFilename() {
+		// SETUP
+		String filename = "tstest.WI.gw_lev_01.06.20200715_030500.full.rdb";
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertEquals("tstest.WI.gw_lev_01.06.20200715_030500.recent120.rdb", s3util.productFilename(filename, "recent120"));
+		assertEquals("tstest.WI.gw_lev_01.06.20200715_030500.latest.rdb", s3util.productFilename(filename, "latest"));
+	}
+
+	@Test
+	void testStreamingUnchangedUploadsRefused() {
+		// SETUP
+		properties.setStreamingUpload(true);
+		properties.setUnchangedUploads("skip");
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(IllegalStateException.class, ()->properties.validate());
+		properties.setStaging(true);
+		properties.validate();
+		properties.setStaging(false);
+		properties.setUnchangedUploads("put");
+		properties.validate();
+	}
+
+	@Test
+	void testFileTimestamp() {
+		// SETUP
+		String key = "tstest.WI.gw_lev_01.06.20200715_030500.full.rdb.gz";
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertEquals("20200715_030500", s3util.fileTimestamp(key));
+		assertThrows(RuntimeException.class, ()->s3util.fileTimestamp("tstest.WI.full.rdb"));
+	}
+
+	@Test
+	void testRunStart() {
+		// SETUP
+		String run = "20200715_030500";
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertEquals(LocalDateTime.of(2020, 7, 15, 3, 5, 0).atZone(ZoneId.systemDefault()).toInstant(),
+				s3util.runStart(run));
+	}
+
 	@Test
 	void testSimpleDate() {
 		LocalDateTime localDT = LocalDateTime.of(2000, 11, 22, 02, 03, 04);
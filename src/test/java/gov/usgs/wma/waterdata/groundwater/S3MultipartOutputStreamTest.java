@@ -0,0 +1,217 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+class S3MultipartOutputStreamTest {
+
+	LocalS3 s3;
+
+	@BeforeEach
+	public void setup() {
+		s3 = new LocalS3();
+	}
+
+	byte[] bytes(int length) {
+		byte[] bytes = new byte[length];
+		for (int b = 0; b < length; b++) {
+			bytes[b] = (byte) (b * 31 + b / 7);
+		}
+		return bytes;
+	}
+
+	@Test
+	void testPartsUploadAsTheyFill() throws Exception {
+		// SETUP
+		byte[] expected = bytes(10500);
+		S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", new ObjectMetadata(), 1000, 2);
+
+		// ACTION UNDER TEST
+		for (int offset = 0; offset < expected.length; offset += 333) {
+			out.write(expected, offset, Math.min(333, expected.length - offset));
+		}
+		out.write(7);
+		out.close();
+
+		// ASSERTIONS nothing is visible until complete
+		assertTrue(s3.objects.isEmpty());
+		assertEquals("multipart-11", out.complete().getETag());
+		byte[] actual = s3.objects.get("bucket/key");
+		assertEquals(expected.length + 1, actual.length);
+		assertArrayEquals(expected, Arrays.copyOf(actual, expected.length));
+		assertEquals(7, actual[expected.length]);
+		assertTrue(s3.uploads.isEmpty());
+	}
+
+	@Test
+	void testPartFailureAborts() {
+		// SETUP
+		s3.failPart = 3;
+		S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", new ObjectMetadata(), 1000, 2);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(IOException.class, ()->{
+			out.write(bytes(10000));
+			out.close();
+		});
+		assertThrows(IllegalStateException.class, ()->out.complete());
+		assertTrue(s3.objects.isEmpty());
+		assertTrue(s3.uploads.isEmpty());
+		assertEquals(1, s3.aborted.get());
+	}
+
+	@Test
+	void testStreamingS3BucketSend() throws Exception {
+		// SETUP
+		S3Bucket bucket = streamingBucket();
+		String rows = "USGS\t01646500\t20070501\n".repeat(100000);
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			Writer writer = bucket.getWriter();
+			writer.write(rows);
+			bucket.sendS3();
+		}
+
+		// ASSERTIONS
+		assertNull(bucket.file);
+		byte[] object = s3.objects.get("bucket/key.gz");
+		assertEquals(rows, new String(new GZIPInputStream(new ByteArrayInputStream(object)).readAllBytes()));
+		assertEquals(0, s3.aborted.get());
+	}
+
+	@Test
+	void testStreamingS3BucketCloseWithoutSendAborts() throws Exception {
+		// SETUP
+		S3Bucket bucket = streamingBucket();
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			Writer writer = bucket.getWriter();
+			writer.write("USGS\t01646500\t20070501\n".repeat(100000));
+		}
+
+		// ASSERTIONS
+		assertTrue(s3.objects.isEmpty());
+		assertTrue(s3.uploads.isEmpty());
+	}
+
+	@Test
+	void testStreamingS3BucketAbortClosesEncoder() throws Exception {
+		// SETUP
+		AtomicBoolean encoderClosed = new AtomicBoolean();
+		OutputCodec codec = new OutputCodecs.Gzip(1, 2) {
+			@Override
+			public OutputStream encode(OutputStream destination) throws IOException {
+				return new FilterOutputStream(super.encode(destination)) {
+					@Override
+					public void close() throws IOException {
+						super.close();
+						encoderClosed.set(true);
+					}
+				};
+			}
+		};
+		S3Bucket bucket = new S3Bucket("region", "bucket", "key.gz", codec, 4096, 2) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return s3;
+			}
+		};
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			Writer writer = bucket.getWriter();
+			writer.write("USGS\t01646500\t20070501\n".repeat(100000));
+		}
+
+		// ASSERTIONS
+		assertTrue(encoderClosed.get());
+		assertTrue(s3.objects.isEmpty());
+		assertTrue(s3.uploads.isEmpty());
+		assertEquals(1, s3.aborted.get());
+	}
+
+	@Test
+	void testWriteAfterAbortDropped() throws Exception {
+		// SETUP
+		S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", new ObjectMetadata(), 1000, 2);
+		out.write(bytes(2500));
+
+		// ACTION UNDER TEST
+		out.abort();
+		out.write(bytes(5000));
+		out.close();
+
+		// ASSERTIONS
+		assertTrue(s3.objects.isEmpty());
+		assertTrue(s3.uploads.isEmpty());
+		assertEquals(1, s3.aborted.get());
+	}
+
+	@Test
+	void testSmallFileTakesOneBuffer() throws Exception {
+		// SETUP
+		S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", new ObjectMetadata(), 1000, 4);
+
+		// ACTION UNDER TEST
+		out.write(bytes(500));
+		out.close();
+
+		// ASSERTIONS
+		assertEquals(1, out.allocated);
+		assertEquals("multipart-1", out.complete().getETag());
+	}
+
+	@Test
+	void testPartBuffersReusedFromThePool() throws Exception {
+		// SETUP
+		File directory = Files.createTempDirectory("rdb-parts-test").toFile();
+		TempStorage storage = new TempStorage(directory, 0, 0, 2);
+		S3MultipartOutputStream first = new S3MultipartOutputStream(s3, "bucket", "first", new ObjectMetadata(), 1000, 4, 1, storage);
+		first.write(bytes(5500));
+		first.close();
+		first.complete();
+
+		// ACTION UNDER TEST
+		S3MultipartOutputStream second = new S3MultipartOutputStream(s3, "bucket", "second", new ObjectMetadata(), 1000, 4, 1, storage);
+		second.write(bytes(500));
+		second.close();
+		second.complete();
+
+		// ASSERTIONS the pool keeps no more than it retains, and the second upload took one of them
+		assertTrue(first.allocated <= 4);
+		assertEquals(2, storage.parts.size());
+		assertArrayEquals(Arrays.copyOf(bytes(5500), 500), s3.objects.get("bucket/second"));
+		S3MultipartOutputStream other = new S3MultipartOutputStream(s3, "bucket", "other", new ObjectMetadata(), 2000, 4, 1, storage);
+		assertEquals(2000, other.part.capacity());
+		other.abort();
+		directory.delete();
+	}
+
+	S3Bucket streamingBucket() {
+		return new S3Bucket("region", "bucket", "key.gz", OutputCodecs.forName("gzip:1", 0), 4096, 2) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return s3;
+			}
+		};
+	}
+}
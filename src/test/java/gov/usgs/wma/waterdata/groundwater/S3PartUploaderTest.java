@@ -0,0 +1,142 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+class S3PartUploaderTest {
+
+	LocalS3 s3;
+	File file;
+	byte[] expected;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		s3 = new LocalS3();
+		file = File.createTempFile("test-filename", ".gz");
+		expected = new byte[10500];
+		for (int b = 0; b < expected.length; b++) {
+			expected[b] = (byte) (b * 31 + b / 7);
+		}
+		Files.write(file.toPath(), expected);
+	}
+
+	@AfterEach
+	public void cleanup() {
+		file.delete();
+	}
+
+	@Test
+	void testPartsFromFileOffsets() {
+		// SETUP
+		S3PartUploader uploader = new S3PartUploader(s3, 3, 1000, 3, 1);
+
+		// ACTION UNDER TEST
+		String etag = uploader.upload("bucket", "key", file, new ObjectMetadata()).getETag();
+
+		// ASSERTIONS
+		assertEquals("multipart-11", etag);
+		assertArrayEquals(expected, s3.objects.get("bucket/key"));
+		assertTrue(uploader.getThroughput() > 0);
+	}
+
+	@Test
+	void testFailedPartIsRetried() {
+		// SETUP
+		s3.failPart = 2;
+		s3.failPartAttempts.set(2);
+		S3PartUploader uploader = new S3PartUploader(s3, 2, 1000, 3, 1);
+
+		// ACTION UNDER TEST
+		uploader.upload("bucket", "key", file, new ObjectMetadata());
+
+		// ASSERTIONS
+		assertArrayEquals(expected, s3.objects.get("bucket/key"));
+		assertEquals(13, s3.partRequests.get());
+	}
+
+	@Test
+	void testRetriesExhaustedAborts() {
+		// SETUP
+		s3.failPart = 2;
+		S3PartUploader uploader = new S3PartUploader(s3, 2, 1000, 3, 1);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		RuntimeException e = assertThrows(RuntimeException.class, ()->uploader.upload("bucket", "key", file, new ObjectMetadata()));
+		assertTrue(e.getCause() instanceof AmazonS3Exception);
+		assertTrue(s3.objects.isEmpty());
+		assertTrue(s3.uploads.isEmpty());
+		assertEquals(1, s3.aborted.get());
+	}
+
+	@Test
+	void testOnlyS3ErrorsAreRetried() {
+		// SETUP
+		AtomicInteger calls = new AtomicInteger();
+
+		// ACTION UNDER TEST
+		assertThrows(IllegalStateException.class, ()->S3PartUploader.withRetry(() -> {
+			calls.incrementAndGet();
+			throw new IllegalStateException();
+		}, 3, 1, "test"));
+
+		// ASSERTIONS
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	void testStagedFileOverThresholdUploadsInParts() throws Exception {
+		// SETUP
+		String rows = "USGS\t01646500\t20070501\n".repeat(1000);
+		S3Bucket bucket = stagedBucket().withParallelUpload(2, 100, 64);
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			Writer writer = bucket.getWriter();
+			writer.write(rows);
+			assertTrue(bucket.sendS3().getETag().startsWith("multipart-"));
+		}
+
+		// ASSERTIONS
+		byte[] object = s3.objects.get("bucket/key.gz");
+		assertEquals(rows, new String(new GZIPInputStream(new ByteArrayInputStream(object)).readAllBytes()));
+	}
+
+	@Test
+	void testStagedFileUnderThresholdIsPut() throws Exception {
+		// SETUP
+		S3Bucket bucket = stagedBucket().withParallelUpload(2, 1 << 20, 64);
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			Writer writer = bucket.getWriter();
+			writer.write("USGS\t01646500\t20070501\n");
+
+			// ASSERTIONS
+			assertEquals("put", bucket.sendS3().getETag());
+		}
+	}
+
+	S3Bucket stagedBucket() {
+		return new S3Bucket("region", "bucket", "key.gz", file) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return s3;
+			}
+		};
+	}
+}
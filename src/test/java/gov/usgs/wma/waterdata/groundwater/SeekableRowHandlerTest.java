@@ -0,0 +1,91 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class SeekableRowHandlerTest {
+
+	ByteArrayOutputStream file;
+	GzipMemberOutputStream out;
+	RdbByteWriter writer;
+
+	@BeforeEach
+	public void setup() {
+		file = new ByteArrayOutputStream();
+		out = new GzipMemberOutputStream(file, Deflater.BEST_SPEED);
+		writer = new RdbByteWriter(out);
+	}
+
+	@Test
+	void testMemberPerSite() throws Exception {
+		// SETUP
+		SeekableRowHandler handler = handler(0);
+
+		// ACTION UNDER TEST
+		fetch(handler, "USGS-01", "a1", "USGS-01", "a2", "USGS-02", "b1", "USGS-03", "c1");
+		SiteOffsetIndex sites = handler.finish();
+		out.close();
+
+		// ASSERTIONS
+		assertEquals(3, out.getMembers().size());
+		assertEquals(3, sites.getEntries().size());
+		assertEquals("a1\na2\n", range(sites.get("USGS", "01")));
+		assertEquals("b1\n", range(sites.get("USGS", "02")));
+		assertEquals(2, sites.get("USGS", "01").getRows());
+		assertEquals("a1\na2\nb1\nc1\n", gunzip(file.toByteArray()));
+	}
+
+	@Test
+	void testSitesShareMembersUpToSize() throws Exception {
+		// SETUP ends a member at the first site boundary after 7 bytes
+		SeekableRowHandler handler = handler(7);
+
+		// ACTION UNDER TEST
+		fetch(handler, "USGS-01", "a1", "USGS-02", "b1", "USGS-03", "c1", "USGS-04", "d1");
+		SiteOffsetIndex sites = handler.finish();
+		out.close();
+
+		// ASSERTIONS
+		assertEquals(2, out.getMembers().size());
+		assertEquals(sites.get("USGS", "01").getOffset(), sites.get("USGS", "02").getOffset());
+		assertEquals(sites.get("USGS", "01").getOffset(), sites.get("USGS", "03").getOffset());
+		assertEquals("a1\nb1\nc1\n", range(sites.get("USGS", "02")));
+		assertEquals("d1\n", range(sites.get("USGS", "04")));
+		assertEquals(1, sites.get("USGS", "04").getRows());
+		assertEquals(3, out.getMembers().get(0).getRows());
+	}
+
+	SeekableRowHandler handler(long memberSize) {
+		return new SeekableRowHandler(rs -> writer.writeField(64, rs.getString("value")).endRow(), writer, out, memberSize);
+	}
+
+	void fetch(SeekableRowHandler handler, String... sitesAndValues) throws Exception {
+		ResultSet mockRs = Mockito.mock(ResultSet.class);
+		for (int r = 0; r < sitesAndValues.length; r += 2) {
+			Mockito.when(mockRs.getString(SegmentRowHandler.SITE_COLUMN)).thenReturn(sitesAndValues[r]);
+			Mockito.when(mockRs.getString("value")).thenReturn(sitesAndValues[r + 1]);
+			handler.processRow(mockRs);
+		}
+	}
+
+	String range(SiteOffsetIndex.Entry site) throws IOException {
+		byte[] bytes = Arrays.copyOfRange(file.toByteArray(), (int) site.getOffset(), (int) (site.getOffset() + site.getLength()));
+		return gunzip(bytes);
+	}
+
+	String gunzip(byte[] gzip) throws IOException {
+		return new String(new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes(), StandardCharsets.UTF_8);
+	}
+}
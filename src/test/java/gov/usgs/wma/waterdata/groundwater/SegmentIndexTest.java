@@ -0,0 +1,55 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SegmentIndexTest {
+
+	@Test
+	void testRoundTrip() throws Exception {
+		// SETUP
+		SegmentIndex index = new SegmentIndex("tstest.CA.gw_lev_01.06.20200715_030500.full.rdb.gz", "generation",
+				List.of(new SegmentIndex.Entry(SegmentedExport.HEADER_KEY, "generation", 0, 100, 0),
+						new SegmentIndex.Entry("USGS-01646500", "abc", 100, 250, 12)));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		// ACTION UNDER TEST
+		index.write(out);
+		SegmentIndex read = SegmentIndex.read(new ByteArrayInputStream(out.toByteArray()));
+
+		// ASSERTIONS
+		assertEquals(index.getFileKey(), read.getFileKey());
+		assertEquals("generation", read.getGeneration());
+		assertEquals(2, read.getEntries().size());
+		SegmentIndex.Entry site = read.get("USGS-01646500");
+		assertEquals("abc", site.getFingerprint());
+		assertEquals(100, site.getOffset());
+		assertEquals(250, site.getLength());
+		assertEquals(12, site.getRows());
+		assertEquals(12, read.getRows());
+		assertNull(read.get("USGS-01646501"));
+	}
+
+	@Test
+	void testEntriesOutOfFileOrder() {
+		// SETUP
+		String index = "key\tgeneration\nA\ta\t100\t50\t1\nB\tb\t120\t50\t1\n";
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(IOException.class, () -> SegmentIndex.read(stream(index)));
+		assertThrows(IOException.class, () -> SegmentIndex.read(stream("")));
+		assertThrows(IOException.class, () -> SegmentIndex.read(stream("key\tgeneration\nA\ta\t0\n")));
+	}
+
+	ByteArrayInputStream stream(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
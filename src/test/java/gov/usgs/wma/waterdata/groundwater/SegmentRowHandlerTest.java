@@ -0,0 +1,147 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class SegmentRowHandlerTest {
+
+	ByteArrayOutputStream file;
+	GzipMemberOutputStream out;
+	RdbByteWriter writer;
+
+	@BeforeEach
+	public void setup() {
+		file = new ByteArrayOutputStream();
+		out = new GzipMemberOutputStream(file, Deflater.BEST_SPEED);
+		writer = new RdbByteWriter(out);
+	}
+
+	@Test
+	void testAllSitesWritten() throws Exception {
+		// SETUP
+		SegmentRowHandler handler = handler(fingerprints("A", "a", "B", "b", "C", "c"), null, null);
+		assertEquals(List.of("A", "B", "C"), handler.getChangedSites());
+
+		// ACTION UNDER TEST
+		fetch(handler, "A", "a1", "A", "a2", "B", "b1", "C", "c1");
+		handler.finish();
+		out.close();
+
+		// ASSERTIONS
+		assertEquals("a1\na2\nb1\nc1\n", gunzip(file.toByteArray()));
+		assertEquals(4, writer.getDataRowCount());
+		List<SegmentIndex.Entry> members = out.getMembers();
+		assertEquals(3, members.size());
+		assertEquals(2, members.get(0).getRows());
+		assertEquals("b", members.get(1).getFingerprint());
+	}
+
+	@Test
+	void testUnchangedSitesCopied() throws Exception {
+		// SETUP
+		SegmentRowHandler first = handler(fingerprints("A", "a", "B", "b", "C", "c"), null, null);
+		fetch(first, "A", "a1", "A", "a2", "B", "b1", "C", "c1");
+		first.finish();
+		out.close();
+		byte[] previousFile = file.toByteArray();
+		SegmentIndex previous = new SegmentIndex("previous", "generation", out.getMembers());
+		setup();
+
+		SegmentRowHandler handler = handler(fingerprints("A", "a", "B", "b2", "C", "c", "D", "d"), previous, previousFile);
+		assertEquals(List.of("B", "D"), handler.getChangedSites());
+
+		// ACTION UNDER TEST
+		fetch(handler, "B", "b2", "D", "d1");
+		handler.finish();
+		out.close();
+
+		// ASSERTIONS
+		assertEquals("a1\na2\nb2\nc1\nd1\n", gunzip(file.toByteArray()));
+		assertEquals(5, writer.getDataRowCount());
+		List<SegmentIndex.Entry> members = out.getMembers();
+		assertArrayEquals(member(previousFile, previous.get("A")), member(file.toByteArray(), members.get(0)));
+		assertArrayEquals(member(previousFile, previous.get("C")), member(file.toByteArray(), members.get(2)));
+		assertEquals("b2", members.get(1).getFingerprint());
+		assertEquals(1, members.get(2).getRows());
+	}
+
+	@Test
+	void testRemovedAndReorderedSites() throws Exception {
+		// SETUP
+		SegmentRowHandler first = handler(fingerprints("A", "a", "B", "b", "C", "c"), null, null);
+		fetch(first, "A", "a1", "B", "b1", "C", "c1");
+		first.finish();
+		out.close();
+		byte[] previousFile = file.toByteArray();
+		SegmentIndex previous = new SegmentIndex("previous", "generation", out.getMembers());
+		setup();
+
+		// A now follows C, so reusing it would mean reading the previous file backwards
+		SegmentRowHandler handler = handler(fingerprints("C", "c", "A", "a"), previous, previousFile);
+		assertEquals(List.of("A"), handler.getChangedSites());
+
+		// ACTION UNDER TEST
+		fetch(handler, "A", "a1");
+		handler.finish();
+		out.close();
+
+		// ASSERTIONS
+		assertEquals("c1\na1\n", gunzip(file.toByteArray()));
+		assertEquals(2, writer.getDataRowCount());
+	}
+
+	@Test
+	void testFetchedSiteNotFingerprinted() throws Exception {
+		// SETUP
+		SegmentRowHandler handler = handler(fingerprints("A", "a"), null, null);
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(RuntimeException.class, () -> fetch(handler, "B", "b1"));
+	}
+
+	SegmentRowHandler handler(Map<String, String> fingerprints, SegmentIndex previous, byte[] previousFile) {
+		return new SegmentRowHandler(rs -> writer.writeField(64, rs.getString("value")).endRow(), writer, out,
+				fingerprints, previous, previousFile == null ? null : new ByteArrayInputStream(previousFile));
+	}
+
+	Map<String, String> fingerprints(String... sitesAndFingerprints) {
+		Map<String, String> fingerprints = new LinkedHashMap<>();
+		for (int s = 0; s < sitesAndFingerprints.length; s += 2) {
+			fingerprints.put(sitesAndFingerprints[s], sitesAndFingerprints[s + 1]);
+		}
+		return fingerprints;
+	}
+
+	void fetch(SegmentRowHandler handler, String... sitesAndValues) throws Exception {
+		ResultSet mockRs = Mockito.mock(ResultSet.class);
+		for (int r = 0; r < sitesAndValues.length; r += 2) {
+			Mockito.when(mockRs.getString(SegmentRowHandler.SITE_COLUMN)).thenReturn(sitesAndValues[r]);
+			Mockito.when(mockRs.getString("value")).thenReturn(sitesAndValues[r + 1]);
+			handler.processRow(mockRs);
+		}
+	}
+
+	byte[] member(byte[] file, SegmentIndex.Entry entry) {
+		return Arrays.copyOfRange(file, (int) entry.getOffset(), (int) (entry.getOffset() + entry.getLength()));
+	}
+
+	String gunzip(byte[] gzip) throws IOException {
+		return new String(new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,219 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.util.FileCopyUtils;
+
+class SegmentedExportTest {
+
+	static final String INDEX_KEY = "tstest.CA.gw_lev_01.06.segments";
+
+	LocalS3 s3;
+	Map<String, String> fingerprints;
+	Map<String, List<String>> rows;
+	List<List<String>> fetched;
+	DiscreteGroundWaterDao dao;
+	List<Parameter> parameters;
+	String header;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		s3 = new LocalS3();
+		fingerprints = new LinkedHashMap<>();
+		rows = new LinkedHashMap<>();
+		fetched = new ArrayList<>();
+		parameters = new ArrayList<>();
+		header = new String(FileCopyUtils.copyToByteArray(getClass().getResourceAsStream("/rdb/rdbHeader.txt")),
+				StandardCharsets.UTF_8);
+		dao = new DiscreteGroundWaterDao() {
+			@Override
+			public Map<String, String> getSiteFingerprints(List<String> states) {
+				return new LinkedHashMap<>(fingerprints);
+			}
+
+			@Override
+			public void sendSiteSegments(List<String> states, List<String> sites, RowCallbackHandler handler) {
+				fetched.add(sites);
+				try {
+					ResultSet mockRs = Mockito.mock(ResultSet.class);
+					for (Map.Entry<String, List<String>> site : rows.entrySet()) {
+						if (sites == null || sites.contains(site.getKey())) {
+							for (String value : site.getValue()) {
+								Mockito.when(mockRs.getString(SegmentRowHandler.SITE_COLUMN)).thenReturn(site.getKey());
+								Mockito.when(mockRs.getString("value")).thenReturn(value);
+								handler.processRow(mockRs);
+							}
+						}
+					}
+				} catch (SQLException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	@Test
+	void testFirstExportWritesAllSites() throws Exception {
+		// SETUP
+		site("A", "a", "a1", "a2");
+		site("B", "b", "b1");
+
+		// ACTION UNDER TEST
+		RdbWriter writer = export("file1");
+
+		// ASSERTIONS
+		assertEquals(1, fetched.size());
+		assertNull(fetched.get(0));
+		assertEquals(3, writer.getDataRowCount());
+		assertEquals(header + "a1\na2\nb1\n", gunzip(s3.objects.get("bucket/file1")));
+		SegmentIndex index = SegmentIndex.read(new ByteArrayInputStream(s3.objects.get("bucket/" + INDEX_KEY)));
+		assertEquals("file1", index.getFileKey());
+		assertEquals(3, index.getEntries().size());
+		assertEquals(SegmentedExport.HEADER_KEY, index.getEntries().get(0).getKey());
+		assertEquals(3, index.getRows());
+	}
+
+	@Test
+	void testNextExportFetchesChangedSites() throws Exception {
+		// SETUP
+		site("A", "a", "a1", "a2");
+		site("B", "b", "b1");
+		site("C", "c", "c1");
+		export("file1");
+		fetched.clear();
+		site("B", "b2", "b2");
+
+		// ACTION UNDER TEST
+		RdbWriter writer = export("file2");
+
+		// ASSERTIONS
+		assertEquals(List.of(List.of("B")), fetched);
+		assertEquals(4, writer.getDataRowCount());
+		assertEquals(header + "a1\na2\nb2\nc1\n", gunzip(s3.objects.get("bucket/file2")));
+		assertEquals("file2", SegmentIndex.read(new ByteArrayInputStream(s3.objects.get("bucket/" + INDEX_KEY))).getFileKey());
+	}
+
+	@Test
+	void testNothingChangedFetchesNothing() throws Exception {
+		// SETUP
+		site("A", "a", "a1");
+		export("file1");
+		fetched.clear();
+
+		// ACTION UNDER TEST
+		RdbWriter writer = export("file2");
+
+		// ASSERTIONS
+		assertTrue(fetched.isEmpty());
+		assertEquals(1, writer.getDataRowCount());
+		assertEquals(header + "a1\n", gunzip(s3.objects.get("bucket/file2")));
+	}
+
+	@Test
+	void testOtherGenerationExportsAllSites() throws Exception {
+		// SETUP
+		site("A", "a", "a1");
+		export("file1");
+		fetched.clear();
+		Parameter parameter = new Parameter();
+		parameter.setParameterCode("72019");
+		parameter.setBelowLandSurface(true);
+		parameters.add(parameter);
+
+		// ACTION UNDER TEST
+		export("file2");
+
+		// ASSERTIONS
+		assertEquals(1, fetched.size());
+		assertNull(fetched.get(0));
+	}
+
+	@Test
+	void testPreviousFileGoneExportsAllSites() throws Exception {
+		// SETUP
+		site("A", "a", "a1");
+		export("file1");
+		fetched.clear();
+		s3.objects.remove("bucket/file1");
+
+		// ACTION UNDER TEST
+		export("file2");
+
+		// ASSERTIONS
+		assertEquals(1, fetched.size());
+		assertNull(fetched.get(0));
+		assertEquals(header + "a1\n", gunzip(s3.objects.get("bucket/file2")));
+	}
+
+	@Test
+	void testSeekableExport() throws Exception {
+		// SETUP
+		site("USGS-01", "a", "a1", "a2");
+		site("USGS-02", "b", "b1");
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		GzipMemberOutputStream out = new GzipMemberOutputStream(file, Deflater.BEST_SPEED);
+		RdbByteWriter writer = new RdbByteWriter(out);
+
+		// ACTION UNDER TEST
+		SiteOffsetIndex sites = export(writer).writeSeekable(List.of("California"), parameters, writer, out, 0);
+		out.close();
+
+		// ASSERTIONS
+		assertEquals(1, fetched.size());
+		assertNull(fetched.get(0));
+		assertEquals(3, writer.getDataRowCount());
+		assertEquals(header + "a1\na2\nb1\n", gunzip(file.toByteArray()));
+		SiteOffsetIndex.Entry site = sites.get("USGS", "02");
+		assertEquals("b1\n", gunzip(Arrays.copyOfRange(file.toByteArray(), (int) site.getOffset(),
+				(int) (site.getOffset() + site.getLength()))));
+		assertEquals(out.getMembers().get(0).getLength(), sites.get("USGS", "01").getOffset());
+	}
+
+	void site(String site, String fingerprint, String... values) {
+		fingerprints.put(site, fingerprint);
+		rows.put(site, List.of(values));
+	}
+
+	RdbWriter export(String fileKey) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		GzipMemberOutputStream out = new GzipMemberOutputStream(file, Deflater.BEST_SPEED);
+		RdbByteWriter writer = new RdbByteWriter(out);
+		SegmentedExport export = export(writer);
+		export.write(List.of("California"), parameters, writer, out);
+		out.close();
+		s3.objects.put("bucket/" + fileKey, file.toByteArray());
+		export.saveIndex(fileKey, out.getMembers());
+		return writer;
+	}
+
+	SegmentedExport export(RdbByteWriter writer) {
+		return new SegmentedExport(dao, s3, "bucket", INDEX_KEY) {
+			@Override
+			protected RowCallbackHandler createRowHandler(RdbWriter rdbWriter, List<Parameter> parameters) {
+				return rs -> writer.writeField(64, rs.getString("value")).endRow();
+			}
+		};
+	}
+
+	String gunzip(byte[] gzip) throws IOException {
+		return new String(new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,76 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SiteOffsetIndexTest {
+
+	@Test
+	void testFromMembers() throws Exception {
+		// SETUP
+		List<SegmentIndex.Entry> members = List.of(
+				new SegmentIndex.Entry(SegmentedExport.HEADER_KEY, "generation", 0, 180, 0),
+				new SegmentIndex.Entry("USGS-335504116541501", "a", 180, 60, 3),
+				new SegmentIndex.Entry("USGS-335504116544201", "b", 240, 90, 6));
+
+		// ACTION UNDER TEST
+		SiteOffsetIndex index = SiteOffsetIndex.fromMembers(members);
+
+		// ASSERTIONS
+		assertEquals(2, index.getEntries().size());
+		SiteOffsetIndex.Entry site = index.get("USGS", "335504116544201");
+		assertEquals(240, site.getOffset());
+		assertEquals(90, site.getLength());
+		assertEquals(6, site.getRows());
+		assertNull(index.get("USGS", "341155116212701"));
+	}
+
+	@Test
+	void testRoundTrip() throws Exception {
+		// SETUP
+		SiteOffsetIndex index = new SiteOffsetIndex(List.of(
+				new SiteOffsetIndex.Entry("USGS", "335504116541501", 180, 150, 3),
+				new SiteOffsetIndex.Entry("USGS", "335504116544201", 180, 150, 6)));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		// ACTION UNDER TEST
+		index.write(out);
+		SiteOffsetIndex read = SiteOffsetIndex.read(new ByteArrayInputStream(out.toByteArray()));
+
+		// ASSERTIONS
+		assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("agency_cd\tsite_no\toffset\tlength\trows\n"));
+		assertEquals(2, read.getEntries().size());
+		assertEquals(6, read.get("USGS", "335504116544201").getRows());
+		assertEquals(180, read.get("USGS", "335504116544201").getOffset());
+	}
+
+	@Test
+	void testPublish() throws Exception {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		SiteOffsetIndex index = new SiteOffsetIndex(List.of(new SiteOffsetIndex.Entry("USGS", "01646500", 100, 50, 2)));
+
+		// ACTION UNDER TEST
+		index.publish(s3, "bucket", "file.rdb.gz");
+
+		// ASSERTIONS
+		byte[] published = s3.objects.get("bucket/file.rdb.gz" + SiteOffsetIndex.SUFFIX);
+		assertEquals(50, SiteOffsetIndex.read(new ByteArrayInputStream(published)).get("USGS", "01646500").getLength());
+	}
+
+	@Test
+	void testInvalidIndex() {
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertThrows(IOException.class, () -> SiteOffsetIndex.read(new ByteArrayInputStream(new byte[0])));
+		assertThrows(IOException.class, () -> SiteOffsetIndex.read(new ByteArrayInputStream(
+				"agency_cd\tsite_no\toffset\tlength\trows\nUSGS\t01646500\n".getBytes(StandardCharsets.UTF_8))));
+	}
+}
@@ -0,0 +1,118 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+class SplitRowHandlerTest {
+
+	LocalS3 s3;
+
+	@BeforeEach
+	public void setup() {
+		s3 = new LocalS3();
+	}
+
+	@Test
+	void testRowLimitEndsPartsAtSiteBoundaries() throws Exception {
+		// SETUP
+		SplitRowHandler handler = handler(2, 0, 0);
+
+		// ACTION UNDER TEST
+		fetch(handler, "USGS-01", "a1", "USGS-01", "a2", "USGS-01", "a3", "USGS-02", "b1", "USGS-03", "c1");
+		List<String> keys = handler.finish();
+
+		// ASSERTIONS
+		assertEquals(List.of("part-0-1", "part-0-2"), keys);
+		assertEquals("#h\na1\na2\na3\n", object("part-0-1"));
+		assertEquals("#h\nb1\nc1\n", object("part-0-2"));
+		assertEquals(5, handler.getRowCount());
+	}
+
+	@Test
+	void testByteLimitEndsPartsAtSiteBoundaries() throws Exception {
+		// SETUP the header and one site reach 6 bytes
+		SplitRowHandler handler = handler(0, 6, 0);
+
+		// ACTION UNDER TEST
+		fetch(handler, "USGS-01", "a1", "USGS-02", "b1", "USGS-02", "b2", "USGS-03", "c1");
+		List<String> keys = handler.finish();
+
+		// ASSERTIONS
+		assertEquals(List.of("part-0-1", "part-0-2", "part-0-3"), keys);
+		assertEquals("#h\na1\n", object("part-0-1"));
+		assertEquals("#h\nb1\nb2\n", object("part-0-2"));
+		assertEquals("#h\nc1\n", object("part-0-3"));
+	}
+
+	@Test
+	void testSitesPartitionedByHash() throws Exception {
+		// SETUP
+		SplitRowHandler handler = handler(0, 0, 2);
+		String[] sites = {"USGS-01", "USGS-02", "USGS-03", "USGS-04"};
+
+		// ACTION UNDER TEST
+		for (String site : sites) {
+			fetch(handler, site, site);
+		}
+		List<String> keys = handler.finish();
+
+		// ASSERTIONS
+		assertEquals(4, handler.getRowCount());
+		for (String site : sites) {
+			String key = "part-" + Math.floorMod(site.hashCode(), 2) + "-1";
+			assertTrue(keys.contains(key));
+			assertTrue(object(key).contains(site + "\n"));
+		}
+	}
+
+	@Test
+	void testClosePublishesNoPartNotSent() throws Exception {
+		// SETUP
+		SplitRowHandler handler = handler(0, 0, 0);
+		fetch(handler, "USGS-01", "a1");
+
+		// ACTION UNDER TEST
+		handler.close();
+
+		// ASSERTIONS
+		assertTrue(s3.objects.isEmpty());
+		assertTrue(s3.uploads.isEmpty());
+	}
+
+	SplitRowHandler handler(long maxRows, long maxBytes, int partitions) {
+		return new SplitRowHandler((partition, sequence) -> {
+			S3Bucket bucket = new S3Bucket("region", "bucket", "part-" + partition + "-" + sequence,
+					OutputCodecs.forName(OutputCodecs.NONE, 0), S3MultipartOutputStream.MIN_PART_SIZE, 2) {
+				@Override
+				protected AmazonS3 buildS3() {
+					return s3;
+				}
+			};
+			RdbByteWriter writer = new RdbByteWriter(bucket.getOutputStream());
+			writer.writeField(64, "#h").endRow();
+			writer.initRows();
+			return new SplitRowHandler.Part(bucket, writer, rs -> writer.writeField(64, rs.getString("value")).endRow());
+		}, maxRows, maxBytes, partitions);
+	}
+
+	void fetch(SplitRowHandler handler, String... sitesAndValues) throws Exception {
+		ResultSet mockRs = Mockito.mock(ResultSet.class);
+		for (int r = 0; r < sitesAndValues.length; r += 2) {
+			Mockito.when(mockRs.getString(SegmentRowHandler.SITE_COLUMN)).thenReturn(sitesAndValues[r]);
+			Mockito.when(mockRs.getString("value")).thenReturn(sitesAndValues[r + 1]);
+			handler.processRow(mockRs);
+		}
+	}
+
+	String object(String key) {
+		return new String(s3.objects.get("bucket/" + key));
+	}
+}
@@ -0,0 +1,211 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+class StagingOutputStreamTest {
+
+	File directory;
+	ByteArrayOutputStream streamed;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("rdb-staging-test").toFile();
+		streamed = new ByteArrayOutputStream();
+	}
+
+	@AfterEach
+	public void cleanup() {
+		new TempStorage(directory, 0, 0);
+		directory.delete();
+	}
+
+	byte[] bytes(int length) {
+		byte[] bytes = new byte[length];
+		for (int b = 0; b < length; b++) {
+			bytes[b] = (byte) (b * 31 + b / 7);
+		}
+		return bytes;
+	}
+
+	StagingOutputStream write(TempStorage storage, byte[] bytes) throws Exception {
+		StagingOutputStream staging = storage.open("ts.test", () -> streamed);
+		for (int offset = 0; offset < bytes.length; offset += 100_000) {
+			staging.write(bytes, offset, Math.min(100_000, bytes.length - offset));
+		}
+		staging.write(7);
+		staging.close();
+		return staging;
+	}
+
+	byte[] read(StagingOutputStream staging) throws Exception {
+		try (InputStream in = staging.openInputStream()) {
+			return in.readAllBytes();
+		}
+	}
+
+	byte[] expected(byte[] bytes) {
+		byte[] expected = new byte[bytes.length + 1];
+		System.arraycopy(bytes, 0, expected, 0, bytes.length);
+		expected[bytes.length] = 7;
+		return expected;
+	}
+
+	@Test
+	void testSmallFileStaysInMemory() throws Exception {
+		// SETUP
+		TempStorage storage = new TempStorage(directory, 0, 4 * TempStorage.CHUNK_SIZE);
+		byte[] bytes = bytes(3 * TempStorage.CHUNK_SIZE + 5);
+
+		// ACTION UNDER TEST
+		StagingOutputStream staging = write(storage, bytes);
+
+		// ASSERTIONS
+		assertNull(staging.getFile());
+		assertFalse(staging.isStreaming());
+		assertArrayEquals(expected(bytes), read(staging));
+		assertEquals(0, storage.getPeak());
+		staging.discard();
+		assertEquals(4, storage.pool.size());
+	}
+
+	@Test
+	void testMarkAndResetRereadTheChunks() throws Exception {
+		// SETUP
+		TempStorage storage = new TempStorage(directory, 0, 4 * TempStorage.CHUNK_SIZE);
+		byte[] bytes = bytes(2 * TempStorage.CHUNK_SIZE);
+		StagingOutputStream staging = write(storage, bytes);
+
+		// ACTION UNDER TEST
+		InputStream in = staging.openInputStream();
+		in.readNBytes(10);
+		in.mark(Integer.MAX_VALUE);
+		in.readNBytes(TempStorage.CHUNK_SIZE + 10);
+		in.reset();
+
+		// ASSERTIONS
+		byte[] rest = in.readAllBytes();
+		assertEquals(expected(bytes).length - 10, rest.length);
+		assertEquals(bytes[10], rest[0]);
+	}
+
+	@Test
+	void testLargeFileSpillsToMappedFile() throws Exception {
+		// SETUP
+		TempStorage storage = new TempStorage(directory, 4 * TempStorage.FILE_GROWTH, 2 * TempStorage.CHUNK_SIZE);
+		byte[] bytes = bytes((int) (2 * TempStorage.FILE_GROWTH + 12345));
+
+		// ACTION UNDER TEST
+		StagingOutputStream staging = write(storage, bytes);
+
+		// ASSERTIONS the file is preallocated in steps and trimmed at close
+		assertNotNull(staging.getFile());
+		assertEquals(directory, staging.getFile().getParentFile());
+		assertEquals(bytes.length + 1, staging.getFile().length());
+		assertArrayEquals(expected(bytes), Files.readAllBytes(staging.getFile().toPath()));
+		assertEquals(3 * TempStorage.FILE_GROWTH, storage.getPeak());
+		assertEquals(0, streamed.size());
+
+		staging.discard();
+		assertFalse(staging.file.exists());
+		assertEquals(0, storage.getUsed());
+	}
+
+	@Test
+	void testDiscardTruncatesTheMappedFile() throws Exception {
+		// SETUP a link keeps the blocks of the file visible once it is deleted
+		TempStorage storage = new TempStorage(directory, 4 * TempStorage.FILE_GROWTH, TempStorage.CHUNK_SIZE);
+		StagingOutputStream staging = storage.open("ts.test", () -> streamed);
+		staging.write(bytes(TempStorage.CHUNK_SIZE + 10));
+		File link = new File(directory, "link");
+		Files.createLink(link.toPath(), staging.file.toPath());
+
+		// ACTION UNDER TEST
+		staging.discard();
+
+		// ASSERTIONS the blocks are freed while the regions are still mapped
+		assertFalse(staging.file.exists());
+		assertEquals(0, link.length());
+		assertTrue(staging.buffers.isEmpty());
+		assertEquals(0, storage.getUsed());
+		link.delete();
+	}
+
+	@Test
+	void testOverBudgetFallsBackToStreaming() throws Exception {
+		// SETUP
+		TempStorage storage = new TempStorage(directory, TempStorage.FILE_GROWTH, TempStorage.CHUNK_SIZE);
+		byte[] bytes = bytes((int) (TempStorage.FILE_GROWTH * 3 / 2));
+
+		// ACTION UNDER TEST
+		StagingOutputStream staging = write(storage, bytes);
+
+		// ASSERTIONS everything staged so far is replayed
+		assertTrue(staging.isStreaming());
+		assertNull(staging.getFile());
+		assertArrayEquals(expected(bytes), streamed.toByteArray());
+		assertEquals(0, storage.getUsed());
+		assertEquals(0, directory.list().length);
+	}
+
+	@Test
+	void testStagedS3BucketPutsFromMemory() throws Exception {
+		// SETUP
+		LocalS3 s3 = new LocalS3();
+		S3Bucket bucket = stagedBucket(s3, new TempStorage(directory, 0, 4 * TempStorage.CHUNK_SIZE));
+		String rows = "USGS\t01646500\t20070501\n".repeat(1000);
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			Writer writer = bucket.getWriter();
+			writer.write(rows);
+			assertEquals("put", bucket.sendS3().getETag());
+		}
+
+		// ASSERTIONS
+		byte[] object = s3.objects.get("bucket/key.gz");
+		assertEquals(rows, new String(new GZIPInputStream(new ByteArrayInputStream(object)).readAllBytes()));
+	}
+
+	@Test
+	void testStagedS3BucketFallsBackToMultipart() throws Exception {
+		// SETUP no memory and no /tmp, so the file streams from the start
+		LocalS3 s3 = new LocalS3();
+		S3Bucket bucket = stagedBucket(s3, new TempStorage(directory, 0, 0));
+		byte[] rows = bytes(100_000);
+
+		// ACTION UNDER TEST
+		try (bucket) {
+			OutputStream out = bucket.getOutputStream();
+			out.write(rows);
+			assertTrue(bucket.sendS3().getETag().startsWith("multipart-"));
+		}
+
+		// ASSERTIONS
+		byte[] object = s3.objects.get("bucket/key.gz");
+		assertArrayEquals(rows, new GZIPInputStream(new ByteArrayInputStream(object)).readAllBytes());
+	}
+
+	S3Bucket stagedBucket(LocalS3 s3, TempStorage storage) {
+		return new S3Bucket("region", "bucket", "key.gz", OutputCodecs.forName("gzip:1", 0), 4096, 2) {
+			@Override
+			protected AmazonS3 buildS3() {
+				return s3;
+			}
+		}.withStaging(storage);
+	}
+}
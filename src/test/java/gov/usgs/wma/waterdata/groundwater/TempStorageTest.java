@@ -0,0 +1,73 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TempStorageTest {
+
+	File directory;
+	TempStorage storage;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("rdb-staging-test").toFile();
+		storage = new TempStorage(directory, 100, TempStorage.CHUNK_SIZE);
+	}
+
+	@AfterEach
+	public void cleanup() {
+		storage.deleteOrphans();
+		directory.delete();
+	}
+
+	@Test
+	void testReservationsStayWithinTheBudget() {
+		// ACTION UNDER TEST
+		assertTrue(storage.reserve(60));
+		assertFalse(storage.reserve(41));
+		assertTrue(storage.reserve(40));
+		storage.release(60);
+		storage.record(30);
+
+		// ASSERTIONS
+		assertEquals(40, storage.getUsed());
+		assertEquals(100, storage.getPeak());
+	}
+
+	@Test
+	void testBeginInvocationDeletesOrphans() throws Exception {
+		// SETUP a file left by an export that died
+		File orphan = storage.createTempFile("ts.test", ".gz");
+		storage.reserve(50);
+
+		// ACTION UNDER TEST
+		storage.beginInvocation();
+
+		// ASSERTIONS
+		assertFalse(orphan.exists());
+		assertEquals(directory, orphan.getParentFile());
+		assertEquals(0, storage.getUsed());
+		assertEquals(0, storage.getPeak());
+	}
+
+	@Test
+	void testPoolKeepsNoMoreThanTheMemoryLimit() {
+		// SETUP
+		var first = storage.allocate();
+		var second = storage.allocate();
+
+		// ACTION UNDER TEST
+		storage.recycle(first);
+		storage.recycle(second);
+
+		// ASSERTIONS
+		assertEquals(1, storage.pool.size());
+		assertSame(first, storage.allocate());
+	}
+}
@@ -0,0 +1,91 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+
+/**
+ * Reports the cost per row of the lev_dt, lev_tm and lev_dtm columns, formatted with Joda
+ * as RdbWriter did before TimestampEncoder, and encoded by TimestampEncoder as Strings
+ * for RdbWriter and as bytes for the byte writer.
+ * Not a unit test; run it with the test classpath, for example
+ * java -cp target/classes:target/test-classes:... gov.usgs.wma.waterdata.groundwater.TimestampEncoderBenchmark
+ *
+ * Arguments: a row count for a generated sample.
+ */
+public class TimestampEncoderBenchmark {
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Timestamp[] sample = generate(rows);
+
+		System.out.printf("%d rows%n", rows);
+		System.out.printf("%-16s %10s %10s%n", "encoding", "ns/row", "Mrows/s");
+		report("joda", sample, TimestampEncoderBenchmark::joda);
+		TimestampEncoder strings = new TimestampEncoder();
+		report("encoder strings", sample, timestamp -> {
+			strings.encode(timestamp);
+			return strings.getDate().length() + strings.getTime().length() + strings.getDateTime().length();
+		});
+		TimestampEncoder bytes = new TimestampEncoder();
+		report("encoder bytes", sample, timestamp -> {
+			bytes.encode(timestamp);
+			return bytes.dateLength + bytes.time.length + bytes.dateTimeLength;
+		});
+	}
+
+	/**
+	 * The columns as RdbWriter formatted them with Joda.
+	 */
+	static int joda(Timestamp timestamp) {
+		String date = new DateTime(timestamp).toString(RdbWriter.DATE_FORMAT);
+		String time = new DateTime(timestamp).toString(RdbWriter.TIME_FORMAT);
+		String dateTime = new DateTime(timestamp).toString(RdbWriter.DATE_TIME_FORMAT).toUpperCase();
+		return date.length() + time.length() + dateTime.length();
+	}
+
+	interface Encoding {
+		int encode(Timestamp timestamp);
+	}
+
+	static void report(String name, Timestamp[] sample, Encoding encoding) {
+		long best = Long.MAX_VALUE;
+		long length = 0;
+		// the first run warms up
+		for (int run = 0; run <= RUNS; run++) {
+			length = 0;
+			long start = System.nanoTime();
+			for (Timestamp timestamp : sample) {
+				length += encoding.encode(timestamp);
+			}
+			if (run > 0) {
+				best = Math.min(best, System.nanoTime() - start);
+			}
+		}
+		// the length keeps the encoding from being optimized away
+		System.out.printf("%-16s %10.1f %10.2f%s%n", name, best / (double) sample.length,
+				sample.length / (best / 1e9) / 1e6, length == 0 ? " (empty)" : "");
+	}
+
+	/**
+	 * Measured timestamps in the order a location folder query returns them,
+	 * sites of many readings days to weeks apart.
+	 */
+	static Timestamp[] generate(int rows) {
+		Random random = new Random(42);
+		Timestamp[] sample = new Timestamp[rows];
+		LocalDateTime time = LocalDateTime.of(1950, 1, 1, 0, 0);
+		for (int row = 0; row < rows; row++) {
+			if (row % 200 == 0) {
+				time = LocalDateTime.of(1950, 1, 1, 0, 0);
+			}
+			time = time.plusDays(1 + random.nextInt(60)).plusMinutes(random.nextInt(1440));
+			sample[row] = Timestamp.valueOf(time);
+		}
+		return sample;
+	}
+}
@@ -0,0 +1,83 @@
+package gov.usgs.wma.waterdata.groundwater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.Month;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+
+class TimestampEncoderTest {
+
+	void assertMatchesJoda(TimestampEncoder encoder, DateTimeZone zone, long millis) {
+		DateTime measured = new DateTime(millis, zone);
+		encoder.encode(millis);
+		assertEquals(measured.toString(RdbWriter.DATE_FORMAT), encoder.getDate(), "lev_dt " + millis);
+		assertEquals(measured.toString(RdbWriter.TIME_FORMAT), encoder.getTime(), "lev_tm " + millis);
+		assertEquals(measured.toString(RdbWriter.DATE_TIME_FORMAT).toUpperCase(), encoder.getDateTime(), "lev_dtm " + millis);
+	}
+
+	@Test
+	void testEncode() {
+		// SETUP
+		TimestampEncoder encoder = new TimestampEncoder(DateTimeZone.UTC);
+		Timestamp measured = Timestamp.valueOf(LocalDateTime.of(2007, Month.MAY, 1, 12, 5, 9));
+
+		// ACTION UNDER TEST
+		encoder.encode(measured.getTime());
+
+		// ASSERTIONS
+		assertEquals(8, encoder.dateLength);
+		assertEquals(20, encoder.dateTimeLength);
+		assertMatchesJoda(encoder, DateTimeZone.UTC, measured.getTime());
+	}
+
+	@Test
+	void testMatchesJodaAcrossDays() {
+		// SETUP every 7 hours 13 minutes and 11.5 seconds through two centuries, both sides of the epoch
+		for (DateTimeZone zone : new DateTimeZone[] {DateTimeZone.UTC, DateTimeZone.forID("America/Los_Angeles")}) {
+			TimestampEncoder encoder = new TimestampEncoder(zone);
+			long step = ((7 * 60 + 13) * 60 + 11) * 1000L + 500;
+			long start = TimestampEncoder.daysFromCivil(1900, 1, 1) * 86_400_000L;
+			long end = start + 200L * 365 * 86_400_000L;
+
+			// ACTION UNDER TEST
+			// ASSERTIONS
+			for (long millis = start; millis < end; millis += step) {
+				assertMatchesJoda(encoder, zone, millis);
+			}
+		}
+	}
+
+	@Test
+	void testSameDayReusesDatePart() {
+		// SETUP
+		TimestampEncoder encoder = new TimestampEncoder(DateTimeZone.UTC);
+		long morning = Timestamp.valueOf(LocalDateTime.of(2000, Month.FEBRUARY, 29, 1, 0)).getTime();
+
+		// ACTION UNDER TEST
+		encoder.encode(morning);
+		long day = encoder.cachedDay;
+		encoder.encode(morning + 22 * 3_600_000L);
+
+		// ASSERTIONS
+		assertEquals(day, encoder.cachedDay);
+		assertMatchesJoda(encoder, DateTimeZone.UTC, morning + 22 * 3_600_000L);
+	}
+
+	@Test
+	void testYearsOutsideFourDigitsUseJoda() {
+		// SETUP
+		TimestampEncoder encoder = new TimestampEncoder(DateTimeZone.UTC);
+		long farFuture = TimestampEncoder.daysFromCivil(12345, 6, 7) * 86_400_000L + 3_600_000L;
+
+		// ACTION UNDER TEST
+		// ASSERTIONS
+		assertMatchesJoda(encoder, DateTimeZone.UTC, farFuture);
+		assertEquals(Long.MIN_VALUE, encoder.cachedDay);
+		assertMatchesJoda(encoder, DateTimeZone.UTC, 0);
+	}
+}